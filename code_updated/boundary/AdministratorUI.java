@@ -12,16 +12,27 @@ public class AdministratorUI {
     private final Scanner scanner;
     private final AuthenticationController authController;
     private final AppointmentController appointmentController;
-    private final MedicineRepository medicineRepository;
+    private final InventoryController inventoryController;
+    private final InventoryNetwork inventoryNetwork;
     private final StaffRepository staffRepository;
+    private final LowStockAlertInbox lowStockAlerts;
+    private final ReplenishmentRequestRepository replenishmentRequestRepository;
+    private final InventoryEventStore inventoryEventStore;
     
     public AdministratorUI(Scanner scanner, AuthenticationController authController,
-                          AppointmentController appointmentController) {
+                          AppointmentController appointmentController, InventoryController inventoryController) {
         this.scanner = scanner;
         this.authController = authController;
         this.appointmentController = appointmentController;
-        this.medicineRepository = MedicineRepository.getInstance();
+        this.inventoryController = inventoryController;
+        this.inventoryNetwork = InventoryNetwork.getInstance();
         this.staffRepository = StaffRepository.getInstance();
+        this.lowStockAlerts = new LowStockAlertInbox();
+        for (PharmacyLocation location : PharmacyLocation.values()) {
+            inventoryNetwork.getShard(location).addLowStockListener(lowStockAlerts);
+        }
+        this.replenishmentRequestRepository = ReplenishmentRequestRepository.getInstance();
+        this.inventoryEventStore = InventoryEventStore.getInstance();
     }
     
     private void changePassword(Administrator admin) {
@@ -59,18 +70,14 @@ public class AdministratorUI {
                 doctor.getHospitalId(), doctor.getName(), doctor.getSpecialization()));
         
         System.out.println("\nPharmacists:");
-        staffRepository.findAll().stream()
-            .filter(staff -> staff instanceof Pharmacist)
-            .forEach(pharmacist -> 
-                System.out.printf("ID: %s, Name: %s%n",
-                    pharmacist.getHospitalId(), pharmacist.getName()));
+        staffRepository.findAllPharmacists().forEach(pharmacist -> 
+            System.out.printf("ID: %s, Name: %s%n",
+                pharmacist.getHospitalId(), pharmacist.getName()));
         
         System.out.println("\nAdministrators:");
-        staffRepository.findAll().stream()
-            .filter(staff -> staff instanceof Administrator)
-            .forEach(admin2 -> 
-                System.out.printf("ID: %s, Name: %s%n",
-                    admin2.getHospitalId(), admin2.getName()));
+        staffRepository.findAllAdministrators().forEach(admin2 -> 
+            System.out.printf("ID: %s, Name: %s%n",
+                admin2.getHospitalId(), admin2.getName()));
     }
     
     private void addNewStaff(Administrator admin) {
@@ -267,9 +274,12 @@ public class AdministratorUI {
             System.out.println("2. Update Stock Level");
             System.out.println("3. Update Low Stock Alert Level");
             System.out.println("4. View Inventory Actions");
-            System.out.println("5. Back to Main Menu");
+            System.out.println("5. View Stock at a Past Date and Time");
+            System.out.println("6. View Expiring Stock and Write Off Expired Lots");
+            System.out.println("7. Transfer Stock Between Locations");
+            System.out.println("8. Back to Main Menu");
             
-            System.out.print("Enter choice (1-5): ");
+            System.out.print("Enter choice (1-8): ");
             int choice = Integer.parseInt(scanner.nextLine());
             
             switch (choice) {
@@ -277,7 +287,10 @@ public class AdministratorUI {
                 case 2 -> updateStockLevel(admin);
                 case 3 -> updateAlertLevel(admin);
                 case 4 -> viewInventoryActions(admin);
-                case 5 -> {
+                case 5 -> viewHistoricalStock();
+                case 6 -> manageExpiringStock(admin);
+                case 7 -> transferStock(admin);
+                case 8 -> {
                     return;
                 }
                 default -> System.out.println("Invalid choice!");
@@ -286,17 +299,49 @@ public class AdministratorUI {
     }
     
     private void viewInventory() {
-        System.out.println("\nCurrent Inventory:");
-        medicineRepository.findAll().forEach(medicine -> {
-            System.out.println("\n" + medicine);
-            if (medicine.isLowStock()) {
-                System.out.println("*** LOW STOCK ALERT ***");
+        for (PharmacyLocation location : PharmacyLocation.values()) {
+            List<Medicine> medicines = inventoryNetwork.getShard(location).findAll();
+            if (medicines.isEmpty()) {
+                continue;
             }
-        });
+            System.out.println("\nCurrent Inventory at " + location + ":");
+            medicines.forEach(medicine -> {
+                System.out.println("\n" + medicine);
+                if (medicine.isLowStock()) {
+                    System.out.println("*** LOW STOCK ALERT ***");
+                }
+            });
+        }
+        
+        System.out.println("\nTotal Stock Across All Locations:");
+        inventoryNetwork.getTotalStock().forEach((name, total) -> System.out.printf("%s: %d%n", name, total));
+    }
+    
+    private PharmacyLocation selectLocation(String prompt) {
+        PharmacyLocation[] locations = PharmacyLocation.values();
+        System.out.println("\n" + prompt);
+        for (int i = 0; i < locations.length; i++) {
+            System.out.printf("%d. %s%n", i + 1, locations[i]);
+        }
+        System.out.print("Enter location number (1-" + locations.length + "): ");
+        try {
+            int choice = Integer.parseInt(scanner.nextLine().trim());
+            if (choice >= 1 && choice <= locations.length) {
+                return locations[choice - 1];
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        System.out.println("Invalid selection!");
+        return null;
     }
     
     private void updateStockLevel(Administrator admin) {
-        List<Medicine> medicines = medicineRepository.findAll();
+        PharmacyLocation location = selectLocation("Select Location:");
+        if (location == null) {
+            return;
+        }
+        List<Medicine> medicines = inventoryNetwork.getShard(location).findAll();
         System.out.println("\nSelect Medicine:");
         for (int i = 0; i < medicines.size(); i++) {
             System.out.printf("%d. %s (Current Stock: %d)%n", 
@@ -317,11 +362,25 @@ public class AdministratorUI {
         System.out.print("Enter quantity change (positive to add, negative to remove): ");
         int quantity = Integer.parseInt(scanner.nextLine());
         
+        LocalDate expiryDate = null;
+        if (quantity > 0) {
+            System.out.print("Enter expiry date of the new stock (YYYY-MM-DD, or press Enter for none): ");
+            String input = scanner.nextLine().trim();
+            if (!input.isEmpty()) {
+                try {
+                    expiryDate = LocalDate.parse(input);
+                } catch (DateTimeParseException e) {
+                    System.out.println("Invalid date format. Please use YYYY-MM-DD");
+                    return;
+                }
+            }
+        }
+        
         System.out.print("Enter reason for adjustment: ");
         String reason = scanner.nextLine();
         
         try {
-            admin.updateMedicineStock(medicine, quantity, reason);
+            inventoryController.updateStock(admin, medicine, quantity, expiryDate, reason);
             System.out.println("Stock updated successfully!");
         } catch (IllegalArgumentException e) {
             System.out.println("Error: " + e.getMessage());
@@ -329,7 +388,11 @@ public class AdministratorUI {
     }
     
     private void updateAlertLevel(Administrator admin) {
-        List<Medicine> medicines = medicineRepository.findAll();
+        PharmacyLocation location = selectLocation("Select Location:");
+        if (location == null) {
+            return;
+        }
+        List<Medicine> medicines = inventoryNetwork.getShard(location).findAll();
         System.out.println("\nSelect Medicine:");
         for (int i = 0; i < medicines.size(); i++) {
             System.out.printf("%d. %s (Current Alert Level: %d)%n", 
@@ -351,7 +414,7 @@ public class AdministratorUI {
         int newLevel = Integer.parseInt(scanner.nextLine());
         
         try {
-            admin.updateMedicineLowStockAlert(medicine, newLevel);
+            inventoryController.updateLowStockAlert(admin, medicine, newLevel);
             System.out.println("Alert level updated successfully!");
         } catch (IllegalArgumentException e) {
             System.out.println("Error: " + e.getMessage());
@@ -359,37 +422,195 @@ public class AdministratorUI {
     }
     
     private void viewInventoryActions(Administrator admin) {
-        System.out.println("\nInventory Actions History:");
-        admin.getInventoryActions().forEach(action -> {
-            System.out.println("\n--------------------------------");
-            System.out.printf("Medicine: %s%n", action.getMedicine().getName());
-            System.out.printf("Action: %s%n", action.getActionType());
-            System.out.printf("Quantity: %d%n", action.getQuantity());
-            System.out.printf("Date/Time: %s%n", action.getActionDateTime());
-            System.out.printf("Performed By: %s%n", action.getPerformedBy().getName());
-            if (action.getReason() != null) {
-                System.out.printf("Reason: %s%n", action.getReason());
+        System.out.println("\nInventory Actions History");
+        System.out.println("1. All Actions");
+        System.out.println("2. Actions for a Medicine");
+        System.out.println("3. Actions in a Date Range");
+        System.out.println("4. My Actions");
+        System.out.print("Enter choice (1-4): ");
+        
+        try {
+            List<MedicineInventoryAction> actions = switch (Integer.parseInt(scanner.nextLine())) {
+                case 1 -> inventoryController.getInventoryActions();
+                case 2 -> {
+                    System.out.print("Enter medicine name: ");
+                    yield inventoryController.getInventoryActionsByMedicine(scanner.nextLine());
+                }
+                case 3 -> {
+                    System.out.print("Enter start date (YYYY-MM-DD): ");
+                    LocalDate from = LocalDate.parse(scanner.nextLine().trim());
+                    System.out.print("Enter end date (YYYY-MM-DD): ");
+                    LocalDate to = LocalDate.parse(scanner.nextLine().trim());
+                    yield inventoryController.getInventoryActionsByDate(from.atStartOfDay(), to.atTime(LocalTime.MAX));
+                }
+                case 4 -> inventoryController.getInventoryActionsBy(admin);
+                default -> {
+                    System.out.println("Invalid choice!");
+                    yield null;
+                }
+            };
+            if (actions == null) {
+                return;
+            }
+            if (actions.isEmpty()) {
+                System.out.println("No inventory actions found.");
+                return;
             }
-        });
+            actions.forEach(this::printInventoryAction);
+        } catch (DateTimeParseException e) {
+            System.out.println("Invalid date format. Please use YYYY-MM-DD");
+        }
     }
-
+    
+    private void viewHistoricalStock() {
+        System.out.print("Enter medicine name: ");
+        String name = scanner.nextLine().trim();
+        if (!inventoryEventStore.hasHistory(name)) {
+            System.out.println("Medicine not found!");
+            return;
+        }
+        
+        try {
+            System.out.print("Enter date and time (YYYY-MM-DD HH:MM): ");
+            LocalDateTime time = LocalDateTime.parse(scanner.nextLine().trim().replace(' ', 'T'));
+            System.out.printf("Stock of %s across all locations at %s: %d (current: %d)%n",
+                name,
+                time,
+                inventoryEventStore.getStockAt(name, time),
+                inventoryNetwork.getTotalStock(name));
+        } catch (DateTimeParseException e) {
+            System.out.println("Invalid format. Please use YYYY-MM-DD HH:MM");
+        }
+    }
+    
+    private void manageExpiringStock(Administrator admin) {
+        System.out.print("Show lots expiring within how many days? ");
+        int days;
+        try {
+            days = Integer.parseInt(scanner.nextLine().trim());
+        } catch (NumberFormatException e) {
+            System.out.println("Please enter a valid number.");
+            return;
+        }
+        
+        LocalDate today = LocalDate.now();
+        LocalDate cutoff = today.plusDays(Math.max(0, days));
+        List<StockLot> lots = new ArrayList<>();
+        for (PharmacyLocation location : PharmacyLocation.values()) {
+            lots.addAll(inventoryNetwork.getShard(location).findLotsExpiringOnOrBefore(cutoff));
+        }
+        lots.sort(StockLot.EARLIEST_EXPIRY_FIRST);
+        if (lots.isEmpty()) {
+            System.out.println("No stock expires in that period.");
+            return;
+        }
+        
+        System.out.println("\nExpiring Stock (earliest first):");
+        int expiredCount = 0;
+        for (StockLot lot : lots) {
+            boolean expired = lot.isExpired(today);
+            if (expired) {
+                expiredCount++;
+            }
+            System.out.printf("%s - %s at %s: %d units, expires %s%s%n",
+                lot.getLotId(),
+                lot.getMedicine().getName(),
+                lot.getMedicine().getLocation(),
+                lot.getRemaining(),
+                lot.getExpiryDate(),
+                expired ? " (EXPIRED)" : "");
+        }
+        if (expiredCount == 0) {
+            return;
+        }
+        
+        System.out.print("\nWrite off all " + expiredCount + " expired lot(s)? (Y/N): ");
+        if (!scanner.nextLine().trim().equalsIgnoreCase("Y")) {
+            return;
+        }
+        for (StockLot lot : lots) {
+            if (!lot.isExpired(today)) {
+                continue;
+            }
+            MedicineInventoryAction action = inventoryController.writeOffExpiredLot(admin, lot);
+            if (action == null) {
+                System.out.println(lot.getLotId() + ": nothing could be written off (stock is reserved).");
+                continue;
+            }
+            System.out.printf("%s: wrote off %d units of %s%n",
+                lot.getLotId(), -action.getQuantity(), lot.getMedicine().getName());
+        }
+    }
+    
+    private void transferStock(Administrator admin) {
+        PharmacyLocation from = selectLocation("Transfer From:");
+        if (from == null) {
+            return;
+        }
+        List<Medicine> medicines = inventoryNetwork.getShard(from).findAll();
+        if (medicines.isEmpty()) {
+            System.out.println("No medicines are stocked at " + from + ".");
+            return;
+        }
+        System.out.println("\nSelect Medicine:");
+        for (int i = 0; i < medicines.size(); i++) {
+            System.out.printf("%d. %s (Available: %d)%n",
+                i + 1,
+                medicines.get(i).getName(),
+                medicines.get(i).getAvailableStock());
+        }
+        
+        try {
+            System.out.print("Enter medicine number (1-" + medicines.size() + "): ");
+            int medicineNum = Integer.parseInt(scanner.nextLine().trim());
+            if (medicineNum < 1 || medicineNum > medicines.size()) {
+                System.out.println("Invalid selection!");
+                return;
+            }
+            Medicine medicine = medicines.get(medicineNum - 1);
+            
+            PharmacyLocation to = selectLocation("Transfer To:");
+            if (to == null) {
+                return;
+            }
+            System.out.print("Enter quantity to transfer: ");
+            int quantity = Integer.parseInt(scanner.nextLine().trim());
+            
+            inventoryController.transfer(admin, medicine.getName(), from, to, quantity);
+            System.out.printf("Transferred %d units of %s from %s to %s.%n", quantity, medicine.getName(), from, to);
+        } catch (NumberFormatException e) {
+            System.out.println("Please enter a valid number.");
+        } catch (IllegalArgumentException e) {
+            System.out.println("Error: " + e.getMessage());
+        }
+    }
+    
+    private void printInventoryAction(MedicineInventoryAction action) {
+        System.out.println("\n--------------------------------");
+        System.out.printf("Medicine: %s%n", action.getMedicine().getName());
+        System.out.printf("Location: %s%n", action.getMedicine().getLocation());
+        System.out.printf("Action: %s%n", action.getActionType());
+        System.out.printf("Quantity: %d%n", action.getQuantity());
+        System.out.printf("Date/Time: %s%n", action.getActionDateTime());
+        System.out.printf("Performed By: %s%n", action.getPerformedBy().getName());
+        if (action.getReason() != null) {
+            System.out.printf("Reason: %s%n", action.getReason());
+        }
+    }
+    
     private void approveReplenishmentRequests(Administrator admin) {
-        List<ReplenishmentRequest> pendingRequests = staffRepository.findAll().stream()
-            .filter(staff -> staff instanceof Pharmacist)
-            .map(staff -> (Pharmacist) staff)
-            .flatMap(pharmacist -> pharmacist.getReplenishmentRequests().stream())
-            .filter(request -> request.getStatus() == ReplenishmentStatus.PENDING)
-            .toList();
+        List<ReplenishmentRequest> pendingRequests = replenishmentRequestRepository.findPending();
             
         if (pendingRequests.isEmpty()) {
             System.out.println("No pending replenishment requests!");
             return;
         }
         
-        System.out.println("\nPending Replenishment Requests:");
+        System.out.println("\nPending Replenishment Requests (oldest first):");
         for (int i = 0; i < pendingRequests.size(); i++) {
             ReplenishmentRequest request = pendingRequests.get(i);
-            System.out.printf("%d. Medicine: %s%n", i + 1, request.getMedicine().getName());
+            System.out.printf("%d. [%s] Medicine: %s (%s)%n", i + 1, request.getRequestId(), 
+                request.getMedicine().getName(), request.getMedicine().getLocation());
             System.out.printf("   Requested By: %s%n", request.getRequestedBy().getName());
             System.out.printf("   Quantity: %d%n", request.getRequestedQuantity());
             System.out.printf("   Current Stock: %d%n", request.getMedicine().getCurrentStock());
@@ -398,20 +619,19 @@ public class AdministratorUI {
         }
         
         try {
-            System.out.print("Enter request number to process (1-" + pendingRequests.size() + "): ");
-            int requestNum = Integer.parseInt(scanner.nextLine());
+            System.out.print("Enter request numbers to process (e.g. 1,3,5-8) or 'all': ");
+            List<ReplenishmentRequest> selectedRequests = 
+                parseRequestSelection(scanner.nextLine(), pendingRequests);
             
-            if (requestNum < 1 || requestNum > pendingRequests.size()) {
+            if (selectedRequests.isEmpty()) {
                 System.out.println("Invalid request number!");
                 return;
             }
             
-            ReplenishmentRequest selectedRequest = pendingRequests.get(requestNum - 1);
-            
             // Add response validation loop
             String response;
             while (true) {
-                System.out.print("Approve request? (y/n): ");
+                System.out.printf("Approve %d request(s)? (y/n): ", selectedRequests.size());
                 response = scanner.nextLine().toLowerCase().trim();
                 
                 if (response.equals("y") || response.equals("n")) {
@@ -420,28 +640,60 @@ public class AdministratorUI {
                 System.out.println("Please enter 'y' for yes or 'n' for no.");
             }
             
-            admin.processReplenishmentRequest(selectedRequest, response.equals("y"));
-            System.out.println("Request " + 
+            inventoryController.processReplenishmentRequests(admin, selectedRequests, response.equals("y"));
+            System.out.println(selectedRequests.size() + " request(s) " + 
                 (response.equals("y") ? "approved" : "rejected") + 
                 " successfully!");
                 
             if (response.equals("y")) {
-                Medicine medicine = selectedRequest.getMedicine();
-                System.out.printf("New stock level for %s: %d%n", 
-                    medicine.getName(), 
-                    medicine.getCurrentStock());
+                selectedRequests.stream()
+                    .map(ReplenishmentRequest::getMedicine)
+                    .distinct()
+                    .forEach(medicine -> System.out.printf("New stock level for %s: %d%n", 
+                        medicine.getName(), 
+                        medicine.getCurrentStock()));
             }
         } catch (NumberFormatException e) {
-            System.out.println("Please enter a valid number!");
-        } catch (IllegalArgumentException e) {
-            System.out.println("Error processing request: " + e.getMessage());
+            System.out.println("Please enter valid request numbers!");
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            System.out.println("Error processing requests: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Parses a selection such as "1,3,5-8" or "all" into the matching requests
+     */
+    private List<ReplenishmentRequest> parseRequestSelection(String input, 
+                                                             List<ReplenishmentRequest> requests) {
+        String selection = input.trim();
+        if (selection.equalsIgnoreCase("all")) {
+            return requests;
+        }
+        
+        Set<Integer> numbers = new TreeSet<>();
+        for (String part : selection.split(",")) {
+            String range = part.trim();
+            if (range.isEmpty()) {
+                continue;
+            }
+            int dash = range.indexOf('-');
+            int from = Integer.parseInt((dash < 0 ? range : range.substring(0, dash)).trim());
+            int to = dash < 0 ? from : Integer.parseInt(range.substring(dash + 1).trim());
+            if (from < 1 || to > requests.size() || from > to) {
+                return List.of();
+            }
+            for (int n = from; n <= to; n++) {
+                numbers.add(n);
+            }
         }
+        return numbers.stream().map(n -> requests.get(n - 1)).toList();
     }
     
     
     public void show(Administrator admin) {
         while (true) {
             try {
+                lowStockAlerts.printAlerts();
                 System.out.println("\nAdministrator Menu");
                 System.out.println("1. Change Password");
                 System.out.println("2. View and Manage Hospital Staff");
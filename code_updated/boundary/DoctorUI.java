@@ -4,12 +4,15 @@ import controller.*;
 import entity.*;
 import entity.enums.*;
 import repository.MedicineRepository;
+import util.Page;
 
 import java.time.*;
 import java.time.format.DateTimeParseException;
 import java.util.*;
 
 public class DoctorUI {
+    private static final int MEDICINE_SEARCH_LIMIT = 10;
+    private static final int DIAGNOSIS_PAGE_SIZE = 5;
     private final Scanner scanner;
     private final AuthenticationController authController;
     private final AppointmentController appointmentController;
@@ -98,20 +101,14 @@ public class DoctorUI {
     }
 
     private void viewPatientMedicalRecords(Doctor doctor) {
-        List<Appointment> allAppointments = appointmentController.getAllAppointments(doctor);
-        Set<Patient> patients = new HashSet<>();
+        List<Patient> sortedPatients = appointmentController.getPatientsUnderCare(doctor);
         
-        // Get unique patients from all appointments
-        allAppointments.forEach(apt -> patients.add(apt.getPatient()));
-        
-        if (patients.isEmpty()) {
+        if (sortedPatients.isEmpty()) {
             System.out.println("No patients found under your care.");
             return;
         }
 
         System.out.println("\nYour Patients:");
-        List<Patient> sortedPatients = new ArrayList<>(patients);
-        sortedPatients.sort(Comparator.comparing(Patient::getName));
 
         for (int i = 0; i < sortedPatients.size(); i++) {
             System.out.printf("%d. %s (ID: %s)%n", 
@@ -120,10 +117,10 @@ public class DoctorUI {
                 sortedPatients.get(i).getHospitalId());
         }
 
-        System.out.print("\nEnter patient number to view (1-" + patients.size() + "): ");
+        System.out.print("\nEnter patient number to view (1-" + sortedPatients.size() + "): ");
         try {
             int choice = Integer.parseInt(scanner.nextLine());
-            if (choice < 1 || choice > patients.size()) {
+            if (choice < 1 || choice > sortedPatients.size()) {
                 System.out.println("Invalid choice!");
                 return;
             }
@@ -132,21 +129,41 @@ public class DoctorUI {
             MedicalRecord record = medicalRecordController.getMedicalRecord(selectedPatient.getHospitalId());
             System.out.println("\nMedical Record:");
             System.out.println(record);
+            displayDiagnosisHistory(record.getPatientId());
         } catch (NumberFormatException e) {
             System.out.println("Please enter a valid number.");
         }
     }
+    
+    private void displayDiagnosisHistory(String patientId) {
+        Page<Diagnosis> page = medicalRecordController.getDiagnosisHistory(patientId, null, DIAGNOSIS_PAGE_SIZE);
+        if (page.isEmpty()) {
+            System.out.println("No diagnoses recorded.");
+            return;
+        }
+        
+        System.out.println("Most recent diagnoses:");
+        while (true) {
+            page.getItems().forEach(diagnosis -> System.out.println("\n" + diagnosis));
+            
+            if (!page.hasMore()) {
+                break;
+            }
+            System.out.print("\nEnter 'n' for older diagnoses or press Enter to return: ");
+            if (!scanner.nextLine().trim().equalsIgnoreCase("n")) {
+                break;
+            }
+            page = medicalRecordController.getDiagnosisHistory(patientId, page.getNextCursor(), DIAGNOSIS_PAGE_SIZE);
+        }
+    }
 
     private void updatePatientMedicalRecords(Doctor doctor) {
         System.out.print("Enter patient ID: ");
         String patientId = scanner.nextLine();
 
         try {
-            // Verify that this patient has had appointments with this doctor
-            boolean isAuthorized = appointmentController.getAllAppointments(doctor).stream()
-                .anyMatch(apt -> apt.getPatient().getHospitalId().equals(patientId));
-
-            if (!isAuthorized) {
+            // Verify that this patient is under this doctor's care
+            if (!appointmentController.isPatientUnderCare(doctor, patientId)) {
                 System.out.println("You are not authorized to update this patient's records.");
                 return;
             }
@@ -171,8 +188,10 @@ public class DoctorUI {
     
         LocalDate date = dateStr.isEmpty() ? LocalDate.now() : LocalDate.parse(dateStr);
     
+        DaySchedule schedule = appointmentController.getDaySchedule(doctor, date);
+    
         // Get availability for the date
-        DoctorAvailability availability = doctor.getAvailability(date);
+        DoctorAvailability availability = schedule.getAvailability();
         if (availability != null) {
             System.out.printf("\nAvailability for %s:%n", date);
             System.out.printf("Available from %s to %s%n", 
@@ -182,24 +201,27 @@ public class DoctorUI {
             System.out.println("No availability set for this date.");
         }
     
-        // Get all appointments for the date
-        List<Appointment> appointments = appointmentController.getAllAppointments(doctor).stream()
-            .filter(apt -> apt.getDateTime().toLocalDate().equals(date))
-            .sorted(Comparator.comparing(Appointment::getDateTime))
-            .toList();
-    
-        if (!appointments.isEmpty()) {
-            System.out.println("\nAppointments:");
-            appointments.forEach(apt -> {
-                System.out.println("\n--------------------------------");
-                System.out.printf("Appointment ID: %s%n", apt.getAppointmentId());
-                System.out.printf("Patient: %s%n", apt.getPatient().getName());
-                System.out.printf("Time: %s%n", apt.getDateTime().toLocalTime());
-                System.out.printf("Status: %s%n", apt.getStatus());
-            });
-        } else {
+        // Free slots, pending requests and booked appointments in time order
+        List<DaySchedule.Entry> entries = schedule.getEntries();
+        if (entries.isEmpty()) {
             System.out.println("No appointments scheduled for this date.");
+            return;
         }
+    
+        System.out.println("\nSchedule:");
+        entries.forEach(entry -> {
+            Appointment apt = entry.getAppointment();
+            if (apt == null) {
+                System.out.printf("%s  Free%n", entry.getTime());
+            } else {
+                System.out.printf("%s  %s - %s (Appointment ID: %s, Status: %s)%n",
+                    entry.getTime(),
+                    entry.getType() == DaySchedule.EntryType.PENDING ? "Pending" : "Booked",
+                    apt.getPatient().getName(),
+                    apt.getAppointmentId(),
+                    apt.getStatus());
+            }
+        });
     }
     
     
@@ -349,27 +371,11 @@ public class DoctorUI {
             for (int i = 0; i < numPrescriptions; i++) {
                 System.out.printf("\nPrescription %d:%n", i + 1);
                 
-                // Show available medicines
-                System.out.println("Available medicines:");
-                List<Medicine> availableMedicines = medicineRepo.findAll();
-                for (int j = 0; j < availableMedicines.size(); j++) {
-                    Medicine med = availableMedicines.get(j);
-                    System.out.printf("%d. %s (Stock: %d)%n", 
-                        j + 1, 
-                        med.getName(), 
-                        med.getCurrentStock());
-                }
-                
-                System.out.print("Select medicine (1-" + availableMedicines.size() + "): ");
-                int medChoice = Integer.parseInt(scanner.nextLine());
-                
-                if (medChoice < 1 || medChoice > availableMedicines.size()) {
-                    System.out.println("Invalid medicine choice!");
+                Medicine selectedMedicine = selectMedicine(medicineRepo);
+                if (selectedMedicine == null) {
                     return;
                 }
                 
-                Medicine selectedMedicine = availableMedicines.get(medChoice - 1);
-                
                 System.out.print("Enter quantity: ");
                 int quantity = Integer.parseInt(scanner.nextLine());
                 
@@ -405,4 +411,48 @@ public class DoctorUI {
             System.out.println("Error: " + e.getMessage());
         }
     }
+    
+    /**
+     * Looks up a medicine by full name or by the first letters of its name
+     */
+    private Medicine selectMedicine(MedicineRepository medicineRepo) {
+        System.out.print("Enter medicine name (or the first letters to search): ");
+        String input = scanner.nextLine().trim();
+        if (input.isEmpty()) {
+            System.out.println("Medicine name cannot be empty!");
+            return null;
+        }
+        
+        Optional<Medicine> exact = medicineRepo.findByName(input);
+        if (exact.isPresent()) {
+            return exact.get();
+        }
+        
+        List<Medicine> matches = medicineRepo.findByNamePrefix(input, MEDICINE_SEARCH_LIMIT);
+        if (matches.isEmpty()) {
+            System.out.println("No medicine found matching '" + input + "'!");
+            return null;
+        }
+        if (matches.size() == 1) {
+            System.out.println("Selected: " + matches.get(0).getName());
+            return matches.get(0);
+        }
+        
+        System.out.println("Matching medicines:");
+        for (int j = 0; j < matches.size(); j++) {
+            Medicine med = matches.get(j);
+            System.out.printf("%d. %s (Stock: %d)%n", 
+                j + 1, 
+                med.getName(), 
+                med.getCurrentStock());
+        }
+        
+        System.out.print("Select medicine (1-" + matches.size() + "): ");
+        int medChoice = Integer.parseInt(scanner.nextLine());
+        if (medChoice < 1 || medChoice > matches.size()) {
+            System.out.println("Invalid medicine choice!");
+            return null;
+        }
+        return matches.get(medChoice - 1);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,46 @@
+package boundary;
+
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import entity.Medicine;
+import repository.LowStockListener;
+
+/**
+ * Collects low-stock alerts for a menu to show the next time it is drawn.
+ * A medicine's stock at a location is queued at most once until the alerts are drained.
+ */
+class LowStockAlertInbox implements LowStockListener {
+    private final Queue<Medicine> alerts = new ConcurrentLinkedQueue<>();
+    private final Set<String> queued = ConcurrentHashMap.newKeySet();
+
+    @Override
+    public void onLowStock(Medicine medicine) {
+        if (queued.add(key(medicine))) {
+            alerts.offer(medicine);
+        }
+    }
+
+    /**
+     * Prints and clears queued alerts for medicines that are still low on stock
+     */
+    void printAlerts() {
+        Medicine medicine;
+        while ((medicine = alerts.poll()) != null) {
+            queued.remove(key(medicine));
+            if (medicine.isLowStock()) {
+                System.out.printf("*** LOW STOCK ALERT: %s at %s (Available: %d, Alert Level: %d) ***%n",
+                    medicine.getName(),
+                    medicine.getLocation(),
+                    medicine.getAvailableStock(),
+                    medicine.getLowStockAlert());
+            }
+        }
+    }
+
+    private static String key(Medicine medicine) {
+        return medicine.getLocation().name() + "/" + medicine.getName();
+    }
+}
@@ -7,8 +7,12 @@ import entity.enums.*;
 import java.time.*;
 import java.time.format.DateTimeParseException;
 import java.util.*;
+import util.Page;
 
 public class PatientUI {
+    private static final int RECORDS_PAGE_SIZE = 5;
+    private static final int DIAGNOSIS_PAGE_SIZE = 5;
+
     private final Scanner scanner;
     private final AuthenticationController authController;
     private final AppointmentController appointmentController;
@@ -106,10 +110,33 @@ public class PatientUI {
             MedicalRecord record = medicalRecordController.getMedicalRecord(patient.getHospitalId());
             System.out.println("\nYour Medical Record:");
             System.out.println(record);
+            displayDiagnosisHistory(record.getPatientId());
         } catch (IllegalArgumentException e) {
             System.out.println("Error: " + e.getMessage());
         }
     }
+    
+    private void displayDiagnosisHistory(String patientId) {
+        Page<Diagnosis> page = medicalRecordController.getDiagnosisHistory(patientId, null, DIAGNOSIS_PAGE_SIZE);
+        if (page.isEmpty()) {
+            System.out.println("No diagnoses recorded.");
+            return;
+        }
+        
+        System.out.println("Most recent diagnoses:");
+        while (true) {
+            page.getItems().forEach(diagnosis -> System.out.println("\n" + diagnosis));
+            
+            if (!page.hasMore()) {
+                break;
+            }
+            System.out.print("\nEnter 'n' for older diagnoses or press Enter to return: ");
+            if (!scanner.nextLine().trim().equalsIgnoreCase("n")) {
+                break;
+            }
+            page = medicalRecordController.getDiagnosisHistory(patientId, page.getNextCursor(), DIAGNOSIS_PAGE_SIZE);
+        }
+    }
 
     private void updatePersonalInformation(Patient patient) {
         try {
@@ -431,15 +458,31 @@ public class PatientUI {
     
 
     private void viewPastAppointmentRecords(Patient patient) {
-        List<AppointmentOutcomeRecord> records = 
-            patientController.getPastAppointmentRecords(patient);
+        Page<AppointmentOutcomeRecord> page = 
+            patientController.getPastAppointmentRecords(patient, null, RECORDS_PAGE_SIZE);
 
-        if (records.isEmpty()) {
+        if (page.isEmpty()) {
             System.out.println("No past appointment records found.");
             return;
         }
 
         System.out.println("\nPast Appointment Records:");
+        while (true) {
+            displayAppointmentRecords(page.getItems());
+            
+            if (!page.hasMore()) {
+                break;
+            }
+            System.out.print("\nEnter 'n' for older records or press Enter to return: ");
+            if (!scanner.nextLine().trim().equalsIgnoreCase("n")) {
+                break;
+            }
+            page = patientController.getPastAppointmentRecords(
+                patient, page.getNextCursor(), RECORDS_PAGE_SIZE);
+        }
+    }
+
+    private void displayAppointmentRecords(List<AppointmentOutcomeRecord> records) {
         records.forEach(record -> {
             System.out.println("\n--------------------------------");
             System.out.printf("Date: %s%n", record.getAppointmentDate());
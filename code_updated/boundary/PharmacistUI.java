@@ -8,39 +8,58 @@ import repository.*;
 import java.util.*;
 
 public class PharmacistUI {
+    private static final int QUEUE_BATCH_SIZE = 5;
     private final Scanner scanner;
     private final AuthenticationController authController;
     private final AppointmentController appointmentController;
+    private final InventoryController inventoryController;
     private MedicineRepository medicineRepository;
+    private final PrescriptionQueue prescriptionQueue;
+    private final LowStockAlertInbox lowStockAlerts;
+    private final ReplenishmentRequestRepository replenishmentRequestRepository;
+    private final ConsumptionForecaster forecaster;
     
     public PharmacistUI(Scanner scanner, AuthenticationController authController, 
-                       AppointmentController appointmentController) {
+                       AppointmentController appointmentController, InventoryController inventoryController) {
         this.scanner = scanner;
         this.authController = authController;
         this.appointmentController = appointmentController;
+        this.inventoryController = inventoryController;
         this.medicineRepository = MedicineRepository.getInstance();
+        this.prescriptionQueue = PrescriptionQueue.getInstance();
+        this.lowStockAlerts = new LowStockAlertInbox();
+        medicineRepository.addLowStockListener(lowStockAlerts);
+        this.replenishmentRequestRepository = ReplenishmentRequestRepository.getInstance();
+        this.forecaster = ConsumptionForecaster.getInstance();
     }
     
     public void show(Pharmacist pharmacist) {
+        useLocation(pharmacist.getLocation());
         while (true) {
-            System.out.println("\nPharmacist Menu");
+            lowStockAlerts.printAlerts();
+            System.out.println("\nPharmacist Menu (" + medicineRepository.getLocation() + ")");
             System.out.println("1. Change Password");
             System.out.println("2. View Appointment Outcome Records");
             System.out.println("3. Update Prescription Status");
             System.out.println("4. View Medication Inventory");
             System.out.println("5. Submit Replenishment Request");
-            System.out.println("6. Logout");
+            System.out.println("6. Process Next Pending Prescriptions");
+            System.out.println("7. Change Dispensing Location");
+            System.out.println("8. Logout");
             
-            System.out.print("Enter your choice (1-6): ");
+            System.out.print("Enter your choice (1-8): ");
             int choice = Integer.parseInt(scanner.nextLine());
             
             switch (choice) {
                 case 1 -> changePassword(pharmacist);
                 case 2 -> viewAppointmentOutcomes();
-                case 3 -> updatePrescriptionStatus();
+                case 3 -> updatePrescriptionStatus(pharmacist);
                 case 4 -> viewMedicationInventory();
                 case 5 -> submitReplenishmentRequest(pharmacist);
-                case 6 -> {
+                case 6 -> processPendingPrescriptions(pharmacist);
+                case 7 -> changeLocation(pharmacist);
+                case 8 -> {
+                    prescriptionQueue.release(pharmacist.getHospitalId());
                     return;
                 }
                 default -> System.out.println("Invalid choice. Please try again.");
@@ -77,13 +96,14 @@ public class PharmacistUI {
     
     private void viewAppointmentOutcomes() {
         System.out.println("\nAppointment Outcomes with Pending Prescriptions:");
-        List<Appointment> completedAppointments = appointmentController.getAllAppointments().stream()
-            .filter(apt -> apt.getStatus() == AppointmentStatus.COMPLETED)
-            .filter(apt -> apt.getOutcomeRecord() != null)
+        List<Appointment> completedAppointments = prescriptionQueue.findByStatus(PrescriptionStatus.PENDING).stream()
+            .map(PrescriptionQueue.Item::getAppointment)
+            .distinct()
+            .sorted(Comparator.comparing(Appointment::getDateTime))
             .toList();
             
         if (completedAppointments.isEmpty()) {
-            System.out.println("No completed appointments found.");
+            System.out.println("No appointments with pending prescriptions found.");
             return;
         }
     
@@ -115,7 +135,44 @@ public class PharmacistUI {
     
     
     
-    private void updatePrescriptionStatus() {
+    // Points this session at a location's stock and low-stock alerts
+    private void useLocation(PharmacyLocation location) {
+        if (medicineRepository.getLocation() == location) {
+            return;
+        }
+        medicineRepository.removeLowStockListener(lowStockAlerts);
+        medicineRepository = MedicineRepository.getInstance(location);
+        medicineRepository.addLowStockListener(lowStockAlerts);
+    }
+    
+    private void changeLocation(Pharmacist pharmacist) {
+        PharmacyLocation[] locations = PharmacyLocation.values();
+        System.out.println("\nSelect Dispensing Location:");
+        for (int i = 0; i < locations.length; i++) {
+            System.out.printf("%d. %s%s%n", i + 1, locations[i],
+                locations[i] == pharmacist.getLocation() ? " (current)" : "");
+        }
+        System.out.print("Enter location number (1-" + locations.length + "): ");
+        try {
+            int choice = Integer.parseInt(scanner.nextLine().trim());
+            if (choice < 1 || choice > locations.length) {
+                System.out.println("Invalid choice!");
+                return;
+            }
+            pharmacist.setLocation(locations[choice - 1]);
+            useLocation(pharmacist.getLocation());
+            System.out.println("Now dispensing from " + pharmacist.getLocation() + ".");
+        } catch (NumberFormatException e) {
+            System.out.println("Please enter a valid number!");
+        }
+    }
+    
+    // The stock of the prescribed medicine held at this session's location, or null
+    private Medicine stockFor(Prescription prescription) {
+        return medicineRepository.findById(prescription.getMedicineName()).orElse(null);
+    }
+    
+    private void updatePrescriptionStatus(Pharmacist pharmacist) {
         System.out.print("Enter Appointment ID: ");
         String appointmentId = scanner.nextLine();
         
@@ -148,9 +205,16 @@ public class PharmacistUI {
                 p.getStatus());
         }
         
-        System.out.print("\nSelect prescription to update (1-" + prescriptions.size() + "): ");
+        System.out.print("\nSelect prescription to update (1-" + prescriptions.size() + 
+            ") or 'A' to dispense all pending: ");
         try {
-            int choice = Integer.parseInt(scanner.nextLine());
+            String input = scanner.nextLine().trim();
+            if (input.equalsIgnoreCase("A")) {
+                dispenseAllPrescriptions(pharmacist, appointment, prescriptions);
+                return;
+            }
+            
+            int choice = Integer.parseInt(input);
             if (choice < 1 || choice > prescriptions.size()) {
                 System.out.println("Invalid choice!");
                 return;
@@ -164,19 +228,25 @@ public class PharmacistUI {
             }
             
             // Check medicine stock
-            Medicine medicine = selectedPrescription.getMedicine();
+            Medicine medicine = stockFor(selectedPrescription);
+            if (medicine == null) {
+                System.out.println(selectedPrescription.getMedicineName() + " is not stocked at " +
+                    medicineRepository.getLocation() + "!");
+                return;
+            }
             if (!medicine.canFulfillQuantity(selectedPrescription.getQuantity())) {
                 System.out.println("Insufficient stock to dispense this prescription!");
                 return;
             }
             
-            if (this.dispenseMedication(selectedPrescription)) {
+            if (inventoryController.dispense(pharmacist, appointment, selectedPrescription, medicine)) {
                 System.out.println("Prescription status updated to DISPENSED successfully!");
                 System.out.printf("Updated stock for %s: %d%n", 
                     medicine.getName(), 
                     medicine.getCurrentStock());
             } else {
-                System.out.println("Failed to dispense medication!");
+                System.out.println("Failed to dispense medication! It may have just been dispensed " +
+                    "or the remaining stock was taken by another pharmacist.");
             }
             
         } catch (NumberFormatException e) {
@@ -184,9 +254,104 @@ public class PharmacistUI {
         }
     }
     
+    private void dispenseAllPrescriptions(Pharmacist pharmacist, Appointment appointment, List<Prescription> prescriptions) {
+        if (prescriptions.stream().noneMatch(p -> p.getStatus() == PrescriptionStatus.PENDING)) {
+            System.out.println("All prescriptions have already been dispensed.");
+            return;
+        }
+        
+        List<Prescription> dispensed = inventoryController.dispenseAll(pharmacist, appointment, prescriptions, this::stockFor);
+        if (dispensed.isEmpty()) {
+            System.out.println("Failed to dispense prescriptions! Not enough stock here for every medicine, " +
+                "or another pharmacist is dispensing this order. Nothing was dispensed.");
+            return;
+        }
+        
+        System.out.println("All pending prescriptions dispensed successfully!");
+        dispensed.stream()
+            .map(this::stockFor)
+            .distinct()
+            .forEach(medicine -> {
+                System.out.printf("Updated stock for %s: %d%n", 
+                    medicine.getName(), 
+                    medicine.getCurrentStock());
+            });
+    }
+    
+    private void processPendingPrescriptions(Pharmacist pharmacist) {
+        List<PrescriptionQueue.Item> batch = 
+            prescriptionQueue.claimNext(pharmacist.getHospitalId(), QUEUE_BATCH_SIZE);
+        if (batch.isEmpty()) {
+            System.out.println("No pending prescriptions in the queue.");
+            return;
+        }
+        
+        System.out.println("\nNext Pending Prescriptions:");
+        for (int i = 0; i < batch.size(); i++) {
+            PrescriptionQueue.Item item = batch.get(i);
+            System.out.printf("%d. %s (Quantity: %d) - Appointment %s, Patient: %s%n",
+                i + 1,
+                item.getPrescription().getMedicineName(),
+                item.getPrescription().getQuantity(),
+                item.getAppointment().getAppointmentId(),
+                item.getAppointment().getPatient().getName());
+        }
+        
+        System.out.print("\nSelect prescription to dispense (1-" + batch.size() + 
+            "), 'A' for all, or press Enter to go back: ");
+        String input = scanner.nextLine().trim();
+        if (input.isEmpty()) {
+            return;
+        }
+        
+        List<PrescriptionQueue.Item> selected;
+        if (input.equalsIgnoreCase("A")) {
+            selected = batch;
+        } else {
+            try {
+                int choice = Integer.parseInt(input);
+                if (choice < 1 || choice > batch.size()) {
+                    System.out.println("Invalid choice!");
+                    return;
+                }
+                selected = List.of(batch.get(choice - 1));
+            } catch (NumberFormatException e) {
+                System.out.println("Please enter a valid number!");
+                return;
+            }
+        }
+        
+        for (PrescriptionQueue.Item item : selected) {
+            Prescription prescription = item.getPrescription();
+            Medicine medicine = stockFor(prescription);
+            if (medicine != null && inventoryController.dispense(pharmacist, item.getAppointment(), prescription, medicine)) {
+                System.out.printf("Dispensed %s for appointment %s.%n",
+                    prescription.getMedicineName(),
+                    item.getAppointment().getAppointmentId());
+            } else {
+                System.out.printf("Could not dispense %s for appointment %s (not stocked here, " +
+                    "insufficient stock or already dispensed).%n",
+                    prescription.getMedicineName(),
+                    item.getAppointment().getAppointmentId());
+            }
+        }
+    }
+    
+    private void printForecast(ConsumptionForecaster.Forecast forecast) {
+        if (forecast.getDailyRate() == 0) {
+            System.out.println("   Forecast: no recent dispensing");
+            return;
+        }
+        System.out.printf("   Forecast: %.1f/day, %.1f days of cover%s%n",
+            forecast.getDailyRate(),
+            forecast.getDaysOfCover(),
+            forecast.isReorderNeeded() 
+                ? ", suggested reorder " + forecast.getSuggestedReorderQuantity() 
+                : "");
+    }
     
     private void viewMedicationInventory() {
-        System.out.println("\nCurrent Medication Inventory:");
+        System.out.println("\nCurrent Medication Inventory at " + medicineRepository.getLocation() + ":");
         List<Medicine> medicines = medicineRepository.findAll();
         medicines.forEach(med -> {
             System.out.println("\n" + med);
@@ -198,9 +363,13 @@ public class PharmacistUI {
     
     private void submitReplenishmentRequest(Pharmacist pharmacist) {
         try {
-            System.out.println("\nLow Stock Medicines:");
-            List<Medicine> lowStockMeds = medicineRepository.findAll().stream()
-                .filter(Medicine::isLowStock)
+            System.out.println("\nLow Stock and Forecast Reorder Medicines:");
+            Set<Medicine> candidates = new LinkedHashSet<>(medicineRepository.findLowStock());
+            forecaster.findReorderSuggestions().stream()
+                .map(ConsumptionForecaster.Forecast::getMedicine)
+                .filter(med -> med.getLocation() == medicineRepository.getLocation())
+                .forEach(candidates::add);
+            List<Medicine> lowStockMeds = candidates.stream()
                 .filter(med -> !med.isReplenishmentRequested())
                 .toList();
                 
@@ -211,6 +380,7 @@ public class PharmacistUI {
             
             for (int i = 0; i < lowStockMeds.size(); i++) {
                 System.out.printf("%d. %s%n", i + 1, lowStockMeds.get(i));
+                printForecast(forecaster.getForecast(lowStockMeds.get(i)));
             }
             
             // Medicine selection with validation
@@ -239,21 +409,31 @@ public class PharmacistUI {
                 }
             }
             
-            // Simple quantity input
-            System.out.print("Enter quantity to request: ");
+            // Quantity input, defaulting to the forecast suggestion when there is one
+            Medicine medicine = lowStockMeds.get(medicineNum - 1);
+            int suggested = forecaster.getForecast(medicine).getSuggestedReorderQuantity();
+            System.out.print(suggested > 0
+                ? "Enter quantity to request (press Enter for suggested " + suggested + "): "
+                : "Enter quantity to request: ");
             String quantityInput = scanner.nextLine().trim();
-            if (quantityInput.isEmpty()) {
+            if (quantityInput.isEmpty() && suggested == 0) {
                 System.out.println("Operation cancelled - no quantity entered.");
                 return;
             }
     
             try {
-                int quantity = Integer.parseInt(quantityInput);
-                Medicine medicine = lowStockMeds.get(medicineNum - 1);
+                int quantity = quantityInput.isEmpty() ? suggested : Integer.parseInt(quantityInput);
                 
                 ReplenishmentRequest request = pharmacist.createReplenishmentRequest(medicine, quantity);
+                try {
+                    replenishmentRequestRepository.save(request);
+                } catch (IllegalStateException e) {
+                    medicine.cancelReplenishmentRequest();
+                    throw e;
+                }
                 System.out.println("\nReplenishment request submitted successfully!");
                 System.out.println("Request details:");
+                System.out.println("Request ID: " + request.getRequestId());
                 System.out.println("Medicine: " + request.getMedicine().getName());
                 System.out.println("Requested Quantity: " + request.getRequestedQuantity());
                 System.out.println("Status: " + request.getStatus());
@@ -270,37 +450,6 @@ public class PharmacistUI {
             System.out.println("Please try again.");
         }
     }
-
-    private boolean dispenseMedication(Prescription prescription) {
-        try {
-            // Get the medicine and required quantity
-            Medicine medicine = prescription.getMedicine();
-            int requestedQuantity = prescription.getQuantity();
-            
-            // Verify there's sufficient stock
-            if (!medicine.canFulfillQuantity(requestedQuantity)) {
-                System.out.println("Error: Insufficient stock available");
-                return false;
-            }
-            
-            // Update medicine stock (reduce by using negative quantity)
-            if (!medicine.updateStock(-requestedQuantity)) {
-                System.out.println("Error: Failed to update medicine stock");
-                return false;
-            }
-            
-            // Update prescription status to dispensed
-            prescription.setStatus(PrescriptionStatus.DISPENSED);
-            
-            // Save changes to medicine repository
-            medicineRepository.save(medicine);
-            
-            return true;
-        } catch (Exception e) {
-            System.out.println("Error occurred while dispensing medication: " + e.getMessage());
-            return false;
-        }
-    }
     
     
 }
\ No newline at end of file
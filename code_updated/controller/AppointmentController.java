@@ -8,14 +8,23 @@ import entity.*;
 import entity.enums.AppointmentStatus;
 import entity.enums.PrescriptionStatus;
 import repository.AppointmentRepository;
+import repository.TransactionManager;
+import util.EntityLockManager;
+import util.Page;
 
 public class AppointmentController implements AppointmentService {
+    public static final int MAX_ACTIVE_APPOINTMENTS = 3;
+    
     private final DoctorAvailabilityService availabilityService;
     private final AppointmentRepository appointmentRepository;
+    private final EntityLockManager lockManager;
+    private final TransactionManager transactionManager;
     
     public AppointmentController(DoctorAvailabilityService availabilityService) {
         this.availabilityService = availabilityService;
         this.appointmentRepository = AppointmentRepository.getInstance();
+        this.lockManager = EntityLockManager.getInstance();
+        this.transactionManager = TransactionManager.getInstance();
     }
 
     public DoctorAvailabilityService getAvailabilityService() {
@@ -27,20 +36,10 @@ public class AppointmentController implements AppointmentService {
         DoctorAvailability availability = doctor.getAvailability(date);
         List<AppointmentSlot> slots = availabilityService.generateSlots(availability);
         
-        // Get all appointments for this doctor on this date
-        List<Appointment> existingAppointments = appointmentRepository.findAll().stream()
-            .filter(apt -> apt.getDoctor().equals(doctor))
-            .filter(apt -> apt.getDateTime().toLocalDate().equals(date))
-            .filter(apt -> apt.getStatus() != AppointmentStatus.CANCELLED)
-            .toList();
-        
-        // Filter out slots that are already booked
+        // Filter out slots already booked in the doctor's schedule for this date
+        DaySchedule schedule = appointmentRepository.findDaySchedule(doctor, date);
         return slots.stream()
-            .filter(slot -> {
-                LocalDateTime slotDateTime = slot.getDate().atTime(slot.getStartTime());
-                return existingAppointments.stream()
-                    .noneMatch(apt -> apt.getDateTime().equals(slotDateTime));
-            })
+            .filter(slot -> !schedule.isBooked(slot.getStartTime()))
             .toList();
     }
     
@@ -50,14 +49,25 @@ public class AppointmentController implements AppointmentService {
             return null;
         }
         
-        Appointment appointment = new Appointment(null, patient, doctor, 
-            slot.getDate().atTime(slot.getStartTime()));
-            
-        if (!slot.tryBook(appointment)) {
-            return null; // Slot was taken before we could book it
+        // Quota check and booking form one reservation, so concurrent
+        // sessions for the same patient cannot exceed the limit
+        if (!appointmentRepository.tryReserveAppointment(patient, MAX_ACTIVE_APPOINTMENTS)) {
+            throw new IllegalStateException("Maximum of " + MAX_ACTIVE_APPOINTMENTS + 
+                " pending or confirmed appointments reached");
         }
         
-        return appointmentRepository.save(appointment);
+        try {
+            Appointment appointment = new Appointment(null, patient, doctor, 
+                slot.getDate().atTime(slot.getStartTime()));
+                
+            if (!slot.tryBook(appointment)) {
+                return null; // Slot was taken before we could book it
+            }
+            
+            return appointmentRepository.save(appointment);
+        } finally {
+            appointmentRepository.releaseAppointmentReservation(patient);
+        }
     }
     
     @Override
@@ -91,8 +101,8 @@ public class AppointmentController implements AppointmentService {
         }
         
         // Update appointment with new datetime and reset status to pending
-        appointment.setDateTime(newSlot.getDate().atTime(newSlot.getStartTime()));
-        appointment.setStatus(AppointmentStatus.PENDING_APPROVAL);
+        appointmentRepository.reschedule(appointment, newSlot.getDate().atTime(newSlot.getStartTime()));
+        appointmentRepository.updateStatus(appointment, AppointmentStatus.PENDING_APPROVAL);
         newSlot.setAvailable(false);
         
         appointmentRepository.save(appointment);
@@ -124,7 +134,7 @@ public class AppointmentController implements AppointmentService {
             slot.setAvailable(true);
         }
         
-        appointment.setStatus(AppointmentStatus.CANCELLED);
+        appointmentRepository.updateStatus(appointment, AppointmentStatus.CANCELLED);
         appointmentRepository.save(appointment);
         return true;
     }
@@ -142,25 +152,17 @@ public class AppointmentController implements AppointmentService {
     
     @Override
     public List<Appointment> getUpcomingAppointments(Doctor doctor) {
-        LocalDateTime now = LocalDateTime.now();
-        
-        return appointmentRepository.findByDoctor(doctor).stream()
-            .filter(apt -> apt.getDateTime().isAfter(now))
-            .filter(apt -> apt.getStatus() == AppointmentStatus.CONFIRMED || 
-                        apt.getStatus() == AppointmentStatus.PENDING_APPROVAL)
-            .sorted(Comparator.comparing(Appointment::getDateTime))
-            .toList();
+        return appointmentRepository.findUpcomingAppointmentsByDoctor(doctor);
     }
     
     @Override
     public List<Appointment> getPendingAppointments(Doctor doctor) {
-        LocalDateTime now = LocalDateTime.now();
-        
-        return appointmentRepository.findByDoctor(doctor).stream()
-            .filter(apt -> apt.getDateTime().isAfter(now))
-            .filter(apt -> apt.getStatus() == AppointmentStatus.PENDING_APPROVAL)
-            .sorted(Comparator.comparing(Appointment::getDateTime))
-            .toList();
+        return appointmentRepository.findPendingAppointmentsByDoctor(doctor);
+    }
+    
+    @Override
+    public DaySchedule getDaySchedule(Doctor doctor, LocalDate date) {
+        return appointmentRepository.findDaySchedule(doctor, date);
     }
     
     @Override
@@ -190,36 +192,82 @@ public class AppointmentController implements AppointmentService {
             }
         }
         
-        appointment.setStatus(status);
+        appointmentRepository.updateStatus(appointment, status);
         appointmentRepository.save(appointment);
         return true;
     }
     
+    /**
+     * Records an outcome while holding the appointment and its patient, so the
+     * status check and the update cannot interleave with another outcome.
+     * Completing the appointment and creating its prescriptions commit as one
+     * transaction: if the commit record cannot be written, nothing changes.
+     * The doctor and medicines are not locked, as the locks are held until the
+     * commit is on disk and would otherwise keep a doctor's outcomes from
+     * sharing a group commit.
+     */
     @Override
     public void recordAppointmentOutcome(String appointmentId, String serviceType,
                                     List<Prescription> prescriptions, String notes) {
         Optional<Appointment> optionalAppointment = appointmentRepository.findById(appointmentId);
-        if (optionalAppointment.isEmpty() || 
-            optionalAppointment.get().getStatus() != AppointmentStatus.CONFIRMED) {
+        if (optionalAppointment.isEmpty()) {
             throw new IllegalStateException("Cannot record outcome for non-confirmed appointment");
         }
         
         Appointment appointment = optionalAppointment.get();
-        
-        // Initialize prescriptions with PENDING status
-        prescriptions.forEach(p -> p.setStatus(PrescriptionStatus.PENDING));
-        
-        AppointmentOutcomeRecord outcome = new AppointmentOutcomeRecord(
-            appointment.getDateTime().toLocalDate(),
-            serviceType,
-            new ArrayList<>(prescriptions),
-            notes
-        );
-        
-        appointment.setOutcomeRecord(outcome);
-        appointment.setStatus(AppointmentStatus.COMPLETED);
-        
-        appointmentRepository.save(appointment);
+        EntityLockManager.Guard guard = lockManager.lock(
+            EntityLockManager.Key.appointment(appointmentId),
+            EntityLockManager.Key.patient(appointment.getPatient().getHospitalId()));
+        try (TransactionManager.Transaction transaction = transactionManager.begin()) {
+            // Checked again under the locks, as another outcome may have been recorded meanwhile
+            if (appointment.getStatus() != AppointmentStatus.CONFIRMED) {
+                throw new IllegalStateException("Cannot record outcome for non-confirmed appointment");
+            }
+            
+            // Initialize prescriptions with PENDING status, restoring the caller's if the outcome is not committed
+            for (Prescription prescription : prescriptions) {
+                PrescriptionStatus previous = prescription.getStatus();
+                transaction.onAbort(() -> prescription.setStatus(previous));
+                prescription.setStatus(PrescriptionStatus.PENDING);
+            }
+            
+            AppointmentOutcomeRecord outcome = new AppointmentOutcomeRecord(
+                appointment.getDateTime().toLocalDate(),
+                serviceType,
+                new ArrayList<>(prescriptions),
+                notes
+            );
+            
+            appointmentRepository.recordOutcome(appointment, outcome, transaction);
+            transaction.commit();
+        } finally {
+            guard.close();
+        }
+    }
+    
+    @Override
+    public int countActiveAppointments(Patient patient) {
+        return appointmentRepository.countActiveAppointments(patient);
+    }
+    
+    @Override
+    public List<AppointmentOutcomeRecord> getOutcomeHistory(Patient patient) {
+        return appointmentRepository.findAllOutcomes(patient);
+    }
+    
+    @Override
+    public Page<AppointmentOutcomeRecord> getOutcomeHistory(Patient patient, String cursor, int pageSize) {
+        return appointmentRepository.findOutcomeHistory(patient, cursor, pageSize);
+    }
+    
+    @Override
+    public List<Patient> getPatientsUnderCare(Doctor doctor) {
+        return appointmentRepository.findPatientsUnderCare(doctor);
+    }
+    
+    @Override
+    public boolean isPatientUnderCare(Doctor doctor, String patientId) {
+        return appointmentRepository.isPatientUnderCare(doctor, patientId);
     }
     
     @Override
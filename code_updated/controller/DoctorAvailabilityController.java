@@ -11,7 +11,7 @@ import repository.StaffRepository;
 public class DoctorAvailabilityController implements DoctorAvailabilityService {
     private final DoctorAvailabilityRepository availabilityRepository;
     private final StaffRepository staffRepository;
-    private final int SLOT_DURATION_MINUTES = 30;
+    private static final int SLOT_DURATION_MINUTES = DoctorAvailability.SLOT_DURATION_MINUTES;
     
     public DoctorAvailabilityController() {
         this.availabilityRepository = DoctorAvailabilityRepository.getInstance();
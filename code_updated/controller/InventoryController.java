@@ -0,0 +1,220 @@
+package controller;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Function;
+
+import controller.interfaces.InventoryService;
+import entity.*;
+import entity.enums.InventoryActionType;
+import entity.enums.PharmacyLocation;
+import repository.AppointmentRepository;
+import repository.InventoryLedger;
+import repository.InventoryNetwork;
+import repository.MedicineRepository;
+import repository.PrescriptionQueue;
+import repository.ReplenishmentRequestRepository;
+import repository.TransactionManager;
+import util.EntityLockManager;
+
+/**
+ * Stock operations for pharmacists and administrators. Dispensing locks only
+ * the patient and appointment: stock is reserved and committed by
+ * Medicine's compare-and-set, so dispenses of the same medicine run in
+ * parallel. A dispense is logged through the transaction manager before
+ * its stock leaves the shelf, so a restart does not put the prescription
+ * back in the queue. Administrative changes lock the stock they touch, at its
+ * location. Every change is recorded in the inventory ledger, so the
+ * ledger, event store and forecaster see it whichever screen made it.
+ */
+public class InventoryController implements InventoryService {
+    private final InventoryLedger inventoryLedger;
+    private final InventoryNetwork inventoryNetwork;
+    private final PrescriptionQueue prescriptionQueue;
+    private final ReplenishmentRequestRepository replenishmentRequestRepository;
+    private final AppointmentRepository appointmentRepository;
+    private final TransactionManager transactionManager;
+    private final EntityLockManager lockManager;
+
+    public InventoryController() {
+        this.inventoryLedger = InventoryLedger.getInstance();
+        this.inventoryNetwork = InventoryNetwork.getInstance();
+        this.prescriptionQueue = PrescriptionQueue.getInstance();
+        this.replenishmentRequestRepository = ReplenishmentRequestRepository.getInstance();
+        this.appointmentRepository = AppointmentRepository.getInstance();
+        this.transactionManager = TransactionManager.getInstance();
+        this.lockManager = EntityLockManager.getInstance();
+    }
+
+    /**
+     * Dispenses a prescription from the given stock while holding the patient and the appointment
+     */
+    @Override
+    public boolean dispense(Pharmacist pharmacist, Appointment appointment, Prescription prescription,
+            Medicine medicine) {
+        EntityLockManager.Guard guard = lockManager.lock(keysOf(appointment));
+        try {
+            if (pharmacist.dispenseAll(List.of(prescription), p -> medicine,
+                    claimed -> logDispensed(appointment, claimed)).isEmpty()) {
+                return false;
+            }
+            recordDispense(pharmacist, prescription, medicine);
+            return true;
+        } finally {
+            guard.close();
+        }
+    }
+
+    /**
+     * Dispenses every pending prescription of an appointment as one unit,
+     * holding the patient and the appointment
+     *
+     * @return the prescriptions dispensed, or an empty list if the batch failed
+     */
+    @Override
+    public List<Prescription> dispenseAll(Pharmacist pharmacist, Appointment appointment,
+            List<Prescription> prescriptions, Function<Prescription, Medicine> stockFor) {
+        EntityLockManager.Guard guard = lockManager.lock(keysOf(appointment));
+        try {
+            List<Prescription> dispensed = pharmacist.dispenseAll(prescriptions, stockFor,
+                claimed -> logDispensed(appointment, claimed));
+            dispensed.forEach(prescription -> recordDispense(pharmacist, prescription, stockFor.apply(prescription)));
+            return dispensed;
+        } finally {
+            guard.close();
+        }
+    }
+
+    @Override
+    public MedicineInventoryAction updateStock(Administrator admin, Medicine medicine, int quantity,
+            LocalDate expiryDate, String reason) {
+        EntityLockManager.Guard guard = lockManager.lock(keyOf(medicine));
+        try {
+            MedicineInventoryAction action = admin.updateMedicineStock(medicine, quantity, expiryDate, reason);
+            inventoryLedger.append(action);
+            return action;
+        } finally {
+            guard.close();
+        }
+    }
+
+    /**
+     * Writes off what is left of an expired lot. Returns null if nothing could be removed.
+     */
+    @Override
+    public MedicineInventoryAction writeOffExpiredLot(Administrator admin, StockLot lot) {
+        EntityLockManager.Guard guard = lockManager.lock(keyOf(lot.getMedicine()));
+        try {
+            MedicineInventoryAction action = admin.writeOffExpiredLot(lot);
+            if (action != null) {
+                inventoryLedger.append(action);
+            }
+            return action;
+        } finally {
+            guard.close();
+        }
+    }
+
+    @Override
+    public void updateLowStockAlert(Administrator admin, Medicine medicine, int newAlertLevel) {
+        EntityLockManager.Guard guard = lockManager.lock(keyOf(medicine));
+        try {
+            admin.updateMedicineLowStockAlert(medicine, newAlertLevel);
+        } finally {
+            guard.close();
+        }
+    }
+
+    /**
+     * Moves stock of a medicine between two locations, holding its stock at both
+     *
+     * @return the TRANSFER_OUT and TRANSFER_IN actions recorded
+     */
+    @Override
+    public List<MedicineInventoryAction> transfer(Administrator admin, String medicineName, PharmacyLocation from,
+            PharmacyLocation to, int quantity) {
+        if (medicineName == null || from == null || to == null) {
+            throw new IllegalArgumentException("Medicine and both locations are required");
+        }
+        EntityLockManager.Guard guard = lockManager.lock(
+            EntityLockManager.Key.medicine(from.name(), medicineName),
+            EntityLockManager.Key.medicine(to.name(), medicineName));
+        try {
+            return inventoryNetwork.transfer(medicineName, from, to, quantity, admin);
+        } finally {
+            guard.close();
+        }
+    }
+
+    /**
+     * Approves or rejects replenishment requests as one batch, holding the
+     * stock of every medicine they name
+     */
+    @Override
+    public void processReplenishmentRequests(Administrator admin, List<ReplenishmentRequest> requests,
+            boolean approve) {
+        if (requests == null || requests.isEmpty()) {
+            throw new IllegalArgumentException("At least one request is required");
+        }
+        EntityLockManager.Guard guard = lockManager.lock(requests.stream()
+            .map(request -> keyOf(request.getMedicine()))
+            .toList());
+        try {
+            replenishmentRequestRepository.processBatch(admin, requests, approve);
+        } finally {
+            guard.close();
+        }
+    }
+
+    @Override
+    public List<MedicineInventoryAction> getInventoryActions() {
+        return inventoryLedger.findAll();
+    }
+
+    @Override
+    public List<MedicineInventoryAction> getInventoryActionsByDate(LocalDateTime from, LocalDateTime to) {
+        return inventoryLedger.findByDateRange(from, to);
+    }
+
+    @Override
+    public List<MedicineInventoryAction> getInventoryActionsByMedicine(String medicineName) {
+        return inventoryLedger.findByMedicine(medicineName);
+    }
+
+    @Override
+    public List<MedicineInventoryAction> getInventoryActionsBy(User user) {
+        return inventoryLedger.findByActor(user.getHospitalId());
+    }
+
+    private static List<EntityLockManager.Key> keysOf(Appointment appointment) {
+        return List.of(
+            EntityLockManager.Key.patient(appointment.getPatient().getHospitalId()),
+            EntityLockManager.Key.appointment(appointment.getAppointmentId()));
+    }
+
+    private static EntityLockManager.Key keyOf(Medicine medicine) {
+        return EntityLockManager.Key.medicine(medicine.getLocation().name(), medicine.getName());
+    }
+
+    // Makes claimed prescriptions durable before their stock is committed; throwing rolls the batch back
+    private void logDispensed(Appointment appointment, List<Prescription> claimed) {
+        try (TransactionManager.Transaction transaction = transactionManager.begin()) {
+            appointmentRepository.recordDispensed(appointment, claimed, transaction);
+            transaction.commit();
+        }
+    }
+
+    // Updates the work queue, medicine store and inventory ledger after a dispense
+    private void recordDispense(Pharmacist pharmacist, Prescription prescription, Medicine medicine) {
+        prescriptionQueue.onPrescriptionUpdated(prescription);
+        MedicineRepository.getInstance(medicine.getLocation()).save(medicine);
+        inventoryLedger.append(new MedicineInventoryAction(
+            medicine,
+            prescription.getQuantity(),
+            InventoryActionType.DISPENSE,
+            prescription.getDispensedDateTime(),
+            pharmacist
+        ));
+    }
+}
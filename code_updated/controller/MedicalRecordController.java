@@ -7,14 +7,23 @@ import entity.*;
 import entity.enums.BloodType;
 import repository.MedicalRecordRepository;
 import repository.PatientRepository;
+import util.EntityLockManager;
+import util.Page;
 
+/**
+ * Medical record operations. Changes to a patient's record and the patient's
+ * own entry are made while holding that patient's entity lock, so they are
+ * applied as one unit while other patients are updated in parallel.
+ */
 public class MedicalRecordController implements MedicalRecordService {
     private final MedicalRecordRepository medicalRecordRepository;
     private final PatientRepository patientRepository;
+    private final EntityLockManager lockManager;
     
     public MedicalRecordController() {
         this.medicalRecordRepository = MedicalRecordRepository.getInstance();
         this.patientRepository = PatientRepository.getInstance();
+        this.lockManager = EntityLockManager.getInstance();
     }
     
     @Override
@@ -34,17 +43,12 @@ public class MedicalRecordController implements MedicalRecordService {
             throw new IllegalArgumentException("Phone and email cannot be empty");
         }
         
-        // Get and update medical record
-        MedicalRecord record = getMedicalRecord(patientId);
-        record.getContactInfo().updateContactInfo(phone, email);
-        medicalRecordRepository.save(record);
-        
-        // Update patient's medical record reference as well
-        Optional<Patient> patient = patientRepository.findById(patientId);
-        if (patient.isPresent()) {
-            Patient updatedPatient = patient.get();
-            updatedPatient.setMedicalRecord(record);
-            patientRepository.save(updatedPatient);
+        // Commit a new version with the updated details
+        EntityLockManager.Guard guard = lockPatient(patientId);
+        try {
+            medicalRecordRepository.update(patientId, record -> record.withContactInfo(phone, email));
+        } finally {
+            guard.close();
         }
     }
 
@@ -59,31 +63,28 @@ public class MedicalRecordController implements MedicalRecordService {
             throw new IllegalArgumentException("Diagnosis and treatment cannot be empty");
         }
         
-        MedicalRecord record = getMedicalRecord(patientId);
-        
         // Create new Treatment and Diagnosis objects
         Treatment newTreatment = new Treatment(treatment);
         Diagnosis newDiagnosis = new Diagnosis(diagnosis, newTreatment);
         
-        // Add to patient's medical record
-        record.addDiagnosis(newDiagnosis);
-        
-        // Save updated record
-        medicalRecordRepository.save(record);
-        
-        // Update patient's medical record reference
-        Optional<Patient> patient = patientRepository.findById(patientId);
-        if (patient.isPresent()) {
-            Patient updatedPatient = patient.get();
-            updatedPatient.setMedicalRecord(record);
-            patientRepository.save(updatedPatient);
+        // Commit a new version of the record with the diagnosis added
+        EntityLockManager.Guard guard = lockPatient(patientId);
+        try {
+            medicalRecordRepository.update(patientId, record -> record.withDiagnosis(newDiagnosis));
+        } finally {
+            guard.close();
         }
     }
     
     @Override
     public List<Diagnosis> getDiagnosisHistory(String patientId) {
         MedicalRecord record = getMedicalRecord(patientId);
-        return new ArrayList<>(record.getDiagnosisHistory());
+        return record.getDiagnosisHistory().toList();
+    }
+    
+    @Override
+    public Page<Diagnosis> getDiagnosisHistory(String patientId, String cursor, int pageSize) {
+        return getMedicalRecord(patientId).getDiagnosisHistory().getPage(cursor, pageSize);
     }
     
     /**
@@ -93,18 +94,15 @@ public class MedicalRecordController implements MedicalRecordService {
      * @throws IllegalArgumentException if record already exists
      */
     public void addMedicalRecord(String patientId, MedicalRecord record) {
-        if (medicalRecordRepository.exists(patientId)) {
-            throw new IllegalArgumentException("Medical record already exists for patient: " + patientId);
-        }
-        
-        medicalRecordRepository.save(record);
-        
-        // Update patient's medical record reference
-        Optional<Patient> patient = patientRepository.findById(patientId);
-        if (patient.isPresent()) {
-            Patient updatedPatient = patient.get();
-            updatedPatient.setMedicalRecord(record);
-            patientRepository.save(updatedPatient);
+        EntityLockManager.Guard guard = lockPatient(patientId);
+        try {
+            if (medicalRecordRepository.exists(patientId)) {
+                throw new IllegalArgumentException("Medical record already exists for patient: " + patientId);
+            }
+            
+            medicalRecordRepository.save(record);
+        } finally {
+            guard.close();
         }
     }
     
@@ -146,13 +144,7 @@ public class MedicalRecordController implements MedicalRecordService {
             throw new IllegalArgumentException("Search keyword cannot be null or empty");
         }
         
-        String keyword = diagnosisKeyword.toLowerCase().trim();
-        
-        return medicalRecordRepository.findAll().stream()
-            .filter(record -> record.getDiagnosisHistory().stream()
-                .anyMatch(diagnosis -> 
-                    diagnosis.getDescription().toLowerCase().contains(keyword)))
-            .toList();
+        return medicalRecordRepository.findByDiagnosisKeyword(diagnosisKeyword);
     }
     
     
@@ -163,20 +155,32 @@ public class MedicalRecordController implements MedicalRecordService {
      * @return true if record was removed, false if it didn't exist
      */
     public boolean removeMedicalRecord(String patientId) {
-        if (!medicalRecordRepository.exists(patientId)) {
-            return false;
+        EntityLockManager.Guard guard = lockPatient(patientId);
+        try {
+            if (!medicalRecordRepository.exists(patientId)) {
+                return false;
+            }
+            
+            medicalRecordRepository.delete(patientId);
+            
+            // Update patient reference
+            Optional<Patient> patient = patientRepository.findById(patientId);
+            if (patient.isPresent()) {
+                Patient updatedPatient = patient.get();
+                updatedPatient.setMedicalRecord(null);
+                patientRepository.save(updatedPatient);
+            }
+            
+            return true;
+        } finally {
+            guard.close();
         }
-        
-        medicalRecordRepository.delete(patientId);
-        
-        // Update patient reference
-        Optional<Patient> patient = patientRepository.findById(patientId);
-        if (patient.isPresent()) {
-            Patient updatedPatient = patient.get();
-            updatedPatient.setMedicalRecord(null);
-            patientRepository.save(updatedPatient);
+    }
+    
+    private EntityLockManager.Guard lockPatient(String patientId) {
+        if (patientId == null) {
+            throw new IllegalArgumentException("Patient ID cannot be null");
         }
-        
-        return true;
+        return lockManager.lock(EntityLockManager.Key.patient(patientId));
     }
 }
\ No newline at end of file
@@ -3,6 +3,7 @@ package controller;
 import entity.*;
 import entity.enums.AppointmentStatus;
 import repository.PatientRepository;
+import util.Page;
 import java.util.*;
 import controller.interfaces.*;
 
@@ -51,49 +52,18 @@ public class PatientController implements PatientService {
 
     @Override
     public List<Patient> getPatientsUnderCare(Doctor doctor) {
-        // Get all confirmed and upcoming appointments for the doctor
-        List<Appointment> doctorAppointments = appointmentService.getUpcomingAppointments(doctor);
-        
-        // Add all completed appointments to get full patient history
-        List<Appointment> allAppointments = appointmentService.getAllAppointments(doctor);
-        
-        // Create a set of unique patients from all appointments
-        Set<Patient> uniquePatients = new HashSet<>();
-        
-        // Add patients from upcoming appointments
-        for (Appointment apt : doctorAppointments) {
-            uniquePatients.add(apt.getPatient());
-        }
-        
-        // Add patients from historical appointments
-        for (Appointment apt : allAppointments) {
-            if (apt.getStatus() == AppointmentStatus.COMPLETED) {
-                uniquePatients.add(apt.getPatient());
-            }
-        }
-        
-        // Convert to list and sort by patient name
-        List<Patient> patientList = new ArrayList<>(uniquePatients);
-        patientList.sort(Comparator.comparing(Patient::getName));
-        
-        return patientList;
+        // Maintained from appointment lifecycle events, already sorted by name
+        return appointmentService.getPatientsUnderCare(doctor);
     }
 
     @Override
     public List<AppointmentOutcomeRecord> getPastAppointmentRecords(Patient patient) {
-        List<AppointmentOutcomeRecord> records = new ArrayList<>();
-        
-        List<Appointment> allAppointments = appointmentService.getAllAppointments(patient);
-        
-        for (Appointment apt : allAppointments) {
-            if (apt.getStatus() == AppointmentStatus.COMPLETED && 
-                apt.getOutcomeRecord() != null) {
-                records.add(apt.getOutcomeRecord());
-            }
-        }
-        
-        records.sort((r1, r2) -> r2.getAppointmentDate().compareTo(r1.getAppointmentDate()));
-        return records;
+        return appointmentService.getOutcomeHistory(patient);
+    }
+
+    @Override
+    public Page<AppointmentOutcomeRecord> getPastAppointmentRecords(Patient patient, String cursor, int pageSize) {
+        return appointmentService.getOutcomeHistory(patient, cursor, pageSize);
     }
 
     public List<Appointment> getUpcomingAppointments(String patientId) {
@@ -130,15 +100,10 @@ public class PatientController implements PatientService {
     @Override
     public boolean canScheduleNewAppointment(String patientId) {
         try {
-            validatePatient(patientId);
-            List<Appointment> upcomingAppointments = getUpcomingAppointments(patientId);
-            
-            long pendingAndConfirmed = upcomingAppointments.stream()
-                .filter(apt -> apt.getStatus() == AppointmentStatus.PENDING_APPROVAL || 
-                             apt.getStatus() == AppointmentStatus.CONFIRMED)
-                .count();
-            
-            return pendingAndConfirmed < 3;
+            Patient patient = getPatient(patientId);
+            // Advisory only; scheduleAppointment enforces the limit atomically
+            return appointmentService.countActiveAppointments(patient) < 
+                AppointmentController.MAX_ACTIVE_APPOINTMENTS;
         } catch (IllegalArgumentException e) {
             System.out.println("Error checking appointment eligibility: " + e.getMessage());
             return false;
@@ -6,6 +6,7 @@ import java.util.Optional;
 
 import entity.*;
 import entity.enums.*;
+import util.Page;
 
 public interface AppointmentService {
     List<AppointmentSlot> getAvailableSlots(LocalDate date, Doctor doctor);
@@ -15,7 +16,13 @@ public interface AppointmentService {
     List<Appointment> getScheduledAppointments(Patient patient);
     List<Appointment> getUpcomingAppointments(Doctor doctor);
     List<Appointment> getPendingAppointments(Doctor doctor);
+    DaySchedule getDaySchedule(Doctor doctor, LocalDate date);
     boolean updateAppointmentStatus(String appointmentId, AppointmentStatus status);
+    int countActiveAppointments(Patient patient);
+    List<AppointmentOutcomeRecord> getOutcomeHistory(Patient patient);
+    Page<AppointmentOutcomeRecord> getOutcomeHistory(Patient patient, String cursor, int pageSize);
+    List<Patient> getPatientsUnderCare(Doctor doctor);
+    boolean isPatientUnderCare(Doctor doctor, String patientId);
     // Add to AppointmentService interface
     List<Appointment> getAllAppointments(Doctor doctor);
     List<Appointment> getAllAppointments(Patient patient);
@@ -0,0 +1,34 @@
+package controller.interfaces;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Function;
+
+import entity.Administrator;
+import entity.Appointment;
+import entity.Medicine;
+import entity.MedicineInventoryAction;
+import entity.Pharmacist;
+import entity.Prescription;
+import entity.ReplenishmentRequest;
+import entity.StockLot;
+import entity.User;
+import entity.enums.PharmacyLocation;
+
+public interface InventoryService {
+    boolean dispense(Pharmacist pharmacist, Appointment appointment, Prescription prescription, Medicine medicine);
+    List<Prescription> dispenseAll(Pharmacist pharmacist, Appointment appointment, List<Prescription> prescriptions,
+        Function<Prescription, Medicine> stockFor);
+    MedicineInventoryAction updateStock(Administrator admin, Medicine medicine, int quantity, LocalDate expiryDate,
+        String reason);
+    MedicineInventoryAction writeOffExpiredLot(Administrator admin, StockLot lot);
+    void updateLowStockAlert(Administrator admin, Medicine medicine, int newAlertLevel);
+    List<MedicineInventoryAction> transfer(Administrator admin, String medicineName, PharmacyLocation from,
+        PharmacyLocation to, int quantity);
+    void processReplenishmentRequests(Administrator admin, List<ReplenishmentRequest> requests, boolean approve);
+    List<MedicineInventoryAction> getInventoryActions();
+    List<MedicineInventoryAction> getInventoryActionsByDate(LocalDateTime from, LocalDateTime to);
+    List<MedicineInventoryAction> getInventoryActionsByMedicine(String medicineName);
+    List<MedicineInventoryAction> getInventoryActionsBy(User user);
+}
@@ -4,10 +4,12 @@ import java.util.List;
 
 import entity.Diagnosis;
 import entity.MedicalRecord;
+import util.Page;
 
 public interface MedicalRecordService {
     MedicalRecord getMedicalRecord(String patientId);
     void updateContactInfo(String patientId, String phone, String email);
     void addDiagnosis(String patientId, String diagnosis, String treatment);
     List<Diagnosis> getDiagnosisHistory(String patientId);
+    Page<Diagnosis> getDiagnosisHistory(String patientId, String cursor, int pageSize);
 }
\ No newline at end of file
@@ -1,12 +1,14 @@
 package controller.interfaces;
 
 import entity.*;
+import util.Page;
 import java.util.List;
 import java.util.Optional;
 
 public interface PatientService {
     List<Patient> getPatientsUnderCare(Doctor doctor);
     List<AppointmentOutcomeRecord> getPastAppointmentRecords(Patient patient);
+    Page<AppointmentOutcomeRecord> getPastAppointmentRecords(Patient patient, String cursor, int pageSize);
     void addPatient(Patient patient);
     Patient getPatient(String patientId);
     List<Patient> getAllPatients();
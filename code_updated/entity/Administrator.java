@@ -1,5 +1,6 @@
 package entity;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -12,13 +13,11 @@ import entity.enums.ReplenishmentStatus;
 public class Administrator extends User {
     private final Set<User> managedStaff;
     private final List<ReplenishmentRequest> processedRequests;
-    private final List<MedicineInventoryAction> inventoryActions;
 
     public Administrator(String hospitalId, String password, String name) {
         super(hospitalId, password, name);
         this.managedStaff = new HashSet<>();
         this.processedRequests = new ArrayList<>();
-        this.inventoryActions = new ArrayList<>();
     }
 
     public void addStaffMember(User staff) {
@@ -51,24 +50,32 @@ public class Administrator extends User {
     }
 
 
-    public void processReplenishmentRequest(ReplenishmentRequest request, boolean approve) {
+    /**
+     * Approves or rejects a pending request.
+     * Returns the resulting inventory action, or null if the request was
+     * rejected. If the stock cannot be added, the request is left pending,
+     * nothing is recorded and null is returned.
+     */
+    public MedicineInventoryAction processReplenishmentRequest(ReplenishmentRequest request, boolean approve) {
         if (request == null || request.getStatus() != ReplenishmentStatus.PENDING) {
             throw new IllegalArgumentException("Invalid or already processed request");
         }
 
         Medicine medicine = request.getMedicine();
+        MedicineInventoryAction action = null;
         if (approve) {
-            medicine.fulfillReplenishment(request.getRequestedQuantity());
+            if (!medicine.fulfillReplenishment(request.getRequestedQuantity())) {
+                return null;
+            }
             request.setStatus(ReplenishmentStatus.APPROVED);
             
-            MedicineInventoryAction action = new MedicineInventoryAction(
+            action = new MedicineInventoryAction(
                 medicine,
                 request.getRequestedQuantity(),
                 InventoryActionType.REPLENISHMENT,
                 LocalDateTime.now(),
                 this
             );
-            inventoryActions.add(action);
         } else {
             medicine.cancelReplenishmentRequest();
             request.setStatus(ReplenishmentStatus.REJECTED);
@@ -77,14 +84,24 @@ public class Administrator extends User {
         request.setProcessedBy(this);
         request.setProcessedDateTime(LocalDateTime.now());
         processedRequests.add(request);
+        return action;
     }
 
-    public void updateMedicineStock(Medicine medicine, int quantity, String reason) {
+    public MedicineInventoryAction updateMedicineStock(Medicine medicine, int quantity, String reason) {
+        return updateMedicineStock(medicine, quantity, null, reason);
+    }
+
+    /**
+     * Adjusts stock; added stock is received as a lot expiring on expiryDate, which may be null
+     */
+    public MedicineInventoryAction updateMedicineStock(Medicine medicine, int quantity, LocalDate expiryDate, String reason) {
         if (medicine == null || reason == null || reason.trim().isEmpty()) {
             throw new IllegalArgumentException("Invalid parameters");
         }
 
-        medicine.updateStock(quantity);
+        if (!medicine.updateStock(quantity, expiryDate)) {
+            throw new IllegalArgumentException("Not enough unreserved, unexpired stock to remove " + (-quantity));
+        }
         
         MedicineInventoryAction action = new MedicineInventoryAction(
             medicine,
@@ -94,7 +111,29 @@ public class Administrator extends User {
             this,
             reason
         );
-        inventoryActions.add(action);
+        return action;
+    }
+
+    /**
+     * Writes off what is left of an expired lot. Returns null if nothing could be removed.
+     */
+    public MedicineInventoryAction writeOffExpiredLot(StockLot lot) {
+        if (lot == null || !lot.isExpired(LocalDate.now())) {
+            throw new IllegalArgumentException("Lot has not expired");
+        }
+        int quantity = lot.getMedicine().writeOffLot(lot);
+        if (quantity == 0) {
+            return null;
+        }
+        MedicineInventoryAction action = new MedicineInventoryAction(
+            lot.getMedicine(),
+            -quantity,
+            InventoryActionType.REDUCTION,
+            LocalDateTime.now(),
+            this,
+            "Expired lot " + lot.getLotId()
+        );
+        return action;
     }
 
     public void updateMedicineLowStockAlert(Medicine medicine, int newAlertLevel) {
@@ -117,23 +156,4 @@ public class Administrator extends User {
     public List<ReplenishmentRequest> getProcessedRequests() {
         return new ArrayList<>(processedRequests);
     }
-
-    public List<MedicineInventoryAction> getInventoryActions() {
-        return new ArrayList<>(inventoryActions);
-    }
-
-    public List<MedicineInventoryAction> getInventoryActionsByDate(LocalDateTime startDate, LocalDateTime endDate) {
-        return inventoryActions.stream()
-            .filter(action -> {
-                LocalDateTime actionDate = action.getActionDateTime();
-                return !actionDate.isBefore(startDate) && !actionDate.isAfter(endDate);
-            })
-            .toList();
-    }
-
-    public List<MedicineInventoryAction> getInventoryActionsByMedicine(Medicine medicine) {
-        return inventoryActions.stream()
-            .filter(action -> action.getMedicine().equals(medicine))
-            .toList();
-    }
 }
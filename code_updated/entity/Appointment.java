@@ -3,9 +3,11 @@ package entity;
 
 import java.time.LocalDateTime;
 import entity.enums.AppointmentStatus;
+import util.OrdinalRegistry;
 
 public class Appointment {
     private final String appointmentId;
+    private final int ordinal;
     private final Patient patient;
     private final Doctor doctor;
     private LocalDateTime dateTime;
@@ -15,6 +17,10 @@ public class Appointment {
     public Appointment(String appointmentId, Patient patient, Doctor doctor, 
                       LocalDateTime dateTime) {
         this.appointmentId = appointmentId;
+        // An unsaved appointment has no ID yet; the repository re-creates it with one
+        this.ordinal = appointmentId == null
+            ? -1
+            : OrdinalRegistry.getInstance().register(OrdinalRegistry.Kind.APPOINTMENT, appointmentId);
         this.patient = patient;
         this.doctor = doctor;
         this.dateTime = dateTime;
@@ -40,6 +46,13 @@ public class Appointment {
         return appointmentId;
     }
 
+    /**
+     * Gets the dense ordinal assigned to this appointment's ID, or -1 if it has no ID yet
+     */
+    public int getOrdinal() {
+        return ordinal;
+    }
+
     public Patient getPatient() {
         return patient;
     }
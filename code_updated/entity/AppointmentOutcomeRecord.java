@@ -5,16 +5,19 @@ import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
 
+import util.StringDictionary;
+
 public class AppointmentOutcomeRecord {
     private final LocalDate appointmentDate;
-    private final String serviceType;
+    // Code in the shared StringDictionary
+    private final int serviceTypeCode;
     private final List<Prescription> prescriptions;
     private final String consultationNotes;
     
     public AppointmentOutcomeRecord(LocalDate appointmentDate, String serviceType, 
                                   List<Prescription> prescriptions, String consultationNotes) {
         this.appointmentDate = appointmentDate;
-        this.serviceType = serviceType;
+        this.serviceTypeCode = StringDictionary.getInstance().encode(serviceType);
         this.prescriptions = prescriptions;
         this.consultationNotes = consultationNotes;
     }
@@ -23,7 +26,7 @@ public class AppointmentOutcomeRecord {
     public String toString() {
         StringBuilder sb = new StringBuilder();
         sb.append(String.format("Date: %s\n", appointmentDate));
-        sb.append(String.format("Service: %s\n", serviceType));
+        sb.append(String.format("Service: %s\n", getServiceType()));
         sb.append("Prescriptions:\n");
         prescriptions.forEach(p -> sb.append(p.toString()).append("\n"));
         sb.append(String.format("Notes: %s", consultationNotes));
@@ -35,7 +38,11 @@ public class AppointmentOutcomeRecord {
     }
 
     public String getServiceType() {
-        return serviceType;
+        return StringDictionary.getInstance().decode(serviceTypeCode);
+    }
+
+    public int getServiceTypeCode() {
+        return serviceTypeCode;
     }
 
     public List<Prescription> getPrescriptions() {
@@ -0,0 +1,171 @@
+package entity;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import entity.enums.AppointmentStatus;
+
+/**
+ * A doctor's agenda for one day: availability window plus the non-cancelled
+ * appointments booked into it, kept in time order. Free slots are derived
+ * from the availability grid while iterating, so reading the schedule is a
+ * single merge pass.
+ */
+public class DaySchedule {
+    public enum EntryType {
+        FREE,
+        PENDING,
+        BOOKED
+    }
+
+    private final Doctor doctor;
+    private final LocalDate date;
+    private volatile DoctorAvailability availability;
+    private final ConcurrentSkipListMap<SlotKey, Appointment> appointments;
+    private final Map<String, SlotKey> keysById;
+
+    public DaySchedule(Doctor doctor, LocalDate date) {
+        this.doctor = doctor;
+        this.date = date;
+        this.appointments = new ConcurrentSkipListMap<>();
+        this.keysById = new ConcurrentHashMap<>();
+    }
+
+    public synchronized void addAppointment(Appointment appointment) {
+        removeAppointment(appointment.getAppointmentId());
+        SlotKey key = new SlotKey(appointment.getDateTime().toLocalTime(), appointment.getAppointmentId());
+        keysById.put(appointment.getAppointmentId(), key);
+        appointments.put(key, appointment);
+    }
+
+    public synchronized void removeAppointment(String appointmentId) {
+        SlotKey key = keysById.remove(appointmentId);
+        if (key != null) {
+            appointments.remove(key);
+        }
+    }
+
+    public synchronized void clearAppointments() {
+        appointments.clear();
+        keysById.clear();
+    }
+
+    public void setAvailability(DoctorAvailability availability) {
+        this.availability = availability;
+    }
+
+    public Doctor getDoctor() {
+        return doctor;
+    }
+
+    public LocalDate getDate() {
+        return date;
+    }
+
+    public DoctorAvailability getAvailability() {
+        return availability;
+    }
+
+    public boolean isEmpty() {
+        return availability == null && appointments.isEmpty();
+    }
+
+    /**
+     * Gets the booked and pending appointments in time order
+     */
+    public List<Appointment> getAppointments() {
+        return new ArrayList<>(appointments.values());
+    }
+
+    /**
+     * Checks whether a non-cancelled appointment starts at the given time
+     */
+    public boolean isBooked(LocalTime time) {
+        SlotKey first = appointments.ceilingKey(new SlotKey(time, ""));
+        return first != null && first.time.equals(time);
+    }
+
+    /**
+     * Gets free slots, pending requests and booked appointments merged in time order
+     */
+    public List<Entry> getEntries() {
+        List<Entry> entries = new ArrayList<>();
+        Iterator<Appointment> booked = appointments.values().iterator();
+        Appointment nextBooked = booked.hasNext() ? booked.next() : null;
+
+        DoctorAvailability window = availability;
+        if (window != null) {
+            LocalTime slot = window.getStartTime();
+            while (!slot.plusMinutes(DoctorAvailability.SLOT_DURATION_MINUTES).isAfter(window.getEndTime())) {
+                boolean slotTaken = false;
+                while (nextBooked != null && !nextBooked.getDateTime().toLocalTime().isAfter(slot)) {
+                    slotTaken |= nextBooked.getDateTime().toLocalTime().equals(slot);
+                    entries.add(Entry.of(nextBooked));
+                    nextBooked = booked.hasNext() ? booked.next() : null;
+                }
+                if (!slotTaken) {
+                    entries.add(new Entry(slot, EntryType.FREE, null));
+                }
+                slot = slot.plusMinutes(DoctorAvailability.SLOT_DURATION_MINUTES);
+            }
+        }
+
+        while (nextBooked != null) {
+            entries.add(Entry.of(nextBooked));
+            nextBooked = booked.hasNext() ? booked.next() : null;
+        }
+        return entries;
+    }
+
+    public static class Entry {
+        private final LocalTime time;
+        private final EntryType type;
+        private final Appointment appointment;
+
+        private Entry(LocalTime time, EntryType type, Appointment appointment) {
+            this.time = time;
+            this.type = type;
+            this.appointment = appointment;
+        }
+
+        private static Entry of(Appointment appointment) {
+            EntryType type = appointment.getStatus() == AppointmentStatus.PENDING_APPROVAL
+                ? EntryType.PENDING : EntryType.BOOKED;
+            return new Entry(appointment.getDateTime().toLocalTime(), type, appointment);
+        }
+
+        public LocalTime getTime() {
+            return time;
+        }
+
+        public EntryType getType() {
+            return type;
+        }
+
+        public Appointment getAppointment() {
+            return appointment;
+        }
+    }
+
+    private static class SlotKey implements Comparable<SlotKey> {
+        private final LocalTime time;
+        private final String appointmentId;
+
+        private SlotKey(LocalTime time, String appointmentId) {
+            this.time = time;
+            this.appointmentId = appointmentId;
+        }
+
+        @Override
+        public int compareTo(SlotKey other) {
+            int byTime = time.compareTo(other.time);
+            return byTime != 0 ? byTime : appointmentId.compareTo(other.appointmentId);
+        }
+    }
+}
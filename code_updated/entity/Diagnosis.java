@@ -2,21 +2,31 @@ package entity;
 
 import java.time.LocalDate;
 
+import util.StringDictionary;
+
 public class Diagnosis {
     private final LocalDate date;
-    private final String description;
+    // Code in the shared StringDictionary
+    private final int descriptionCode;
     private final Treatment treatment;
     
     public Diagnosis(String description, Treatment treatment) {
-        this.date = LocalDate.now();
-        this.description = description;
+        this(description, treatment, LocalDate.now());
+    }
+    
+    /**
+     * Creates a diagnosis made on an earlier date, e.g. when a stored record is read back
+     */
+    public Diagnosis(String description, Treatment treatment, LocalDate date) {
+        this.date = date;
+        this.descriptionCode = StringDictionary.getInstance().encode(description);
         this.treatment = treatment;
     }
     
     @Override
     public String toString() {
         return String.format("Date: %s\nDiagnosis: %s\nTreatment: %s", 
-            date, description, treatment);
+            date, getDescription(), treatment);
     }
 
     public LocalDate getDate() {
@@ -24,7 +34,11 @@ public class Diagnosis {
     }
 
     public String getDescription() {
-        return description;
+        return StringDictionary.getInstance().decode(descriptionCode);
+    }
+
+    public int getDescriptionCode() {
+        return descriptionCode;
     }
 
     public Treatment getTreatment() {
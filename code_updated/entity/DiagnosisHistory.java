@@ -0,0 +1,333 @@
+package entity;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import util.Page;
+
+/**
+ * Append-only diagnosis history stored in fixed-size chunks linked from the
+ * newest chunk back to the oldest. An append claims an index with one atomic
+ * increment and fills its slot, installing a new chunk by compare-and-set
+ * when the newest one is full, so appends never lock. Reads run newest first
+ * and stop as soon as they have enough entries, so the latest page never
+ * touches older chunks. An entry whose append is still in flight is skipped
+ * by reads that overtake it. A version of a medical record sees the
+ * history through a view bounded at the size it had when the version was
+ * made, sharing the chunks with every later version. A view extended from
+ * a saved version holds its new entries privately until the version is
+ * stored, and only then publishes them to the shared chunks, so a version
+ * that is derived but never stored leaves the history unchanged.
+ */
+public class DiagnosisHistory implements Iterable<Diagnosis> {
+    static final int CHUNK_SIZE = 64;
+
+    private static final int UNBOUNDED = Integer.MAX_VALUE;
+
+    private final AtomicInteger nextIndex;
+    private final AtomicReference<Chunk> newest;
+    // Entries at or above this index are not part of this view
+    private final int limit;
+    // Entries this view adds after limit, oldest first, until they are published
+    private final List<Diagnosis> pending;
+
+    DiagnosisHistory() {
+        this(new AtomicInteger(), new AtomicReference<>(new Chunk(0, null)), UNBOUNDED, List.of());
+    }
+
+    private DiagnosisHistory(AtomicInteger nextIndex, AtomicReference<Chunk> newest, int limit,
+            List<Diagnosis> pending) {
+        this.nextIndex = nextIndex;
+        this.newest = newest;
+        this.limit = limit;
+        this.pending = pending;
+    }
+
+    void append(Diagnosis diagnosis) {
+        if (limit != UNBOUNDED) {
+            throw new IllegalStateException("A saved version's diagnosis history cannot be changed");
+        }
+        claim(diagnosis);
+    }
+
+    /**
+     * Returns a view that ends with the new entry, leaving this one and the
+     * shared chunks unchanged until the new view is published
+     */
+    DiagnosisHistory extend(Diagnosis diagnosis) {
+        if (diagnosis == null) {
+            throw new IllegalArgumentException("Diagnosis cannot be null");
+        }
+        DiagnosisHistory base = freeze();
+        List<Diagnosis> added = new ArrayList<>(base.pending);
+        added.add(diagnosis);
+        return new DiagnosisHistory(base.nextIndex, base.newest, base.limit, List.copyOf(added));
+    }
+
+    /**
+     * Gets a view of the entries appended so far, unaffected by later appends.
+     * An unsaved history is copied first, so that appends to it do not stop
+     * the frozen view from being extended.
+     */
+    DiagnosisHistory freeze() {
+        if (limit != UNBOUNDED) {
+            // Entries already published move out of the pending list, so it does not grow from version to version
+            int published = publishedCount();
+            return new DiagnosisHistory(nextIndex, newest, limit + published,
+                List.copyOf(pending.subList(published, pending.size())));
+        }
+        DiagnosisHistory copy = new DiagnosisHistory();
+        toList().forEach(copy::claim);
+        return new DiagnosisHistory(copy.nextIndex, copy.newest, copy.size(), List.of());
+    }
+
+    /**
+     * Checks whether this view's pending entries can still be published,
+     * which holds while no other version has published entries after it
+     */
+    public boolean canPublish() {
+        if (pending.isEmpty()) {
+            return true;
+        }
+        synchronized (nextIndex) {
+            return nextIndex.get() == limit + publishedCount();
+        }
+    }
+
+    /**
+     * Writes this view's pending entries to the shared chunks, once the
+     * version holding it has been stored. Entries this view published
+     * before are skipped.
+     *
+     * @throws IllegalStateException if another version has published entries after this view
+     */
+    public void publish() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        // Shared with every view of the history, so concurrent publishes see each other
+        synchronized (nextIndex) {
+            if (!canPublish()) {
+                throw new IllegalStateException("Diagnosis history has changed since this version was made");
+            }
+            for (int i = publishedCount(); i < pending.size(); i++) {
+                claim(pending.get(i));
+            }
+        }
+    }
+
+    /**
+     * Gets a token shared by every view derived from this one, and by no
+     * other history. Views sharing it that can all publish agree on every
+     * entry below the smaller of their sizes, so a store can persist a later
+     * view as just the entries it adds. The token holds no entries.
+     */
+    public Object getLineage() {
+        return nextIndex;
+    }
+
+    public int size() {
+        return Math.min(nextIndex.get(), limit) + pending.size();
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Gets a page of diagnoses, newest first. A null cursor starts from the most recent entry.
+     */
+    public Page<Diagnosis> getPage(String cursor, int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive");
+        }
+        // Entries below this index are still to be read
+        int before = Math.min(cursor == null ? UNBOUNDED : decodeCursor(cursor), end());
+        List<Diagnosis> items = new ArrayList<>(pageSize);
+        for (int index = before - 1; index >= limit; index--) {
+            items.add(pending.get(index - limit));
+            if (items.size() == pageSize) {
+                return new Page<>(items, index > 0 ? String.valueOf(index) : null);
+            }
+        }
+        before = Math.min(before, limit);
+        for (Chunk chunk = newest.get(); chunk != null; chunk = chunk.previous) {
+            int base = chunk.number * CHUNK_SIZE;
+            if (base >= before) {
+                continue;
+            }
+            for (int slot = Math.min(before - base, CHUNK_SIZE) - 1; slot >= 0; slot--) {
+                Diagnosis diagnosis = chunk.entries.get(slot);
+                if (diagnosis == null) {
+                    continue;
+                }
+                items.add(diagnosis);
+                if (items.size() == pageSize) {
+                    int index = base + slot;
+                    return new Page<>(items, index > 0 ? String.valueOf(index) : null);
+                }
+            }
+        }
+        return new Page<>(items, null);
+    }
+
+    /**
+     * Iterates over the diagnoses newest first
+     */
+    @Override
+    public Iterator<Diagnosis> iterator() {
+        return new NewestFirstIterator(newest.get(), limit, pending);
+    }
+
+    /**
+     * Streams the diagnoses newest first
+     */
+    public Stream<Diagnosis> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    /**
+     * Copies the whole history, oldest first
+     */
+    public List<Diagnosis> toList() {
+        List<Diagnosis> result = new ArrayList<>(size());
+        forEach(result::add);
+        Collections.reverse(result);
+        return result;
+    }
+
+    // Index one past this view's last entry
+    private int end() {
+        return pending.isEmpty() ? limit : limit + pending.size();
+    }
+
+    // Counts the leading pending entries already written to their slots by an earlier publish
+    private int publishedCount() {
+        int count = 0;
+        while (count < pending.size() && limit + count < nextIndex.get()) {
+            Chunk chunk = chunkAt(limit + count);
+            if (chunk == null || chunk.entries.get((limit + count) % CHUNK_SIZE) != pending.get(count)) {
+                break;
+            }
+            count++;
+        }
+        return count;
+    }
+
+    // Finds an existing chunk holding an index, or null if none has been installed yet
+    private Chunk chunkAt(int index) {
+        int number = index / CHUNK_SIZE;
+        Chunk chunk = newest.get();
+        while (chunk != null && chunk.number > number) {
+            chunk = chunk.previous;
+        }
+        return chunk != null && chunk.number == number ? chunk : null;
+    }
+
+    private int claim(Diagnosis diagnosis) {
+        if (diagnosis == null) {
+            throw new IllegalArgumentException("Diagnosis cannot be null");
+        }
+        int index = nextIndex.getAndIncrement();
+        chunkFor(index).entries.set(index % CHUNK_SIZE, diagnosis);
+        return index;
+    }
+
+    // Finds the chunk holding an index, installing newer chunks as needed
+    private Chunk chunkFor(int index) {
+        int number = index / CHUNK_SIZE;
+        Chunk chunk = newest.get();
+        while (chunk.number < number) {
+            Chunk next = new Chunk(chunk.number + 1, chunk);
+            chunk = newest.compareAndSet(chunk, next) ? next : newest.get();
+        }
+        while (chunk.number > number) {
+            chunk = chunk.previous;
+        }
+        return chunk;
+    }
+
+    private static int decodeCursor(String cursor) {
+        try {
+            int index = Integer.parseInt(cursor);
+            if (index >= 0) {
+                return index;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException("Invalid cursor: " + cursor);
+    }
+
+    private static class Chunk {
+        private final int number;
+        private final Chunk previous;
+        private final AtomicReferenceArray<Diagnosis> entries = new AtomicReferenceArray<>(CHUNK_SIZE);
+
+        private Chunk(int number, Chunk previous) {
+            this.number = number;
+            this.previous = previous;
+        }
+    }
+
+    private static class NewestFirstIterator implements Iterator<Diagnosis> {
+        private final List<Diagnosis> pending;
+        private int pendingLeft;
+        private Chunk chunk;
+        private int slot;
+        private Diagnosis next;
+
+        private NewestFirstIterator(Chunk newest, int limit, List<Diagnosis> pending) {
+            this.pending = pending;
+            this.pendingLeft = pending.size();
+            this.chunk = newest;
+            while (chunk != null && chunk.number * CHUNK_SIZE >= limit) {
+                chunk = chunk.previous;
+            }
+            this.slot = chunk == null ? -1 : Math.min(limit - chunk.number * CHUNK_SIZE, CHUNK_SIZE) - 1;
+            advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Diagnosis next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Diagnosis result = next;
+            advance();
+            return result;
+        }
+
+        private void advance() {
+            if (pendingLeft > 0) {
+                next = pending.get(--pendingLeft);
+                return;
+            }
+            next = null;
+            while (chunk != null) {
+                while (slot >= 0) {
+                    Diagnosis diagnosis = chunk.entries.get(slot--);
+                    if (diagnosis != null) {
+                        next = diagnosis;
+                        return;
+                    }
+                }
+                chunk = chunk.previous;
+                slot = CHUNK_SIZE - 1;
+            }
+        }
+    }
+}
@@ -4,18 +4,29 @@ package entity;
 import java.time.LocalDate;
 import java.util.*;
 
+import util.OrdinalRegistry;
+
 public class Doctor extends User {
+    private final int ordinal;
     private final String specialization;
-    private final List<Patient> patients;
+    private final Set<Patient> patients;
     private final Map<LocalDate, DoctorAvailability> availabilities; // Added this
 
     public Doctor(String hospitalId, String password, String name, String specialization) {
         super(hospitalId, password, name);
+        this.ordinal = OrdinalRegistry.getInstance().register(OrdinalRegistry.Kind.DOCTOR, hospitalId);
         this.specialization = specialization;
-        this.patients = new ArrayList<>();
+        this.patients = new LinkedHashSet<>();
         this.availabilities = new HashMap<>();
     }
 
+    /**
+     * Gets the dense ordinal assigned to this doctor's ID
+     */
+    public int getOrdinal() {
+        return ordinal;
+    }
+
     // Added method
     public DoctorAvailability getAvailability(LocalDate date) {
         return availabilities.get(date);
@@ -26,13 +37,15 @@ public class Doctor extends User {
         availabilities.put(availability.getDate(), availability);
     }
 
-    public void addPatient(Patient patient) {
-        if (!patients.contains(patient)) {
-            patients.add(patient);
-        }
+    public synchronized void addPatient(Patient patient) {
+        patients.add(patient);
+    }
+    
+    public synchronized void removePatient(Patient patient) {
+        patients.remove(patient);
     }
     
-    public List<Patient> getPatients() {
+    public synchronized List<Patient> getPatients() {
         return new ArrayList<>(patients); // Return copy to maintain encapsulation
     }
     
@@ -5,6 +5,8 @@ import java.time.LocalTime;
 import java.util.UUID;
 
 public class DoctorAvailability {
+    public static final int SLOT_DURATION_MINUTES = 30;
+
     private final String id;
     private final Doctor doctor;
     private final LocalDate date;
@@ -2,11 +2,15 @@
 package entity;
 
 import java.time.LocalDate;
-import java.util.ArrayList;
-import java.util.List;
 
 import entity.enums.*;
 
+/**
+ * A patient's medical record. MedicalRecordRepository keeps each saved
+ * state as a separate version stamped with its commit sequence; versions
+ * are changed by deriving a new one with withContactInfo or withDiagnosis
+ * rather than in place.
+ */
 public class MedicalRecord {
     private final String patientId;
     private final String name;
@@ -14,25 +18,70 @@ public class MedicalRecord {
     private final Gender gender;
     private final BloodType bloodType;
     private final ContactInfo contactInfo;
-    private final List<Diagnosis> diagnosisHistory;
+    private final DiagnosisHistory diagnosisHistory;
+    private final long version;
     
     public MedicalRecord(String patientId, String name, LocalDate dateOfBirth, 
                         Gender gender, BloodType bloodType, ContactInfo contactInfo) {
+        this(patientId, name, dateOfBirth, gender, bloodType, contactInfo, new DiagnosisHistory(), 0);
+    }
+    
+    private MedicalRecord(String patientId, String name, LocalDate dateOfBirth, Gender gender,
+                          BloodType bloodType, ContactInfo contactInfo, DiagnosisHistory diagnosisHistory,
+                          long version) {
         this.patientId = patientId;
         this.name = name;
         this.dateOfBirth = dateOfBirth;
         this.gender = gender;
         this.bloodType = bloodType;
         this.contactInfo = contactInfo;
-        this.diagnosisHistory = new ArrayList<>();
+        this.diagnosisHistory = diagnosisHistory;
+        this.version = version;
     }
     
+    /**
+     * Adds a diagnosis to a record that has not been saved yet
+     */
     public void addDiagnosis(Diagnosis diagnosis) {
-        diagnosisHistory.add(diagnosis);
+        diagnosisHistory.append(diagnosis);
+    }
+    
+    /**
+     * Derives a version with new contact details; this version is unchanged
+     */
+    public MedicalRecord withContactInfo(String phoneNumber, String email) {
+        return new MedicalRecord(patientId, name, dateOfBirth, gender, bloodType,
+            new ContactInfo(phoneNumber, email), diagnosisHistory.freeze(), version);
+    }
+    
+    /**
+     * Derives a version with one more diagnosis; this version does not see it,
+     * and the shared history only gains it once the derived version is saved
+     */
+    public MedicalRecord withDiagnosis(Diagnosis diagnosis) {
+        return new MedicalRecord(patientId, name, dateOfBirth, gender, bloodType,
+            copyOf(contactInfo), diagnosisHistory.extend(diagnosis), version);
     }
     
+    /**
+     * Copies this record as the version committed at the given sequence.
+     * The copy's contact details and diagnosis history no longer follow this record.
+     */
+    public MedicalRecord asVersion(long version) {
+        return new MedicalRecord(patientId, name, dateOfBirth, gender, bloodType,
+            copyOf(contactInfo), diagnosisHistory.freeze(), version);
+    }
+    
+    private static ContactInfo copyOf(ContactInfo contactInfo) {
+        return contactInfo == null ? null : new ContactInfo(contactInfo.getPhoneNumber(), contactInfo.getEmail());
+    }
     
     
+    
+    /**
+     * Formats the patient's details and the number of diagnoses on file;
+     * the diagnoses themselves are read page by page from getDiagnosisHistory()
+     */
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
@@ -42,8 +91,7 @@ public class MedicalRecord {
         sb.append(String.format("Gender: %s\n", gender));
         sb.append(String.format("Blood Type: %s\n", bloodType));
         sb.append(String.format("Contact Information:\n%s\n", contactInfo));
-        sb.append("\nDiagnosis History:\n");
-        diagnosisHistory.forEach(d -> sb.append(d.toString()).append("\n"));
+        sb.append(String.format("\nDiagnosis History: %d entries\n", diagnosisHistory.size()));
         return sb.toString();
     }
 
@@ -71,7 +119,17 @@ public class MedicalRecord {
         return contactInfo;
     }
 
-    public List<Diagnosis> getDiagnosisHistory() {
+    /**
+     * Gets the sequence this version was committed at; 0 for a record loaded from storage or never saved
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Gets the diagnosis history, read newest first
+     */
+    public DiagnosisHistory getDiagnosisHistory() {
         return diagnosisHistory;
     }
 
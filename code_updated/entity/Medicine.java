@@ -1,19 +1,87 @@
 package entity;
 
-public class Medicine {
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import entity.enums.PharmacyLocation;
+import util.OrdinalRegistry;
+
+/**
+ * A stocked medicine. On-hand and reserved quantities are packed into one
+ * long (on-hand in the high 32 bits, reserved in the low 32 bits) and only
+ * ever changed by compare-and-set, so concurrent dispensing and restocking
+ * never lose updates and never drive available stock below zero.
+ * On-hand stock is broken down into lots kept in a priority queue by expiry;
+ * stock leaving the shelf is drawn first-expiry-first-out. Units in expired
+ * lots stay on hand until written off but cannot be reserved, dispensed or
+ * transferred. Changes that touch both the count and the lots are made
+ * under the lot lock, and listeners are told only once it is released.
+ * Each instance is the stock of one medicine at one pharmacy location.
+ */
+public final class Medicine {
+    private static final VarHandle STOCK_STATE;
+    private static final VarHandle REPLENISHMENT_REQUESTED;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            STOCK_STATE = lookup.findVarHandle(Medicine.class, "stockState", long.class);
+            REPLENISHMENT_REQUESTED = lookup.findVarHandle(Medicine.class, "replenishmentRequested", boolean.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
     private final String name;
-    private int currentStock;
-    private int lowStockAlert; // Remove final modifier
-    private boolean replenishmentRequested;
+    private final int ordinal;
+    private final PharmacyLocation location;
+    private volatile long stockState;
+    private volatile int lowStockAlert; // Remove final modifier
+    private volatile boolean replenishmentRequested;
     private final int maxStock; // Add maxStock field
+    private volatile StockLevelListener stockLevelListener;
+    private final PriorityQueue<StockLot> lots; // guarded by itself
+    private StockLot undatedLot; // guarded by lots
     
     public Medicine(String name, int initialStock, int lowStockAlert) {
+        this(name, initialStock, lowStockAlert, PharmacyLocation.MAIN_PHARMACY);
+    }
+    
+    public Medicine(String name, int initialStock, int lowStockAlert, PharmacyLocation location) {
+        this(name, initialStock, lowStockAlert, location, initialStock * 2); // Set max stock as double initial stock
+    }
+    
+    /**
+     * Creates stock with an explicit cap, e.g. a location stocked empty that
+     * takes its cap from the same medicine elsewhere
+     */
+    public Medicine(String name, int initialStock, int lowStockAlert, PharmacyLocation location, int maxStock) {
+        if (location == null) {
+            throw new IllegalArgumentException("Location cannot be null");
+        }
+        if (maxStock < 0) {
+            throw new IllegalArgumentException("Max stock cannot be negative");
+        }
         // Existing constructor validation
         this.name = name;
-        this.currentStock = initialStock;
+        this.ordinal = OrdinalRegistry.getInstance().register(OrdinalRegistry.Kind.MEDICINE, name);
+        this.location = location;
+        this.stockState = pack(initialStock, 0);
         this.lowStockAlert = lowStockAlert;
-        this.maxStock = initialStock * 2; // Set max stock as double initial stock
+        this.maxStock = maxStock;
         this.replenishmentRequested = false;
+        this.lots = new PriorityQueue<>(StockLot.EARLIEST_EXPIRY_FIRST);
+        if (initialStock > 0) {
+            // No listener can be registered yet, so the opening lot is added without notifying
+            undatedLot = new StockLot(this, initialStock, null);
+            lots.add(undatedLot);
+        }
     }
     
     public void setLowStockAlert(int newAlertLevel) { // Add setter
@@ -21,59 +89,268 @@ public class Medicine {
             throw new IllegalArgumentException("Alert level cannot be negative");
         }
         this.lowStockAlert = newAlertLevel;
+        StockLevelListener listener = stockLevelListener;
+        if (listener != null) {
+            listener.onStockLevelChanged(this);
+        }
+    }
+    
+    /**
+     * Sets the listener told about low-stock threshold crossings
+     */
+    public void setStockLevelListener(StockLevelListener listener) {
+        this.stockLevelListener = listener;
     }
     
     public int getMaxStock() {
         return maxStock;
     }
 
+    /**
+     * Adds or removes on-hand stock. Added stock goes into a lot without an
+     * expiry date; removed stock is drawn from the earliest-expiring lots.
+     * Fails if the change would leave less on hand than is currently reserved.
+     */
     public boolean updateStock(int quantity) {
-        int newStock = this.currentStock + quantity;
-        if (newStock < 0) {
+        return updateStock(quantity, null);
+    }
+    
+    /**
+     * Adds stock as a lot expiring on the given date, or removes unexpired
+     * stock first-expiry-first-out when quantity is negative. Fails if less
+     * unreserved, unexpired stock is left than quantity removes.
+     */
+    public boolean updateStock(int quantity, LocalDate expiryDate) {
+        if (quantity > 0 && expiryDate != null && expiryDate.isBefore(LocalDate.now())) {
+            throw new IllegalArgumentException("Cannot receive stock that has already expired");
+        }
+        long before;
+        StockLot added = null;
+        synchronized (lots) {
+            before = changeOnHand(quantity, quantity < 0 ? expiredStock() : 0);
+            if (before < 0) {
+                return false;
+            }
+            if (quantity > 0) {
+                added = addToLots(quantity, expiryDate);
+            } else if (quantity < 0) {
+                drawFromLots(-quantity, null);
+            }
+        }
+        onStockChanged(before, quantity);
+        notifyLotAdded(added);
+        return true;
+    }
+    
+    private boolean applyStockChange(int quantity) {
+        long before = changeOnHand(quantity, 0);
+        if (before < 0) {
             return false;
         }
-        this.currentStock = newStock;
+        onStockChanged(before, quantity);
         return true;
     }
     
-    public boolean isLowStock() {
-        return currentStock <= lowStockAlert;
+    // Changes on-hand stock without notifying anyone. Fails, returning -1, if the
+    // new on-hand stock less the unusable units would not cover what is reserved;
+    // otherwise returns the state replaced.
+    private long changeOnHand(int quantity, int unusable) {
+        while (true) {
+            long state = stockState;
+            long newOnHand = (long) onHand(state) + quantity;
+            if (newOnHand - unusable < reserved(state) || newOnHand > Integer.MAX_VALUE) {
+                return -1;
+            }
+            long next = pack((int) newOnHand, reserved(state));
+            if (STOCK_STATE.compareAndSet(this, state, next)) {
+                return state;
+            }
+        }
     }
     
-    public boolean requestReplenishment() {
-        if (replenishmentRequested) {
+    private void onStockChanged(long before, int quantity) {
+        checkThreshold(before, pack(onHand(before) + quantity, reserved(before)));
+        notifyStockChanged(quantity);
+    }
+    
+    /**
+     * Sets aside stock for a dispense in progress. Returns null if not enough
+     * stock is available; otherwise the reservation must be committed or aborted.
+     */
+    public StockReservation tryReserve(int quantity) {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("Quantity must be positive");
+        }
+        return reserve(quantity) ? new StockReservation(this, quantity) : null;
+    }
+    
+    private boolean reserve(int quantity) {
+        int expired;
+        synchronized (lots) {
+            expired = expiredStock();
+        }
+        while (true) {
+            long state = stockState;
+            int onHand = onHand(state);
+            int reserved = reserved(state);
+            if (onHand - reserved - expired < quantity) {
+                return false;
+            }
+            long next = pack(onHand, reserved + quantity);
+            if (STOCK_STATE.compareAndSet(this, state, next)) {
+                checkThreshold(state, next);
+                return true;
+            }
+        }
+    }
+    
+    // Called once by StockReservation.commit: reserved stock leaves the shelf,
+    // and its count and lots change together under the lot lock
+    void commitReserved(int quantity) {
+        synchronized (lots) {
+            removeReserved(quantity);
+            drawFromLots(quantity, null);
+        }
+        notifyStockChanged(-quantity);
+    }
+    
+    // Takes reserved stock off hand without notifying anyone
+    private void removeReserved(int quantity) {
+        while (true) {
+            long state = stockState;
+            long next = pack(onHand(state) - quantity, reserved(state) - quantity);
+            if (STOCK_STATE.compareAndSet(this, state, next)) {
+                return;
+            }
+        }
+    }
+    
+    /**
+     * Moves stock to the same medicine at another location, keeping the
+     * expiry date of every lot moved. Either the whole quantity moves or
+     * nothing changes; fails if this location lacks the unreserved stock.
+     * Lots are moved before the stock counts, so at neither location do the
+     * lots ever hold less than the count says is on hand.
+     */
+    public boolean transferTo(Medicine destination, int quantity) {
+        if (destination == null || destination == this || !destination.name.equalsIgnoreCase(name)) {
+            throw new IllegalArgumentException("Destination must be the same medicine at another location");
+        }
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("Quantity must be positive");
+        }
+        if (!reserve(quantity)) {
+            return false;
+        }
+        Map<LocalDate, Integer> moved = new LinkedHashMap<>();
+        drawFromLots(quantity, moved);
+        Map<StockLot, Integer> received = destination.receiveLots(moved);
+        if (!destination.applyStockChange(quantity)) {
+            destination.returnLots(received);
+            receiveLots(moved);
+            releaseReserved(quantity);
             return false;
         }
-        replenishmentRequested = true;
+        removeReserved(quantity);
+        notifyStockChanged(-quantity);
         return true;
     }
     
+    /**
+     * Removes whatever is left of a lot, e.g. because it has expired, as far
+     * as unreserved stock allows. Returns the quantity written off.
+     */
+    public int writeOffLot(StockLot lot) {
+        if (lot.getMedicine() != this) {
+            throw new IllegalArgumentException("Lot belongs to another medicine");
+        }
+        int quantity;
+        long before;
+        synchronized (lots) {
+            // Expired units never back a reservation, so writing them off leaves the usable stock as it was
+            int expired = expiredStock();
+            int unusable = lot.isExpired(LocalDate.now()) ? expired - lot.getRemaining() : expired;
+            quantity = Math.min(lot.getRemaining(), available(stockState) - unusable);
+            if (quantity <= 0) {
+                return 0;
+            }
+            before = changeOnHand(-quantity, unusable);
+            if (before < 0) {
+                return 0;
+            }
+            lot.take(quantity);
+            if (lot.isDepleted()) {
+                lots.remove(lot);
+            }
+        }
+        onStockChanged(before, -quantity);
+        return quantity;
+    }
+    
+    /**
+     * Gets the lots that still hold stock, earliest expiry first
+     */
+    public List<StockLot> getLots() {
+        List<StockLot> snapshot;
+        synchronized (lots) {
+            snapshot = new ArrayList<>(lots);
+        }
+        snapshot.sort(StockLot.EARLIEST_EXPIRY_FIRST);
+        return snapshot;
+    }
+    
+    // Called once by StockReservation.abort: reserved stock becomes available again
+    void releaseReserved(int quantity) {
+        while (true) {
+            long state = stockState;
+            long next = pack(onHand(state), reserved(state) - quantity);
+            if (STOCK_STATE.compareAndSet(this, state, next)) {
+                checkThreshold(state, next);
+                return;
+            }
+        }
+    }
+    
+    public boolean isLowStock() {
+        return getAvailableStock() <= lowStockAlert;
+    }
+    
+    public boolean requestReplenishment() {
+        return REPLENISHMENT_REQUESTED.compareAndSet(this, false, true);
+    }
+    
+    /**
+     * Checks whether fulfillReplenishment would currently succeed
+     */
+    public boolean canFulfillReplenishment(int quantity) {
+        return quantity > 0 && replenishmentRequested && (long) getCurrentStock() + quantity <= Integer.MAX_VALUE;
+    }
+    
     public boolean fulfillReplenishment(int quantity) {
-        if (!replenishmentRequested || quantity <= 0) {
+        if (quantity <= 0 || !REPLENISHMENT_REQUESTED.compareAndSet(this, true, false)) {
+            return false;
+        }
+        if (!updateStock(quantity)) {
+            replenishmentRequested = true;
             return false;
         }
-        currentStock += quantity;
-        replenishmentRequested = false;
         return true;
     }
     
     public boolean cancelReplenishmentRequest() {
-        if (!replenishmentRequested) {
-            return false;
-        }
-        replenishmentRequested = false;
-        return true;
+        return REPLENISHMENT_REQUESTED.compareAndSet(this, true, false);
     }
     
     public boolean canFulfillQuantity(int quantity) {
-        return quantity > 0 && quantity <= currentStock;
+        return quantity > 0 && quantity <= getAvailableStock();
     }
     
     @Override
     public String toString() {
-        return String.format("Medicine: %s%nCurrent Stock: %d%nLow Stock Alert Level: %d%n" +
-                           "Replenishment Requested: %s%nStock Status: %s",
-            name, currentStock, lowStockAlert, 
+        long state = stockState;
+        return String.format("Medicine: %s%nLocation: %s%nCurrent Stock: %d%nReserved: %d%n" +
+                           "Low Stock Alert Level: %d%nReplenishment Requested: %s%nStock Status: %s",
+            name, location, onHand(state), reserved(state), lowStockAlert, 
             replenishmentRequested ? "Yes" : "No",
             isLowStock() ? "LOW STOCK" : "Normal");
     }
@@ -82,8 +359,35 @@ public class Medicine {
         return name;
     }
     
+    /**
+     * Gets the dense ordinal assigned to this medicine's name, shared by its stock at every location
+     */
+    public int getOrdinal() {
+        return ordinal;
+    }
+    
+    public PharmacyLocation getLocation() {
+        return location;
+    }
+    
+    /**
+     * Gets the stock physically on hand, including any reserved quantity
+     */
     public int getCurrentStock() {
-        return currentStock;
+        return onHand(stockState);
+    }
+    
+    public int getReservedStock() {
+        return reserved(stockState);
+    }
+    
+    /**
+     * Gets the stock that can still be reserved: on hand, not reserved and not expired
+     */
+    public int getAvailableStock() {
+        synchronized (lots) {
+            return Math.max(0, available(stockState) - expiredStock());
+        }
     }
     
     public int getLowStockAlert() {
@@ -95,10 +399,186 @@ public class Medicine {
     }
 
     public void setCurrentStock(int currentStock) {
-        this.currentStock = currentStock;
+        if (currentStock < 0) {
+            throw new IllegalArgumentException("Stock cannot be negative");
+        }
+        long before;
+        int delta;
+        StockLot added = null;
+        synchronized (lots) {
+            while (true) {
+                before = stockState;
+                if (currentStock < reserved(before)) {
+                    throw new IllegalStateException("Stock cannot be set below the reserved quantity");
+                }
+                if (STOCK_STATE.compareAndSet(this, before, pack(currentStock, reserved(before)))) {
+                    break;
+                }
+            }
+            delta = currentStock - onHand(before);
+            if (delta > 0) {
+                added = addToLots(delta, null);
+            } else if (delta < 0) {
+                drawFromLots(-delta, null);
+            }
+        }
+        onStockChanged(before, delta);
+        notifyLotAdded(added);
     }
 
     public void setReplenishmentRequested(boolean replenishmentRequested) {
         this.replenishmentRequested = replenishmentRequested;
     }
+
+    // Adds received stock to a lot; caller holds lots and notifies about the lot returned, if any
+    private StockLot addToLots(int quantity, LocalDate expiryDate) {
+        if (expiryDate == null && undatedLot != null && !undatedLot.isDepleted()) {
+            undatedLot.add(quantity);
+            return null;
+        }
+        StockLot added = new StockLot(this, quantity, expiryDate);
+        lots.add(added);
+        if (expiryDate == null) {
+            undatedLot = added;
+        }
+        return added;
+    }
+    
+    // Adds the lots drawn from another location, keyed by expiry date, and
+    // returns how much went into each lot here
+    private Map<StockLot, Integer> receiveLots(Map<LocalDate, Integer> incoming) {
+        Map<StockLot, Integer> received = new LinkedHashMap<>();
+        List<StockLot> added = new ArrayList<>(incoming.size());
+        synchronized (lots) {
+            incoming.forEach((expiryDate, quantity) -> {
+                StockLot lot = addToLots(quantity, expiryDate);
+                if (lot != null) {
+                    added.add(lot);
+                }
+                received.merge(lot != null ? lot : undatedLot, quantity, Integer::sum);
+            });
+        }
+        added.forEach(this::notifyLotAdded);
+        return received;
+    }
+    
+    // Takes back exactly what receiveLots put into each lot. Anything already
+    // drawn from those lots is taken from the others instead, so the lots still
+    // hold what they did before.
+    private void returnLots(Map<StockLot, Integer> received) {
+        synchronized (lots) {
+            int shortfall = 0;
+            for (Map.Entry<StockLot, Integer> entry : received.entrySet()) {
+                StockLot lot = entry.getKey();
+                shortfall += entry.getValue() - lot.take(entry.getValue());
+                if (lot.isDepleted()) {
+                    lots.remove(lot);
+                }
+            }
+            if (shortfall > 0) {
+                drawFromLots(shortfall, null);
+            }
+        }
+    }
+    
+    // Takes stock from the earliest-expiring unexpired lots, O(log lots) per lot emptied,
+    // totalling what was taken per expiry date into drawn if it is not null. Expired lots
+    // are only drawn from if the rest run out, which happens only when a lot expired
+    // after the stock being drawn had been reserved.
+    private void drawFromLots(int quantity, Map<LocalDate, Integer> drawn) {
+        synchronized (lots) {
+            int remaining = quantity;
+            LocalDate today = LocalDate.now();
+            List<StockLot> expired = new ArrayList<>();
+            while (remaining > 0 && !lots.isEmpty()) {
+                StockLot lot = lots.peek();
+                if (lot.isExpired(today)) {
+                    expired.add(lots.poll());
+                    continue;
+                }
+                remaining -= take(lot, remaining, drawn);
+                if (lot.isDepleted()) {
+                    lots.poll();
+                }
+            }
+            for (StockLot lot : expired) {
+                remaining -= take(lot, remaining, drawn);
+                if (!lot.isDepleted()) {
+                    lots.add(lot);
+                }
+            }
+        }
+    }
+    
+    private static int take(StockLot lot, int quantity, Map<LocalDate, Integer> drawn) {
+        int taken = lot.take(quantity);
+        if (drawn != null && taken > 0) {
+            drawn.merge(lot.getExpiryDate(), taken, Integer::sum);
+        }
+        return taken;
+    }
+    
+    // Units in lots that expired before today; caller holds lots. Lots are
+    // ordered by expiry, so this is O(1) unless the earliest lot has expired.
+    private int expiredStock() {
+        StockLot earliest = lots.peek();
+        if (earliest == null || earliest.getExpiryDate() == null) {
+            return 0;
+        }
+        LocalDate today = LocalDate.now();
+        if (!earliest.isExpired(today)) {
+            return 0;
+        }
+        int expired = 0;
+        for (StockLot lot : lots) {
+            if (lot.isExpired(today)) {
+                expired += lot.getRemaining();
+            }
+        }
+        return expired;
+    }
+    
+    private void notifyLotAdded(StockLot lot) {
+        StockLevelListener listener = stockLevelListener;
+        if (listener != null && lot != null) {
+            listener.onLotAdded(this, lot);
+        }
+    }
+
+    private void notifyStockChanged(int delta) {
+        StockLevelListener listener = stockLevelListener;
+        if (listener != null && delta != 0) {
+            listener.onStockChanged(this, delta);
+        }
+    }
+
+    // Notifies the listener only when a change moves available stock across the alert level
+    private void checkThreshold(long before, long after) {
+        StockLevelListener listener = stockLevelListener;
+        if (listener == null) {
+            return;
+        }
+        int alert = lowStockAlert;
+        boolean wasLow = available(before) <= alert;
+        boolean isLow = available(after) <= alert;
+        if (wasLow != isLow) {
+            listener.onStockLevelChanged(this);
+        }
+    }
+
+    private static long pack(int onHand, int reserved) {
+        return ((long) onHand << 32) | (reserved & 0xFFFFFFFFL);
+    }
+
+    private static int onHand(long state) {
+        return (int) (state >>> 32);
+    }
+
+    private static int reserved(long state) {
+        return (int) state;
+    }
+
+    private static int available(long state) {
+        return onHand(state) - reserved(state);
+    }
 }
\ No newline at end of file
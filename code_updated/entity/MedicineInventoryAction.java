@@ -9,20 +9,20 @@ public class MedicineInventoryAction {
     private final int quantity;
     private final InventoryActionType actionType;
     private final LocalDateTime actionDateTime;
-    private final Administrator performedBy;
+    private final User performedBy;
     private final String reason;
 
     public MedicineInventoryAction(Medicine medicine, int quantity, 
                                  InventoryActionType actionType,
                                  LocalDateTime actionDateTime, 
-                                 Administrator performedBy) {
+                                 User performedBy) {
         this(medicine, quantity, actionType, actionDateTime, performedBy, null);
     }
 
     public MedicineInventoryAction(Medicine medicine, int quantity, 
                                  InventoryActionType actionType,
                                  LocalDateTime actionDateTime, 
-                                 Administrator performedBy,
+                                 User performedBy,
                                  String reason) {
         this.medicine = medicine;
         this.quantity = quantity;
@@ -48,7 +48,7 @@ public class MedicineInventoryAction {
         return actionDateTime;
     }
 
-    public Administrator getPerformedBy() {
+    public User getPerformedBy() {
         return performedBy;
     }
 
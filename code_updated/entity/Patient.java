@@ -1,12 +1,29 @@
 package entity;
+
+import util.OrdinalRegistry;
+
 public class Patient extends User {
-    private MedicalRecord medicalRecord; // Remove final modifier
+    private final int ordinal;
+    // Only set until the record is handed to MedicalRecordRepository
+    private MedicalRecord medicalRecord;
     
     public Patient(String hospitalId, String password, String name, MedicalRecord medicalRecord) {
         super(hospitalId, password, name);
+        this.ordinal = OrdinalRegistry.getInstance().register(OrdinalRegistry.Kind.PATIENT, hospitalId);
         this.medicalRecord = medicalRecord;
     }
     
+    /**
+     * Gets the dense ordinal assigned to this patient's ID
+     */
+    public int getOrdinal() {
+        return ordinal;
+    }
+    
+    /**
+     * Gets the record this patient was created with, or null once it has been
+     * handed to MedicalRecordRepository, which holds the current record
+     */
     public MedicalRecord getMedicalRecord() {
         return medicalRecord;
     }
@@ -2,37 +2,155 @@ package entity;
 
 import java.util.*;
 import java.time.LocalDateTime;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import entity.enums.*;
 
 public class Pharmacist extends User {
     private List<Medicine> dispensedMedications;
     private List<ReplenishmentRequest> replenishmentRequests;
+    private volatile PharmacyLocation location;
 
     public Pharmacist(String hospitalId, String password, String name) {
         super(hospitalId, password, name);
-        this.dispensedMedications = new ArrayList<>();
+        this.dispensedMedications = Collections.synchronizedList(new ArrayList<>());
         this.replenishmentRequests = new ArrayList<>();
+        this.location = PharmacyLocation.MAIN_PHARMACY;
     }
 
+    /**
+     * Gets the pharmacy location this pharmacist dispenses from
+     */
+    public PharmacyLocation getLocation() {
+        return location;
+    }
+
+    public void setLocation(PharmacyLocation location) {
+        if (location == null) {
+            throw new IllegalArgumentException("Location cannot be null");
+        }
+        this.location = location;
+    }
+
+    /**
+     * Dispenses a pending prescription: reserve stock, claim the prescription,
+     * then commit the reservation. If another pharmacist claims the
+     * prescription first, the reservation is aborted and stock is untouched.
+     */
     public boolean dispenseMedication(Prescription prescription) {
-        if (prescription.getStatus() != PrescriptionStatus.PENDING) {
+        return dispenseMedication(prescription, prescription.getMedicine());
+    }
+
+    /**
+     * Dispenses a pending prescription from the given stock of its medicine,
+     * e.g. the stock held at this pharmacist's location
+     */
+    public boolean dispenseMedication(Prescription prescription, Medicine medicine) {
+        if (prescription.getStatus() != PrescriptionStatus.PENDING || !isStockOf(medicine, prescription)) {
             return false;
         }
 
-        Medicine medicine = prescription.getMedicine();
-        if (!medicine.canFulfillQuantity(prescription.getQuantity())) {
+        StockReservation reservation = medicine.tryReserve(prescription.getQuantity());
+        if (reservation == null) {
             return false;
         }
 
-        medicine.updateStock(-prescription.getQuantity());
-        prescription.setStatus(PrescriptionStatus.DISPENSED);
-        prescription.setDispensedBy(this);
-        prescription.setDispensedDateTime(LocalDateTime.now());
+        if (!prescription.markDispensed(this, LocalDateTime.now())) {
+            reservation.abort();
+            return false;
+        }
+        reservation.commit();
         
         dispensedMedications.add(medicine);
         return true;
     }
 
+    /**
+     * Dispenses every pending prescription in the list as one unit.
+     * Quantities are totalled per stocked medicine and reserved in
+     * location-then-name order, so concurrent batches contend in a
+     * consistent order; if any
+     * reservation or claim fails, everything taken so far is rolled back
+     * and no stock or prescription is changed.
+     *
+     * @return the prescriptions dispensed, or an empty list if the batch failed
+     */
+    public List<Prescription> dispenseAll(List<Prescription> prescriptions) {
+        return dispenseAll(prescriptions, Prescription::getMedicine);
+    }
+
+    /**
+     * Dispenses every pending prescription in the list as one unit, taking
+     * each prescription's medicine from the stock stockFor returns for it
+     */
+    public List<Prescription> dispenseAll(List<Prescription> prescriptions, Function<Prescription, Medicine> stockFor) {
+        return dispenseAll(prescriptions, stockFor, claimed -> {});
+    }
+
+    /**
+     * Dispenses every pending prescription in the list as one unit, passing
+     * the claimed prescriptions to beforeCommit once every reservation and
+     * claim has succeeded but before stock leaves the shelf, e.g. to make the
+     * dispense durable. If beforeCommit throws, the batch is rolled back and
+     * the exception rethrown.
+     */
+    public List<Prescription> dispenseAll(List<Prescription> prescriptions, Function<Prescription, Medicine> stockFor,
+            Consumer<List<Prescription>> beforeCommit) {
+        List<Prescription> pending = prescriptions.stream()
+            .filter(p -> p.getStatus() == PrescriptionStatus.PENDING)
+            .toList();
+        if (pending.isEmpty()) {
+            return List.of();
+        }
+
+        // The same medicine is stocked as a separate Medicine at each location, so both parts make up the key
+        Map<Medicine, Integer> quantities = new TreeMap<>(
+            Comparator.comparing(Medicine::getLocation).thenComparing(Medicine::getName));
+        for (Prescription prescription : pending) {
+            Medicine medicine = stockFor.apply(prescription);
+            if (!isStockOf(medicine, prescription)) {
+                return List.of();
+            }
+            quantities.merge(medicine, prescription.getQuantity(), Integer::sum);
+        }
+
+        List<StockReservation> reservations = new ArrayList<>(quantities.size());
+        List<Prescription> claimed = new ArrayList<>(pending.size());
+        LocalDateTime now = LocalDateTime.now();
+        boolean committed = false;
+        try {
+            for (Map.Entry<Medicine, Integer> entry : quantities.entrySet()) {
+                StockReservation reservation = entry.getKey().tryReserve(entry.getValue());
+                if (reservation == null) {
+                    return List.of();
+                }
+                reservations.add(reservation);
+            }
+            for (Prescription prescription : pending) {
+                if (!prescription.markDispensed(this, now)) {
+                    return List.of();
+                }
+                claimed.add(prescription);
+            }
+            beforeCommit.accept(claimed);
+
+            reservations.forEach(StockReservation::commit);
+            committed = true;
+            dispensedMedications.addAll(quantities.keySet());
+            return claimed;
+        } finally {
+            // No-ops after a successful commit
+            reservations.forEach(StockReservation::abort);
+            if (!committed) {
+                claimed.forEach(p -> p.revertDispensed(this));
+            }
+        }
+    }
+
+    private static boolean isStockOf(Medicine medicine, Prescription prescription) {
+        return medicine != null && medicine.getName().equalsIgnoreCase(prescription.getMedicineName());
+    }
+
     public ReplenishmentRequest createReplenishmentRequest(Medicine medicine, int requestedQuantity) {
         if (medicine == null || requestedQuantity <= 0) {
             throw new IllegalArgumentException("Invalid medicine or quantity");
@@ -53,13 +171,17 @@ public class Pharmacist extends User {
             LocalDateTime.now()
         );
 
-        medicine.requestReplenishment();
+        if (!medicine.requestReplenishment()) {
+            throw new IllegalStateException("Replenishment already requested for this medicine");
+        }
         replenishmentRequests.add(request);
         return request;
     }
 
     public List<Medicine> getDispensedMedications() {
-        return new ArrayList<>(dispensedMedications);
+        synchronized (dispensedMedications) {
+            return new ArrayList<>(dispensedMedications);
+        }
     }
 
     public List<ReplenishmentRequest> getReplenishmentRequests() {
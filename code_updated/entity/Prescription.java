@@ -1,16 +1,28 @@
 // Prescription class
 package entity;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.time.LocalDateTime;
 
 import entity.enums.*;
 
 public class Prescription {
+    private static final VarHandle STATUS;
+
+    static {
+        try {
+            STATUS = MethodHandles.lookup().findVarHandle(Prescription.class, "status", PrescriptionStatus.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
     private final Medicine medicine; // Change from medicationName to Medicine
     private final int quantity;
-    private PrescriptionStatus status;
-    private Pharmacist dispensedBy;
-    private LocalDateTime dispensedDateTime;
+    private volatile PrescriptionStatus status;
+    private volatile Pharmacist dispensedBy;
+    private volatile LocalDateTime dispensedDateTime;
     
     public Prescription(Medicine medicine, int quantity) {
         this.medicine = medicine;
@@ -53,6 +65,33 @@ public class Prescription {
         this.status = status;
     }
     
+    /**
+     * Atomically moves a pending prescription to DISPENSED.
+     * Returns false if another pharmacist has already claimed it.
+     */
+    public boolean markDispensed(Pharmacist pharmacist, LocalDateTime dateTime) {
+        if (!STATUS.compareAndSet(this, PrescriptionStatus.PENDING, PrescriptionStatus.DISPENSED)) {
+            return false;
+        }
+        this.dispensedBy = pharmacist;
+        this.dispensedDateTime = dateTime;
+        return true;
+    }
+    
+    /**
+     * Returns a prescription claimed by markDispensed to PENDING when the
+     * batch it belonged to is rolled back
+     */
+    boolean revertDispensed(Pharmacist pharmacist) {
+        if (dispensedBy != pharmacist ||
+            !STATUS.compareAndSet(this, PrescriptionStatus.DISPENSED, PrescriptionStatus.PENDING)) {
+            return false;
+        }
+        this.dispensedBy = null;
+        this.dispensedDateTime = null;
+        return true;
+    }
+    
     // Add getters for new fields
     public Pharmacist getDispensedBy() {
         return dispensedBy;
@@ -5,6 +5,7 @@ import java.time.LocalDateTime;
 import entity.enums.ReplenishmentStatus;
 
 public class ReplenishmentRequest {
+    private String requestId;
     private final Medicine medicine;
     private final int requestedQuantity;
     private final Pharmacist requestedBy;
@@ -22,6 +23,14 @@ public class ReplenishmentRequest {
         this.status = ReplenishmentStatus.PENDING;
     }
 
+    public String getRequestId() {
+        return requestId;
+    }
+
+    public void setRequestId(String requestId) {
+        this.requestId = requestId;
+    }
+
     public Medicine getMedicine() {
         return medicine;
     }
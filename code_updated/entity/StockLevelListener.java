@@ -0,0 +1,21 @@
+package entity;
+
+/**
+ * Notified when a medicine's available stock crosses its low-stock alert
+ * level in either direction, or when the alert level itself changes.
+ * Implementations should re-read the medicine rather than trust the order
+ * in which concurrent notifications arrive.
+ */
+public interface StockLevelListener {
+    void onStockLevelChanged(Medicine medicine);
+
+    /**
+     * Called when a new lot has been added to a medicine's stock
+     */
+    default void onLotAdded(Medicine medicine, StockLot lot) {}
+
+    /**
+     * Called after every change to a medicine's on-hand stock, with the signed change
+     */
+    default void onStockChanged(Medicine medicine, int delta) {}
+}
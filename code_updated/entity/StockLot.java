@@ -0,0 +1,77 @@
+package entity;
+
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A quantity of one medicine received together and sharing an expiry date.
+ * A null expiry date means the lot does not expire (or its expiry is unknown);
+ * such lots are drawn from last. Remaining quantity is changed only by the
+ * owning Medicine while it holds its lot lock.
+ */
+public class StockLot {
+    /** Earliest expiry first; lots without expiry last; ties broken by receipt order */
+    public static final Comparator<StockLot> EARLIEST_EXPIRY_FIRST =
+        Comparator.comparing(StockLot::getExpiryDate, Comparator.nullsLast(Comparator.naturalOrder()))
+            .thenComparingLong(StockLot::getSequence);
+
+    private static final AtomicLong NEXT_SEQUENCE = new AtomicLong(1);
+
+    private final long sequence;
+    private final Medicine medicine;
+    private final LocalDate expiryDate;
+    private volatile int remaining;
+
+    StockLot(Medicine medicine, int quantity, LocalDate expiryDate) {
+        this.sequence = NEXT_SEQUENCE.getAndIncrement();
+        this.medicine = medicine;
+        this.expiryDate = expiryDate;
+        this.remaining = quantity;
+    }
+
+    public String getLotId() {
+        return "L" + sequence;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Medicine getMedicine() {
+        return medicine;
+    }
+
+    public LocalDate getExpiryDate() {
+        return expiryDate;
+    }
+
+    public int getRemaining() {
+        return remaining;
+    }
+
+    public boolean isDepleted() {
+        return remaining == 0;
+    }
+
+    public boolean isExpired(LocalDate today) {
+        return expiryDate != null && expiryDate.isBefore(today);
+    }
+
+    void add(int quantity) {
+        remaining += quantity;
+    }
+
+    // Returns how much was actually taken
+    int take(int quantity) {
+        int taken = Math.min(quantity, remaining);
+        remaining -= taken;
+        return taken;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Lot %s: %d remaining, expires %s", getLotId(), remaining,
+            expiryDate != null ? expiryDate : "never");
+    }
+}
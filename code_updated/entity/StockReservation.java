@@ -0,0 +1,53 @@
+package entity;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Stock set aside on a medicine for a dispense in progress.
+ * Exactly one of commit or abort takes effect; later calls are no-ops.
+ */
+public class StockReservation {
+    private final Medicine medicine;
+    private final int quantity;
+    private final AtomicBoolean settled;
+
+    StockReservation(Medicine medicine, int quantity) {
+        this.medicine = medicine;
+        this.quantity = quantity;
+        this.settled = new AtomicBoolean(false);
+    }
+
+    /**
+     * Removes the reserved quantity from stock
+     */
+    public boolean commit() {
+        if (!settled.compareAndSet(false, true)) {
+            return false;
+        }
+        medicine.commitReserved(quantity);
+        return true;
+    }
+
+    /**
+     * Returns the reserved quantity to available stock
+     */
+    public boolean abort() {
+        if (!settled.compareAndSet(false, true)) {
+            return false;
+        }
+        medicine.releaseReserved(quantity);
+        return true;
+    }
+
+    public Medicine getMedicine() {
+        return medicine;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public boolean isSettled() {
+        return settled.get();
+    }
+}
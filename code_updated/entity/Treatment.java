@@ -1,17 +1,25 @@
 package entity;
+
+import util.StringDictionary;
+
 public class Treatment {
-    private final String description;
+    // Code in the shared StringDictionary
+    private final int descriptionCode;
     
     public Treatment(String description) {
-        this.description = description;
+        this.descriptionCode = StringDictionary.getInstance().encode(description);
     }
     
     @Override
     public String toString() {
-        return description;
+        return getDescription();
     }
 
     public String getDescription() {
-        return description;
+        return StringDictionary.getInstance().decode(descriptionCode);
+    }
+
+    public int getDescriptionCode() {
+        return descriptionCode;
     }
 }
\ No newline at end of file
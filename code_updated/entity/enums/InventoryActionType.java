@@ -3,5 +3,8 @@ package entity.enums;
 public enum InventoryActionType {
     ADDITION,
     REDUCTION,
-    REPLENISHMENT
-}
\ No newline at end of file
+    REPLENISHMENT,
+    DISPENSE,
+    TRANSFER_OUT,
+    TRANSFER_IN
+}
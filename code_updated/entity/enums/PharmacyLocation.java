@@ -0,0 +1,19 @@
+package entity.enums;
+
+public enum PharmacyLocation {
+    MAIN_PHARMACY("Main Pharmacy"),
+    SATELLITE_1("Satellite Dispensary 1"),
+    SATELLITE_2("Satellite Dispensary 2"),
+    SATELLITE_3("Satellite Dispensary 3");
+
+    private final String display;
+
+    PharmacyLocation(String display) {
+        this.display = display;
+    }
+
+    @Override
+    public String toString() {
+        return display;
+    }
+}
@@ -0,0 +1,153 @@
+package repository;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import entity.Appointment;
+import entity.enums.AppointmentStatus;
+
+/**
+ * Per-patient counters of pending and confirmed future appointments.
+ * Counters are maintained from appointment lifecycle events; appointments
+ * whose time has passed roll out of the count lazily on the next access.
+ * Each patient's counter is its own lock, so quota checks and reservations
+ * for different patients never contend.
+ */
+public class ActiveAppointmentIndex implements AppointmentListener {
+    private final Map<String, PatientCounter> counters = new ConcurrentHashMap<>();
+
+    ActiveAppointmentIndex() {}
+
+    @Override
+    public void onAppointmentBooked(Appointment appointment) {
+        if (isActiveStatus(appointment.getStatus())) {
+            counterFor(appointment).add(appointment.getAppointmentId(), appointment.getDateTime());
+        }
+    }
+
+    @Override
+    public void onStatusChanged(Appointment appointment, AppointmentStatus previousStatus) {
+        boolean wasActive = isActiveStatus(previousStatus);
+        boolean isActive = isActiveStatus(appointment.getStatus());
+        if (wasActive && !isActive) {
+            counterFor(appointment).remove(appointment.getAppointmentId());
+        } else if (!wasActive && isActive) {
+            counterFor(appointment).add(appointment.getAppointmentId(), appointment.getDateTime());
+        }
+    }
+
+    @Override
+    public void onAppointmentRescheduled(Appointment appointment, LocalDateTime previousDateTime) {
+        if (isActiveStatus(appointment.getStatus())) {
+            counterFor(appointment).move(appointment.getAppointmentId(), appointment.getDateTime());
+        }
+    }
+
+    @Override
+    public void onAppointmentRemoved(Appointment appointment) {
+        PatientCounter counter = counters.get(appointment.getPatient().getHospitalId());
+        if (counter != null) {
+            counter.remove(appointment.getAppointmentId());
+        }
+    }
+
+    @Override
+    public void onCleared() {
+        counters.clear();
+    }
+
+    /**
+     * Counts the patient's pending and confirmed appointments that are still in the future
+     */
+    public int count(String patientId) {
+        PatientCounter counter = counters.get(patientId);
+        return counter == null ? 0 : counter.count(LocalDateTime.now());
+    }
+
+    /**
+     * Atomically reserves room for one more active appointment if the patient
+     * is below the limit. Every successful reservation must be released once
+     * the booking has been stored or abandoned.
+     */
+    public boolean tryReserve(String patientId, int limit) {
+        return counters.computeIfAbsent(patientId, id -> new PatientCounter())
+            .tryReserve(limit, LocalDateTime.now());
+    }
+
+    public void release(String patientId) {
+        PatientCounter counter = counters.get(patientId);
+        if (counter != null) {
+            counter.release();
+        }
+    }
+
+    private PatientCounter counterFor(Appointment appointment) {
+        return counters.computeIfAbsent(appointment.getPatient().getHospitalId(), id -> new PatientCounter());
+    }
+
+    private static boolean isActiveStatus(AppointmentStatus status) {
+        return status == AppointmentStatus.PENDING_APPROVAL || status == AppointmentStatus.CONFIRMED;
+    }
+
+    private static class PatientCounter {
+        private final TreeMap<LocalDateTime, Set<String>> byTime = new TreeMap<>();
+        private final Map<String, LocalDateTime> timeById = new HashMap<>();
+        private int reserved;
+
+        synchronized void add(String appointmentId, LocalDateTime dateTime) {
+            if (timeById.containsKey(appointmentId) || !dateTime.isAfter(LocalDateTime.now())) {
+                return;
+            }
+            timeById.put(appointmentId, dateTime);
+            byTime.computeIfAbsent(dateTime, t -> new HashSet<>()).add(appointmentId);
+        }
+
+        synchronized void remove(String appointmentId) {
+            LocalDateTime dateTime = timeById.remove(appointmentId);
+            if (dateTime != null) {
+                Set<String> ids = byTime.get(dateTime);
+                ids.remove(appointmentId);
+                if (ids.isEmpty()) {
+                    byTime.remove(dateTime);
+                }
+            }
+        }
+
+        synchronized void move(String appointmentId, LocalDateTime newDateTime) {
+            remove(appointmentId);
+            add(appointmentId, newDateTime);
+        }
+
+        synchronized int count(LocalDateTime now) {
+            expire(now);
+            return timeById.size();
+        }
+
+        synchronized boolean tryReserve(int limit, LocalDateTime now) {
+            expire(now);
+            if (timeById.size() + reserved >= limit) {
+                return false;
+            }
+            reserved++;
+            return true;
+        }
+
+        synchronized void release() {
+            if (reserved > 0) {
+                reserved--;
+            }
+        }
+
+        // Drops appointments whose start time is no longer in the future
+        private void expire(LocalDateTime now) {
+            while (!byTime.isEmpty() && !byTime.firstKey().isAfter(now)) {
+                byTime.pollFirstEntry().getValue().forEach(timeById::remove);
+            }
+        }
+    }
+}
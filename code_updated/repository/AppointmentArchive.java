@@ -0,0 +1,637 @@
+package repository;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import entity.Appointment;
+import entity.AppointmentOutcomeRecord;
+import entity.Doctor;
+import entity.Medicine;
+import entity.Patient;
+import entity.Pharmacist;
+import entity.Prescription;
+import entity.User;
+import entity.enums.AppointmentStatus;
+import entity.enums.PharmacyLocation;
+import entity.enums.PrescriptionStatus;
+import util.StringDictionary;
+
+/**
+ * Disk tier for closed appointments, in immutable segment files partitioned
+ * by calendar month. Each archiving run writes one new segment per month it
+ * touches, with rows sorted by time and deflated in blocks of BLOCK_ROWS.
+ * A segment ends with a sparse index giving each block's time range and file
+ * position; only these indexes are kept on heap, so a date query inflates
+ * just the blocks that overlap it. Lookups by patient, doctor or ID inflate
+ * every block. Each block starts with a table of the strings its rows
+ * repeat, such as patient and doctor IDs, service types and medicine names,
+ * and rows refer to them by code. Patients, doctors, medicines and
+ * pharmacists are stored by ID and resolved from their repositories when
+ * rows are read back; a row whose patient or doctor no longer exists is
+ * skipped, as is a prescription whose medicine is no longer stocked. Times
+ * are kept to the second.
+ */
+class AppointmentArchive {
+    static final int BLOCK_ROWS = 256;
+
+    // Segments written before blocks carried a string table used 0x484D5341
+    private static final int MAGIC = 0x484D5342;
+    private static final String SEGMENT_PREFIX = "appointments-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final AppointmentStatus[] STATUSES = AppointmentStatus.values();
+
+    private final Path directory;
+    private final NavigableMap<YearMonth, List<Segment>> partitions;
+    private int nextSegmentNumber;
+    private int highestIdNumber;
+
+    private AppointmentArchive(Path directory) {
+        this.directory = directory;
+        this.partitions = new ConcurrentSkipListMap<>();
+    }
+
+    /**
+     * Opens the archive in a directory, loading the index of every segment already there
+     */
+    static AppointmentArchive open(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        AppointmentArchive archive = new AppointmentArchive(directory);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                Segment segment = Segment.load(file);
+                archive.partitions.computeIfAbsent(segment.month, month -> new CopyOnWriteArrayList<>()).add(segment);
+                archive.nextSegmentNumber = Math.max(archive.nextSegmentNumber, segment.number + 1);
+                archive.highestIdNumber = Math.max(archive.highestIdNumber, segment.highestIdNumber);
+            }
+        }
+        return archive;
+    }
+
+    /**
+     * Writes closed appointments to new segments, one per month
+     */
+    synchronized void append(List<Appointment> appointments) throws IOException {
+        Map<YearMonth, List<Appointment>> byMonth = new ConcurrentSkipListMap<>();
+        for (Appointment appointment : appointments) {
+            byMonth.computeIfAbsent(YearMonth.from(appointment.getDateTime()), month -> new ArrayList<>())
+                .add(appointment);
+        }
+        for (Map.Entry<YearMonth, List<Appointment>> entry : byMonth.entrySet()) {
+            List<Appointment> rows = entry.getValue();
+            rows.sort(Comparator.comparing(Appointment::getDateTime));
+            Segment segment = writeSegment(entry.getKey(), nextSegmentNumber, rows);
+            nextSegmentNumber++;
+            highestIdNumber = Math.max(highestIdNumber, segment.highestIdNumber);
+            partitions.computeIfAbsent(segment.month, month -> new CopyOnWriteArrayList<>()).add(segment);
+        }
+    }
+
+    /**
+     * Gets the highest numeric suffix of any archived appointment ID, so new IDs can start above it
+     */
+    synchronized int getHighestIdNumber() {
+        return highestIdNumber;
+    }
+
+    /**
+     * Reads appointments starting on or after from and before to
+     */
+    List<Appointment> findBetween(LocalDateTime from, LocalDateTime to) {
+        List<Appointment> result = new ArrayList<>();
+        long first = toEpochSecond(from);
+        long end = toEpochSecond(to);
+        for (List<Segment> segments : partitions.subMap(YearMonth.from(from), true, YearMonth.from(to), true).values()) {
+            for (Segment segment : segments) {
+                segment.scan(first, end, row -> true, result::add);
+            }
+        }
+        return result;
+    }
+
+    List<Appointment> findByPatient(String patientId) {
+        List<Appointment> result = new ArrayList<>();
+        scanAll(row -> row.patientId.equals(patientId), result::add);
+        return result;
+    }
+
+    List<Appointment> findByDoctor(String doctorId) {
+        List<Appointment> result = new ArrayList<>();
+        scanAll(row -> row.doctorId.equals(doctorId), result::add);
+        return result;
+    }
+
+    List<Appointment> findByStatus(AppointmentStatus status) {
+        List<Appointment> result = new ArrayList<>();
+        scanAll(row -> row.status == status, result::add);
+        return result;
+    }
+
+    Optional<Appointment> find(String appointmentId) {
+        List<Appointment> result = new ArrayList<>(1);
+        scanAll(row -> row.appointmentId.equals(appointmentId), result::add);
+        return result.stream().findFirst();
+    }
+
+    void forEach(Consumer<Appointment> visitor) {
+        scanAll(row -> true, visitor);
+    }
+
+    /**
+     * Visits every archived row without materializing it. The row is reused
+     * between calls, so the visitor must not keep it.
+     */
+    void forEachRow(Consumer<ArchivedRow> visitor) {
+        for (List<Segment> segments : partitions.values()) {
+            for (Segment segment : segments) {
+                segment.scanRows(visitor);
+            }
+        }
+    }
+
+    int countSegments() {
+        return partitions.values().stream().mapToInt(List::size).sum();
+    }
+
+    private void scanAll(RowFilter filter, Consumer<Appointment> sink) {
+        for (List<Segment> segments : partitions.values()) {
+            for (Segment segment : segments) {
+                segment.scan(Long.MIN_VALUE, Long.MAX_VALUE, filter, sink);
+            }
+        }
+    }
+
+    // Writes to a temporary file first so a segment only appears once complete
+    private Segment writeSegment(YearMonth month, int number, List<Appointment> rows) throws IOException {
+        Path file = directory.resolve(String.format("%s%s-%04d%s", SEGMENT_PREFIX, month, number, SEGMENT_SUFFIX));
+        Path temporary = directory.resolve(file.getFileName() + ".tmp");
+        List<BlockIndex> blocks = new ArrayList<>();
+        int highest = 0;
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long position = 0;
+            for (int start = 0; start < rows.size(); start += BLOCK_ROWS) {
+                List<Appointment> block = rows.subList(start, Math.min(start + BLOCK_ROWS, rows.size()));
+                StringDictionary strings = new StringDictionary();
+                ByteArrayOutputStream rowBytes = new ByteArrayOutputStream();
+                DataOutputStream rowOut = new DataOutputStream(rowBytes);
+                for (Appointment appointment : block) {
+                    writeRow(rowOut, appointment, strings);
+                    highest = Math.max(highest, parseIdNumber(appointment.getAppointmentId()));
+                }
+                // The table is only complete once every row is encoded, so it is written ahead of them here
+                ByteArrayOutputStream raw = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(raw);
+                writeStrings(out, strings);
+                rowBytes.writeTo(out);
+                out.flush();
+                byte[] compressed = deflate(raw.toByteArray());
+                position += writeFully(channel, ByteBuffer.wrap(compressed));
+                blocks.add(new BlockIndex(
+                    toEpochSecond(block.get(0).getDateTime()),
+                    toEpochSecond(block.get(block.size() - 1).getDateTime()),
+                    position - compressed.length, compressed.length, raw.size()));
+            }
+
+            ByteArrayOutputStream footer = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(footer);
+            out.writeUTF(month.toString());
+            out.writeInt(number);
+            out.writeInt(highest);
+            out.writeInt(blocks.size());
+            for (BlockIndex block : blocks) {
+                out.writeLong(block.firstSecond);
+                out.writeLong(block.lastSecond);
+                out.writeLong(block.offset);
+                out.writeInt(block.compressedLength);
+                out.writeInt(block.rawLength);
+            }
+            out.writeLong(position);
+            out.writeInt(MAGIC);
+            writeFully(channel, ByteBuffer.wrap(footer.toByteArray()));
+            channel.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+        return new Segment(file, month, number, highest, blocks);
+    }
+
+    private static void writeRow(DataOutputStream out, Appointment appointment, StringDictionary strings)
+            throws IOException {
+        out.writeUTF(appointment.getAppointmentId());
+        writeVarInt(out, strings.encode(appointment.getPatient().getHospitalId()));
+        writeVarInt(out, strings.encode(appointment.getDoctor().getHospitalId()));
+        out.writeLong(toEpochSecond(appointment.getDateTime()));
+        out.writeByte(appointment.getStatus().ordinal());
+
+        // The outcome is length-prefixed so rows that do not match a filter can skip it
+        AppointmentOutcomeRecord outcome = appointment.getOutcomeRecord();
+        if (outcome == null) {
+            out.writeInt(-1);
+            return;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream outcomeOut = new DataOutputStream(bytes);
+        writeOutcome(outcomeOut, outcome, strings);
+        outcomeOut.flush();
+        out.writeInt(bytes.size());
+        bytes.writeTo(out);
+    }
+
+    /**
+     * Serializes an outcome record on its own, including its prescriptions'
+     * dispensing state, with a string table of its own ahead of it
+     */
+    static byte[] encodeOutcome(AppointmentOutcomeRecord outcome) throws IOException {
+        StringDictionary strings = new StringDictionary();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream bodyOut = new DataOutputStream(body);
+        writeOutcome(bodyOut, outcome, strings);
+        bodyOut.flush();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeStrings(out, strings);
+        body.writeTo(out);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads back an outcome record written by encodeOutcome; prescriptions for
+     * medicines no longer stocked are dropped
+     */
+    static AppointmentOutcomeRecord readOutcome(byte[] bytes) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        String[] strings = readStrings(in);
+        return readOutcome(in, strings);
+    }
+
+    private static void writeOutcome(DataOutputStream out, AppointmentOutcomeRecord outcome,
+            StringDictionary strings) throws IOException {
+        out.writeLong(outcome.getAppointmentDate().toEpochDay());
+        writeVarInt(out, strings.encode(outcome.getServiceType()));
+        writeNullable(out, outcome.getConsultationNotes());
+        writeVarInt(out, outcome.getPrescriptions().size());
+        for (Prescription prescription : outcome.getPrescriptions()) {
+            writeVarInt(out, strings.encode(prescription.getMedicine().getName()));
+            writeVarInt(out, strings.encode(prescription.getMedicine().getLocation().name()));
+            out.writeInt(prescription.getQuantity());
+            writeVarInt(out, strings.encode(prescription.getStatus().name()));
+            // Zero stands for no pharmacist, so codes are shifted up by one
+            writeVarInt(out, prescription.getDispensedBy() == null
+                ? 0 : strings.encode(prescription.getDispensedBy().getHospitalId()) + 1);
+            writeNullable(out, prescription.getDispensedDateTime() == null
+                ? null : prescription.getDispensedDateTime().toString());
+        }
+    }
+
+    private static AppointmentOutcomeRecord readOutcome(DataInputStream in, String[] strings) throws IOException {
+        LocalDate date = LocalDate.ofEpochDay(in.readLong());
+        String serviceType = strings[readVarInt(in)];
+        String notes = readNullable(in);
+        int count = readVarInt(in);
+        List<Prescription> prescriptions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String medicineName = strings[readVarInt(in)];
+            PharmacyLocation location = PharmacyLocation.valueOf(strings[readVarInt(in)]);
+            int quantity = in.readInt();
+            PrescriptionStatus status = PrescriptionStatus.valueOf(strings[readVarInt(in)]);
+            int dispensedByCode = readVarInt(in);
+            String dispensedBy = dispensedByCode == 0 ? null : strings[dispensedByCode - 1];
+            String dispensedAt = readNullable(in);
+            Optional<Medicine> medicine = MedicineRepository.getInstance(location).findById(medicineName);
+            if (medicine.isEmpty()) {
+                continue;
+            }
+            Prescription prescription = new Prescription(medicine.get(), quantity);
+            prescription.setStatus(status);
+            if (dispensedBy != null) {
+                StaffRepository.getInstance().findById(dispensedBy)
+                    .filter(Pharmacist.class::isInstance)
+                    .ifPresent(user -> prescription.setDispensedBy((Pharmacist) user));
+            }
+            if (dispensedAt != null) {
+                prescription.setDispensedDateTime(LocalDateTime.parse(dispensedAt));
+            }
+            prescriptions.add(prescription);
+        }
+        return new AppointmentOutcomeRecord(date, serviceType, prescriptions, notes);
+    }
+
+    private static void writeStrings(DataOutputStream out, StringDictionary strings) throws IOException {
+        List<String> table = strings.getAll();
+        writeVarInt(out, table.size());
+        for (String value : table) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String[] readStrings(DataInputStream in) throws IOException {
+        String[] table = new String[readVarInt(in)];
+        for (int code = 0; code < table.length; code++) {
+            table[code] = in.readUTF();
+        }
+        return table;
+    }
+
+    // Codes are small, so they take one or two bytes seven bits at a time rather than four
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < Integer.SIZE; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed appointment archive code");
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 2 + 64);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] compressed, int rawLength) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            byte[] raw = new byte[rawLength];
+            int filled = 0;
+            while (filled < rawLength && !inflater.finished()) {
+                filled += inflater.inflate(raw, filled, rawLength - filled);
+            }
+            return raw;
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt appointment archive block", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static int writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        int written = 0;
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer);
+        }
+        return written;
+    }
+
+    private static long toEpochSecond(LocalDateTime dateTime) {
+        return dateTime.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    private static int parseIdNumber(String appointmentId) {
+        try {
+            return Integer.parseInt(appointmentId.substring(1));
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            return 0;
+        }
+    }
+
+    private interface RowFilter {
+        boolean test(RowHeader row);
+    }
+
+    private interface RowSink {
+        void accept(RowHeader row, byte[] outcome) throws IOException;
+    }
+
+    /**
+     * The stored fields of an archived row, read without resolving its patient or doctor
+     */
+    interface ArchivedRow {
+        String getAppointmentId();
+        String getPatientId();
+        String getDoctorId();
+        LocalDateTime getDateTime();
+        AppointmentStatus getStatus();
+        boolean hasOutcome();
+    }
+
+    private static class RowHeader implements ArchivedRow {
+        private String[] strings;
+        private String appointmentId;
+        private String patientId;
+        private String doctorId;
+        private long epochSecond;
+        private AppointmentStatus status;
+        private boolean hasOutcome;
+
+        @Override
+        public String getAppointmentId() {
+            return appointmentId;
+        }
+
+        @Override
+        public String getPatientId() {
+            return patientId;
+        }
+
+        @Override
+        public String getDoctorId() {
+            return doctorId;
+        }
+
+        @Override
+        public LocalDateTime getDateTime() {
+            return LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC);
+        }
+
+        @Override
+        public AppointmentStatus getStatus() {
+            return status;
+        }
+
+        @Override
+        public boolean hasOutcome() {
+            return hasOutcome;
+        }
+    }
+
+    private static class BlockIndex {
+        private final long firstSecond;
+        private final long lastSecond;
+        private final long offset;
+        private final int compressedLength;
+        private final int rawLength;
+
+        private BlockIndex(long firstSecond, long lastSecond, long offset, int compressedLength, int rawLength) {
+            this.firstSecond = firstSecond;
+            this.lastSecond = lastSecond;
+            this.offset = offset;
+            this.compressedLength = compressedLength;
+            this.rawLength = rawLength;
+        }
+    }
+
+    private static class Segment {
+        private final Path file;
+        private final YearMonth month;
+        private final int number;
+        private final int highestIdNumber;
+        private final List<BlockIndex> blocks;
+
+        private Segment(Path file, YearMonth month, int number, int highestIdNumber, List<BlockIndex> blocks) {
+            this.file = file;
+            this.month = month;
+            this.number = number;
+            this.highestIdNumber = highestIdNumber;
+            this.blocks = blocks;
+        }
+
+        // Reads only the footer; the trailer holds the footer's position and the magic number
+        static Segment load(Path file) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                long size = channel.size();
+                ByteBuffer trailer = ByteBuffer.allocate(Long.BYTES + Integer.BYTES);
+                channel.read(trailer, size - trailer.capacity());
+                trailer.flip();
+                long footerOffset = trailer.getLong();
+                if (trailer.getInt() != MAGIC) {
+                    throw new IOException("Not an appointment archive segment: " + file);
+                }
+                ByteBuffer footer = ByteBuffer.allocate((int) (size - trailer.capacity() - footerOffset));
+                channel.read(footer, footerOffset);
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(footer.array()));
+                YearMonth month = YearMonth.parse(in.readUTF());
+                int number = in.readInt();
+                int highest = in.readInt();
+                int count = in.readInt();
+                List<BlockIndex> blocks = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    blocks.add(new BlockIndex(in.readLong(), in.readLong(), in.readLong(), in.readInt(), in.readInt()));
+                }
+                return new Segment(file, month, number, highest, blocks);
+            }
+        }
+
+        // Inflates the blocks overlapping [first, end) and materializes the rows that pass the filter
+        void scan(long first, long end, RowFilter filter, Consumer<Appointment> sink) {
+            readRows(first, end, filter, (row, outcome) -> {
+                Appointment appointment = materialize(row, outcome);
+                if (appointment != null) {
+                    sink.accept(appointment);
+                }
+            });
+        }
+
+        void scanRows(Consumer<ArchivedRow> visitor) {
+            // Rejecting every row after visiting it skips the outcomes unread
+            readRows(Long.MIN_VALUE, Long.MAX_VALUE, row -> {
+                visitor.accept(row);
+                return false;
+            }, (row, outcome) -> {});
+        }
+
+        private void readRows(long first, long end, RowFilter filter, RowSink sink) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                for (BlockIndex block : blocks) {
+                    if (block.lastSecond < first || block.firstSecond >= end) {
+                        continue;
+                    }
+                    ByteBuffer compressed = ByteBuffer.allocate(block.compressedLength);
+                    while (compressed.hasRemaining()) {
+                        if (channel.read(compressed, block.offset + compressed.position()) < 0) {
+                            throw new IOException("Truncated appointment archive segment: " + file);
+                        }
+                    }
+                    DataInputStream in = new DataInputStream(
+                        new ByteArrayInputStream(inflate(compressed.array(), block.rawLength)));
+                    RowHeader row = new RowHeader();
+                    row.strings = readStrings(in);
+                    while (in.available() > 0) {
+                        row.appointmentId = in.readUTF();
+                        row.patientId = row.strings[readVarInt(in)];
+                        row.doctorId = row.strings[readVarInt(in)];
+                        row.epochSecond = in.readLong();
+                        row.status = STATUSES[in.readByte()];
+                        int outcomeLength = in.readInt();
+                        row.hasOutcome = outcomeLength >= 0;
+                        boolean wanted = row.epochSecond >= first && row.epochSecond < end && filter.test(row);
+                        if (!wanted) {
+                            in.skipNBytes(Math.max(outcomeLength, 0));
+                            continue;
+                        }
+                        sink.accept(row, outcomeLength < 0 ? null : in.readNBytes(outcomeLength));
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read appointment archive " + file, e);
+            }
+        }
+
+        private static Appointment materialize(RowHeader row, byte[] outcome) throws IOException {
+            Optional<Patient> patient = PatientRepository.getInstance().findById(row.patientId);
+            Optional<User> doctor = StaffRepository.getInstance().findById(row.doctorId)
+                .filter(Doctor.class::isInstance);
+            if (patient.isEmpty() || doctor.isEmpty()) {
+                return null;
+            }
+            Appointment appointment = new Appointment(row.appointmentId, patient.get(), (Doctor) doctor.get(),
+                LocalDateTime.ofEpochSecond(row.epochSecond, 0, ZoneOffset.UTC));
+            appointment.setStatus(row.status);
+            if (outcome != null) {
+                appointment.setOutcomeRecord(
+                    readOutcome(new DataInputStream(new ByteArrayInputStream(outcome)), row.strings));
+            }
+            return appointment;
+        }
+    }
+}
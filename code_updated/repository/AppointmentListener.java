@@ -0,0 +1,48 @@
+package repository;
+
+import java.time.LocalDateTime;
+
+import entity.Appointment;
+import entity.enums.AppointmentStatus;
+
+/**
+ * Receives appointment lifecycle events from AppointmentRepository.
+ * Implementations keep derived indexes in step with the live appointment map.
+ */
+public interface AppointmentListener {
+    /**
+     * Called after a new appointment has been stored
+     */
+    default void onAppointmentBooked(Appointment appointment) {}
+
+    /**
+     * Called after an appointment has moved from previousStatus to its current status
+     */
+    default void onStatusChanged(Appointment appointment, AppointmentStatus previousStatus) {}
+
+    /**
+     * Called after an appointment has been moved away from previousDateTime
+     */
+    default void onAppointmentRescheduled(Appointment appointment, LocalDateTime previousDateTime) {}
+
+    /**
+     * Called after an outcome record has been attached to a completed appointment
+     */
+    default void onOutcomeRecorded(Appointment appointment) {}
+
+    /**
+     * Called after an appointment has been removed from the repository
+     */
+    default void onAppointmentRemoved(Appointment appointment) {}
+
+    /**
+     * Called after a finished appointment has been moved from the live map to
+     * compact or archived history; it is still stored and queryable, only no longer live
+     */
+    default void onAppointmentCompacted(Appointment appointment) {}
+
+    /**
+     * Called after all appointments have been cleared
+     */
+    default void onCleared() {}
+}
@@ -2,19 +2,59 @@ package repository;
 
 import entity.*;
 import entity.enums.AppointmentStatus;
+import entity.enums.PrescriptionStatus;
+import util.OrdinalRegistry;
+import util.Page;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.time.*;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class AppointmentRepository implements Repository<Appointment, String> {
+    // Change types of outcome and dispense records in the transaction log
+    private static final String OUTCOME_CHANGE = "OUTCOME";
+    private static final String DISPENSE_CHANGE = "DISPENSE";
+    
     private final Map<String, Appointment> appointments;
+    private final List<AppointmentListener> listeners;
+    private final CareRelationshipIndex careRelationships;
+    private final ActiveAppointmentIndex activeAppointments;
+    private final OutcomeHistoryIndex outcomeHistory;
+    private final DoctorScheduleIndex doctorSchedules;
+    private final CompactAppointmentStore history;
+    // IDs saved back or deleted after being archived; their archived rows are ignored
+    private final Set<String> withdrawnFromArchive;
+    private volatile AppointmentArchive archive;
     private static AppointmentRepository instance;
     private int nextAppointmentNumber = 1;
     
     private AppointmentRepository() {
         this.appointments = new ConcurrentHashMap<>();
+        this.listeners = new CopyOnWriteArrayList<>();
+        this.careRelationships = new CareRelationshipIndex();
+        this.activeAppointments = new ActiveAppointmentIndex();
+        this.outcomeHistory = new OutcomeHistoryIndex(
+            id -> findById(id).map(Appointment::getOutcomeRecord).orElse(null));
+        this.doctorSchedules = DoctorScheduleIndex.getInstance();
+        this.history = new CompactAppointmentStore();
+        this.withdrawnFromArchive = ConcurrentHashMap.newKeySet();
+        addListener(careRelationships);
+        addListener(activeAppointments);
+        addListener(outcomeHistory);
+        addListener(doctorSchedules);
+        addListener(PrescriptionQueue.getInstance());
+        // Once an appointment leaves memory for the archive, its outcome and dispenses no longer need the log
+        TransactionManager.getInstance().registerRedoHandler(OUTCOME_CHANGE, this::redoOutcome,
+            fields -> appointments.containsKey(fields.get(0)) || history.contains(fields.get(0)));
+        TransactionManager.getInstance().registerRedoHandler(DISPENSE_CHANGE, this::redoDispense,
+            fields -> appointments.containsKey(fields.get(0)) || history.contains(fields.get(0)));
     }
     
     public static AppointmentRepository getInstance() {
@@ -24,6 +64,20 @@ public class AppointmentRepository implements Repository<Appointment, String> {
         return instance;
     }
     
+    /**
+     * Registers a listener for appointment lifecycle events
+     */
+    public void addListener(AppointmentListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("Listener cannot be null");
+        }
+        listeners.add(listener);
+    }
+    
+    public void removeListener(AppointmentListener listener) {
+        listeners.remove(listener);
+    }
+    
     /**
      * Generates a unique appointment ID
      */
@@ -31,7 +85,7 @@ public class AppointmentRepository implements Repository<Appointment, String> {
         String appointmentId;
         do {
             appointmentId = "A" + String.format("%05d", nextAppointmentNumber++);
-        } while (appointments.containsKey(appointmentId));
+        } while (appointments.containsKey(appointmentId) || history.contains(appointmentId));
         return appointmentId;
     }
     
@@ -50,35 +104,419 @@ public class AppointmentRepository implements Repository<Appointment, String> {
                 appointment.getDateTime()
             );
         }
-        appointments.put(appointment.getAppointmentId(), appointment);
+        Appointment previous = appointments.put(appointment.getAppointmentId(), appointment);
+        if (previous == null) {
+            // Saving a compacted or archived appointment moves it back to the live map
+            previous = history.remove(appointment.getAppointmentId());
+            if (mayBeArchived(appointment.getAppointmentId()) &&
+                withdrawnFromArchive.add(appointment.getAppointmentId()) && previous == null) {
+                // The archived row stops counting towards the indexes once the appointment is back
+                previous = findInArchive(appointment.getAppointmentId()).orElse(null);
+            }
+        }
+        if (previous != appointment) {
+            if (previous != null) {
+                fireRemoved(previous);
+            }
+            for (AppointmentListener listener : listeners) {
+                listener.onAppointmentBooked(appointment);
+            }
+        }
         return appointment;
     }
     
+    /**
+     * Changes an appointment's status and notifies listeners of the transition
+     */
+    public void updateStatus(Appointment appointment, AppointmentStatus status) {
+        AppointmentStatus previousStatus;
+        synchronized (appointment) {
+            previousStatus = appointment.getStatus();
+            if (previousStatus == status) {
+                return;
+            }
+            appointment.setStatus(status);
+        }
+        for (AppointmentListener listener : listeners) {
+            listener.onStatusChanged(appointment, previousStatus);
+        }
+    }
+    
+    /**
+     * Moves an appointment to a new date/time and notifies listeners
+     */
+    public void reschedule(Appointment appointment, LocalDateTime newDateTime) {
+        LocalDateTime previousDateTime;
+        synchronized (appointment) {
+            previousDateTime = appointment.getDateTime();
+            if (previousDateTime.equals(newDateTime)) {
+                return;
+            }
+            appointment.setDateTime(newDateTime);
+        }
+        for (AppointmentListener listener : listeners) {
+            listener.onAppointmentRescheduled(appointment, previousDateTime);
+        }
+    }
+    
+    /**
+     * Attaches an outcome record, marks the appointment completed and notifies listeners
+     */
+    public void recordOutcome(Appointment appointment, AppointmentOutcomeRecord outcome) {
+        appointment.setOutcomeRecord(outcome);
+        updateStatus(appointment, AppointmentStatus.COMPLETED);
+        for (AppointmentListener listener : listeners) {
+            listener.onOutcomeRecorded(appointment);
+        }
+    }
+    
+    /**
+     * Records an outcome as part of a transaction. Nothing changes until the
+     * transaction commits, after which the outcome is applied as recordOutcome
+     * would and the appointment saved. The commit record carries the whole
+     * appointment, so replaying it after a restart brings the appointment back.
+     */
+    public void recordOutcome(Appointment appointment, AppointmentOutcomeRecord outcome,
+                              TransactionManager.Transaction transaction) {
+        byte[] encoded;
+        try {
+            encoded = AppointmentArchive.encodeOutcome(outcome);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to encode outcome record: " + e.getMessage(), e);
+        }
+        transaction.onCommit(OUTCOME_CHANGE,
+            List.of(appointment.getAppointmentId(), appointment.getPatient().getHospitalId(),
+                appointment.getDoctor().getHospitalId(), appointment.getDateTime().toString(),
+                Base64.getEncoder().encodeToString(encoded)),
+            () -> {
+                recordOutcome(appointment, outcome);
+                save(appointment);
+            });
+    }
+    
+    // Reapplies a committed outcome after a restart, re-creating the appointment if it was only in memory
+    private void redoOutcome(List<String> fields) {
+        String id = fields.get(0);
+        Appointment appointment = appointments.get(id);
+        if (appointment == null) {
+            // A compacted or archived appointment is already closed
+            if (exists(id)) {
+                return;
+            }
+            Optional<Patient> patient = PatientRepository.getInstance().findById(fields.get(1));
+            Optional<User> doctor = StaffRepository.getInstance().findById(fields.get(2))
+                .filter(Doctor.class::isInstance);
+            if (patient.isEmpty() || doctor.isEmpty()) {
+                return;
+            }
+            appointment = save(new Appointment(id, patient.get(), (Doctor) doctor.get(),
+                LocalDateTime.parse(fields.get(3))));
+            updateStatus(appointment, AppointmentStatus.CONFIRMED);
+        }
+        if (appointment.getStatus() != AppointmentStatus.CONFIRMED) {
+            return;
+        }
+        try {
+            recordOutcome(appointment, AppointmentArchive.readOutcome(Base64.getDecoder().decode(fields.get(4))));
+        } catch (IOException e) {
+            throw new IllegalStateException("Corrupt outcome record for " + id, e);
+        }
+    }
+    
+    /**
+     * Records prescriptions of an appointment's outcome as dispensed, as part
+     * of a transaction. The prescriptions must already be claimed; committing
+     * only makes the claim durable, so replaying the outcome after a restart
+     * does not queue them again. A claim rolled back before commit is never
+     * logged, so reverting a dispense needs no record of its own.
+     */
+    public void recordDispensed(Appointment appointment, List<Prescription> dispensed,
+                                TransactionManager.Transaction transaction) {
+        List<Prescription> prescriptions = appointment.getOutcomeRecord().getPrescriptions();
+        for (Prescription prescription : dispensed) {
+            int index = prescriptions.indexOf(prescription);
+            if (index < 0) {
+                throw new IllegalArgumentException("Prescription is not part of appointment " +
+                    appointment.getAppointmentId());
+            }
+            transaction.onCommit(DISPENSE_CHANGE,
+                List.of(appointment.getAppointmentId(), String.valueOf(index),
+                    prescription.getDispensedBy().getHospitalId(), prescription.getDispensedDateTime().toString()),
+                () -> {});
+        }
+    }
+    
+    // Marks a prescription dispensed again after its outcome has been replayed
+    private void redoDispense(List<String> fields) {
+        String id = fields.get(0);
+        Appointment appointment = appointments.get(id);
+        if (appointment == null) {
+            // Compacted rows share the outcome record, so the copy reaches the stored prescriptions
+            appointment = history.find(id);
+        }
+        if (appointment == null || appointment.getOutcomeRecord() == null) {
+            return;
+        }
+        Prescription prescription = appointment.getOutcomeRecord().getPrescriptions().get(Integer.parseInt(fields.get(1)));
+        Pharmacist pharmacist = StaffRepository.getInstance().findById(fields.get(2))
+            .filter(Pharmacist.class::isInstance)
+            .map(Pharmacist.class::cast)
+            .orElse(null);
+        if (prescription.markDispensed(pharmacist, LocalDateTime.parse(fields.get(3)))) {
+            PrescriptionQueue.getInstance().onPrescriptionUpdated(prescription);
+        }
+    }
+    
+    private void fireRemoved(Appointment appointment) {
+        for (AppointmentListener listener : listeners) {
+            listener.onAppointmentRemoved(appointment);
+        }
+    }
+    
+    /**
+     * Moves completed and cancelled appointments dated before the given day
+     * out of the live map into the compact history store. They stay visible
+     * to every query, but are returned as detached copies from then on.
+     * Returns the number of appointments moved.
+     */
+    public int compactHistory(LocalDate before) {
+        LocalDateTime cutoff = before.atStartOfDay();
+        int moved = 0;
+        for (Appointment appointment : appointments.values()) {
+            synchronized (appointment) {
+                if (!isFinished(appointment) || !appointment.getDateTime().isBefore(cutoff) ||
+                    !appointments.remove(appointment.getAppointmentId(), appointment)) {
+                    continue;
+                }
+                history.add(appointment);
+            }
+            for (AppointmentListener listener : listeners) {
+                listener.onAppointmentCompacted(appointment);
+            }
+            moved++;
+        }
+        return moved;
+    }
+    
+    /**
+     * Stores closed appointments in immutable segment files under the given
+     * directory, loading the index of any segments already there. New
+     * appointment IDs are numbered above every archived one.
+     */
+    public synchronized void openArchive(Path directory) throws IOException {
+        AppointmentArchive opened = AppointmentArchive.open(directory);
+        boolean restore = archive == null;
+        archive = opened;
+        withdrawnFromArchive.clear();
+        nextAppointmentNumber = Math.max(nextAppointmentNumber, opened.getHighestIdNumber() + 1);
+        // While an archive stays open its rows are already counted, so only a fresh one is read back
+        if (restore) {
+            opened.forEachRow(this::restoreIndexes);
+        }
+    }
+    
+    /**
+     * Checks whether archiveHistory has somewhere to write
+     */
+    public boolean isArchiveOpen() {
+        return archive != null;
+    }
+    
+    // Puts an archived row back into the care relationship and outcome history indexes
+    private void restoreIndexes(AppointmentArchive.ArchivedRow row) {
+        Optional<Patient> patient = PatientRepository.getInstance().findById(row.getPatientId());
+        Optional<User> doctor = StaffRepository.getInstance().findById(row.getDoctorId())
+            .filter(Doctor.class::isInstance);
+        if (patient.isEmpty() || doctor.isEmpty()) {
+            return;
+        }
+        if (row.getStatus() != AppointmentStatus.CANCELLED) {
+            careRelationships.onArchivedAppointment((Doctor) doctor.get(), patient.get());
+        }
+        if (row.hasOutcome()) {
+            outcomeHistory.onArchivedOutcome(row.getPatientId(), row.getDateTime(), row.getAppointmentId());
+        }
+    }
+    
+    /**
+     * Moves completed and cancelled appointments dated before the given day
+     * from the live map and the compact store to the archive. Appointments
+     * with prescriptions still waiting to be dispensed are kept back. They
+     * stay visible to every query as detached copies. Returns the number of
+     * appointments archived.
+     */
+    public synchronized int archiveHistory(LocalDate before) {
+        AppointmentArchive current = archive;
+        if (current == null) {
+            throw new IllegalStateException("No appointment archive is open");
+        }
+        LocalDateTime cutoff = before.atStartOfDay();
+        List<Appointment> live = appointments.values().stream()
+            .filter(apt -> isArchivable(apt, cutoff))
+            .toList();
+        List<Appointment> compacted = history.select(view -> view.getDateTime().isBefore(cutoff)).stream()
+            .filter(apt -> isArchivable(apt, cutoff))
+            .toList();
+        List<Appointment> batch = new ArrayList<>(live);
+        batch.addAll(compacted);
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        try {
+            current.append(batch);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to archive appointments: " + e.getMessage(), e);
+        }
+        
+        for (Appointment appointment : live) {
+            if (!appointments.remove(appointment.getAppointmentId(), appointment)) {
+                // Replaced while being archived; the live version wins
+                withdrawnFromArchive.add(appointment.getAppointmentId());
+                continue;
+            }
+            for (AppointmentListener listener : listeners) {
+                listener.onAppointmentCompacted(appointment);
+            }
+        }
+        for (Appointment appointment : compacted) {
+            history.remove(appointment.getAppointmentId());
+        }
+        return batch.size();
+    }
+    
+    /**
+     * Drops the rows removed from the compact history store since the last
+     * call, so saving back and deleting compacted appointments does not grow
+     * it for as long as the system runs. Returns the number of rows dropped.
+     */
+    public int reclaimCompactedRows() {
+        return history.reclaim();
+    }
+    
+    // Materializes only the compacted rows filter accepts
+    private List<Appointment> compactedByDoctor(Doctor doctor, Predicate<CompactAppointmentStore.View> filter) {
+        List<Appointment> result = new ArrayList<>();
+        history.forEachByDoctor(doctor, view -> {
+            if (filter.test(view)) {
+                result.add(view.toAppointment());
+            }
+        });
+        return result;
+    }
+    
+    private List<Appointment> compactedByPatient(Patient patient, Predicate<CompactAppointmentStore.View> filter) {
+        List<Appointment> result = new ArrayList<>();
+        history.forEachByPatient(patient, view -> {
+            if (filter.test(view)) {
+                result.add(view.toAppointment());
+            }
+        });
+        return result;
+    }
+    
+    /**
+     * Counts the appointments held in the compact history store
+     */
+    public int countCompactedAppointments() {
+        return history.size();
+    }
+    
+    private static boolean isFinished(Appointment appointment) {
+        return appointment.getStatus() == AppointmentStatus.COMPLETED ||
+               appointment.getStatus() == AppointmentStatus.CANCELLED;
+    }
+    
+    private static boolean isArchivable(Appointment appointment, LocalDateTime cutoff) {
+        return isFinished(appointment) && appointment.getDateTime().isBefore(cutoff) &&
+            (appointment.getOutcomeRecord() == null || appointment.getOutcomeRecord().getPrescriptions().stream()
+                .noneMatch(prescription -> prescription.getStatus() == PrescriptionStatus.PENDING));
+    }
+    
+    // Reads an archived row even if it has been withdrawn
+    private Optional<Appointment> findInArchive(String id) {
+        AppointmentArchive current = archive;
+        return current == null ? Optional.empty() : current.find(id);
+    }
+    
+    // Archived IDs are all numbered at or below the archive's highest, so newer IDs skip the scan
+    private boolean mayBeArchived(String id) {
+        AppointmentArchive current = archive;
+        return current != null && parseAppointmentNumber(id) <= current.getHighestIdNumber();
+    }
+    
+    private static int parseAppointmentNumber(String appointmentId) {
+        try {
+            return Integer.parseInt(appointmentId.substring(1));
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            return 0;
+        }
+    }
+    
+    /**
+     * Runs a query against the archive, if one is open, leaving out withdrawn appointments
+     */
+    private Stream<Appointment> archived(Function<AppointmentArchive, List<Appointment>> query) {
+        AppointmentArchive current = archive;
+        if (current == null) {
+            return Stream.empty();
+        }
+        return query.apply(current).stream()
+            .filter(apt -> !withdrawnFromArchive.contains(apt.getAppointmentId()));
+    }
+    
     @Override
     public Optional<Appointment> findById(String id) {
-        return Optional.ofNullable(appointments.get(id));
+        Appointment appointment = appointments.get(id);
+        if (appointment == null) {
+            appointment = history.find(id);
+        }
+        if (appointment == null && mayBeArchived(id)) {
+            return archived(current -> current.find(id).stream().toList()).findFirst();
+        }
+        return Optional.ofNullable(appointment);
     }
     
     @Override
     public List<Appointment> findAll() {
-        return new ArrayList<>(appointments.values());
+        List<Appointment> all = new ArrayList<>(appointments.values());
+        history.forEach(view -> all.add(view.toAppointment()));
+        archived(current -> {
+            List<Appointment> rows = new ArrayList<>();
+            current.forEach(rows::add);
+            return rows;
+        }).forEach(all::add);
+        return all;
     }
     
     @Override
     public void delete(String id) {
-        appointments.remove(id);
+        Appointment removed = appointments.remove(id);
+        if (removed == null) {
+            removed = history.remove(id);
+        }
+        if (removed == null && mayBeArchived(id)) {
+            // Archive segments are immutable, so the row is hidden instead
+            removed = archived(current -> current.find(id).stream().toList()).findFirst().orElse(null);
+            withdrawnFromArchive.add(id);
+        }
+        if (removed != null) {
+            fireRemoved(removed);
+        }
     }
     
     @Override
     public boolean exists(String id) {
-        return appointments.containsKey(id);
+        return appointments.containsKey(id) || history.contains(id) ||
+            (mayBeArchived(id) && archived(current -> current.find(id).stream().toList()).findAny().isPresent());
     }
     
     /**
      * Finds all appointments for a specific doctor
      */
     public List<Appointment> findByDoctor(Doctor doctor) {
-        return appointments.values().stream()
+        return Stream.of(appointments.values().stream(), compactedByDoctor(doctor, view -> true).stream(),
+                archived(current -> current.findByDoctor(doctor.getHospitalId())))
+            .flatMap(Function.identity())
             .filter(apt -> apt.getDoctor().equals(doctor))
             .sorted(Comparator.comparing(Appointment::getDateTime))
             .collect(Collectors.toList());
@@ -88,7 +526,9 @@ public class AppointmentRepository implements Repository<Appointment, String> {
      * Finds all appointments for a specific patient
      */
     public List<Appointment> findByPatient(Patient patient) {
-        return appointments.values().stream()
+        return Stream.of(appointments.values().stream(), compactedByPatient(patient, view -> true).stream(),
+                archived(current -> current.findByPatient(patient.getHospitalId())))
+            .flatMap(Function.identity())
             .filter(apt -> apt.getPatient().equals(patient))
             .sorted(Comparator.comparing(Appointment::getDateTime))
             .collect(Collectors.toList());
@@ -98,7 +538,10 @@ public class AppointmentRepository implements Repository<Appointment, String> {
      * Finds all appointments with a specific status
      */
     public List<Appointment> findByStatus(AppointmentStatus status) {
-        return appointments.values().stream()
+        return Stream.of(appointments.values().stream(),
+                history.select(view -> view.getStatus() == status).stream(),
+                archived(current -> current.findByStatus(status)))
+            .flatMap(Function.identity())
             .filter(apt -> apt.getStatus() == status)
             .sorted(Comparator.comparing(Appointment::getDateTime))
             .collect(Collectors.toList());
@@ -133,7 +576,10 @@ public class AppointmentRepository implements Repository<Appointment, String> {
      */
     public List<Appointment> findPastAppointmentsByDoctor(Doctor doctor) {
         LocalDateTime now = LocalDateTime.now();
-        return appointments.values().stream()
+        return Stream.of(appointments.values().stream(),
+                compactedByDoctor(doctor, view -> view.getDateTime().isBefore(now)).stream(),
+                archived(current -> current.findByDoctor(doctor.getHospitalId())))
+            .flatMap(Function.identity())
             .filter(apt -> apt.getDoctor().equals(doctor))
             .filter(apt -> apt.getDateTime().isBefore(now))
             .sorted(Comparator.comparing(Appointment::getDateTime).reversed())
@@ -145,7 +591,10 @@ public class AppointmentRepository implements Repository<Appointment, String> {
      */
     public List<Appointment> findPastAppointmentsByPatient(Patient patient) {
         LocalDateTime now = LocalDateTime.now();
-        return appointments.values().stream()
+        return Stream.of(appointments.values().stream(),
+                compactedByPatient(patient, view -> view.getDateTime().isBefore(now)).stream(),
+                archived(current -> current.findByPatient(patient.getHospitalId())))
+            .flatMap(Function.identity())
             .filter(apt -> apt.getPatient().equals(patient))
             .filter(apt -> apt.getDateTime().isBefore(now))
             .sorted(Comparator.comparing(Appointment::getDateTime).reversed())
@@ -156,7 +605,11 @@ public class AppointmentRepository implements Repository<Appointment, String> {
      * Finds all appointments for a specific date
      */
     public List<Appointment> findByDate(LocalDate date) {
-        return appointments.values().stream()
+        LocalDateTime from = date.atStartOfDay();
+        LocalDateTime to = date.plusDays(1).atStartOfDay();
+        return Stream.of(appointments.values().stream(), history.findBetween(from, to).stream(),
+                archived(current -> current.findBetween(from, to)))
+            .flatMap(Function.identity())
             .filter(apt -> apt.getDateTime().toLocalDate().equals(date))
             .sorted(Comparator.comparing(Appointment::getDateTime))
             .collect(Collectors.toList());
@@ -166,7 +619,11 @@ public class AppointmentRepository implements Repository<Appointment, String> {
      * Finds appointments in a date range
      */
     public List<Appointment> findByDateRange(LocalDate startDate, LocalDate endDate) {
-        return appointments.values().stream()
+        LocalDateTime from = startDate.atStartOfDay();
+        LocalDateTime to = endDate.plusDays(1).atStartOfDay();
+        return Stream.of(appointments.values().stream(), history.findBetween(from, to).stream(),
+                archived(current -> current.findBetween(from, to)))
+            .flatMap(Function.identity())
             .filter(apt -> {
                 LocalDate aptDate = apt.getDateTime().toLocalDate();
                 return !aptDate.isBefore(startDate) && !aptDate.isAfter(endDate);
@@ -175,30 +632,33 @@ public class AppointmentRepository implements Repository<Appointment, String> {
             .collect(Collectors.toList());
     }
     
+    /**
+     * Gets a doctor's materialized schedule for a date
+     */
+    public DaySchedule findDaySchedule(Doctor doctor, LocalDate date) {
+        return doctorSchedules.getDaySchedule(doctor, date);
+    }
+    
+    /**
+     * Finds all future pending and confirmed appointments for a doctor
+     */
+    public List<Appointment> findUpcomingAppointmentsByDoctor(Doctor doctor) {
+        return doctorSchedules.getFutureAppointments(doctor, 
+            AppointmentStatus.PENDING_APPROVAL, AppointmentStatus.CONFIRMED);
+    }
+    
     /**
      * Finds all pending appointments for a doctor
      */
     public List<Appointment> findPendingAppointmentsByDoctor(Doctor doctor) {
-        LocalDateTime now = LocalDateTime.now();
-        return appointments.values().stream()
-            .filter(apt -> apt.getDoctor().equals(doctor))
-            .filter(apt -> apt.getDateTime().isAfter(now))
-            .filter(apt -> apt.getStatus() == AppointmentStatus.PENDING_APPROVAL)
-            .sorted(Comparator.comparing(Appointment::getDateTime))
-            .collect(Collectors.toList());
+        return doctorSchedules.getFutureAppointments(doctor, AppointmentStatus.PENDING_APPROVAL);
     }
     
     /**
      * Finds all confirmed appointments for a doctor
      */
     public List<Appointment> findConfirmedAppointmentsByDoctor(Doctor doctor) {
-        LocalDateTime now = LocalDateTime.now();
-        return appointments.values().stream()
-            .filter(apt -> apt.getDoctor().equals(doctor))
-            .filter(apt -> apt.getDateTime().isAfter(now))
-            .filter(apt -> apt.getStatus() == AppointmentStatus.CONFIRMED)
-            .sorted(Comparator.comparing(Appointment::getDateTime))
-            .collect(Collectors.toList());
+        return doctorSchedules.getFutureAppointments(doctor, AppointmentStatus.CONFIRMED);
     }
     
     /**
@@ -225,40 +685,110 @@ public class AppointmentRepository implements Repository<Appointment, String> {
             .min(Comparator.comparing(Appointment::getDateTime));
     }
     
+    /**
+     * Gets the patients under a doctor's care, sorted by name
+     */
+    public List<Patient> findPatientsUnderCare(Doctor doctor) {
+        return careRelationships.getPatients(doctor.getOrdinal());
+    }
+    
+    /**
+     * Checks whether a doctor has an active care relationship with a patient
+     */
+    public boolean isPatientUnderCare(Doctor doctor, String patientId) {
+        return careRelationships.isUnderCare(doctor.getOrdinal(),
+            OrdinalRegistry.getInstance().ordinalOf(OrdinalRegistry.Kind.PATIENT, patientId));
+    }
+    
+    /**
+     * Gets the doctors a patient is currently under the care of
+     */
+    public List<Doctor> findDoctorsCaringFor(Patient patient) {
+        return careRelationships.getDoctors(patient.getOrdinal());
+    }
+    
+    /**
+     * Counts a patient's pending and confirmed appointments that have not yet started
+     */
+    public int countActiveAppointments(Patient patient) {
+        return activeAppointments.count(patient.getHospitalId());
+    }
+    
+    /**
+     * Atomically reserves room for a new appointment if the patient has fewer
+     * than limit active appointments. Must be paired with releaseAppointmentReservation.
+     */
+    public boolean tryReserveAppointment(Patient patient, int limit) {
+        return activeAppointments.tryReserve(patient.getHospitalId(), limit);
+    }
+    
+    public void releaseAppointmentReservation(Patient patient) {
+        activeAppointments.release(patient.getHospitalId());
+    }
+    
+    /**
+     * Gets a page of a patient's appointment outcome records, newest first
+     */
+    public Page<AppointmentOutcomeRecord> findOutcomeHistory(Patient patient, String cursor, int pageSize) {
+        return outcomeHistory.getPage(patient.getHospitalId(), cursor, pageSize);
+    }
+    
+    /**
+     * Gets all of a patient's appointment outcome records, newest first
+     */
+    public List<AppointmentOutcomeRecord> findAllOutcomes(Patient patient) {
+        return outcomeHistory.getAll(patient.getHospitalId());
+    }
+    
     /**
      * Counts appointments by status for a doctor
      */
     public Map<AppointmentStatus, Long> getAppointmentCountsByStatusForDoctor(Doctor doctor) {
-        return appointments.values().stream()
+        Map<AppointmentStatus, Long> counts = appointments.values().stream()
             .filter(apt -> apt.getDoctor().equals(doctor))
             .collect(Collectors.groupingBy(
                 Appointment::getStatus,
                 Collectors.counting()
             ));
+        // Counted straight from the columns, without materializing rows
+        history.forEachByDoctor(doctor, view -> counts.merge(view.getStatus(), 1L, Long::sum));
+        archived(current -> current.findByDoctor(doctor.getHospitalId()))
+            .forEach(apt -> counts.merge(apt.getStatus(), 1L, Long::sum));
+        return counts;
     }
     
     /**
-     * Deletes all cancelled appointments older than the specified date
+     * Deletes all cancelled appointments older than the specified date.
+     * Archived appointments are immutable history and are kept.
      */
     public void cleanupOldCancelledAppointments(LocalDate before) {
-        appointments.values().removeIf(apt -> 
-            apt.getStatus() == AppointmentStatus.CANCELLED &&
-            apt.getDateTime().toLocalDate().isBefore(before)
-        );
+        List<Appointment> expired = appointments.values().stream()
+            .filter(apt -> apt.getStatus() == AppointmentStatus.CANCELLED)
+            .filter(apt -> apt.getDateTime().toLocalDate().isBefore(before))
+            .toList();
+        expired.forEach(apt -> delete(apt.getAppointmentId()));
+        history.select(view -> view.getStatus() == AppointmentStatus.CANCELLED &&
+                view.getDate().isBefore(before))
+            .forEach(apt -> delete(apt.getAppointmentId()));
     }
     
     /**
      * Checks if a doctor has any appointments at a specific date and time
      */
     public boolean isDoctorAvailable(Doctor doctor, LocalDateTime dateTime) {
-        return appointments.values().stream()
-            .filter(apt -> apt.getDoctor().equals(doctor))
-            .filter(apt -> apt.getStatus() != AppointmentStatus.CANCELLED)
-            .noneMatch(apt -> apt.getDateTime().equals(dateTime));
+        return !doctorSchedules.getDaySchedule(doctor, dateTime.toLocalDate())
+            .isBooked(dateTime.toLocalTime());
     }
 
     @Override
     public void clearAll() {
         appointments.clear();
+        history.clear();
+        // Detaches the archive; its segment files keep their contents
+        archive = null;
+        withdrawnFromArchive.clear();
+        for (AppointmentListener listener : listeners) {
+            listener.onCleared();
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,194 @@
+package repository;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import entity.Appointment;
+import entity.Doctor;
+import entity.Patient;
+import entity.enums.AppointmentStatus;
+import util.IntIntHashMap;
+import util.IntObjectHashMap;
+import util.OrdinalRegistry;
+import util.OrdinalTable;
+
+/**
+ * Bidirectional doctor-patient relationship index.
+ * A doctor has a patient under care while at least one non-cancelled
+ * appointment links them; the link count is maintained from appointment
+ * lifecycle events, so lookups never scan appointments. Doctors and
+ * patients are keyed by ordinal in primitive maps, so a lookup hashes an
+ * int rather than a String ID and no entry objects are allocated per link.
+ * Updates are serialized and, whenever a link is made or broken, publish
+ * an immutable view of the doctor's panel and the patient's doctors, so
+ * reads never lock.
+ */
+public class CareRelationshipIndex implements AppointmentListener {
+    // Guarded by this index
+    private final IntObjectHashMap<CarePanel> panelsByDoctor = new IntObjectHashMap<>();
+    private final IntObjectHashMap<IntObjectHashMap<Doctor>> doctorsByPatient = new IntObjectHashMap<>();
+    // Written under this index's lock, read without it
+    private final OrdinalTable<PanelView> panelViews = new OrdinalTable<>();
+    private final OrdinalTable<List<Doctor>> doctorViews = new OrdinalTable<>();
+    private final OrdinalRegistry ordinals = OrdinalRegistry.getInstance();
+
+    CareRelationshipIndex() {}
+
+    @Override
+    public void onAppointmentBooked(Appointment appointment) {
+        if (appointment.getStatus() != AppointmentStatus.CANCELLED) {
+            link(appointment);
+        }
+    }
+
+    @Override
+    public void onStatusChanged(Appointment appointment, AppointmentStatus previousStatus) {
+        if (appointment.getStatus() == AppointmentStatus.CANCELLED &&
+            previousStatus != AppointmentStatus.CANCELLED) {
+            unlink(appointment);
+        }
+    }
+
+    @Override
+    public void onAppointmentRemoved(Appointment appointment) {
+        if (appointment.getStatus() != AppointmentStatus.CANCELLED) {
+            unlink(appointment);
+        }
+    }
+
+    @Override
+    public synchronized void onCleared() {
+        panelsByDoctor.clear();
+        doctorsByPatient.clear();
+        panelViews.clear();
+        doctorViews.clear();
+    }
+
+    /**
+     * Checks whether the doctor currently has the patient under care
+     */
+    public boolean isUnderCare(String doctorId, String patientId) {
+        return isUnderCare(ordinals.ordinalOf(OrdinalRegistry.Kind.DOCTOR, doctorId),
+            ordinals.ordinalOf(OrdinalRegistry.Kind.PATIENT, patientId));
+    }
+
+    public boolean isUnderCare(int doctorOrdinal, int patientOrdinal) {
+        PanelView view = panelViews.get(doctorOrdinal);
+        return view != null && Arrays.binarySearch(view.patientOrdinals, patientOrdinal) >= 0;
+    }
+
+    public List<Patient> getPatients(String doctorId) {
+        return getPatients(ordinals.ordinalOf(OrdinalRegistry.Kind.DOCTOR, doctorId));
+    }
+
+    /**
+     * Gets the patients under a doctor's care, sorted by name.
+     * The sorted list is built on first read of each published panel.
+     */
+    public List<Patient> getPatients(int doctorOrdinal) {
+        PanelView view = panelViews.get(doctorOrdinal);
+        if (view == null) {
+            return List.of();
+        }
+        List<Patient> sorted = view.sortedByName;
+        if (sorted == null) {
+            // Readers racing here build equal lists, so whichever is kept is correct
+            sorted = view.patients.stream()
+                .sorted(Comparator.comparing(Patient::getName))
+                .toList();
+            view.sortedByName = sorted;
+        }
+        return sorted;
+    }
+
+    public List<Doctor> getDoctors(String patientId) {
+        return getDoctors(ordinals.ordinalOf(OrdinalRegistry.Kind.PATIENT, patientId));
+    }
+
+    /**
+     * Gets the doctors currently caring for a patient
+     */
+    public List<Doctor> getDoctors(int patientOrdinal) {
+        List<Doctor> doctors = doctorViews.get(patientOrdinal);
+        return doctors == null ? List.of() : doctors;
+    }
+
+    /**
+     * Counts an archived appointment that links the doctor and patient, as
+     * when the archive is reopened after a restart
+     */
+    void onArchivedAppointment(Doctor doctor, Patient patient) {
+        link(doctor, patient);
+    }
+
+    private void link(Appointment appointment) {
+        link(appointment.getDoctor(), appointment.getPatient());
+    }
+
+    private synchronized void link(Doctor doctor, Patient patient) {
+        CarePanel panel = panelsByDoctor.computeIfAbsent(doctor.getOrdinal(), ordinal -> new CarePanel());
+
+        if (panel.activeAppointments.addTo(patient.getOrdinal(), 1) == 1) {
+            panel.patients.put(patient.getOrdinal(), patient);
+            IntObjectHashMap<Doctor> doctors = doctorsByPatient.computeIfAbsent(patient.getOrdinal(),
+                ordinal -> new IntObjectHashMap<>(4));
+            doctors.put(doctor.getOrdinal(), doctor);
+            panelViews.set(doctor.getOrdinal(), new PanelView(panel));
+            doctorViews.set(patient.getOrdinal(), List.copyOf(doctors.values()));
+            doctor.addPatient(patient);
+        }
+    }
+
+    private synchronized void unlink(Appointment appointment) {
+        Doctor doctor = appointment.getDoctor();
+        Patient patient = appointment.getPatient();
+        CarePanel panel = panelsByDoctor.get(doctor.getOrdinal());
+        if (panel == null || !panel.activeAppointments.containsKey(patient.getOrdinal()) ||
+            panel.activeAppointments.addTo(patient.getOrdinal(), -1) > 0) {
+            return;
+        }
+
+        panel.activeAppointments.remove(patient.getOrdinal());
+        panel.patients.remove(patient.getOrdinal());
+        if (panel.activeAppointments.isEmpty()) {
+            panelsByDoctor.remove(doctor.getOrdinal());
+            panelViews.set(doctor.getOrdinal(), null);
+        } else {
+            panelViews.set(doctor.getOrdinal(), new PanelView(panel));
+        }
+
+        IntObjectHashMap<Doctor> doctors = doctorsByPatient.get(patient.getOrdinal());
+        if (doctors != null) {
+            Doctor linked = doctors.remove(doctor.getOrdinal());
+            if (doctors.isEmpty()) {
+                doctorsByPatient.remove(patient.getOrdinal());
+                doctorViews.set(patient.getOrdinal(), null);
+            } else {
+                doctorViews.set(patient.getOrdinal(), List.copyOf(doctors.values()));
+            }
+            if (linked != null) {
+                linked.removePatient(patient);
+            }
+        }
+    }
+
+    private static class CarePanel {
+        // Patient ordinal to the number of non-cancelled appointments linking them
+        private final IntIntHashMap activeAppointments = new IntIntHashMap();
+        private final IntObjectHashMap<Patient> patients = new IntObjectHashMap<>();
+    }
+
+    // A doctor's patients as of one link or unlink; never changed once published
+    private static class PanelView {
+        private final int[] patientOrdinals;
+        private final List<Patient> patients;
+        private volatile List<Patient> sortedByName;
+
+        private PanelView(CarePanel panel) {
+            this.patientOrdinals = panel.patients.keys();
+            Arrays.sort(patientOrdinals);
+            this.patients = panel.patients.values();
+        }
+    }
+}
@@ -0,0 +1,337 @@
+package repository;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import entity.Appointment;
+import entity.AppointmentOutcomeRecord;
+import entity.Doctor;
+import entity.Patient;
+import entity.enums.AppointmentStatus;
+import util.IntIntHashMap;
+import util.IntObjectHashMap;
+import util.OrdinalRegistry;
+
+/**
+ * Column-wise store for historical appointments.
+ * Each appointment is one row across primitive arrays: start time in epoch
+ * minutes, appointment, doctor and patient ordinals and a status byte, so a
+ * row costs about 21 bytes instead of an Appointment object graph. Outcome
+ * records are kept in a sparse side table and each distinct doctor and
+ * patient is referenced once. Rows are read through a reusable View, so
+ * scans allocate nothing until a match is materialized with toAppointment().
+ * Removed rows are tombstoned and only dropped by reclaim(), which packs the
+ * live rows together, so row numbers change then. Times are kept to the minute.
+ */
+public class CompactAppointmentStore {
+    private static final AppointmentStatus[] STATUSES = AppointmentStatus.values();
+    private static final byte DELETED = -1;
+
+    private long[] epochMinutes;
+    private int[] appointmentOrdinals;
+    private int[] doctorOrdinals;
+    private int[] patientOrdinals;
+    private byte[] statuses;
+    private int rowCount;
+    private int liveCount;
+
+    private final IntIntHashMap rowsByAppointment;
+    // Replaced by reclaim(), which renumbers rows
+    private IntObjectHashMap<AppointmentOutcomeRecord> outcomesByRow;
+    private IntObjectHashMap<Doctor> doctors;
+    private IntObjectHashMap<Patient> patients;
+
+    CompactAppointmentStore() {
+        this.rowsByAppointment = new IntIntHashMap();
+        this.outcomesByRow = new IntObjectHashMap<>();
+        this.doctors = new IntObjectHashMap<>();
+        this.patients = new IntObjectHashMap<>();
+        allocate(64);
+    }
+
+    /**
+     * Adds an appointment as a row, replacing any row already stored under its ID
+     */
+    public synchronized void add(Appointment appointment) {
+        if (appointment.getOrdinal() < 0) {
+            throw new IllegalArgumentException("Only saved appointments can be stored");
+        }
+        remove(appointment.getOrdinal());
+        if (rowCount == epochMinutes.length) {
+            grow();
+        }
+        int row = rowCount++;
+        epochMinutes[row] = toEpochMinute(appointment.getDateTime());
+        appointmentOrdinals[row] = appointment.getOrdinal();
+        doctorOrdinals[row] = appointment.getDoctor().getOrdinal();
+        patientOrdinals[row] = appointment.getPatient().getOrdinal();
+        statuses[row] = (byte) appointment.getStatus().ordinal();
+        if (appointment.getOutcomeRecord() != null) {
+            outcomesByRow.put(row, appointment.getOutcomeRecord());
+        }
+        doctors.put(appointment.getDoctor().getOrdinal(), appointment.getDoctor());
+        patients.put(appointment.getPatient().getOrdinal(), appointment.getPatient());
+        rowsByAppointment.put(appointment.getOrdinal(), row, -1);
+        liveCount++;
+    }
+
+    /**
+     * Gets a detached copy of the appointment stored under an ID, or null if there is none
+     */
+    public synchronized Appointment find(String appointmentId) {
+        int row = rowOf(appointmentId);
+        return row < 0 ? null : new View(row).toAppointment();
+    }
+
+    public synchronized boolean contains(String appointmentId) {
+        return rowOf(appointmentId) >= 0;
+    }
+
+    /**
+     * Removes the row stored under an ID, returning a detached copy of it or null if there was none
+     */
+    public synchronized Appointment remove(String appointmentId) {
+        int row = rowOf(appointmentId);
+        if (row < 0) {
+            return null;
+        }
+        Appointment removed = new View(row).toAppointment();
+        remove(appointmentOrdinals[row]);
+        return removed;
+    }
+
+    public synchronized int size() {
+        return liveCount;
+    }
+
+    /**
+     * Materializes the rows accepted by filter. The filter sees a shared View
+     * that is repositioned for every row and must not be retained.
+     */
+    public synchronized List<Appointment> select(Predicate<View> filter) {
+        List<Appointment> result = new ArrayList<>();
+        forEach(view -> {
+            if (filter.test(view)) {
+                result.add(view.toAppointment());
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Visits every live row through one shared View while holding the store's lock
+     */
+    public synchronized void forEach(Consumer<View> visitor) {
+        View view = new View(0);
+        for (int row = 0; row < rowCount; row++) {
+            if (statuses[row] != DELETED) {
+                view.row = row;
+                visitor.accept(view);
+            }
+        }
+    }
+
+    /**
+     * Visits a doctor's rows through one shared View, scanning only the
+     * doctor column until a match. Materialize a row with toAppointment()
+     * only if it is needed beyond the visit.
+     */
+    public synchronized void forEachByDoctor(Doctor doctor, Consumer<View> visitor) {
+        forEachByOrdinal(doctorOrdinals, doctor.getOrdinal(), visitor);
+    }
+
+    /**
+     * Visits a patient's rows through one shared View, scanning only the
+     * patient column until a match
+     */
+    public synchronized void forEachByPatient(Patient patient, Consumer<View> visitor) {
+        forEachByOrdinal(patientOrdinals, patient.getOrdinal(), visitor);
+    }
+
+    /**
+     * Materializes rows starting on or after from and before to
+     */
+    public synchronized List<Appointment> findBetween(LocalDateTime from, LocalDateTime to) {
+        long first = toEpochMinute(from);
+        long end = toEpochMinute(to);
+        List<Appointment> result = new ArrayList<>();
+        for (int row = 0; row < rowCount; row++) {
+            long minute = epochMinutes[row];
+            if (minute >= first && minute < end && statuses[row] != DELETED) {
+                result.add(new View(row).toAppointment());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Drops tombstoned rows by packing the live ones together, shrinking the
+     * columns to fit them, and forgets doctors and patients no row refers to.
+     * Returns the number of rows dropped.
+     */
+    public synchronized int reclaim() {
+        int dropped = rowCount - liveCount;
+        if (dropped == 0) {
+            return 0;
+        }
+        long[] oldMinutes = epochMinutes;
+        int[] oldAppointments = appointmentOrdinals;
+        int[] oldDoctors = doctorOrdinals;
+        int[] oldPatients = patientOrdinals;
+        byte[] oldStatuses = statuses;
+        int capacity = 64;
+        while (capacity < liveCount) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+        IntObjectHashMap<AppointmentOutcomeRecord> outcomes = new IntObjectHashMap<>();
+        IntObjectHashMap<Doctor> referencedDoctors = new IntObjectHashMap<>();
+        IntObjectHashMap<Patient> referencedPatients = new IntObjectHashMap<>();
+        int next = 0;
+        for (int row = 0; row < rowCount; row++) {
+            if (oldStatuses[row] == DELETED) {
+                continue;
+            }
+            epochMinutes[next] = oldMinutes[row];
+            appointmentOrdinals[next] = oldAppointments[row];
+            doctorOrdinals[next] = oldDoctors[row];
+            patientOrdinals[next] = oldPatients[row];
+            statuses[next] = oldStatuses[row];
+            AppointmentOutcomeRecord outcome = outcomesByRow.get(row);
+            if (outcome != null) {
+                outcomes.put(next, outcome);
+            }
+            referencedDoctors.put(oldDoctors[row], doctors.get(oldDoctors[row]));
+            referencedPatients.put(oldPatients[row], patients.get(oldPatients[row]));
+            rowsByAppointment.put(oldAppointments[row], next, -1);
+            next++;
+        }
+        rowCount = next;
+        outcomesByRow = outcomes;
+        doctors = referencedDoctors;
+        patients = referencedPatients;
+        return dropped;
+    }
+
+    public synchronized void clear() {
+        rowsByAppointment.clear();
+        outcomesByRow.clear();
+        doctors.clear();
+        patients.clear();
+        rowCount = 0;
+        liveCount = 0;
+        allocate(64);
+    }
+
+    private void forEachByOrdinal(int[] column, int ordinal, Consumer<View> visitor) {
+        if (ordinal < 0) {
+            return;
+        }
+        View view = new View(0);
+        for (int row = 0; row < rowCount; row++) {
+            if (column[row] == ordinal && statuses[row] != DELETED) {
+                view.row = row;
+                visitor.accept(view);
+            }
+        }
+    }
+
+    private int rowOf(String appointmentId) {
+        int ordinal = OrdinalRegistry.getInstance().ordinalOf(OrdinalRegistry.Kind.APPOINTMENT, appointmentId);
+        return ordinal < 0 ? -1 : rowsByAppointment.getOrDefault(ordinal, -1);
+    }
+
+    // Rows are tombstoned rather than shifted so the arrays stay append-only
+    private void remove(int appointmentOrdinal) {
+        int row = rowsByAppointment.getOrDefault(appointmentOrdinal, -1);
+        if (row < 0) {
+            return;
+        }
+        rowsByAppointment.remove(appointmentOrdinal);
+        outcomesByRow.remove(row);
+        statuses[row] = DELETED;
+        liveCount--;
+    }
+
+    private void allocate(int capacity) {
+        epochMinutes = new long[capacity];
+        appointmentOrdinals = new int[capacity];
+        doctorOrdinals = new int[capacity];
+        patientOrdinals = new int[capacity];
+        statuses = new byte[capacity];
+    }
+
+    private void grow() {
+        int capacity = epochMinutes.length * 2;
+        epochMinutes = Arrays.copyOf(epochMinutes, capacity);
+        appointmentOrdinals = Arrays.copyOf(appointmentOrdinals, capacity);
+        doctorOrdinals = Arrays.copyOf(doctorOrdinals, capacity);
+        patientOrdinals = Arrays.copyOf(patientOrdinals, capacity);
+        statuses = Arrays.copyOf(statuses, capacity);
+    }
+
+    private static long toEpochMinute(LocalDateTime dateTime) {
+        return Math.floorDiv(dateTime.toEpochSecond(ZoneOffset.UTC), 60);
+    }
+
+    /**
+     * Read-only cursor over one row of the store. Only valid while the
+     * store's lock is held by the scan that supplied it.
+     */
+    public class View {
+        private int row;
+
+        private View(int row) {
+            this.row = row;
+        }
+
+        public String getAppointmentId() {
+            return OrdinalRegistry.getInstance().idOf(OrdinalRegistry.Kind.APPOINTMENT, appointmentOrdinals[row]);
+        }
+
+        public long getEpochMinute() {
+            return epochMinutes[row];
+        }
+
+        public LocalDateTime getDateTime() {
+            return LocalDateTime.ofEpochSecond(epochMinutes[row] * 60, 0, ZoneOffset.UTC);
+        }
+
+        public LocalDate getDate() {
+            return getDateTime().toLocalDate();
+        }
+
+        public int getDoctorOrdinal() {
+            return doctorOrdinals[row];
+        }
+
+        public int getPatientOrdinal() {
+            return patientOrdinals[row];
+        }
+
+        public AppointmentStatus getStatus() {
+            return STATUSES[statuses[row]];
+        }
+
+        public AppointmentOutcomeRecord getOutcomeRecord() {
+            return outcomesByRow.get(row);
+        }
+
+        /**
+         * Builds a standalone Appointment from this row; changes to it are not written back
+         */
+        public Appointment toAppointment() {
+            Appointment appointment = new Appointment(getAppointmentId(),
+                patients.get(patientOrdinals[row]), doctors.get(doctorOrdinals[row]), getDateTime());
+            appointment.setStatus(getStatus());
+            appointment.setOutcomeRecord(getOutcomeRecord());
+            return appointment;
+        }
+    }
+}
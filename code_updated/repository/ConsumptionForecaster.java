@@ -0,0 +1,188 @@
+package repository;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import entity.Medicine;
+import entity.MedicineInventoryAction;
+import entity.enums.InventoryActionType;
+
+/**
+ * Streaming per-medicine consumption model fed from the inventory ledger.
+ * Each medicine keeps an exponentially weighted dispense rate whose weight
+ * halves roughly every five days (time constant SMOOTHING_WINDOW_DAYS), so a
+ * dispense costs O(1) and older consumption fades out instead of being
+ * recomputed. Medicines whose days of cover fall below REORDER_POINT_DAYS
+ * are tracked as reorder candidates as events arrive. Each pharmacy
+ * location's stock of a medicine has its own model.
+ */
+public class ConsumptionForecaster {
+    public static final double SMOOTHING_WINDOW_DAYS = 7.0;
+    public static final double REORDER_POINT_DAYS = 5.0;
+    public static final double TARGET_COVER_DAYS = 14.0;
+
+    private static final double SECONDS_PER_DAY = 86_400.0;
+    private static ConsumptionForecaster instance;
+
+    private final Map<String, ConsumptionModel> models;
+    private final Set<String> reorderCandidates;
+
+    private ConsumptionForecaster() {
+        this.models = new ConcurrentHashMap<>();
+        this.reorderCandidates = ConcurrentHashMap.newKeySet();
+    }
+
+    public static synchronized ConsumptionForecaster getInstance() {
+        if (instance == null) {
+            instance = new ConsumptionForecaster();
+        }
+        return instance;
+    }
+
+    /**
+     * Updates the medicine's model from an inventory action and re-evaluates its reorder status
+     */
+    public void record(MedicineInventoryAction action) {
+        Medicine medicine = action.getMedicine();
+        String key = key(medicine);
+        ConsumptionModel model = models.computeIfAbsent(key, k -> new ConsumptionModel(medicine));
+        if (action.getActionType() == InventoryActionType.DISPENSE) {
+            model.addDispense(action.getQuantity(), action.getActionDateTime());
+        }
+        updateReorderStatus(key, model.forecast(LocalDateTime.now()));
+    }
+
+    /**
+     * Gets the current forecast for a medicine; a medicine never dispensed has a zero rate
+     */
+    public Forecast getForecast(Medicine medicine) {
+        ConsumptionModel model = models.get(key(medicine));
+        return model == null
+            ? new ConsumptionModel(medicine).forecast(LocalDateTime.now())
+            : model.forecast(LocalDateTime.now());
+    }
+
+    /**
+     * Gets medicines that should be reordered now, least days of cover first
+     */
+    public List<Forecast> findReorderSuggestions() {
+        LocalDateTime now = LocalDateTime.now();
+        List<Forecast> result = new ArrayList<>();
+        for (String key : reorderCandidates) {
+            ConsumptionModel model = models.get(key);
+            if (model == null) {
+                reorderCandidates.remove(key);
+                continue;
+            }
+            Forecast forecast = model.forecast(now);
+            if (updateReorderStatus(key, forecast)) {
+                result.add(forecast);
+            }
+        }
+        result.sort(Comparator.comparingDouble(Forecast::getDaysOfCover));
+        return result;
+    }
+
+    public void clearAll() {
+        models.clear();
+        reorderCandidates.clear();
+    }
+
+    private boolean updateReorderStatus(String key, Forecast forecast) {
+        if (forecast.isReorderNeeded()) {
+            reorderCandidates.add(key);
+            return true;
+        }
+        reorderCandidates.remove(key);
+        return false;
+    }
+
+    private static String key(Medicine medicine) {
+        return medicine.getLocation().name() + "/" + medicine.getName().trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static class ConsumptionModel {
+        private final Medicine medicine;
+        // Units per day as of lastUpdate
+        private double dailyRate;
+        private LocalDateTime lastUpdate;
+
+        ConsumptionModel(Medicine medicine) {
+            this.medicine = medicine;
+        }
+
+        synchronized void addDispense(int quantity, LocalDateTime time) {
+            if (lastUpdate != null && time.isBefore(lastUpdate)) {
+                time = lastUpdate;
+            }
+            dailyRate = decayedRate(time) + quantity / SMOOTHING_WINDOW_DAYS;
+            lastUpdate = time;
+        }
+
+        synchronized Forecast forecast(LocalDateTime now) {
+            double rate = decayedRate(now);
+            int available = medicine.getAvailableStock();
+            double daysOfCover = rate > 0 ? available / rate : Double.POSITIVE_INFINITY;
+
+            int suggested = 0;
+            if (daysOfCover < REORDER_POINT_DAYS) {
+                int target = (int) Math.ceil(rate * TARGET_COVER_DAYS);
+                int headroom = Math.max(0, medicine.getMaxStock() - medicine.getCurrentStock());
+                suggested = Math.min(Math.max(0, target - available), headroom);
+            }
+            return new Forecast(medicine, rate, daysOfCover, suggested);
+        }
+
+        private double decayedRate(LocalDateTime time) {
+            if (lastUpdate == null || !time.isAfter(lastUpdate)) {
+                return dailyRate;
+            }
+            double elapsedDays = Duration.between(lastUpdate, time).getSeconds() / SECONDS_PER_DAY;
+            return dailyRate * Math.exp(-elapsedDays / SMOOTHING_WINDOW_DAYS);
+        }
+    }
+
+    /**
+     * A medicine's consumption rate, days of cover and suggested reorder quantity at one moment
+     */
+    public static class Forecast {
+        private final Medicine medicine;
+        private final double dailyRate;
+        private final double daysOfCover;
+        private final int suggestedReorderQuantity;
+
+        private Forecast(Medicine medicine, double dailyRate, double daysOfCover, int suggestedReorderQuantity) {
+            this.medicine = medicine;
+            this.dailyRate = dailyRate;
+            this.daysOfCover = daysOfCover;
+            this.suggestedReorderQuantity = suggestedReorderQuantity;
+        }
+
+        public Medicine getMedicine() {
+            return medicine;
+        }
+
+        public double getDailyRate() {
+            return dailyRate;
+        }
+
+        public double getDaysOfCover() {
+            return daysOfCover;
+        }
+
+        public int getSuggestedReorderQuantity() {
+            return suggestedReorderQuantity;
+        }
+
+        public boolean isReorderNeeded() {
+            return suggestedReorderQuantity > 0;
+        }
+    }
+}
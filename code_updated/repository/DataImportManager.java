@@ -4,9 +4,16 @@ import service.*;
 import entity.*;
 import controller.AuthenticationController;
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.List;
 
 public class DataImportManager {
+    private static final String REPLENISHMENT_JOURNAL = "replenishment_requests.log";
+    private static final String STOCK_TRANSFER_JOURNAL = "stock_transfers.log";
+    private static final String MEDICAL_RECORD_DIRECTORY = "medical_records";
+    private static final String APPOINTMENT_ARCHIVE_DIRECTORY = "appointment_archive";
+    private static final String TRANSACTION_LOG = "transactions.log";
+    private static final int MEDICAL_RECORD_CACHE_SIZE = 1_000;
     private final MedicineImportService medicineImportService;
     private final PatientImportService patientImportService;
     private final StaffImportService staffImportService;
@@ -21,10 +28,15 @@ public class DataImportManager {
     
     public void clearAllData() {
         System.out.println("Clearing existing data...");
-        MedicineRepository.getInstance().clearAll();
+        InventoryNetwork.getInstance().clearAll();
         PatientRepository.getInstance().clearAll();
         StaffRepository.getInstance().clearAll();
         MedicalRecordRepository.getInstance().clearAll();
+        ReplenishmentRequestRepository.getInstance().clearAll();
+        InventoryLedger.getInstance().clearAll();
+        InventoryEventStore.getInstance().clearAll();
+        ConsumptionForecaster.getInstance().clearAll();
+        TransactionManager.getInstance().clearAll();
         authController.clearAllUsers();
         System.out.println("All data cleared successfully.");
     }
@@ -61,6 +73,31 @@ public class DataImportManager {
             System.err.println("Error importing staff: " + e.getMessage());
         }
         
+        // Replay replenishment requests once medicines and staff exist, adding the stock approved in earlier runs
+        try {
+            ReplenishmentRequestRepository requestRepo = ReplenishmentRequestRepository.getInstance();
+            requestRepo.openJournal(Paths.get(medicineFile).resolveSibling(REPLENISHMENT_JOURNAL));
+            System.out.println("Restored " + requestRepo.findAll().size() + " replenishment requests");
+        } catch (Exception e) {
+            System.err.println("Error restoring replenishment requests: " + e.getMessage());
+        }
+        
+        // Stock moved to other locations in earlier runs is moved again, replenished stock included
+        try {
+            InventoryNetwork.getInstance().openJournal(
+                Paths.get(medicineFile).resolveSibling(STOCK_TRANSFER_JOURNAL));
+        } catch (Exception e) {
+            System.err.println("Error restoring stock transfers: " + e.getMessage());
+        }
+        
+        // Records saved in earlier runs take precedence over the patient list
+        try {
+            MedicalRecordRepository.getInstance().openStore(
+                Paths.get(patientFile).resolveSibling(MEDICAL_RECORD_DIRECTORY), MEDICAL_RECORD_CACHE_SIZE);
+        } catch (Exception e) {
+            System.err.println("Error opening medical record store, keeping records in memory: " + e.getMessage());
+        }
+        
         // Import patients last
         try {
             List<Patient> patients = patientImportService.importData(patientFile);
@@ -68,7 +105,9 @@ public class DataImportManager {
             MedicalRecordRepository medicalRecordRepo = MedicalRecordRepository.getInstance();
             for (Patient patient : patients) {
                 patientRepo.save(patient);
-                medicalRecordRepo.save(patient.getMedicalRecord());
+                medicalRecordRepo.saveIfAbsent(patient.getMedicalRecord());
+                // The repository owns the record from here, so it can be evicted from heap
+                patient.setMedicalRecord(null);
                 authController.addUser(patient);
             }
             System.out.println("Imported " + patients.size() + " patients");
@@ -76,6 +115,22 @@ public class DataImportManager {
             System.err.println("Error importing patients: " + e.getMessage());
         }
         
+        // Archived appointments are read back by patient, doctor and medicine ID
+        try {
+            AppointmentRepository.getInstance().openArchive(
+                Paths.get(patientFile).resolveSibling(APPOINTMENT_ARCHIVE_DIRECTORY));
+        } catch (Exception e) {
+            System.err.println("Error opening appointment archive: " + e.getMessage());
+        }
+        
+        // Committed transactions are replayed once the appointments they touch are loaded
+        try {
+            TransactionManager.getInstance().openLog(
+                Paths.get(patientFile).resolveSibling(TRANSACTION_LOG));
+        } catch (Exception e) {
+            System.err.println("Error opening transaction log, commits will not be durable: " + e.getMessage());
+        }
+        
         System.out.println("Data import completed.");
     }
 }
\ No newline at end of file
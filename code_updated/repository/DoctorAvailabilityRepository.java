@@ -8,9 +8,11 @@ import java.util.concurrent.ConcurrentHashMap;
 public class DoctorAvailabilityRepository implements Repository<DoctorAvailability, String> {
     private static DoctorAvailabilityRepository instance;
     private final Map<String, DoctorAvailability> availabilities;
+    private final DoctorScheduleIndex doctorSchedules;
     
     private DoctorAvailabilityRepository() {
         this.availabilities = new ConcurrentHashMap<>();
+        this.doctorSchedules = DoctorScheduleIndex.getInstance();
     }
     
     public static DoctorAvailabilityRepository getInstance() {
@@ -23,6 +25,7 @@ public class DoctorAvailabilityRepository implements Repository<DoctorAvailabili
     @Override
     public DoctorAvailability save(DoctorAvailability availability) {
         availabilities.put(availability.getId(), availability);
+        doctorSchedules.onAvailabilitySaved(availability);
         return availability;
     }
     
@@ -38,7 +41,10 @@ public class DoctorAvailabilityRepository implements Repository<DoctorAvailabili
     
     @Override
     public void delete(String id) {
-        availabilities.remove(id);
+        DoctorAvailability removed = availabilities.remove(id);
+        if (removed != null) {
+            doctorSchedules.onAvailabilityRemoved(removed);
+        }
     }
     
     @Override
@@ -46,10 +52,11 @@ public class DoctorAvailabilityRepository implements Repository<DoctorAvailabili
         return availabilities.containsKey(id);
     }
     
+    /**
+     * Finds the most recently saved availability for a doctor on a date
+     */
     public Optional<DoctorAvailability> findByDoctorAndDate(Doctor doctor, LocalDate date) {
-        return availabilities.values().stream()
-            .filter(a -> a.getDoctor().equals(doctor) && a.getDate().equals(date))
-            .findFirst();
+        return Optional.ofNullable(doctorSchedules.getAvailability(doctor, date));
     }
     
     public List<DoctorAvailability> findByDoctor(Doctor doctor) {
@@ -68,5 +75,6 @@ public class DoctorAvailabilityRepository implements Repository<DoctorAvailabili
 
     public void clearAll() {
         availabilities.clear();
+        doctorSchedules.onAvailabilityCleared();
     }
 }
\ No newline at end of file
@@ -0,0 +1,160 @@
+package repository;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import entity.Appointment;
+import entity.DaySchedule;
+import entity.Doctor;
+import entity.DoctorAvailability;
+import entity.enums.AppointmentStatus;
+
+/**
+ * Materialized per-doctor, per-day schedules.
+ * Appointment events arrive through AppointmentListener and availability
+ * changes are pushed by DoctorAvailabilityRepository, so opening a doctor's
+ * agenda is a map lookup followed by iteration over that day.
+ */
+public class DoctorScheduleIndex implements AppointmentListener {
+    private static DoctorScheduleIndex instance;
+    private final Map<String, ConcurrentSkipListMap<LocalDate, DaySchedule>> schedulesByDoctor;
+
+    private DoctorScheduleIndex() {
+        this.schedulesByDoctor = new ConcurrentHashMap<>();
+    }
+
+    public static synchronized DoctorScheduleIndex getInstance() {
+        if (instance == null) {
+            instance = new DoctorScheduleIndex();
+        }
+        return instance;
+    }
+
+    @Override
+    public void onAppointmentBooked(Appointment appointment) {
+        if (appointment.getStatus() != AppointmentStatus.CANCELLED) {
+            scheduleFor(appointment.getDoctor(), appointment.getDateTime().toLocalDate())
+                .addAppointment(appointment);
+        }
+    }
+
+    @Override
+    public void onStatusChanged(Appointment appointment, AppointmentStatus previousStatus) {
+        if (appointment.getStatus() == AppointmentStatus.CANCELLED) {
+            remove(appointment, appointment.getDateTime().toLocalDate());
+        }
+    }
+
+    @Override
+    public void onAppointmentRescheduled(Appointment appointment, LocalDateTime previousDateTime) {
+        remove(appointment, previousDateTime.toLocalDate());
+        onAppointmentBooked(appointment);
+    }
+
+    @Override
+    public void onAppointmentRemoved(Appointment appointment) {
+        remove(appointment, appointment.getDateTime().toLocalDate());
+    }
+
+    @Override
+    public void onAppointmentCompacted(Appointment appointment) {
+        remove(appointment, appointment.getDateTime().toLocalDate());
+    }
+
+    @Override
+    public void onCleared() {
+        schedulesByDoctor.values().forEach(days -> days.values().forEach(DaySchedule::clearAppointments));
+    }
+
+    /**
+     * Called by DoctorAvailabilityRepository when availability is saved
+     */
+    void onAvailabilitySaved(DoctorAvailability availability) {
+        scheduleFor(availability.getDoctor(), availability.getDate()).setAvailability(availability);
+    }
+
+    /**
+     * Called by DoctorAvailabilityRepository when availability is deleted
+     */
+    void onAvailabilityRemoved(DoctorAvailability availability) {
+        DaySchedule schedule = find(availability.getDoctor().getHospitalId(), availability.getDate());
+        if (schedule != null && schedule.getAvailability() != null &&
+            schedule.getAvailability().getId().equals(availability.getId())) {
+            schedule.setAvailability(null);
+        }
+    }
+
+    void onAvailabilityCleared() {
+        schedulesByDoctor.values().forEach(days -> days.values().forEach(day -> day.setAvailability(null)));
+    }
+
+    /**
+     * Gets a doctor's schedule for a date; empty if nothing is booked or available
+     */
+    public DaySchedule getDaySchedule(Doctor doctor, LocalDate date) {
+        DaySchedule schedule = find(doctor.getHospitalId(), date);
+        return schedule != null ? schedule : new DaySchedule(doctor, date);
+    }
+
+    /**
+     * Gets the availability recorded in a doctor's schedule for a date, if any
+     */
+    public DoctorAvailability getAvailability(Doctor doctor, LocalDate date) {
+        DaySchedule schedule = find(doctor.getHospitalId(), date);
+        return schedule == null ? null : schedule.getAvailability();
+    }
+
+    /**
+     * Gets a doctor's future appointments with one of the given statuses, in time order.
+     * Only days from today onwards are visited.
+     */
+    public List<Appointment> getFutureAppointments(Doctor doctor, AppointmentStatus... statuses) {
+        ConcurrentSkipListMap<LocalDate, DaySchedule> days = schedulesByDoctor.get(doctor.getHospitalId());
+        if (days == null) {
+            return List.of();
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        List<Appointment> result = new ArrayList<>();
+        for (DaySchedule day : days.tailMap(now.toLocalDate(), true).values()) {
+            for (Appointment appointment : day.getAppointments()) {
+                if (appointment.getDateTime().isAfter(now) && hasStatus(appointment, statuses)) {
+                    result.add(appointment);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static boolean hasStatus(Appointment appointment, AppointmentStatus... statuses) {
+        for (AppointmentStatus status : statuses) {
+            if (appointment.getStatus() == status) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private DaySchedule find(String doctorId, LocalDate date) {
+        ConcurrentSkipListMap<LocalDate, DaySchedule> days = schedulesByDoctor.get(doctorId);
+        return days == null ? null : days.get(date);
+    }
+
+    private DaySchedule scheduleFor(Doctor doctor, LocalDate date) {
+        return schedulesByDoctor
+            .computeIfAbsent(doctor.getHospitalId(), id -> new ConcurrentSkipListMap<>())
+            .computeIfAbsent(date, d -> new DaySchedule(doctor, d));
+    }
+
+    private void remove(Appointment appointment, LocalDate date) {
+        DaySchedule schedule = find(appointment.getDoctor().getHospitalId(), date);
+        if (schedule != null) {
+            schedule.removeAppointment(appointment.getAppointmentId());
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package repository;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import entity.StockLot;
+
+/**
+ * Dated lots across the whole formulary, ordered by expiry date.
+ * Lots are added when received and never removed eagerly; depleted lots are
+ * dropped the next time a sweep passes over them.
+ */
+public class ExpiryIndex {
+    private final ConcurrentSkipListMap<ExpiryKey, StockLot> lotsByExpiry = new ConcurrentSkipListMap<>();
+
+    ExpiryIndex() {}
+
+    public void add(StockLot lot) {
+        if (lot.getExpiryDate() != null && !lot.isDepleted()) {
+            lotsByExpiry.put(new ExpiryKey(lot.getExpiryDate(), lot.getSequence()), lot);
+        }
+    }
+
+    /**
+     * Gets lots with stock remaining that expire on or before the given date, earliest first
+     */
+    public List<StockLot> findExpiringOnOrBefore(LocalDate date) {
+        List<StockLot> result = new ArrayList<>();
+        Map<ExpiryKey, StockLot> due = lotsByExpiry.headMap(new ExpiryKey(date, Long.MAX_VALUE), true);
+        for (Map.Entry<ExpiryKey, StockLot> entry : due.entrySet()) {
+            if (entry.getValue().isDepleted()) {
+                due.remove(entry.getKey());
+            } else {
+                result.add(entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    public void clear() {
+        lotsByExpiry.clear();
+    }
+
+    private static class ExpiryKey implements Comparable<ExpiryKey> {
+        private final LocalDate expiryDate;
+        private final long sequence;
+
+        private ExpiryKey(LocalDate expiryDate, long sequence) {
+            this.expiryDate = expiryDate;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(ExpiryKey other) {
+            int byDate = expiryDate.compareTo(other.expiryDate);
+            return byDate != 0 ? byDate : Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package repository;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import entity.MedicalRecord;
+
+/**
+ * Keeps every medical record on heap
+ */
+class InMemoryMedicalRecordStore implements MedicalRecordStore {
+    private final Map<String, MedicalRecord> records = new ConcurrentHashMap<>();
+
+    @Override
+    public void put(MedicalRecord record) {
+        records.put(record.getPatientId(), record);
+    }
+
+    @Override
+    public MedicalRecord get(String patientId) {
+        return records.get(patientId);
+    }
+
+    @Override
+    public void remove(String patientId) {
+        records.remove(patientId);
+    }
+
+    @Override
+    public boolean contains(String patientId) {
+        return records.containsKey(patientId);
+    }
+
+    @Override
+    public int size() {
+        return records.size();
+    }
+
+    @Override
+    public Stream<MedicalRecord> stream() {
+        return records.values().stream();
+    }
+
+    @Override
+    public void close() {
+        records.clear();
+    }
+}
@@ -0,0 +1,181 @@
+package repository;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import entity.Medicine;
+import entity.MedicineInventoryAction;
+import entity.enums.InventoryActionType;
+import entity.enums.PharmacyLocation;
+
+/**
+ * Per-medicine stream of stock change events: an opening balance when a
+ * medicine is loaded, then every dispense, replenishment and manual
+ * adjustment recorded in the inventory ledger. A checkpoint of the running
+ * stock is kept every CHECKPOINT_INTERVAL events, so stock at any past
+ * moment is a binary search plus a replay of at most CHECKPOINT_INTERVAL
+ * events. An action recorded after later ones is inserted at its own
+ * time and the checkpoints after it are rebuilt. Each pharmacy location
+ * has its own stream per medicine; queries by name alone sum over
+ * locations. Current stock is still read from Medicine itself.
+ */
+public class InventoryEventStore {
+    public static final int CHECKPOINT_INTERVAL = 64;
+
+    private static InventoryEventStore instance;
+
+    private final Map<String, StockHistory> histories;
+
+    private InventoryEventStore() {
+        this.histories = new ConcurrentHashMap<>();
+    }
+
+    public static synchronized InventoryEventStore getInstance() {
+        if (instance == null) {
+            instance = new InventoryEventStore();
+        }
+        return instance;
+    }
+
+    /**
+     * Records a medicine's stock as an opening balance, or as a correcting
+     * event if the medicine already has history
+     */
+    public void recordOpeningStock(Medicine medicine) {
+        StockHistory history = histories.computeIfAbsent(key(medicine.getLocation(), medicine.getName()),
+            k -> new StockHistory());
+        synchronized (history) {
+            history.append(LocalDateTime.now(), medicine.getCurrentStock() - history.currentStock);
+        }
+    }
+
+    /**
+     * Records the stock change described by an inventory action
+     */
+    public void record(MedicineInventoryAction action) {
+        int delta = action.getActionType() == InventoryActionType.DISPENSE
+            ? -action.getQuantity()
+            : action.getQuantity();
+        Medicine medicine = action.getMedicine();
+        StockHistory history = histories.computeIfAbsent(key(medicine.getLocation(), medicine.getName()),
+            k -> new StockHistory());
+        synchronized (history) {
+            history.append(action.getActionDateTime(), delta);
+        }
+    }
+
+    /**
+     * Gets a medicine's on-hand stock across all locations as it was at the
+     * given moment. Returns 0 for moments before the medicine was first loaded.
+     */
+    public int getStockAt(String medicineName, LocalDateTime time) {
+        if (!hasHistory(medicineName)) {
+            throw new IllegalArgumentException("No stock history for " + medicineName);
+        }
+        int stock = 0;
+        for (PharmacyLocation location : PharmacyLocation.values()) {
+            StockHistory history = histories.get(key(location, medicineName));
+            if (history != null) {
+                synchronized (history) {
+                    stock += history.stockAt(time);
+                }
+            }
+        }
+        return stock;
+    }
+
+    /**
+     * Gets a medicine's on-hand stock at one location as it was at the given moment
+     */
+    public int getStockAt(PharmacyLocation location, String medicineName, LocalDateTime time) {
+        StockHistory history = histories.get(key(location, medicineName));
+        if (history == null) {
+            throw new IllegalArgumentException("No stock history for " + medicineName + " at " + location);
+        }
+        synchronized (history) {
+            return history.stockAt(time);
+        }
+    }
+
+    public boolean hasHistory(String medicineName) {
+        for (PharmacyLocation location : PharmacyLocation.values()) {
+            if (histories.containsKey(key(location, medicineName))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void clearAll() {
+        histories.clear();
+    }
+
+    private static String key(PharmacyLocation location, String medicineName) {
+        return location.name() + "/" + medicineName.trim().toLowerCase(Locale.ROOT);
+    }
+
+    // Guarded by its own monitor
+    private static class StockHistory {
+        private final List<LocalDateTime> times = new ArrayList<>();
+        private final List<Integer> deltas = new ArrayList<>();
+        // checkpoints.get(k) is the stock before event k * CHECKPOINT_INTERVAL
+        private final List<Integer> checkpoints = new ArrayList<>();
+        private int currentStock;
+
+        void append(LocalDateTime time, int delta) {
+            // An action recorded late is inserted at its own time, after any events at the same moment
+            int position = lastEventAtOrBefore(time) + 1;
+            times.add(position, time);
+            deltas.add(position, delta);
+            currentStock += delta;
+
+            // Checkpoints up to the inserted event still hold; the ones after it are rebuilt
+            if (checkpoints.isEmpty()) {
+                checkpoints.add(0);
+            }
+            int base = Math.min(position / CHECKPOINT_INTERVAL, checkpoints.size() - 1);
+            checkpoints.subList(base + 1, checkpoints.size()).clear();
+            int start = base * CHECKPOINT_INTERVAL;
+            int stock = checkpoints.get(base);
+            for (int i = start; i < deltas.size(); i++) {
+                if (i > start && i % CHECKPOINT_INTERVAL == 0) {
+                    checkpoints.add(stock);
+                }
+                stock += deltas.get(i);
+            }
+        }
+
+        int stockAt(LocalDateTime time) {
+            int last = lastEventAtOrBefore(time);
+            if (last < 0) {
+                return 0;
+            }
+            int checkpoint = last / CHECKPOINT_INTERVAL;
+            int stock = checkpoints.get(checkpoint);
+            for (int i = checkpoint * CHECKPOINT_INTERVAL; i <= last; i++) {
+                stock += deltas.get(i);
+            }
+            return stock;
+        }
+
+        private int lastEventAtOrBefore(LocalDateTime time) {
+            int low = 0;
+            int high = times.size() - 1;
+            int found = -1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (times.get(mid).isAfter(time)) {
+                    high = mid - 1;
+                } else {
+                    found = mid;
+                    low = mid + 1;
+                }
+            }
+            return found;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package repository;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import entity.MedicineInventoryAction;
+
+/**
+ * Hospital-wide, append-only ledger of inventory actions.
+ * Actions are kept in one segment per day, both globally and per medicine
+ * and per actor, so date-range and per-drug audits only touch the segments
+ * that overlap the range. Appends use only lock-free collections and can
+ * come from any administrator or pharmacist thread.
+ */
+public class InventoryLedger {
+    private static InventoryLedger instance;
+
+    private final SegmentedLog all;
+    private final Map<String, SegmentedLog> byMedicine;
+    private final Map<String, SegmentedLog> byActor;
+    private final InventoryEventStore eventStore;
+    private final ConsumptionForecaster forecaster;
+
+    private InventoryLedger() {
+        this.all = new SegmentedLog();
+        this.byMedicine = new ConcurrentHashMap<>();
+        this.byActor = new ConcurrentHashMap<>();
+        this.eventStore = InventoryEventStore.getInstance();
+        this.forecaster = ConsumptionForecaster.getInstance();
+    }
+
+    public static synchronized InventoryLedger getInstance() {
+        if (instance == null) {
+            instance = new InventoryLedger();
+        }
+        return instance;
+    }
+
+    /**
+     * Appends an action to the ledger, the medicine's stock event stream
+     * and its consumption forecast
+     */
+    public void append(MedicineInventoryAction action) {
+        if (action == null) {
+            throw new IllegalArgumentException("Action cannot be null");
+        }
+        eventStore.record(action);
+        all.append(action);
+        byMedicine.computeIfAbsent(medicineKey(action.getMedicine().getName()), key -> new SegmentedLog())
+            .append(action);
+        if (action.getPerformedBy() != null) {
+            byActor.computeIfAbsent(action.getPerformedBy().getHospitalId(), id -> new SegmentedLog())
+                .append(action);
+        }
+        forecaster.record(action);
+    }
+
+    public List<MedicineInventoryAction> findAll() {
+        return all.read(null, null);
+    }
+
+    /**
+     * Finds actions performed between from and to inclusive, oldest first
+     */
+    public List<MedicineInventoryAction> findByDateRange(LocalDateTime from, LocalDateTime to) {
+        return all.read(from, to);
+    }
+
+    public List<MedicineInventoryAction> findByMedicine(String medicineName) {
+        return findByMedicine(medicineName, null, null);
+    }
+
+    /**
+     * Finds a medicine's actions between from and to inclusive; either bound may be null
+     */
+    public List<MedicineInventoryAction> findByMedicine(String medicineName, LocalDateTime from, LocalDateTime to) {
+        SegmentedLog log = byMedicine.get(medicineKey(medicineName));
+        return log == null ? List.of() : log.read(from, to);
+    }
+
+    public List<MedicineInventoryAction> findByActor(String hospitalId) {
+        return findByActor(hospitalId, null, null);
+    }
+
+    /**
+     * Finds the actions a staff member performed between from and to inclusive; either bound may be null
+     */
+    public List<MedicineInventoryAction> findByActor(String hospitalId, LocalDateTime from, LocalDateTime to) {
+        SegmentedLog log = byActor.get(hospitalId);
+        return log == null ? List.of() : log.read(from, to);
+    }
+
+    public void clearAll() {
+        all.clear();
+        byMedicine.clear();
+        byActor.clear();
+    }
+
+    private static String medicineKey(String medicineName) {
+        return medicineName.trim().toLowerCase(Locale.ROOT);
+    }
+
+    // One queue of actions per day, navigable by date
+    private static class SegmentedLog {
+        private final ConcurrentSkipListMap<LocalDate, Queue<MedicineInventoryAction>> segments =
+            new ConcurrentSkipListMap<>();
+
+        void append(MedicineInventoryAction action) {
+            segments.computeIfAbsent(action.getActionDateTime().toLocalDate(), day -> new ConcurrentLinkedQueue<>())
+                .offer(action);
+        }
+
+        List<MedicineInventoryAction> read(LocalDateTime from, LocalDateTime to) {
+            Map<LocalDate, Queue<MedicineInventoryAction>> range;
+            if (from != null && to != null) {
+                if (to.isBefore(from)) {
+                    return List.of();
+                }
+                range = segments.subMap(from.toLocalDate(), true, to.toLocalDate(), true);
+            } else if (from != null) {
+                range = segments.tailMap(from.toLocalDate(), true);
+            } else if (to != null) {
+                range = segments.headMap(to.toLocalDate(), true);
+            } else {
+                range = segments;
+            }
+
+            List<MedicineInventoryAction> result = new ArrayList<>();
+            for (Queue<MedicineInventoryAction> segment : range.values()) {
+                for (MedicineInventoryAction action : segment) {
+                    LocalDateTime time = action.getActionDateTime();
+                    if ((from == null || !time.isBefore(from)) && (to == null || !time.isAfter(to))) {
+                        result.add(action);
+                    }
+                }
+            }
+            // Appends within a day arrive in roughly time order; a stable sort settles any overlap
+            result.sort(Comparator.comparing(MedicineInventoryAction::getActionDateTime));
+            return result;
+        }
+
+        void clear() {
+            segments.clear();
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package repository;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+import entity.Medicine;
+import entity.MedicineInventoryAction;
+import entity.User;
+import entity.enums.InventoryActionType;
+import entity.enums.PharmacyLocation;
+
+/**
+ * The main pharmacy and satellite dispensaries, each with its own
+ * MedicineRepository shard holding separate Medicine objects, stock and
+ * alert levels, so dispensing at one location never touches another
+ * location's stock. The network-wide total per medicine is kept in a
+ * LongAdder that every shard adds its stock changes to, so the aggregate
+ * view is never recomputed and concurrent updates from different locations
+ * land on separate cells. Stock levels are reloaded from the medicine list,
+ * which stocks the main pharmacy only, so transfers are journaled and
+ * replayed on startup to put stock back where it was moved to. Stock added
+ * by approved replenishments must be replayed first, as a transfer may
+ * have moved it; replay never adds less stock than there was, so each
+ * transfer finds at least what it moved.
+ */
+public class InventoryNetwork {
+    private static final String FIELD_SEPARATOR = "|";
+    // Marks a complete record; a line without it was torn by a crash and is ignored
+    private static final String END_OF_RECORD = "END";
+    private static InventoryNetwork instance;
+
+    private final Map<PharmacyLocation, MedicineRepository> shards;
+    private final Map<String, LongAdder> totals;
+    private Path journal; // guarded by this
+
+    private InventoryNetwork() {
+        this.shards = new EnumMap<>(PharmacyLocation.class);
+        for (PharmacyLocation location : PharmacyLocation.values()) {
+            shards.put(location, new MedicineRepository(location, this));
+        }
+        this.totals = new ConcurrentHashMap<>();
+    }
+
+    public static synchronized InventoryNetwork getInstance() {
+        if (instance == null) {
+            instance = new InventoryNetwork();
+        }
+        return instance;
+    }
+
+    public MedicineRepository getShard(PharmacyLocation location) {
+        if (location == null) {
+            throw new IllegalArgumentException("Location cannot be null");
+        }
+        return shards.get(location);
+    }
+
+    /**
+     * Gets a medicine's on-hand stock summed over all locations
+     */
+    public int getTotalStock(String medicineName) {
+        LongAdder total = totals.get(key(medicineName));
+        return total == null ? 0 : total.intValue();
+    }
+
+    /**
+     * Gets the on-hand stock of every medicine summed over all locations, by name
+     */
+    public Map<String, Integer> getTotalStock() {
+        Map<String, Integer> result = new TreeMap<>();
+        for (MedicineRepository shard : shards.values()) {
+            for (Medicine medicine : shard.findAll()) {
+                result.putIfAbsent(medicine.getName(), getTotalStock(medicine.getName()));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets a medicine's stock at a location, adding it there with no stock and
+     * the alert level and max stock it has at another location if it is not stocked there yet.
+     * Returns empty if no location stocks the medicine.
+     */
+    public Optional<Medicine> findOrStock(String medicineName, PharmacyLocation location) {
+        Optional<Medicine> stocked = getShard(location).findById(medicineName);
+        if (stocked.isPresent()) {
+            return stocked;
+        }
+        return shards.values().stream()
+            .map(shard -> shard.findById(medicineName))
+            .flatMap(Optional::stream)
+            .findFirst()
+            .map(other -> getShard(location).saveIfAbsent(
+                new Medicine(other.getName(), 0, other.getLowStockAlert(), location, other.getMaxStock())));
+    }
+
+    /**
+     * Moves stock of a medicine between two locations as one step, journals
+     * it and records both sides in the inventory ledger. The medicine is added
+     * to the destination, with the source's alert level, if it is not stocked there yet.
+     *
+     * @return the TRANSFER_OUT and TRANSFER_IN actions recorded
+     */
+    public List<MedicineInventoryAction> transfer(String medicineName, PharmacyLocation from,
+            PharmacyLocation to, int quantity, User performedBy) {
+        if (from == to) {
+            throw new IllegalArgumentException("Source and destination must differ");
+        }
+        if (performedBy == null) {
+            throw new IllegalArgumentException("Performer cannot be null");
+        }
+        Medicine source = getShard(from).findById(medicineName)
+            .orElseThrow(() -> new IllegalArgumentException(medicineName + " is not stocked at " + from));
+        Medicine destination = findOrStock(source.getName(), to).orElseThrow();
+
+        if (!source.transferTo(destination, quantity)) {
+            throw new IllegalArgumentException("Not enough unreserved stock at " + from + " to transfer " + quantity);
+        }
+        try {
+            appendToJournal(String.join(FIELD_SEPARATOR, "TRANSFER",
+                source.getName(), from.name(), to.name(), String.valueOf(quantity), END_OF_RECORD));
+        } catch (IllegalStateException e) {
+            // Not durable, so the stock is moved back
+            destination.transferTo(source, quantity);
+            throw e;
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        String reason = "Transfer from " + from + " to " + to;
+        List<MedicineInventoryAction> actions = List.of(
+            new MedicineInventoryAction(source, -quantity, InventoryActionType.TRANSFER_OUT, now, performedBy, reason),
+            new MedicineInventoryAction(destination, quantity, InventoryActionType.TRANSFER_IN, now, performedBy, reason));
+        InventoryLedger ledger = InventoryLedger.getInstance();
+        actions.forEach(ledger::append);
+        return actions;
+    }
+
+    /**
+     * Makes transfers durable by journaling them to the given file, replaying
+     * the transfers already recorded there. Medicines must be loaded, and
+     * replenishment requests replayed, first.
+     */
+    public synchronized void openJournal(Path journalFile) throws IOException {
+        journal = null;
+        if (Files.exists(journalFile)) {
+            int lineNumber = 0;
+            for (String line : Files.readAllLines(journalFile, StandardCharsets.UTF_8)) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                String[] fields = line.split(Pattern.quote(FIELD_SEPARATOR), -1);
+                if (fields.length != 6 || !fields[0].equals("TRANSFER") ||
+                    !fields[fields.length - 1].equals(END_OF_RECORD)) {
+                    System.err.println("Skipping incomplete stock transfer journal line " + lineNumber);
+                    continue;
+                }
+                try {
+                    replayTransfer(fields);
+                } catch (RuntimeException e) {
+                    System.err.println("Skipping stock transfer journal line " + lineNumber + ": " + e.getMessage());
+                }
+            }
+        }
+        this.journal = journalFile;
+    }
+
+    /**
+     * Clears every location's stock and detaches the journal, which keeps its contents
+     */
+    public synchronized void clearAll() {
+        shards.values().forEach(MedicineRepository::clearAll);
+        totals.clear();
+        journal = null;
+    }
+
+    // Moves the stock again without recording it in the ledger, which starts empty on every run
+    private void replayTransfer(String[] fields) {
+        PharmacyLocation from = PharmacyLocation.valueOf(fields[2]);
+        PharmacyLocation to = PharmacyLocation.valueOf(fields[3]);
+        int quantity = Integer.parseInt(fields[4]);
+        Medicine source = getShard(from).findById(fields[1])
+            .orElseThrow(() -> new IllegalStateException(fields[1] + " is not stocked at " + from));
+        Medicine destination = findOrStock(source.getName(), to).orElseThrow();
+        if (!source.transferTo(destination, quantity)) {
+            throw new IllegalStateException("Not enough stock at " + from + " to move " + quantity + " " + fields[1]);
+        }
+    }
+
+    private synchronized void appendToJournal(String record) {
+        if (journal == null) {
+            return;
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(journal, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.DSYNC)) {
+            writer.write(record);
+            writer.newLine();
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to record stock transfer: " + e.getMessage(), e);
+        }
+    }
+
+    // Called by the shards with every change to on-hand stock
+    void addToTotal(String medicineName, int delta) {
+        if (delta != 0) {
+            totals.computeIfAbsent(key(medicineName), k -> new LongAdder()).add(delta);
+        }
+    }
+
+    private static String key(String medicineName) {
+        return medicineName.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,18 @@
+package repository;
+
+import entity.Medicine;
+
+/**
+ * Receives low-stock alerts from MedicineRepository
+ */
+public interface LowStockListener {
+    /**
+     * Called when a medicine's available stock drops to or below its alert level
+     */
+    void onLowStock(Medicine medicine);
+
+    /**
+     * Called when a low-stock medicine is restocked above its alert level
+     */
+    default void onStockRestored(Medicine medicine) {}
+}
@@ -0,0 +1,595 @@
+package repository;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import entity.ContactInfo;
+import entity.Diagnosis;
+import entity.DiagnosisHistory;
+import entity.MedicalRecord;
+import entity.Treatment;
+import entity.enums.BloodType;
+import entity.enums.Gender;
+
+/**
+ * Medical records serialized into memory-mapped segment files, with only the
+ * most recently used records kept on heap. A record is decoded from its
+ * segment the first time it is read after being evicted. Each entry is a
+ * length and a CRC32 of its bytes, followed by the bytes; a negative length
+ * marks a deletion. An entry holds the record's details and the diagnoses
+ * from a starting index on. One starting at zero holds the whole record; a
+ * save that only extends the stored history appends a delta entry holding
+ * just the new diagnoses, chained in the index to the entries before it.
+ * Once a chain's deltas outweigh the full entry it starts from, the next
+ * save writes a full entry again, so a save costs about the bytes it adds
+ * and a read at most twice the record's size. Mapped pages reach the disk
+ * whenever the operating system writes them back, and are only forced on
+ * close, so a crash can leave any recent entry partly written; reopening
+ * stops at the first entry whose checksum fails. Entries no chain reaches
+ * and deletions are garbage. Once it outweighs the live entries, and fills
+ * at least a segment, each chain is folded into one full entry in fresh
+ * segments and the old ones deleted, so disk use stays proportional to the
+ * records held. Version sequences are kept in the index rather than the
+ * files, so records read back after a reopen are version 0.
+ */
+class MappedMedicalRecordStore implements MedicalRecordStore {
+    static final int SEGMENT_SIZE = 16 * 1024 * 1024;
+
+    private static final String SEGMENT_PREFIX = "records-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    // Length, then checksum
+    private static final int HEADER_BYTES = 2 * Integer.BYTES;
+    // Decoded instances remembered per record, so a save after an eviction still finds its chain
+    private static final int MAX_LINEAGES = 4;
+
+    private final Path directory;
+    // Indexed by segment number; segments dropped by compaction are left null
+    private final List<FileChannel> channels;
+    private final List<MappedByteBuffer> segments;
+    private final Map<String, Location> locations;
+    private final RecordCache cache;
+    private int writePosition;
+    // Bytes of entries in the segments, and of the entries the index points at; guarded by this store
+    private long writtenBytes;
+    private long liveBytes;
+
+    private MappedMedicalRecordStore(Path directory, int cacheCapacity) {
+        this.directory = directory;
+        this.channels = new ArrayList<>();
+        this.segments = new ArrayList<>();
+        this.locations = new ConcurrentHashMap<>();
+        this.cache = new RecordCache(cacheCapacity);
+    }
+
+    /**
+     * Opens the store in a directory, indexing any records already saved there
+     */
+    static MappedMedicalRecordStore open(Path directory, int cacheCapacity) throws IOException {
+        if (cacheCapacity <= 0) {
+            throw new IllegalArgumentException("Cache capacity must be positive");
+        }
+        Files.createDirectories(directory);
+        MappedMedicalRecordStore store = new MappedMedicalRecordStore(directory, cacheCapacity);
+        try {
+            // Compaction deletes the oldest segments, so numbering need not start at zero
+            for (int segment : store.listSegments()) {
+                while (store.segments.size() < segment) {
+                    store.channels.add(null);
+                    store.segments.add(null);
+                }
+                store.mapSegment(segment);
+                store.writePosition = store.scan(segment);
+            }
+            if (store.segments.isEmpty()) {
+                store.mapSegment(0);
+            }
+        } catch (IOException | RuntimeException e) {
+            store.close();
+            throw e;
+        }
+        return store;
+    }
+
+    @Override
+    public void put(MedicalRecord record) {
+        String patientId = record.getPatientId();
+        DiagnosisHistory history = record.getDiagnosisHistory();
+        Location previous = locations.get(patientId);
+        int from = appendsFrom(previous, history);
+        byte[] bytes = encode(record, from);
+        synchronized (this) {
+            Location current = locations.get(patientId);
+            // Compaction, a read or a save bypassing the repository's lock may have replaced the chain's head since
+            if (current != previous && appendsFrom(current, history) != from) {
+                from = appendsFrom(current, history);
+                bytes = encode(record, from);
+            }
+            long position = append(bytes, bytes.length);
+            Location location = new Location(position, record.getVersion(), bytes.length,
+                history.size(), from == 0 ? null : current, List.of(history.getLineage()));
+            locations.put(patientId, location);
+            liveBytes += location.chainBytes - (current == null ? 0 : current.chainBytes);
+            compactIfWasteful();
+        }
+        synchronized (cache) {
+            cache.put(patientId, record);
+        }
+    }
+
+    @Override
+    public MedicalRecord get(String patientId) {
+        synchronized (cache) {
+            MedicalRecord cached = cache.get(patientId);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        while (true) {
+            Location location = locations.get(patientId);
+            if (location == null) {
+                return null;
+            }
+            MedicalRecord decoded = read(location);
+            synchronized (cache) {
+                // Another reader may have decoded it first; keep a single instance
+                MedicalRecord cached = cache.get(patientId);
+                if (cached != null) {
+                    return cached;
+                }
+                // Only cache what is still the newest version, or a stale one could stick
+                if (locations.get(patientId) == location) {
+                    // Lets saves of versions derived from this instance append to its chain
+                    locations.replace(patientId, location,
+                        location.readAs(decoded.getDiagnosisHistory().getLineage()));
+                    cache.put(patientId, decoded);
+                    return decoded;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void remove(String patientId) {
+        synchronized (this) {
+            Location previous = locations.remove(patientId);
+            if (previous == null) {
+                return;
+            }
+            liveBytes -= previous.chainBytes;
+            byte[] bytes = encodeId(patientId);
+            append(bytes, -bytes.length);
+            compactIfWasteful();
+        }
+        synchronized (cache) {
+            cache.remove(patientId);
+        }
+    }
+
+    @Override
+    public boolean contains(String patientId) {
+        return locations.containsKey(patientId);
+    }
+
+    @Override
+    public int size() {
+        return locations.size();
+    }
+
+    /**
+     * Streams every record, decoding ones that are not cached without adding them to the cache
+     */
+    @Override
+    public Stream<MedicalRecord> stream() {
+        return locations.keySet().stream()
+            .map(patientId -> {
+                synchronized (cache) {
+                    MedicalRecord cached = cache.get(patientId);
+                    if (cached != null) {
+                        return cached;
+                    }
+                }
+                for (Location location = locations.get(patientId); location != null;
+                        location = locations.get(patientId)) {
+                    MedicalRecord decoded = read(location);
+                    if (decoded != null) {
+                        return decoded;
+                    }
+                }
+                return null;
+            })
+            .filter(Objects::nonNull);
+    }
+
+    @Override
+    public synchronized void close() {
+        for (MappedByteBuffer segment : segments) {
+            if (segment != null) {
+                segment.force();
+            }
+        }
+        for (FileChannel channel : channels) {
+            closeQuietly(channel);
+        }
+        channels.clear();
+        segments.clear();
+        locations.clear();
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    // Writes the checksum and bytes, then the length; caller holds the lock
+    private long append(byte[] bytes, int length) {
+        if (bytes.length + HEADER_BYTES > SEGMENT_SIZE) {
+            throw new IllegalArgumentException("Medical record too large to store: " + bytes.length + " bytes");
+        }
+        if (writePosition + HEADER_BYTES + bytes.length > SEGMENT_SIZE) {
+            try {
+                mapSegment(segments.size());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to add medical record segment", e);
+            }
+            writePosition = 0;
+        }
+        int segment = segments.size() - 1;
+        MappedByteBuffer buffer = segments.get(segment);
+        int offset = writePosition;
+        buffer.putInt(offset + Integer.BYTES, checksum(bytes));
+        buffer.put(offset + HEADER_BYTES, bytes);
+        buffer.putInt(offset, length);
+        writePosition = offset + HEADER_BYTES + bytes.length;
+        writtenBytes += HEADER_BYTES + bytes.length;
+        return ((long) segment << 32) | offset;
+    }
+
+    // Returns null if compaction has dropped the entry's segment since the location was read
+    private MedicalRecord read(Location location) {
+        MedicalRecord record = fold(location);
+        return record == null ? null : record.asVersion(location.version);
+    }
+
+    // Decodes a chain into one unsaved record, or returns null if one of its segments has been dropped
+    private MedicalRecord fold(Location location) {
+        List<byte[]> entries = new ArrayList<>();
+        for (Location entry = location; entry != null; entry = entry.previous) {
+            byte[] bytes = readEntry(entry);
+            if (bytes == null) {
+                return null;
+            }
+            entries.add(bytes);
+        }
+        Collections.reverse(entries);
+        return decode(entries);
+    }
+
+    private byte[] readEntry(Location location) {
+        MappedByteBuffer buffer;
+        synchronized (this) {
+            buffer = segments.get((int) (location.position >>> 32));
+        }
+        if (buffer == null) {
+            return null;
+        }
+        byte[] bytes = new byte[location.length];
+        buffer.get((int) location.position + HEADER_BYTES, bytes);
+        return bytes;
+    }
+
+    // Rebuilds the index from one segment and returns where its entries end
+    private int scan(int segment) throws IOException {
+        MappedByteBuffer buffer = segments.get(segment);
+        int position = 0;
+        while (position + HEADER_BYTES <= SEGMENT_SIZE) {
+            int length = buffer.getInt(position);
+            int size = Math.abs(length);
+            if (length == 0) {
+                break;
+            }
+            byte[] bytes = null;
+            if (position + HEADER_BYTES + size <= SEGMENT_SIZE) {
+                bytes = new byte[size];
+                buffer.get(position + HEADER_BYTES, bytes);
+            }
+            if (bytes == null || checksum(bytes) != buffer.getInt(position + Integer.BYTES)) {
+                // Torn by a crash; cleared so that later entries cannot line up with what is left of it
+                for (int i = position; i < SEGMENT_SIZE; i++) {
+                    buffer.put(i, (byte) 0);
+                }
+                break;
+            }
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            String patientId = in.readUTF();
+            Location previous = locations.get(patientId);
+            if (length < 0) {
+                locations.remove(patientId);
+                liveBytes -= previous == null ? 0 : previous.chainBytes;
+            } else {
+                int from = in.readInt();
+                int added = in.readInt();
+                if (from == 0 || (previous != null && previous.diagnoses == from)) {
+                    Location location = new Location(((long) segment << 32) | position, 0, size,
+                        from + added, from == 0 ? null : previous, List.of());
+                    locations.put(patientId, location);
+                    liveBytes += location.chainBytes - (previous == null ? 0 : previous.chainBytes);
+                } else {
+                    // The entries it extends were lost in a crash; keeping the rest of the record beats refusing to open
+                    System.err.println("Skipping medical record delta that does not follow its stored entries: "
+                        + patientId);
+                }
+            }
+            writtenBytes += HEADER_BYTES + size;
+            position += HEADER_BYTES + size;
+        }
+        return position;
+    }
+
+    // Caller holds the lock
+    private void compactIfWasteful() {
+        long garbage = writtenBytes - liveBytes;
+        if (garbage < SEGMENT_SIZE || garbage < liveBytes) {
+            return;
+        }
+        try {
+            compact();
+        } catch (IOException | UncheckedIOException e) {
+            // Saves keep working in the old segments; compaction is tried again on the next save
+            System.err.println("Failed to compact medical record store: " + e.getMessage());
+        }
+    }
+
+    // Folds every chain into one full entry in new segments, forces them to disk, then deletes the old ones; caller holds the lock
+    private void compact() throws IOException {
+        int firstNew = segments.size();
+        mapSegment(firstNew);
+        writePosition = 0;
+        long folded = 0;
+        for (Map.Entry<String, Location> entry : locations.entrySet()) {
+            Location location = entry.getValue();
+            byte[] bytes = encode(fold(location), 0);
+            Location moved = new Location(append(bytes, bytes.length), location.version, bytes.length,
+                location.diagnoses, null, location.lineages);
+            locations.put(entry.getKey(), moved);
+            folded += moved.chainBytes;
+        }
+        for (int segment = firstNew; segment < segments.size(); segment++) {
+            segments.get(segment).force();
+        }
+        liveBytes = folded;
+        writtenBytes = liveBytes;
+        // Until the copies are on disk a crash must still find the originals
+        for (int segment = 0; segment < firstNew; segment++) {
+            if (segments.get(segment) == null) {
+                continue;
+            }
+            closeQuietly(channels.get(segment));
+            channels.set(segment, null);
+            segments.set(segment, null);
+            Files.deleteIfExists(segmentPath(segment));
+        }
+    }
+
+    private List<Integer> listSegments() throws IOException {
+        TreeSet<Integer> numbers = new TreeSet<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    numbers.add(Integer.parseInt(
+                        name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    System.err.println("Ignoring unexpected medical record file: " + name);
+                }
+            }
+        }
+        return new ArrayList<>(numbers);
+    }
+
+    private static int checksum(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Failed to close medical record segment: " + e.getMessage());
+        }
+    }
+
+    private void mapSegment(int segment) throws IOException {
+        FileChannel channel = FileChannel.open(segmentPath(segment),
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channels.add(channel);
+        segments.add(channel.map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_SIZE));
+    }
+
+    private Path segmentPath(int segment) {
+        return directory.resolve(SEGMENT_PREFIX + String.format("%04d", segment) + SEGMENT_SUFFIX);
+    }
+
+    private static byte[] encodeId(String patientId) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            new DataOutputStream(bytes).writeUTF(patientId);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Index from which a record's diagnoses still need writing: the end of the stored chain if the record's
+    // history extends it and the chain is not due for folding, otherwise zero
+    private static int appendsFrom(Location stored, DiagnosisHistory history) {
+        if (stored == null || !stored.lineages.contains(history.getLineage()) || stored.diagnoses > history.size()
+                || stored.chainBytes - stored.baseBytes >= stored.baseBytes) {
+            return 0;
+        }
+        return stored.diagnoses;
+    }
+
+    // The patient ID and the diagnosis range come first so that scan can read them without decoding the rest
+    private static byte[] encode(MedicalRecord record, int from) {
+        try {
+            DiagnosisHistory history = record.getDiagnosisHistory();
+            int added = history.size() - from;
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeUTF(record.getPatientId());
+            out.writeInt(from);
+            out.writeInt(added);
+            out.writeUTF(record.getName());
+            out.writeLong(record.getDateOfBirth().toEpochDay());
+            out.writeUTF(record.getGender().name());
+            out.writeUTF(record.getBloodType().name());
+            out.writeUTF(Objects.toString(record.getContactInfo().getPhoneNumber(), ""));
+            out.writeUTF(Objects.toString(record.getContactInfo().getEmail(), ""));
+            if (added > 0) {
+                // The newest entries come first in a page
+                List<Diagnosis> diagnoses = new ArrayList<>(history.getPage(null, added).getItems());
+                Collections.reverse(diagnoses);
+                for (Diagnosis diagnosis : diagnoses) {
+                    out.writeLong(diagnosis.getDate().toEpochDay());
+                    out.writeUTF(diagnosis.getDescription());
+                    out.writeUTF(diagnosis.getTreatment().getDescription());
+                }
+            }
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Takes a chain's entries oldest first; the details come from the newest
+    private static MedicalRecord decode(List<byte[]> entries) {
+        try {
+            DataInputStream newest = new DataInputStream(new ByteArrayInputStream(entries.get(entries.size() - 1)));
+            String patientId = newest.readUTF();
+            newest.readInt();
+            newest.readInt();
+            MedicalRecord record = new MedicalRecord(
+                patientId,
+                newest.readUTF(),
+                LocalDate.ofEpochDay(newest.readLong()),
+                Gender.valueOf(newest.readUTF()),
+                BloodType.valueOf(newest.readUTF()),
+                new ContactInfo(newest.readUTF(), newest.readUTF()));
+            for (byte[] entry : entries) {
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(entry));
+                in.readUTF();
+                in.readInt();
+                int added = in.readInt();
+                // Name, date of birth, gender, blood type, phone and email, already taken from the newest entry
+                in.readUTF();
+                in.readLong();
+                for (int i = 0; i < 4; i++) {
+                    in.readUTF();
+                }
+                for (int i = 0; i < added; i++) {
+                    LocalDate date = LocalDate.ofEpochDay(in.readLong());
+                    String description = in.readUTF();
+                    record.addDiagnosis(new Diagnosis(description, new Treatment(in.readUTF()), date));
+                }
+            }
+            return record;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Corrupt medical record entry", e);
+        }
+    }
+
+    private static class Location {
+        // Segment number in the high half, offset in the low half
+        private final long position;
+        private final long version;
+        // Bytes after the header
+        private final int length;
+        // Diagnoses held by this entry and the ones it extends
+        private final int diagnoses;
+        // The entry this one extends, or null if it holds the whole record
+        private final Location previous;
+        // Bytes of the chain's entries with their headers, and of the full entry it starts from
+        private final long chainBytes;
+        private final long baseBytes;
+        // Lineages of the histories known to hold exactly the chain's diagnoses: the one saved here and
+        // the most recently decoded from it; none are known after a reopen
+        private final List<Object> lineages;
+
+        private Location(long position, long version, int length, int diagnoses, Location previous,
+                List<Object> lineages) {
+            this.position = position;
+            this.version = version;
+            this.length = length;
+            this.diagnoses = diagnoses;
+            this.previous = previous;
+            this.chainBytes = HEADER_BYTES + length + (previous == null ? 0 : previous.chainBytes);
+            this.baseBytes = previous == null ? HEADER_BYTES + length : previous.baseBytes;
+            this.lineages = lineages;
+        }
+
+        Location readAs(Object lineage) {
+            List<Object> known = new ArrayList<>(lineages);
+            known.add(lineage);
+            if (known.size() > MAX_LINEAGES) {
+                known.remove(0);
+            }
+            return new Location(position, version, length, diagnoses, previous, List.copyOf(known));
+        }
+    }
+
+    // Least recently used records are evicted first; guarded by its own monitor
+    private static class RecordCache {
+        private final Map<String, MedicalRecord> records = new LinkedHashMap<>(16, 0.75f, true);
+        private final int capacity;
+
+        RecordCache(int capacity) {
+            this.capacity = capacity;
+        }
+
+        MedicalRecord get(String patientId) {
+            return records.get(patientId);
+        }
+
+        void put(String patientId, MedicalRecord record) {
+            records.put(patientId, record);
+            if (records.size() > capacity) {
+                Iterator<String> eldest = records.keySet().iterator();
+                eldest.next();
+                eldest.remove();
+            }
+        }
+
+        void remove(String patientId) {
+            records.remove(patientId);
+        }
+
+        void clear() {
+            records.clear();
+        }
+    }
+}
@@ -4,17 +4,46 @@ import entity.*;
 import entity.enums.BloodType;
 import entity.enums.Gender;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.time.*;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import util.StringDictionary;
+
+/**
+ * Medical records by patient ID. Records are held on heap until openStore
+ * switches to memory-mapped segment files, after which only a bounded cache
+ * of recently used records stays on heap.
+ *
+ * Every write commits a new version of the record at the next global
+ * sequence; records are changed through update rather than in place. Writes
+ * to one patient are serialized by that patient's lock, one of a fixed set
+ * of striped locks, so other patients are written in parallel; only
+ * swapping the store takes every stripe. Reads never lock: a query sees each
+ * record's latest committed version, and a Snapshot sees every record as it
+ * stood at the sequence it was opened at, however long it stays open.
+ * Superseded versions are kept only while an open snapshot can still see them.
+ */
 public class MedicalRecordRepository implements Repository<MedicalRecord, String> {
-    private final Map<String, MedicalRecord> records;
+    private static final int WRITE_LOCK_STRIPES = 256;
+    
+    private volatile MedicalRecordStore store;
+    private final MedicalRecordVersions versions;
+    private final ReentrantLock[] writeLocks;
     private static MedicalRecordRepository instance;
     
     private MedicalRecordRepository() {
-        this.records = new ConcurrentHashMap<>();
+        this.store = new InMemoryMedicalRecordStore();
+        this.versions = new MedicalRecordVersions();
+        this.writeLocks = new ReentrantLock[WRITE_LOCK_STRIPES];
+        for (int i = 0; i < WRITE_LOCK_STRIPES; i++) {
+            writeLocks[i] = new ReentrantLock();
+        }
     }
     
     public static MedicalRecordRepository getInstance() {
@@ -24,13 +53,83 @@ public class MedicalRecordRepository implements Repository<MedicalRecord, String
         return instance;
     }
     
+    /**
+     * Commits a record as the patient's newest version, returning the stored version
+     */
     @Override
     public MedicalRecord save(MedicalRecord record) {
         if (record == null) {
             throw new IllegalArgumentException("Medical record cannot be null");
         }
-        records.put(record.getPatientId(), record);
-        return record;
+        ReentrantLock lock = writeLockFor(record.getPatientId());
+        lock.lock();
+        try {
+            return commit(record);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Saves a record unless the patient already has one, returning the version kept
+     */
+    public MedicalRecord saveIfAbsent(MedicalRecord record) {
+        if (record == null) {
+            throw new IllegalArgumentException("Medical record cannot be null");
+        }
+        ReentrantLock lock = writeLockFor(record.getPatientId());
+        lock.lock();
+        try {
+            MedicalRecord existing = store.get(record.getPatientId());
+            return existing != null ? existing : commit(record);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Derives a new version from the patient's latest one and commits it,
+     * with no other write in between. Returns the committed version.
+     */
+    public MedicalRecord update(String patientId, UnaryOperator<MedicalRecord> change) {
+        if (patientId == null || change == null) {
+            throw new IllegalArgumentException("Patient ID and change cannot be null");
+        }
+        ReentrantLock lock = writeLockFor(patientId);
+        lock.lock();
+        try {
+            MedicalRecord latest = store.get(patientId);
+            if (latest == null) {
+                throw new IllegalArgumentException("Medical record not found for patient: " + patientId);
+            }
+            MedicalRecord changed = change.apply(latest);
+            if (changed == null || !patientId.equals(changed.getPatientId())) {
+                throw new IllegalArgumentException("Change must return a record for patient: " + patientId);
+            }
+            return commit(changed);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Opens a read-only view of every record as of the latest committed write.
+     * Writes made while it is open are not visible through it. It must be
+     * closed, as the versions it sees are retained until then.
+     */
+    public Snapshot openSnapshot() {
+        return new Snapshot(versions.pin());
+    }
+    
+    /**
+     * Keeps records in memory-mapped segment files under the given directory,
+     * with at most cacheCapacity of them decoded on heap. Records already
+     * saved there are available immediately and are decoded on first read.
+     * Records held by the previous store are dropped.
+     */
+    public void openStore(Path directory, int cacheCapacity) throws IOException {
+        MedicalRecordStore opened = MappedMedicalRecordStore.open(directory, cacheCapacity);
+        replaceStore(opened);
     }
     
     @Override
@@ -38,12 +137,12 @@ public class MedicalRecordRepository implements Repository<MedicalRecord, String
         if (patientId == null) {
             throw new IllegalArgumentException("Patient ID cannot be null");
         }
-        return Optional.ofNullable(records.get(patientId));
+        return Optional.ofNullable(store.get(patientId));
     }
     
     @Override
     public List<MedicalRecord> findAll() {
-        return new ArrayList<>(records.values());
+        return store.stream().collect(Collectors.toCollection(ArrayList::new));
     }
     
     @Override
@@ -51,7 +150,24 @@ public class MedicalRecordRepository implements Repository<MedicalRecord, String
         if (patientId == null) {
             throw new IllegalArgumentException("Patient ID cannot be null");
         }
-        records.remove(patientId);
+        ReentrantLock lock = writeLockFor(patientId);
+        lock.lock();
+        try {
+            MedicalRecord previous = store.get(patientId);
+            if (previous == null) {
+                return;
+            }
+            long sequence = versions.begin();
+            try {
+                versions.retire(previous, sequence);
+                store.remove(patientId);
+            } finally {
+                versions.finish(sequence);
+            }
+        } finally {
+            lock.unlock();
+        }
+        versions.reclaim();
     }
     
     @Override
@@ -59,14 +175,14 @@ public class MedicalRecordRepository implements Repository<MedicalRecord, String
         if (patientId == null) {
             throw new IllegalArgumentException("Patient ID cannot be null");
         }
-        return records.containsKey(patientId);
+        return store.contains(patientId);
     }
     
     /**
      * Finds medical records by gender
      */
     public List<MedicalRecord> findByGender(Gender gender) {
-        return records.values().stream()
+        return store.stream()
             .filter(record -> record.getGender() == gender)
             .collect(Collectors.toList());
     }
@@ -75,7 +191,7 @@ public class MedicalRecordRepository implements Repository<MedicalRecord, String
      * Finds medical records by blood type
      */
     public List<MedicalRecord> findByBloodType(BloodType bloodType) {
-        return records.values().stream()
+        return store.stream()
             .filter(record -> record.getBloodType() == bloodType)
             .collect(Collectors.toList());
     }
@@ -88,7 +204,7 @@ public class MedicalRecordRepository implements Repository<MedicalRecord, String
             throw new IllegalArgumentException("Invalid age range");
         }
         
-        return records.values().stream()
+        return store.stream()
             .filter(record -> {
                 int age = Period.between(record.getDateOfBirth(), LocalDate.now()).getYears();
                 return age >= minAge && age <= maxAge;
@@ -105,10 +221,15 @@ public class MedicalRecordRepository implements Repository<MedicalRecord, String
         }
         
         String lowercaseKeyword = keyword.toLowerCase().trim();
-        return records.values().stream()
+        // Match each distinct description once, then compare codes
+        BitSet matching = StringDictionary.getInstance()
+            .codesMatching(description -> description.toLowerCase().contains(lowercaseKeyword));
+        if (matching.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return store.stream()
             .filter(record -> record.getDiagnosisHistory().stream()
-                .anyMatch(diagnosis -> 
-                    diagnosis.getDescription().toLowerCase().contains(lowercaseKeyword)))
+                .anyMatch(diagnosis -> matching.get(diagnosis.getDescriptionCode())))
             .collect(Collectors.toList());
     }
     
@@ -120,7 +241,7 @@ public class MedicalRecordRepository implements Repository<MedicalRecord, String
             throw new IllegalArgumentException("Invalid count range");
         }
         
-        return records.values().stream()
+        return store.stream()
             .filter(record -> {
                 int diagnosisCount = record.getDiagnosisHistory().size();
                 return diagnosisCount >= minCount && diagnosisCount <= maxCount;
@@ -136,7 +257,7 @@ public class MedicalRecordRepository implements Repository<MedicalRecord, String
             throw new IllegalArgumentException("Invalid date range");
         }
         
-        return records.values().stream()
+        return store.stream()
             .filter(record -> record.getDiagnosisHistory().stream()
                 .anyMatch(diagnosis -> {
                     LocalDate diagnosisDate = diagnosis.getDate();
@@ -155,7 +276,7 @@ public class MedicalRecordRepository implements Repository<MedicalRecord, String
         
         LocalDate cutoffDate = LocalDate.now().minusDays(days);
         
-        return records.values().stream()
+        return store.stream()
             .filter(record -> record.getDiagnosisHistory().stream()
                 .anyMatch(diagnosis -> !diagnosis.getDate().isBefore(cutoffDate)))
             .collect(Collectors.toList());
@@ -170,7 +291,7 @@ public class MedicalRecordRepository implements Repository<MedicalRecord, String
         }
         
         String term = searchTerm.toLowerCase().trim();
-        return records.values().stream()
+        return store.stream()
             .filter(record -> {
                 ContactInfo contactInfo = record.getContactInfo();
                 return contactInfo.getEmail().toLowerCase().contains(term) ||
@@ -205,36 +326,160 @@ public class MedicalRecordRepository implements Repository<MedicalRecord, String
      * Gets total count of medical records
      */
     public int getTotalCount() {
-        return records.size();
+        return store.size();
     }
     
     /**
-     * Gets medical records statistics
+     * Gets medical records statistics, all taken from one snapshot so they agree with each other
      */
     public Map<String, Long> getStatistics() {
         Map<String, Long> stats = new HashMap<>();
         
-        // Count by gender
-        Map<Gender, Long> genderStats = records.values().stream()
-            .collect(Collectors.groupingBy(MedicalRecord::getGender, Collectors.counting()));
-        genderStats.forEach((gender, count) -> stats.put("gender_" + gender, count));
-        
-        // Count by blood type
-        Map<BloodType, Long> bloodTypeStats = records.values().stream()
-            .collect(Collectors.groupingBy(MedicalRecord::getBloodType, Collectors.counting()));
-        bloodTypeStats.forEach((bloodType, count) -> stats.put("bloodType_" + bloodType, count));
-        
-        // Average age
-        double avgAge = records.values().stream()
-            .mapToInt(record -> Period.between(record.getDateOfBirth(), LocalDate.now()).getYears())
-            .average()
-            .orElse(0.0);
-        stats.put("average_age", Math.round(avgAge));
+        try (Snapshot snapshot = openSnapshot()) {
+            // Count by gender
+            Map<Gender, Long> genderStats = snapshot.stream()
+                .collect(Collectors.groupingBy(MedicalRecord::getGender, Collectors.counting()));
+            genderStats.forEach((gender, count) -> stats.put("gender_" + gender, count));
+            
+            // Count by blood type
+            Map<BloodType, Long> bloodTypeStats = snapshot.stream()
+                .collect(Collectors.groupingBy(MedicalRecord::getBloodType, Collectors.counting()));
+            bloodTypeStats.forEach((bloodType, count) -> stats.put("bloodType_" + bloodType, count));
+            
+            // Average age
+            double avgAge = snapshot.stream()
+                .mapToInt(record -> Period.between(record.getDateOfBirth(), LocalDate.now()).getYears())
+                .average()
+                .orElse(0.0);
+            stats.put("average_age", Math.round(avgAge));
+        }
         
         return stats;
     }
+    /**
+     * Drops all records from memory and detaches any segment files, which keep their contents
+     */
     @Override
     public void clearAll() {
-        records.clear();
+        replaceStore(new InMemoryMedicalRecordStore());
+    }
+    
+    // Swaps the backend while no write is in progress; stripes are taken in index order
+    private void replaceStore(MedicalRecordStore replacement) {
+        int locked = 0;
+        try {
+            for (ReentrantLock lock : writeLocks) {
+                lock.lock();
+                locked++;
+            }
+            store.close();
+            store = replacement;
+            versions.clear();
+        } finally {
+            for (int i = locked - 1; i >= 0; i--) {
+                writeLocks[i].unlock();
+            }
+        }
+    }
+    
+    private ReentrantLock writeLockFor(String patientId) {
+        int hash = patientId.hashCode();
+        return writeLocks[(hash ^ (hash >>> 16)) & (WRITE_LOCK_STRIPES - 1)];
+    }
+    
+    // Stamps the record with the next sequence and makes it the patient's newest version; caller holds the patient's write lock
+    private MedicalRecord commit(MedicalRecord record) {
+        if (!record.getDiagnosisHistory().canPublish()) {
+            throw new IllegalStateException("Diagnosis history has changed since this version was made");
+        }
+        long sequence = versions.begin();
+        MedicalRecord stamped;
+        try {
+            stamped = record.asVersion(sequence);
+            MedicalRecord previous = store.get(record.getPatientId());
+            if (previous != null) {
+                versions.retire(previous, sequence);
+            }
+            store.put(stamped);
+            // Only a stored version adds to the shared history, so a failed write leaves nothing to undo
+            stamped.getDiagnosisHistory().publish();
+        } finally {
+            // A failed write leaves its sequence unused, but later ones must not wait on it
+            versions.finish(sequence);
+        }
+        versions.reclaim();
+        return stamped;
+    }
+    
+    /**
+     * A consistent, read-only view of the medical records as of one committed
+     * sequence. Reading through it never blocks or is blocked by writers.
+     */
+    public class Snapshot implements AutoCloseable {
+        private final MedicalRecordVersions.Pin pin;
+        private boolean closed;
+        
+        private Snapshot(MedicalRecordVersions.Pin pin) {
+            this.pin = pin;
+        }
+        
+        /**
+         * Gets the sequence of the last write this snapshot sees
+         */
+        public long getSequence() {
+            return pin.getSequence();
+        }
+        
+        public Optional<MedicalRecord> findById(String patientId) {
+            if (patientId == null) {
+                throw new IllegalArgumentException("Patient ID cannot be null");
+            }
+            checkOpen();
+            return Optional.ofNullable(versions.visibleAt(patientId, store.get(patientId), pin.getSequence()));
+        }
+        
+        public List<MedicalRecord> findAll() {
+            return stream().collect(Collectors.toCollection(ArrayList::new));
+        }
+        
+        /**
+         * Streams the records visible to this snapshot, including ones deleted since it was opened
+         */
+        public Stream<MedicalRecord> stream() {
+            checkOpen();
+            long sequence = pin.getSequence();
+            MedicalRecordStore current = store;
+            Stream<MedicalRecord> stored = current.stream()
+                .map(record -> versions.visibleAt(record.getPatientId(), record, sequence));
+            // Records deleted after the snapshot are only left in their version chains
+            Stream<MedicalRecord> deleted = versions.retainedPatientIds().stream()
+                .filter(patientId -> !current.contains(patientId))
+                .map(patientId -> versions.visibleAt(patientId, null, sequence));
+            // A record deleted and re-added during the scan can turn up in both
+            Set<String> seen = new HashSet<>();
+            return Stream.concat(stored, deleted)
+                .filter(Objects::nonNull)
+                .filter(record -> seen.add(record.getPatientId()));
+        }
+        
+        /**
+         * Releases the snapshot's versions; reclaiming them is left to the next
+         * write if a reclaim is already in progress
+         */
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            versions.release(pin);
+            versions.reclaim();
+        }
+        
+        private void checkOpen() {
+            if (closed) {
+                throw new IllegalStateException("Snapshot is closed");
+            }
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,35 @@
+package repository;
+
+import java.util.stream.Stream;
+
+import entity.MedicalRecord;
+
+/**
+ * Storage backend behind MedicalRecordRepository, keyed by patient ID.
+ * Callers save a record again after changing it, so a backend may hand out
+ * a different instance of a record it no longer holds on heap.
+ */
+interface MedicalRecordStore {
+    void put(MedicalRecord record);
+
+    /**
+     * Gets the record for a patient, or null if there is none
+     */
+    MedicalRecord get(String patientId);
+
+    void remove(String patientId);
+
+    boolean contains(String patientId);
+
+    int size();
+
+    /**
+     * Streams every record; records not held on heap are decoded one at a time
+     */
+    Stream<MedicalRecord> stream();
+
+    /**
+     * Releases the backend's resources; the store is not used afterwards
+     */
+    void close();
+}
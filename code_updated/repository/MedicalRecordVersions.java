@@ -0,0 +1,203 @@
+package repository;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import entity.MedicalRecord;
+
+/**
+ * Superseded medical record versions and the snapshots that may still read
+ * them. The store only holds each patient's newest version; when a write
+ * replaces or deletes a version, the old one moves to the patient's chain
+ * here, tagged with the sequence that superseded it. A snapshot pinned at
+ * sequence S sees, per patient, the version committed at or before S that
+ * was still current at S. Once every pinned snapshot is at or after the
+ * sequence that superseded a version, no reader can reach it and it is
+ * unlinked; with no snapshots pinned, chains are emptied as writes commit.
+ * Writes to different patients run concurrently and may finish out of
+ * order, so the committed sequence only advances past a write once every
+ * earlier one has finished. Writes to one patient must be serialized by the
+ * caller; readers take no locks.
+ */
+class MedicalRecordVersions {
+    private final AtomicLong allocated = new AtomicLong();
+    private final AtomicLong committed = new AtomicLong();
+    // Finished writes the committed sequence has not yet reached
+    private final Set<Long> finished = new ConcurrentSkipListSet<>();
+    private final Set<Pin> pins = ConcurrentHashMap.newKeySet();
+    private final Map<String, Version> chains = new ConcurrentHashMap<>();
+    // In the order the versions were superseded, so reclamation stops at the first one still needed
+    private final Queue<Retirement> retirements = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock reclaimLock = new ReentrantLock();
+
+    /**
+     * Allocates the sequence a write commits at; it must be passed to finish
+     * whether or not the write succeeds
+     */
+    long begin() {
+        return allocated.incrementAndGet();
+    }
+
+    /**
+     * Marks a write as done, making it and every earlier finished write
+     * visible to snapshots pinned from now on
+     */
+    void finish(long sequence) {
+        finished.add(sequence);
+        while (true) {
+            long current = committed.get();
+            // Whoever finishes the write next in line advances past it, and past any finished after it
+            if (!finished.contains(current + 1)) {
+                return;
+            }
+            if (committed.compareAndSet(current, current + 1)) {
+                finished.remove(current + 1);
+            }
+        }
+    }
+
+    /**
+     * Moves a patient's current version to its chain ahead of a write at
+     * supersededAt; the caller holds the patient's write lock
+     */
+    void retire(MedicalRecord previous, long supersededAt) {
+        String patientId = previous.getPatientId();
+        chains.compute(patientId, (id, newest) -> new Version(previous, supersededAt, newest));
+        retirements.offer(new Retirement(patientId, supersededAt));
+    }
+
+    /**
+     * Pins the latest committed sequence until the returned pin is released
+     */
+    Pin pin() {
+        while (true) {
+            Pin pin = new Pin(committed.get());
+            pins.add(pin);
+            // A write that committed in between may have missed this pin and reclaimed
+            // a version it needs, so pin again at the newer sequence
+            if (committed.get() == pin.sequence) {
+                return pin;
+            }
+            pins.remove(pin);
+        }
+    }
+
+    void release(Pin pin) {
+        pins.remove(pin);
+    }
+
+    /**
+     * Gets the version of a patient's record visible at sequence, given the
+     * store's newest version (null if none); null if the patient had no record then
+     */
+    MedicalRecord visibleAt(String patientId, MedicalRecord newest, long sequence) {
+        if (newest != null && newest.getVersion() <= sequence) {
+            return newest;
+        }
+        for (Version version = chains.get(patientId); version != null; version = version.older) {
+            if (version.record.getVersion() <= sequence) {
+                return sequence < version.supersededAt ? version.record : null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the IDs of patients with superseded versions, including deleted ones
+     */
+    Set<String> retainedPatientIds() {
+        return chains.keySet();
+    }
+
+    /**
+     * Unlinks versions no pinned snapshot can reach, unless another thread is already doing so
+     */
+    void reclaim() {
+        if (!reclaimLock.tryLock()) {
+            return;
+        }
+        try {
+            long oldest = committed.get();
+            for (Pin pin : pins) {
+                oldest = Math.min(oldest, pin.sequence);
+            }
+            Retirement retirement;
+            while ((retirement = retirements.peek()) != null && retirement.supersededAt <= oldest) {
+                retirements.poll();
+                trim(retirement.patientId, oldest);
+            }
+        } finally {
+            reclaimLock.unlock();
+        }
+    }
+
+    /**
+     * Drops every chain; the caller holds every patient's write lock
+     */
+    void clear() {
+        chains.clear();
+        retirements.clear();
+    }
+
+    // Chains run newest first with supersededAt decreasing, so everything from the first unreachable version on goes.
+    // A write retiring the patient's version meanwhile keeps its own chain head, which its own retirement trims later.
+    private void trim(String patientId, long oldest) {
+        Version newest = chains.get(patientId);
+        if (newest == null) {
+            return;
+        }
+        if (newest.supersededAt <= oldest) {
+            chains.remove(patientId, newest);
+            return;
+        }
+        for (Version version = newest; version.older != null; version = version.older) {
+            if (version.older.supersededAt <= oldest) {
+                version.older = null;
+                return;
+            }
+        }
+    }
+
+    /**
+     * A snapshot's hold on a committed sequence
+     */
+    static class Pin {
+        private final long sequence;
+
+        private Pin(long sequence) {
+            this.sequence = sequence;
+        }
+
+        long getSequence() {
+            return sequence;
+        }
+    }
+
+    private static class Version {
+        private final MedicalRecord record;
+        private final long supersededAt;
+        private volatile Version older;
+
+        private Version(MedicalRecord record, long supersededAt, Version older) {
+            this.record = record;
+            this.supersededAt = supersededAt;
+            this.older = older;
+        }
+    }
+
+    private static class Retirement {
+        private final String patientId;
+        private final long supersededAt;
+
+        private Retirement(String patientId, long supersededAt) {
+            this.patientId = patientId;
+            this.supersededAt = supersededAt;
+        }
+    }
+}
@@ -1,36 +1,105 @@
 package repository;
 
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import entity.Medicine;
+import entity.StockLevelListener;
+import entity.StockLot;
+import entity.enums.PharmacyLocation;
 
+/**
+ * Medicines stocked at one pharmacy location, keyed by normalized (trimmed,
+ * lower-case) name, so every lookup is case-insensitive. A sorted copy of
+ * the keys serves prefix searches for prescription entry in O(log n + matches).
+ * Each location has its own repository, obtained through InventoryNetwork;
+ * getInstance() is the main pharmacy.
+ */
 public class MedicineRepository implements Repository<Medicine, String> {
+    private final PharmacyLocation location;
+    private final InventoryNetwork network;
     private final Map<String, Medicine> medicines = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<String, Medicine> medicinesByName = new ConcurrentSkipListMap<>();
+    private final Set<String> lowStock = ConcurrentHashMap.newKeySet();
+    private final List<LowStockListener> lowStockListeners = new CopyOnWriteArrayList<>();
+    private final ExpiryIndex expiryIndex = new ExpiryIndex();
+    private final StockLevelListener stockListener = new StockLevelListener() {
+        @Override
+        public void onStockLevelChanged(Medicine medicine) {
+            MedicineRepository.this.onStockLevelChanged(medicine);
+        }
+        
+        @Override
+        public void onLotAdded(Medicine medicine, StockLot lot) {
+            expiryIndex.add(lot);
+        }
+        
+        @Override
+        public void onStockChanged(Medicine medicine, int delta) {
+            network.addToTotal(medicine.getName(), delta);
+        }
+    };
     
-    private static MedicineRepository instance;
-    
-    private MedicineRepository() {}
+    MedicineRepository(PharmacyLocation location, InventoryNetwork network) {
+        this.location = location;
+        this.network = network;
+    }
     
     public static MedicineRepository getInstance() {
-        if (instance == null) {
-            instance = new MedicineRepository();
-        }
-        return instance;
+        return getInstance(PharmacyLocation.MAIN_PHARMACY);
+    }
+    
+    public static MedicineRepository getInstance(PharmacyLocation location) {
+        return InventoryNetwork.getInstance().getShard(location);
+    }
+    
+    public PharmacyLocation getLocation() {
+        return location;
     }
     
     @Override
     public Medicine save(Medicine medicine) {
-        medicines.put(medicine.getName(), medicine);
+        if (medicine.getLocation() != location) {
+            throw new IllegalArgumentException(medicine.getName() + " is stocked at " + medicine.getLocation() +
+                ", not " + location);
+        }
+        String key = normalize(medicine.getName());
+        Medicine previous = medicines.put(key, medicine);
+        medicinesByName.put(key, medicine);
+        if (previous != medicine) {
+            if (previous != null) {
+                previous.setStockLevelListener(null);
+                network.addToTotal(previous.getName(), -previous.getCurrentStock());
+            }
+            medicine.setStockLevelListener(stockListener);
+            network.addToTotal(medicine.getName(), medicine.getCurrentStock());
+            medicine.getLots().forEach(expiryIndex::add);
+            onStockLevelChanged(medicine);
+            InventoryEventStore.getInstance().recordOpeningStock(medicine);
+        }
         return medicine;
     }
     
+    /**
+     * Stores the medicine unless one with the same name is already stocked
+     * here, and returns whichever is stored
+     */
+    public synchronized Medicine saveIfAbsent(Medicine medicine) {
+        Medicine existing = medicines.get(normalize(medicine.getName()));
+        return existing != null ? existing : save(medicine);
+    }
+    
     @Override
     public Optional<Medicine> findById(String name) {
-        return Optional.ofNullable(medicines.get(name));
+        return name == null ? Optional.empty() : Optional.ofNullable(medicines.get(normalize(name)));
     }
     
     @Override
@@ -40,28 +109,133 @@ public class MedicineRepository implements Repository<Medicine, String> {
     
     @Override
     public void delete(String name) {
-        medicines.remove(name);
+        String key = normalize(name);
+        Medicine removed = medicines.remove(key);
+        if (removed != null) {
+            medicinesByName.remove(key, removed);
+            removed.setStockLevelListener(null);
+            network.addToTotal(removed.getName(), -removed.getCurrentStock());
+            lowStock.remove(key);
+        }
     }
     
     @Override
     public boolean exists(String name) {
-        return medicines.containsKey(name);
+        return name != null && medicines.containsKey(normalize(name));
     }
 
     public Optional<Medicine> findByName(String name) {
-        return findAll().stream()
-            .filter(medicine -> medicine.getName().equalsIgnoreCase(name))
-            .findFirst();
+        return findById(name);
+    }
+    
+    /**
+     * Finds medicines whose name starts with the prefix, ignoring case, in name order
+     */
+    public List<Medicine> findByNamePrefix(String prefix, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Limit must be positive");
+        }
+        String from = normalize(prefix);
+        if (from.isEmpty()) {
+            return List.of();
+        }
+        List<Medicine> result = new ArrayList<>(Math.min(limit, 16));
+        for (Map.Entry<String, Medicine> entry : medicinesByName.tailMap(from).entrySet()) {
+            if (result.size() == limit || !entry.getKey().startsWith(from)) {
+                break;
+            }
+            result.add(entry.getValue());
+        }
+        return result;
     }
     
     // Additional methods specific to medicine
+    
+    /**
+     * Gets the medicines currently at or below their alert level.
+     * The set is maintained from threshold crossings, so this never scans the formulary.
+     */
     public List<Medicine> findLowStock() {
-        return medicines.values().stream()
-            .filter(medicine -> medicine.getCurrentStock() <= medicine.getLowStockAlert())
-            .toList();
+        List<Medicine> result = new ArrayList<>(lowStock.size());
+        for (String key : lowStock) {
+            Medicine medicine = medicines.get(key);
+            if (medicine != null) {
+                result.add(medicine);
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Gets lots of stocked medicines that expire on or before the given date,
+     * earliest first, read from the expiry index rather than by scanning medicines
+     */
+    public List<StockLot> findLotsExpiringOnOrBefore(LocalDate date) {
+        List<StockLot> result = new ArrayList<>();
+        for (StockLot lot : expiryIndex.findExpiringOnOrBefore(date)) {
+            if (medicines.get(normalize(lot.getMedicine().getName())) == lot.getMedicine()) {
+                result.add(lot);
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Subscribes to low-stock alerts
+     */
+    public void addLowStockListener(LowStockListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("Listener cannot be null");
+        }
+        lowStockListeners.add(listener);
     }
+    
+    public void removeLowStockListener(LowStockListener listener) {
+        lowStockListeners.remove(listener);
+    }
+    
+    // Re-reads the medicine under its own lock so out-of-order notifications settle correctly
+    private void onStockLevelChanged(Medicine medicine) {
+        String key = normalize(medicine.getName());
+        boolean becameLow;
+        synchronized (medicine) {
+            if (medicines.get(key) != medicine) {
+                return;
+            }
+            if (medicine.isLowStock()) {
+                if (!lowStock.add(key)) {
+                    return;
+                }
+                becameLow = true;
+            } else {
+                if (!lowStock.remove(key)) {
+                    return;
+                }
+                becameLow = false;
+            }
+        }
+        for (LowStockListener listener : lowStockListeners) {
+            if (becameLow) {
+                listener.onLowStock(medicine);
+            } else {
+                listener.onStockRestored(medicine);
+            }
+        }
+    }
+    
     @Override
     public void clearAll() {
+        medicines.values().forEach(medicine -> {
+            medicine.setStockLevelListener(null);
+            network.addToTotal(medicine.getName(), -medicine.getCurrentStock());
+        });
         medicines.clear();
+        medicinesByName.clear();
+        lowStock.clear();
+        expiryIndex.clear();
+    }
+    
+    private static String normalize(String name) {
+        return name.trim().toLowerCase(Locale.ROOT);
     }
 }
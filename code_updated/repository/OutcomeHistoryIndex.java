@@ -0,0 +1,180 @@
+package repository;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Function;
+
+import entity.Appointment;
+import entity.AppointmentOutcomeRecord;
+import util.Page;
+
+/**
+ * Per-patient appointment outcome history, newest first.
+ * Entries are added when an outcome is recorded, so reading a page costs
+ * O(log n + page size) regardless of how long the patient's history is.
+ * Live appointments keep their outcome record in the index. Once an
+ * appointment is compacted or archived the index keeps only its date and
+ * ID, and the record is loaded back from history storage when read.
+ */
+public class OutcomeHistoryIndex implements AppointmentListener {
+    private static final Comparator<HistoryKey> NEWEST_FIRST =
+        Comparator.comparing((HistoryKey key) -> key.dateTime).reversed()
+            .thenComparing(key -> key.appointmentId);
+    // Stands in for a record released from the index
+    private static final Entry RELEASED = new Entry(null);
+
+    private final Map<String, ConcurrentSkipListMap<HistoryKey, Entry>> histories = new ConcurrentHashMap<>();
+    // Loads a released record by appointment ID, or returns null if it is gone
+    private final Function<String, AppointmentOutcomeRecord> loader;
+
+    OutcomeHistoryIndex(Function<String, AppointmentOutcomeRecord> loader) {
+        this.loader = loader;
+    }
+
+    @Override
+    public void onOutcomeRecorded(Appointment appointment) {
+        historyOf(appointment.getPatient().getHospitalId())
+            .put(keyOf(appointment), new Entry(appointment.getOutcomeRecord()));
+    }
+
+    @Override
+    public void onAppointmentBooked(Appointment appointment) {
+        // An appointment saved back from history storage brings its outcome with it
+        if (appointment.getOutcomeRecord() != null) {
+            onOutcomeRecorded(appointment);
+        }
+    }
+
+    @Override
+    public void onAppointmentRemoved(Appointment appointment) {
+        Map<HistoryKey, Entry> history = histories.get(appointment.getPatient().getHospitalId());
+        if (history != null) {
+            history.remove(keyOf(appointment));
+        }
+    }
+
+    @Override
+    public void onAppointmentCompacted(Appointment appointment) {
+        Map<HistoryKey, Entry> history = histories.get(appointment.getPatient().getHospitalId());
+        if (history != null) {
+            history.replace(keyOf(appointment), RELEASED);
+        }
+    }
+
+    /**
+     * Adds an archived outcome by date and ID only, as when the archive is
+     * reopened after a restart; the record is loaded when read
+     */
+    void onArchivedOutcome(String patientId, LocalDateTime dateTime, String appointmentId) {
+        historyOf(patientId).putIfAbsent(new HistoryKey(dateTime, appointmentId), RELEASED);
+    }
+
+    @Override
+    public void onCleared() {
+        histories.clear();
+    }
+
+    /**
+     * Gets a page of a patient's outcome records, newest first.
+     * A null cursor starts from the most recent record.
+     */
+    public Page<AppointmentOutcomeRecord> getPage(String patientId, String cursor, int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive");
+        }
+        ConcurrentSkipListMap<HistoryKey, Entry> history = histories.get(patientId);
+        if (history == null) {
+            return Page.empty();
+        }
+
+        ConcurrentNavigableMap<HistoryKey, Entry> remaining =
+            cursor == null ? history : history.tailMap(decodeCursor(cursor), false);
+
+        List<AppointmentOutcomeRecord> items = new ArrayList<>(pageSize);
+        HistoryKey lastKey = null;
+        for (Map.Entry<HistoryKey, Entry> entry : remaining.entrySet()) {
+            if (items.size() == pageSize) {
+                return new Page<>(items, encodeCursor(lastKey));
+            }
+            AppointmentOutcomeRecord record = resolve(entry);
+            if (record != null) {
+                items.add(record);
+                lastKey = entry.getKey();
+            }
+        }
+        return new Page<>(items, null);
+    }
+
+    /**
+     * Gets a patient's full outcome history, newest first
+     */
+    public List<AppointmentOutcomeRecord> getAll(String patientId) {
+        Map<HistoryKey, Entry> history = histories.get(patientId);
+        if (history == null) {
+            return List.of();
+        }
+        List<AppointmentOutcomeRecord> all = new ArrayList<>(history.size());
+        for (Map.Entry<HistoryKey, Entry> entry : history.entrySet()) {
+            AppointmentOutcomeRecord record = resolve(entry);
+            if (record != null) {
+                all.add(record);
+            }
+        }
+        return all;
+    }
+
+    private ConcurrentSkipListMap<HistoryKey, Entry> historyOf(String patientId) {
+        return histories.computeIfAbsent(patientId, id -> new ConcurrentSkipListMap<>(NEWEST_FIRST));
+    }
+
+    private AppointmentOutcomeRecord resolve(Map.Entry<HistoryKey, Entry> entry) {
+        AppointmentOutcomeRecord record = entry.getValue().record;
+        return record != null ? record : loader.apply(entry.getKey().appointmentId);
+    }
+
+    private static HistoryKey keyOf(Appointment appointment) {
+        return new HistoryKey(appointment.getDateTime(), appointment.getAppointmentId());
+    }
+
+    private static String encodeCursor(HistoryKey key) {
+        return key.dateTime + "|" + key.appointmentId;
+    }
+
+    private static HistoryKey decodeCursor(String cursor) {
+        int separator = cursor.indexOf('|');
+        if (separator < 0) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+        try {
+            return new HistoryKey(LocalDateTime.parse(cursor.substring(0, separator)),
+                cursor.substring(separator + 1));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+    }
+
+    private static class Entry {
+        private final AppointmentOutcomeRecord record;
+
+        private Entry(AppointmentOutcomeRecord record) {
+            this.record = record;
+        }
+    }
+
+    private static class HistoryKey {
+        private final LocalDateTime dateTime;
+        private final String appointmentId;
+
+        private HistoryKey(LocalDateTime dateTime, String appointmentId) {
+            this.dateTime = dateTime;
+            this.appointmentId = appointmentId;
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package repository;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import entity.Appointment;
+import entity.Prescription;
+import entity.enums.PrescriptionStatus;
+
+/**
+ * Work queue of prescriptions waiting to be dispensed.
+ * Prescriptions are enqueued when an appointment outcome is recorded and
+ * indexed by status and medicine. Each pharmacist session keeps its own
+ * deque of claimed work, topped up from the shared queue and, once that is
+ * empty, by stealing from the back of other sessions' deques. Two sessions
+ * may briefly hold the same prescription after a steal; the atomic claim in
+ * Prescription.markDispensed decides which one dispenses it.
+ */
+public class PrescriptionQueue implements AppointmentListener {
+    private static PrescriptionQueue instance;
+
+    private final Map<Prescription, Item> items;
+    private final ConcurrentLinkedDeque<Item> shared;
+    private final Map<String, ConcurrentLinkedDeque<Item>> sessions;
+    private final Map<PrescriptionStatus, Set<Item>> byStatus;
+    private final Map<String, Set<Item>> pendingByMedicine;
+    private final AtomicInteger nextVictim;
+
+    private PrescriptionQueue() {
+        this.items = new ConcurrentHashMap<>();
+        this.shared = new ConcurrentLinkedDeque<>();
+        this.sessions = new ConcurrentHashMap<>();
+        this.byStatus = new EnumMap<>(PrescriptionStatus.class);
+        for (PrescriptionStatus status : PrescriptionStatus.values()) {
+            byStatus.put(status, ConcurrentHashMap.newKeySet());
+        }
+        this.pendingByMedicine = new ConcurrentHashMap<>();
+        this.nextVictim = new AtomicInteger();
+    }
+
+    public static synchronized PrescriptionQueue getInstance() {
+        if (instance == null) {
+            instance = new PrescriptionQueue();
+        }
+        return instance;
+    }
+
+    @Override
+    public void onOutcomeRecorded(Appointment appointment) {
+        for (Prescription prescription : appointment.getOutcomeRecord().getPrescriptions()) {
+            Item item = new Item(appointment, prescription);
+            if (items.putIfAbsent(prescription, item) != null) {
+                continue;
+            }
+            index(item, prescription.getStatus());
+            if (prescription.getStatus() == PrescriptionStatus.PENDING) {
+                shared.offerLast(item);
+            }
+        }
+    }
+
+    @Override
+    public void onAppointmentRemoved(Appointment appointment) {
+        if (appointment.getOutcomeRecord() == null) {
+            return;
+        }
+        for (Prescription prescription : appointment.getOutcomeRecord().getPrescriptions()) {
+            Item item = items.remove(prescription);
+            if (item != null) {
+                unindex(item);
+            }
+        }
+    }
+
+    @Override
+    public void onCleared() {
+        items.clear();
+        shared.clear();
+        sessions.clear();
+        byStatus.values().forEach(Set::clear);
+        pendingByMedicine.clear();
+    }
+
+    /**
+     * Records that a queued prescription has left PENDING, e.g. after it was dispensed
+     */
+    public void onPrescriptionUpdated(Prescription prescription) {
+        Item item = items.get(prescription);
+        if (item != null) {
+            reconcile(item);
+        }
+    }
+
+    /**
+     * Gets up to count pending prescriptions for a pharmacist session, oldest first.
+     * Work already claimed by the session comes first, then the shared queue,
+     * then work stolen from other sessions.
+     */
+    public List<Item> claimNext(String pharmacistId, int count) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("Count must be positive");
+        }
+        ConcurrentLinkedDeque<Item> own = sessions.computeIfAbsent(pharmacistId, id -> new ConcurrentLinkedDeque<>());
+        List<Item> result = new ArrayList<>(count);
+
+        Iterator<Item> claimed = own.iterator();
+        while (claimed.hasNext() && result.size() < count) {
+            Item item = claimed.next();
+            if (isPending(item)) {
+                result.add(item);
+            } else {
+                claimed.remove();
+            }
+        }
+
+        while (result.size() < count) {
+            Item item = shared.pollFirst();
+            if (item == null) {
+                item = steal(pharmacistId);
+            }
+            if (item == null) {
+                break;
+            }
+            if (isPending(item)) {
+                own.offerLast(item);
+                result.add(item);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns a session's unfinished work to the front of the shared queue
+     */
+    public void release(String pharmacistId) {
+        ConcurrentLinkedDeque<Item> own = sessions.remove(pharmacistId);
+        if (own == null) {
+            return;
+        }
+        Iterator<Item> newestFirst = own.descendingIterator();
+        while (newestFirst.hasNext()) {
+            Item item = newestFirst.next();
+            if (isPending(item)) {
+                shared.offerFirst(item);
+            }
+        }
+    }
+
+    /**
+     * Gets the queued prescriptions currently in a status
+     */
+    public List<Item> findByStatus(PrescriptionStatus status) {
+        List<Item> result = new ArrayList<>();
+        for (Item item : byStatus.get(status)) {
+            if (status != PrescriptionStatus.PENDING || isPending(item)) {
+                result.add(item);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets the pending prescriptions for a medicine
+     */
+    public List<Item> findPendingByMedicine(String medicineName) {
+        Set<Item> pending = pendingByMedicine.get(medicineName.toLowerCase());
+        if (pending == null) {
+            return List.of();
+        }
+        List<Item> result = new ArrayList<>();
+        for (Item item : pending) {
+            if (isPending(item)) {
+                result.add(item);
+            }
+        }
+        return result;
+    }
+
+    public int countByStatus(PrescriptionStatus status) {
+        return byStatus.get(status).size();
+    }
+
+    // Steals the newest item of another session, rotating the first victim tried
+    private Item steal(String thiefId) {
+        List<Map.Entry<String, ConcurrentLinkedDeque<Item>>> victims = new ArrayList<>(sessions.entrySet());
+        if (victims.isEmpty()) {
+            return null;
+        }
+        int start = Math.floorMod(nextVictim.getAndIncrement(), victims.size());
+        for (int i = 0; i < victims.size(); i++) {
+            Map.Entry<String, ConcurrentLinkedDeque<Item>> victim = victims.get((start + i) % victims.size());
+            if (victim.getKey().equals(thiefId)) {
+                continue;
+            }
+            Item item;
+            while ((item = victim.getValue().pollLast()) != null) {
+                if (isPending(item)) {
+                    return item;
+                }
+            }
+        }
+        return null;
+    }
+
+    private boolean isPending(Item item) {
+        if (item.indexedStatus == PrescriptionStatus.PENDING &&
+            item.prescription.getStatus() == PrescriptionStatus.PENDING) {
+            return items.get(item.prescription) == item;
+        }
+        reconcile(item);
+        return false;
+    }
+
+    private void reconcile(Item item) {
+        synchronized (item) {
+            PrescriptionStatus current = item.prescription.getStatus();
+            if (items.get(item.prescription) != item || current == item.indexedStatus) {
+                return;
+            }
+            unindex(item);
+            index(item, current);
+        }
+    }
+
+    private void index(Item item, PrescriptionStatus status) {
+        synchronized (item) {
+            item.indexedStatus = status;
+            byStatus.get(status).add(item);
+            if (status == PrescriptionStatus.PENDING) {
+                pendingByMedicine.computeIfAbsent(item.getMedicineKey(), name -> ConcurrentHashMap.newKeySet())
+                    .add(item);
+            }
+        }
+    }
+
+    private void unindex(Item item) {
+        synchronized (item) {
+            byStatus.get(item.indexedStatus).remove(item);
+            Set<Item> pending = pendingByMedicine.get(item.getMedicineKey());
+            if (pending != null) {
+                pending.remove(item);
+            }
+        }
+    }
+
+    /**
+     * A queued prescription together with the appointment it was prescribed in
+     */
+    public static class Item {
+        private final Appointment appointment;
+        private final Prescription prescription;
+        private volatile PrescriptionStatus indexedStatus;
+
+        private Item(Appointment appointment, Prescription prescription) {
+            this.appointment = appointment;
+            this.prescription = prescription;
+        }
+
+        public Appointment getAppointment() {
+            return appointment;
+        }
+
+        public Prescription getPrescription() {
+            return prescription;
+        }
+
+        private String getMedicineKey() {
+            return prescription.getMedicineName().toLowerCase();
+        }
+    }
+}
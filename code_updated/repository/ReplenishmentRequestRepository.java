@@ -0,0 +1,368 @@
+package repository;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.regex.Pattern;
+
+import entity.Administrator;
+import entity.Medicine;
+import entity.MedicineInventoryAction;
+import entity.Pharmacist;
+import entity.ReplenishmentRequest;
+import entity.User;
+import entity.enums.PharmacyLocation;
+import entity.enums.ReplenishmentStatus;
+
+/**
+ * Central store of replenishment requests with a status index and a FIFO
+ * queue of pending requests. Every change is appended to a journal before it
+ * is applied in memory, and the journal is replayed on startup. Stock levels
+ * are reloaded from the medicine list, so replay adds the stock of every
+ * approved request again, in journal order, besides restoring request
+ * history and pending replenishment flags. It must run before stock
+ * transfers are replayed, as a transfer may move replenished stock.
+ */
+public class ReplenishmentRequestRepository implements Repository<ReplenishmentRequest, String> {
+    private static final String FIELD_SEPARATOR = "|";
+    // Marks a complete record; a line without it was torn by a crash and is ignored
+    private static final String END_OF_RECORD = "END";
+    private static ReplenishmentRequestRepository instance;
+
+    private final Map<String, ReplenishmentRequest> requests;
+    private final Map<ReplenishmentStatus, Set<String>> idsByStatus;
+    private final Queue<ReplenishmentRequest> pendingQueue;
+    private Path journal;
+    private int nextRequestNumber = 1;
+    // Approved while replaying; their stock is added once the journal shows it was not reopened
+    private final Map<String, ReplenishmentRequest> replayedApprovals = new LinkedHashMap<>();
+
+    private ReplenishmentRequestRepository() {
+        this.requests = new ConcurrentHashMap<>();
+        this.idsByStatus = new EnumMap<>(ReplenishmentStatus.class);
+        for (ReplenishmentStatus status : ReplenishmentStatus.values()) {
+            idsByStatus.put(status, ConcurrentHashMap.newKeySet());
+        }
+        this.pendingQueue = new ConcurrentLinkedQueue<>();
+    }
+
+    public static synchronized ReplenishmentRequestRepository getInstance() {
+        if (instance == null) {
+            instance = new ReplenishmentRequestRepository();
+        }
+        return instance;
+    }
+
+    /**
+     * Stores a new request, assigning an ID if it has none
+     */
+    @Override
+    public synchronized ReplenishmentRequest save(ReplenishmentRequest request) {
+        if (request.getRequestId() == null) {
+            request.setRequestId(generateRequestId());
+        }
+        ReplenishmentRequest previous = requests.get(request.getRequestId());
+        if (previous == request) {
+            return request;
+        }
+        if (previous != null) {
+            throw new IllegalStateException("Request ID already in use: " + request.getRequestId());
+        }
+        appendToJournal(String.join(FIELD_SEPARATOR, "CREATE",
+            request.getRequestId(),
+            request.getMedicine().getName(),
+            String.valueOf(request.getRequestedQuantity()),
+            request.getRequestedBy().getHospitalId(),
+            request.getRequestDateTime().toString(),
+            request.getMedicine().getLocation().name(),
+            END_OF_RECORD));
+        index(request);
+        return request;
+    }
+
+    @Override
+    public Optional<ReplenishmentRequest> findById(String id) {
+        return Optional.ofNullable(requests.get(id));
+    }
+
+    @Override
+    public List<ReplenishmentRequest> findAll() {
+        return new ArrayList<>(requests.values());
+    }
+
+    /**
+     * Removes a request from memory; the journal keeps its history
+     */
+    @Override
+    public synchronized void delete(String id) {
+        ReplenishmentRequest removed = requests.remove(id);
+        if (removed != null) {
+            idsByStatus.get(removed.getStatus()).remove(id);
+        }
+    }
+
+    @Override
+    public boolean exists(String id) {
+        return requests.containsKey(id);
+    }
+
+    /**
+     * Gets pending requests, oldest first
+     */
+    public List<ReplenishmentRequest> findPending() {
+        List<ReplenishmentRequest> result = new ArrayList<>();
+        Iterator<ReplenishmentRequest> queued = pendingQueue.iterator();
+        while (queued.hasNext()) {
+            ReplenishmentRequest request = queued.next();
+            if (request.getStatus() == ReplenishmentStatus.PENDING && requests.get(request.getRequestId()) == request) {
+                result.add(request);
+            } else {
+                queued.remove();
+            }
+        }
+        return result;
+    }
+
+    public List<ReplenishmentRequest> findByStatus(ReplenishmentStatus status) {
+        List<ReplenishmentRequest> result = new ArrayList<>();
+        for (String id : idsByStatus.get(status)) {
+            ReplenishmentRequest request = requests.get(id);
+            if (request != null) {
+                result.add(request);
+            }
+        }
+        return result;
+    }
+
+    public int countByStatus(ReplenishmentStatus status) {
+        return idsByStatus.get(status).size();
+    }
+
+    /**
+     * Approves or rejects a batch of pending requests as one unit.
+     * If any request is unknown or no longer pending, or an approved one's
+     * stock could not be added, nothing is changed. The decision is
+     * journaled before any request or stock is touched. Should stock still
+     * fail to be added because the medicine changed in between, that request
+     * is left pending and journaled as reopened, and no action is recorded for it.
+     */
+    public synchronized void processBatch(Administrator admin, List<ReplenishmentRequest> batch, boolean approve) {
+        if (admin == null || batch == null || batch.isEmpty()) {
+            throw new IllegalArgumentException("Administrator and at least one request are required");
+        }
+        Set<ReplenishmentRequest> unique = new LinkedHashSet<>(batch);
+        for (ReplenishmentRequest request : unique) {
+            if (requests.get(request.getRequestId()) != request ||
+                request.getStatus() != ReplenishmentStatus.PENDING) {
+                throw new IllegalArgumentException("Invalid or already processed request: " + request.getRequestId());
+            }
+        }
+        if (approve) {
+            Set<Medicine> replenished = new HashSet<>();
+            for (ReplenishmentRequest request : unique) {
+                Medicine medicine = request.getMedicine();
+                // A medicine's pending flag is cleared by its first approval, so a second would fail
+                if (!replenished.add(medicine) ||
+                    !medicine.canFulfillReplenishment(request.getRequestedQuantity())) {
+                    throw new IllegalArgumentException("Cannot add the requested stock for request: " +
+                        request.getRequestId());
+                }
+            }
+        }
+
+        LocalDateTime processedAt = LocalDateTime.now();
+        List<String> ids = unique.stream().map(ReplenishmentRequest::getRequestId).toList();
+        appendToJournal(String.join(FIELD_SEPARATOR, "PROCESS",
+            approve ? ReplenishmentStatus.APPROVED.name() : ReplenishmentStatus.REJECTED.name(),
+            admin.getHospitalId(),
+            processedAt.toString(),
+            String.join(",", ids),
+            END_OF_RECORD));
+
+        List<String> reopened = new ArrayList<>();
+        for (ReplenishmentRequest request : unique) {
+            MedicineInventoryAction action = admin.processReplenishmentRequest(request, approve);
+            if (request.getStatus() == ReplenishmentStatus.PENDING) {
+                reopened.add(request.getRequestId());
+                continue;
+            }
+            if (action != null) {
+                InventoryLedger.getInstance().append(action);
+            }
+            idsByStatus.get(ReplenishmentStatus.PENDING).remove(request.getRequestId());
+            request.setProcessedDateTime(processedAt);
+            idsByStatus.get(request.getStatus()).add(request.getRequestId());
+        }
+        if (!reopened.isEmpty()) {
+            appendToJournal(String.join(FIELD_SEPARATOR, "REOPEN",
+                String.join(",", reopened),
+                END_OF_RECORD));
+        }
+    }
+
+    /**
+     * Makes the repository durable by journaling to the given file, replaying
+     * any requests already recorded there and adding the stock approved by
+     * them. Medicines and staff must be loaded first, and stock transfers replayed after.
+     */
+    public synchronized void openJournal(Path journalFile) throws IOException {
+        clearAll();
+        replayedApprovals.clear();
+        if (Files.exists(journalFile)) {
+            int lineNumber = 0;
+            for (String line : Files.readAllLines(journalFile, StandardCharsets.UTF_8)) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                String[] fields = line.split(Pattern.quote(FIELD_SEPARATOR), -1);
+                if (!fields[fields.length - 1].equals(END_OF_RECORD)) {
+                    System.err.println("Skipping incomplete replenishment journal line " + lineNumber);
+                    continue;
+                }
+                try {
+                    replay(fields);
+                } catch (RuntimeException e) {
+                    System.err.println("Skipping replenishment journal line " + lineNumber + ": " + e.getMessage());
+                }
+            }
+        }
+        // Without the ledger, which starts empty on every run
+        for (ReplenishmentRequest request : replayedApprovals.values()) {
+            if (!request.getMedicine().updateStock(request.getRequestedQuantity())) {
+                System.err.println("Could not add the stock approved by replenishment request " +
+                    request.getRequestId());
+            }
+        }
+        replayedApprovals.clear();
+        this.journal = journalFile;
+    }
+
+    @Override
+    public synchronized void clearAll() {
+        requests.clear();
+        idsByStatus.values().forEach(Set::clear);
+        pendingQueue.clear();
+        nextRequestNumber = 1;
+        journal = null;
+    }
+
+    private void replay(String[] fields) {
+        switch (fields[0]) {
+            case "CREATE" -> {
+                // Records written before locations existed have no location field
+                PharmacyLocation location = fields.length > 7
+                    ? PharmacyLocation.valueOf(fields[6])
+                    : PharmacyLocation.MAIN_PHARMACY;
+                // Transfers are replayed later, so a satellite may not be stocked yet; it starts empty
+                Medicine medicine = InventoryNetwork.getInstance().findOrStock(fields[2], location)
+                    .orElseThrow(() -> new IllegalStateException("Unknown medicine " + fields[2]));
+                Pharmacist pharmacist = findStaff(fields[4], Pharmacist.class);
+                ReplenishmentRequest request = new ReplenishmentRequest(medicine,
+                    Integer.parseInt(fields[3]), pharmacist, LocalDateTime.parse(fields[5]));
+                request.setRequestId(fields[1]);
+                medicine.requestReplenishment();
+                index(request);
+                nextRequestNumber = Math.max(nextRequestNumber, parseRequestNumber(fields[1]) + 1);
+            }
+            case "PROCESS" -> {
+                ReplenishmentStatus status = ReplenishmentStatus.valueOf(fields[1]);
+                Administrator admin = findStaff(fields[2], Administrator.class);
+                LocalDateTime processedAt = LocalDateTime.parse(fields[3]);
+                for (String id : fields[4].split(",")) {
+                    ReplenishmentRequest request = requests.get(id);
+                    if (request == null || request.getStatus() != ReplenishmentStatus.PENDING) {
+                        continue;
+                    }
+                    idsByStatus.get(ReplenishmentStatus.PENDING).remove(id);
+                    request.getMedicine().cancelReplenishmentRequest();
+                    request.setStatus(status);
+                    request.setProcessedBy(admin);
+                    request.setProcessedDateTime(processedAt);
+                    idsByStatus.get(status).add(id);
+                    if (status == ReplenishmentStatus.APPROVED) {
+                        replayedApprovals.put(id, request);
+                    }
+                }
+            }
+            case "REOPEN" -> {
+                for (String id : fields[1].split(",")) {
+                    ReplenishmentRequest request = requests.get(id);
+                    if (request == null || request.getStatus() == ReplenishmentStatus.PENDING) {
+                        continue;
+                    }
+                    idsByStatus.get(request.getStatus()).remove(id);
+                    // Reopened because its stock could not be added
+                    replayedApprovals.remove(id);
+                    request.getMedicine().requestReplenishment();
+                    request.setStatus(ReplenishmentStatus.PENDING);
+                    request.setProcessedBy(null);
+                    request.setProcessedDateTime(null);
+                    index(request);
+                }
+            }
+            default -> throw new IllegalStateException("Unknown record type " + fields[0]);
+        }
+    }
+
+    private void index(ReplenishmentRequest request) {
+        requests.put(request.getRequestId(), request);
+        idsByStatus.get(request.getStatus()).add(request.getRequestId());
+        if (request.getStatus() == ReplenishmentStatus.PENDING) {
+            pendingQueue.offer(request);
+        }
+    }
+
+    private void appendToJournal(String record) {
+        if (journal == null) {
+            return;
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(journal, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.DSYNC)) {
+            writer.write(record);
+            writer.newLine();
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to record replenishment change: " + e.getMessage(), e);
+        }
+    }
+
+    private <T extends User> T findStaff(String id, Class<T> type) {
+        return StaffRepository.getInstance().findById(id)
+            .filter(type::isInstance)
+            .map(type::cast)
+            .orElseThrow(() -> new IllegalStateException("Unknown " + type.getSimpleName() + " " + id));
+    }
+
+    private String generateRequestId() {
+        String requestId;
+        do {
+            requestId = "R" + String.format("%05d", nextRequestNumber++);
+        } while (requests.containsKey(requestId));
+        return requestId;
+    }
+
+    private static int parseRequestNumber(String requestId) {
+        try {
+            return Integer.parseInt(requestId.substring(1));
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            return 0;
+        }
+    }
+}
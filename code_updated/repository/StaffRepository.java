@@ -2,70 +2,224 @@ package repository;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 
+import entity.Administrator;
 import entity.Doctor;
 import entity.Pharmacist;
 import entity.User;
 
 public class StaffRepository implements Repository<User, String> {
     private final Map<String, User> staff = new ConcurrentHashMap<>();
-    
+
+    // Role-partitioned storage, kept in step with the main map on save/delete
+    private final Map<String, Doctor> doctors = new ConcurrentHashMap<>();
+    private final Map<String, Pharmacist> pharmacists = new ConcurrentHashMap<>();
+    private final Map<String, Administrator> administrators = new ConcurrentHashMap<>();
+
+    // Normalized specialization -> doctors holding it
+    private final Map<String, Map<String, Doctor>> doctorsBySpecialization = new ConcurrentHashMap<>();
+
+    // Cached immutable views, dropped whenever the underlying partition changes
+    private volatile List<Doctor> doctorsView;
+    private volatile List<Pharmacist> pharmacistsView;
+    private volatile List<Administrator> administratorsView;
+    private final Map<String, List<Doctor>> specializationViews = new ConcurrentHashMap<>();
+
     private static StaffRepository instance;
-    
+
     private StaffRepository() {}
-    
+
     public static StaffRepository getInstance() {
         if (instance == null) {
             instance = new StaffRepository();
         }
         return instance;
     }
-    
+
     @Override
-    public User save(User user) {
-        staff.put(user.getHospitalId(), user);
+    public synchronized User save(User user) {
+        User previous = staff.put(user.getHospitalId(), user);
+        if (previous != null) {
+            unindex(previous);
+        }
+        index(user);
         return user;
     }
-    
+
     @Override
     public Optional<User> findById(String id) {
         return Optional.ofNullable(staff.get(id));
     }
-    
+
     @Override
     public List<User> findAll() {
         return new ArrayList<>(staff.values());
     }
-    
+
     @Override
-    public void delete(String id) {
-        staff.remove(id);
+    public synchronized void delete(String id) {
+        User removed = staff.remove(id);
+        if (removed != null) {
+            unindex(removed);
+        }
     }
-    
+
     @Override
     public boolean exists(String id) {
         return staff.containsKey(id);
     }
-    
+
     // Additional methods specific to staff
+
+    /**
+     * Returns all doctors as a cached, unmodifiable list
+     */
     public List<Doctor> findAllDoctors() {
-        return staff.values().stream()
-            .filter(user -> user instanceof Doctor)
-            .map(user -> (Doctor) user)
-            .toList();
+        List<Doctor> view = doctorsView;
+        if (view == null) {
+            synchronized (this) {
+                if (doctorsView == null) {
+                    doctorsView = List.copyOf(doctors.values());
+                }
+                view = doctorsView;
+            }
+        }
+        return view;
     }
-    
+
+    /**
+     * Returns all pharmacists as a cached, unmodifiable list
+     */
     public List<Pharmacist> findAllPharmacists() {
-        return staff.values().stream()
-            .filter(user -> user instanceof Pharmacist)
-            .map(user -> (Pharmacist) user)
-            .toList();
+        List<Pharmacist> view = pharmacistsView;
+        if (view == null) {
+            synchronized (this) {
+                if (pharmacistsView == null) {
+                    pharmacistsView = List.copyOf(pharmacists.values());
+                }
+                view = pharmacistsView;
+            }
+        }
+        return view;
     }
+
+    /**
+     * Returns all administrators as a cached, unmodifiable list
+     */
+    public List<Administrator> findAllAdministrators() {
+        List<Administrator> view = administratorsView;
+        if (view == null) {
+            synchronized (this) {
+                if (administratorsView == null) {
+                    administratorsView = List.copyOf(administrators.values());
+                }
+                view = administratorsView;
+            }
+        }
+        return view;
+    }
+
+    /**
+     * Finds all doctors with the given specialization (case-insensitive)
+     */
+    public List<Doctor> findDoctorsBySpecialization(String specialization) {
+        if (specialization == null) {
+            return List.of();
+        }
+        String key = normalizeSpecialization(specialization);
+        List<Doctor> view = specializationViews.get(key);
+        if (view == null) {
+            synchronized (this) {
+                view = specializationViews.get(key);
+                if (view == null) {
+                    Map<String, Doctor> matches = doctorsBySpecialization.get(key);
+                    view = matches == null ? List.of() : List.copyOf(matches.values());
+                    specializationViews.put(key, view);
+                }
+            }
+        }
+        return view;
+    }
+
+    /**
+     * Gets the distinct specializations currently held by at least one doctor
+     */
+    public Set<String> findAllSpecializations() {
+        Set<String> specializations = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        doctors.values().forEach(doctor -> specializations.add(doctor.getSpecialization()));
+        return specializations;
+    }
+
+    private void index(User user) {
+        switch (user) {
+            case Doctor doctor -> {
+                doctors.put(doctor.getHospitalId(), doctor);
+                doctorsView = null;
+                String key = normalizeSpecialization(doctor.getSpecialization());
+                doctorsBySpecialization
+                    .computeIfAbsent(key, k -> new ConcurrentHashMap<>())
+                    .put(doctor.getHospitalId(), doctor);
+                specializationViews.remove(key);
+            }
+            case Pharmacist pharmacist -> {
+                pharmacists.put(pharmacist.getHospitalId(), pharmacist);
+                pharmacistsView = null;
+            }
+            case Administrator admin -> {
+                administrators.put(admin.getHospitalId(), admin);
+                administratorsView = null;
+            }
+            default -> { }
+        }
+    }
+
+    private void unindex(User user) {
+        switch (user) {
+            case Doctor doctor -> {
+                doctors.remove(doctor.getHospitalId());
+                doctorsView = null;
+                String key = normalizeSpecialization(doctor.getSpecialization());
+                Map<String, Doctor> matches = doctorsBySpecialization.get(key);
+                if (matches != null) {
+                    matches.remove(doctor.getHospitalId());
+                    if (matches.isEmpty()) {
+                        doctorsBySpecialization.remove(key);
+                    }
+                }
+                specializationViews.remove(key);
+            }
+            case Pharmacist pharmacist -> {
+                pharmacists.remove(pharmacist.getHospitalId());
+                pharmacistsView = null;
+            }
+            case Administrator admin -> {
+                administrators.remove(admin.getHospitalId());
+                administratorsView = null;
+            }
+            default -> { }
+        }
+    }
+
+    private static String normalizeSpecialization(String specialization) {
+        return specialization == null ? "" : specialization.trim().toLowerCase(Locale.ROOT);
+    }
+
     @Override
-    public void clearAll() {
+    public synchronized void clearAll() {
         staff.clear();
+        doctors.clear();
+        pharmacists.clear();
+        administrators.clear();
+        doctorsBySpecialization.clear();
+        specializationViews.clear();
+        doctorsView = null;
+        pharmacistsView = null;
+        administratorsView = null;
     }
 }
@@ -0,0 +1,455 @@
+package repository;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Groups changes across repositories into transactions that take effect
+ * together or not at all. A transaction keeps an undo log of changes it has
+ * already made in memory and a redo log of changes deferred to commit. On
+ * commit, the whole redo log is written as a single commit record, and the
+ * deferred changes are applied only once that record is durable; on abort,
+ * or if the record cannot be written, the undo log is run newest first.
+ * Commit records from concurrent transactions are written and forced to
+ * disk together, so one sync covers every commit that queued up behind the
+ * previous one. When the log is opened, committed records are replayed
+ * through the handler registered for each change type; handlers must skip
+ * changes that are already in effect. The log is then rewritten without
+ * any torn record and without changes their type no longer needs for
+ * recovery, which checkpoint() also does whenever other storage has taken
+ * them over, so the log does not grow without bound.
+ */
+public class TransactionManager {
+    private static final String FIELD_SEPARATOR = "|";
+    private static final String VALUE_SEPARATOR = ":";
+    // Marks a complete record; a line without it was torn by a crash and is ignored
+    private static final String END_OF_RECORD = "END";
+    private static TransactionManager instance;
+
+    private final Map<String, Consumer<List<String>>> redoHandlers;
+    private final Map<String, Predicate<List<String>>> retentionChecks;
+    private final AtomicLong nextTransactionNumber;
+    private final ReentrantLock logLock;
+    private final Condition flushed;
+    private List<PendingCommit> pending;
+    private boolean flushing;
+    private FileChannel log;
+    private Path logFile;
+
+    private TransactionManager() {
+        this.redoHandlers = new ConcurrentHashMap<>();
+        this.retentionChecks = new ConcurrentHashMap<>();
+        this.nextTransactionNumber = new AtomicLong(1);
+        this.logLock = new ReentrantLock();
+        this.flushed = logLock.newCondition();
+        this.pending = new ArrayList<>();
+    }
+
+    public static synchronized TransactionManager getInstance() {
+        if (instance == null) {
+            instance = new TransactionManager();
+        }
+        return instance;
+    }
+
+    /**
+     * Starts a transaction; close it without committing to abort it
+     */
+    public Transaction begin() {
+        return new Transaction(nextTransactionNumber.getAndIncrement());
+    }
+
+    /**
+     * Registers how committed changes of a type are redone when the log is replayed
+     */
+    public void registerRedoHandler(String type, Consumer<List<String>> handler) {
+        registerRedoHandler(type, handler, fields -> true);
+    }
+
+    /**
+     * Registers how committed changes of a type are redone when the log is
+     * replayed, and which of them the log must keep; a change the check
+     * rejects is dropped the next time the log is rewritten
+     */
+    public void registerRedoHandler(String type, Consumer<List<String>> handler, Predicate<List<String>> retain) {
+        if (type == null || type.isEmpty() || handler == null || retain == null) {
+            throw new IllegalArgumentException("Change type, handler and retention check are required");
+        }
+        if (type.contains(FIELD_SEPARATOR) || type.contains(VALUE_SEPARATOR)) {
+            throw new IllegalArgumentException("Change type cannot contain separators: " + type);
+        }
+        redoHandlers.put(type, handler);
+        retentionChecks.put(type, retain);
+    }
+
+    /**
+     * Makes commits durable by logging them to the given file, replaying the
+     * changes of every transaction already committed there
+     */
+    public void openLog(Path logFile) throws IOException {
+        logLock.lock();
+        try {
+            awaitIdle();
+            closeLog();
+            if (Files.exists(logFile)) {
+                int lineNumber = 0;
+                for (String line : Files.readAllLines(logFile, StandardCharsets.UTF_8)) {
+                    lineNumber++;
+                    String[] fields = parseRecord(line);
+                    if (fields == null) {
+                        if (!line.isBlank()) {
+                            System.err.println("Skipping incomplete transaction log line " + lineNumber);
+                        }
+                        continue;
+                    }
+                    try {
+                        replay(fields);
+                    } catch (RuntimeException e) {
+                        System.err.println("Skipping transaction log line " + lineNumber + ": " + e.getMessage());
+                    }
+                }
+            }
+            // Appending after a torn last line would run the next record into it
+            rewrite(logFile);
+            this.logFile = logFile;
+            reopen();
+        } finally {
+            logLock.unlock();
+        }
+    }
+
+    /**
+     * Rewrites the log without the changes their type no longer needs, such
+     * as those now held by other durable storage. Commits wait while it runs.
+     */
+    public void checkpoint() {
+        logLock.lock();
+        try {
+            awaitIdle();
+            if (log == null) {
+                return;
+            }
+            closeLog();
+            try {
+                rewrite(logFile);
+            } finally {
+                reopen();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to checkpoint transaction log: " + e.getMessage(), e);
+        } finally {
+            logLock.unlock();
+        }
+    }
+
+    /**
+     * Detaches the log file, which keeps its contents; later commits are in memory only
+     */
+    public void clearAll() {
+        logLock.lock();
+        try {
+            awaitIdle();
+            closeLog();
+            logFile = null;
+            nextTransactionNumber.set(1);
+        } finally {
+            logLock.unlock();
+        }
+    }
+
+    private void replay(String[] fields) {
+        nextTransactionNumber.accumulateAndGet(Long.parseLong(fields[1]) + 1, Math::max);
+        for (int i = 3; i < fields.length - 1; i++) {
+            String[] values = fields[i].split(VALUE_SEPARATOR, -1);
+            Consumer<List<String>> handler = redoHandlers.get(values[0]);
+            if (handler == null) {
+                throw new IllegalStateException("No redo handler for change type " + values[0]);
+            }
+            handler.accept(decode(values));
+        }
+    }
+
+    // Splits a complete commit record into fields, or returns null if the line is blank or torn
+    private static String[] parseRecord(String line) {
+        if (line.isBlank()) {
+            return null;
+        }
+        String[] fields = line.split(Pattern.quote(FIELD_SEPARATOR), -1);
+        if (fields.length < 4 || !fields[0].equals("COMMIT") ||
+            !fields[fields.length - 1].equals(END_OF_RECORD)) {
+            return null;
+        }
+        return fields;
+    }
+
+    private static List<String> decode(String[] values) {
+        return Arrays.stream(values, 1, values.length)
+            .map(value -> URLDecoder.decode(value, StandardCharsets.UTF_8))
+            .toList();
+    }
+
+    // Writes the complete records still needed to a new file that then replaces the log; caller holds the log lock
+    private void rewrite(Path file) throws IOException {
+        StringBuilder kept = new StringBuilder();
+        if (Files.exists(file)) {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                String[] fields = parseRecord(line);
+                if (fields == null) {
+                    continue;
+                }
+                List<String> retained = new ArrayList<>(Arrays.asList(fields).subList(0, 3));
+                for (int i = 3; i < fields.length - 1; i++) {
+                    String[] values = fields[i].split(VALUE_SEPARATOR, -1);
+                    Predicate<List<String>> retain = retentionChecks.get(values[0]);
+                    if (retain == null || retain.test(decode(values))) {
+                        retained.add(fields[i]);
+                    }
+                }
+                if (retained.size() > 3) {
+                    retained.add(END_OF_RECORD);
+                    kept.append(String.join(FIELD_SEPARATOR, retained)).append(System.lineSeparator());
+                }
+            }
+        }
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.wrap(kept.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Caller holds the log lock
+    private void reopen() throws IOException {
+        log = FileChannel.open(logFile,
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    // Waits for a write in progress to finish, so the log can be swapped; caller holds the log lock
+    private void awaitIdle() {
+        while (flushing) {
+            flushed.awaitUninterruptibly();
+        }
+    }
+
+    // Waits until the record is on disk; whoever finds no write in progress writes everything queued so far
+    private void awaitDurable(String record) {
+        PendingCommit commit = new PendingCommit(record);
+        logLock.lock();
+        try {
+            if (log == null) {
+                return;
+            }
+            pending.add(commit);
+            while (!commit.done) {
+                if (flushing) {
+                    flushed.awaitUninterruptibly();
+                    continue;
+                }
+                flushing = true;
+                List<PendingCommit> batch = pending;
+                pending = new ArrayList<>();
+                FileChannel channel = log;
+                Exception failure = null;
+                // Commits arriving during the write queue up for the next one
+                logLock.unlock();
+                try {
+                    write(channel, batch);
+                } catch (IOException | RuntimeException e) {
+                    failure = e;
+                } finally {
+                    logLock.lock();
+                }
+                for (PendingCommit written : batch) {
+                    written.failure = failure;
+                    written.done = true;
+                }
+                flushing = false;
+                flushed.signalAll();
+            }
+            if (commit.failure != null) {
+                throw new IllegalStateException("Failed to record transaction commit: " +
+                    commit.failure.getMessage(), commit.failure);
+            }
+        } finally {
+            logLock.unlock();
+        }
+    }
+
+    private static void write(FileChannel channel, List<PendingCommit> batch) throws IOException {
+        StringBuilder lines = new StringBuilder();
+        for (PendingCommit commit : batch) {
+            lines.append(commit.record).append(System.lineSeparator());
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.force(false);
+    }
+
+    // Caller holds the log lock
+    private void closeLog() {
+        if (log == null) {
+            return;
+        }
+        try {
+            log.close();
+        } catch (IOException e) {
+            System.err.println("Failed to close transaction log: " + e.getMessage());
+        }
+        log = null;
+    }
+
+    /**
+     * A unit of work across repositories. Not thread-safe; used by the thread that began it.
+     */
+    public class Transaction implements AutoCloseable {
+        private final long number;
+        private final Deque<Runnable> undoLog;
+        private final List<Redo> redoLog;
+        private boolean finished;
+
+        private Transaction(long number) {
+            this.number = number;
+            this.undoLog = new ArrayDeque<>();
+            this.redoLog = new ArrayList<>();
+        }
+
+        /**
+         * Records how to reverse a change this transaction has already made in memory
+         */
+        public void onAbort(Runnable undo) {
+            checkActive();
+            undoLog.push(undo);
+        }
+
+        /**
+         * Defers a change until commit. Its type and fields go into the commit
+         * record, so the registered redo handler can apply it again after a restart.
+         */
+        public void onCommit(String type, List<String> fields, Runnable apply) {
+            checkActive();
+            if (!redoHandlers.containsKey(type)) {
+                throw new IllegalArgumentException("No redo handler for change type " + type);
+            }
+            redoLog.add(new Redo(type, fields, apply));
+        }
+
+        /**
+         * Makes the commit record durable, then applies the deferred changes.
+         * If the record cannot be written the transaction is aborted and the error rethrown.
+         */
+        public void commit() {
+            checkActive();
+            if (!redoLog.isEmpty()) {
+                try {
+                    awaitDurable(commitRecord());
+                } catch (RuntimeException e) {
+                    abort();
+                    throw e;
+                }
+            }
+            finished = true;
+            for (Redo redo : redoLog) {
+                redo.apply.run();
+            }
+        }
+
+        /**
+         * Reverses this transaction's changes, newest first; does nothing once committed or aborted
+         */
+        public void abort() {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            while (!undoLog.isEmpty()) {
+                undoLog.pop().run();
+            }
+        }
+
+        /**
+         * Aborts the transaction unless it has been committed
+         */
+        @Override
+        public void close() {
+            abort();
+        }
+
+        public long getNumber() {
+            return number;
+        }
+
+        private String commitRecord() {
+            List<String> fields = new ArrayList<>();
+            fields.add("COMMIT");
+            fields.add(String.valueOf(number));
+            fields.add(LocalDateTime.now().toString());
+            for (Redo redo : redoLog) {
+                StringBuilder change = new StringBuilder(redo.type);
+                for (String value : redo.fields) {
+                    change.append(VALUE_SEPARATOR).append(URLEncoder.encode(value, StandardCharsets.UTF_8));
+                }
+                fields.add(change.toString());
+            }
+            fields.add(END_OF_RECORD);
+            return String.join(FIELD_SEPARATOR, fields);
+        }
+
+        private void checkActive() {
+            if (finished) {
+                throw new IllegalStateException("Transaction " + number + " has already finished");
+            }
+        }
+    }
+
+    private static class Redo {
+        private final String type;
+        private final List<String> fields;
+        private final Runnable apply;
+
+        private Redo(String type, List<String> fields, Runnable apply) {
+            this.type = type;
+            this.fields = fields;
+            this.apply = apply;
+        }
+    }
+
+    // Guarded by the log lock
+    private static class PendingCommit {
+        private final String record;
+        private boolean done;
+        private Exception failure;
+
+        private PendingCommit(String record) {
+            this.record = record;
+        }
+    }
+}
@@ -9,6 +9,8 @@ import entity.*;
 import util.CSVReader;
 
 public class StaffImportService implements DataImportService<User> {
+    private static final String DEFAULT_SPECIALIZATION = "General Medicine";
+
     @Override
     public List<User> importData(String filename) throws IOException {
         CSVReader reader = new CSVReader(filename);
@@ -20,9 +22,11 @@ public class StaffImportService implements DataImportService<User> {
             String role = row[2].trim().toUpperCase();
             String gender = row[3].trim();
             int age = Integer.parseInt(row[4].trim());
+            String specialization = row.length > 5 && !row[5].trim().isEmpty()
+                ? row[5].trim() : DEFAULT_SPECIALIZATION;
 
             User user = switch (role) {
-                case "DOCTOR" -> new Doctor(staffId, "password", name, "General Medicine");
+                case "DOCTOR" -> new Doctor(staffId, "password", name, specialization);
                 case "PHARMACIST" -> new Pharmacist(staffId, "password", name);
                 case "ADMINISTRATOR" -> new Administrator(staffId, "password", name);
                 default -> throw new IllegalArgumentException("Invalid role: " + role);
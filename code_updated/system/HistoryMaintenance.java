@@ -0,0 +1,93 @@
+package system;
+
+import java.time.LocalDate;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import repository.AppointmentRepository;
+import repository.TransactionManager;
+
+/**
+ * Moves finished appointments out of the live map once a day, on a
+ * background thread, so the live map holds only recent and open
+ * appointments however long the system runs. Older ones are then moved on
+ * to the disk archive, when one is open, so the compact store stays bounded
+ * too; rows removed from the compact store are reclaimed, and the
+ * transaction log is checkpointed to drop their outcome records. The first
+ * pass runs at start.
+ */
+public class HistoryMaintenance {
+    private final AppointmentRepository appointmentRepository;
+    private final int compactAfterDays;
+    private final int archiveAfterDays;
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param compactAfterDays how many days a finished appointment stays live before it is compacted
+     * @param archiveAfterDays how many days a finished appointment stays in memory before it is archived
+     */
+    public HistoryMaintenance(int compactAfterDays, int archiveAfterDays) {
+        if (compactAfterDays < 0) {
+            throw new IllegalArgumentException("Compaction horizon cannot be negative");
+        }
+        if (archiveAfterDays < compactAfterDays) {
+            throw new IllegalArgumentException("Archive horizon cannot be shorter than the compaction horizon");
+        }
+        this.appointmentRepository = AppointmentRepository.getInstance();
+        this.compactAfterDays = compactAfterDays;
+        this.archiveAfterDays = archiveAfterDays;
+    }
+
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "history-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::runOnce, 0, 1, TimeUnit.DAYS);
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Compacts, then archives, finished appointments older than each horizon;
+     * returns how many were moved
+     */
+    public int runOnce() {
+        LocalDate today = LocalDate.now();
+        int moved = 0;
+        // A failed pass is retried on the next run rather than stopping the schedule
+        try {
+            moved += appointmentRepository.compactHistory(today.minusDays(compactAfterDays));
+        } catch (RuntimeException e) {
+            System.err.println("Error compacting appointment history: " + e.getMessage());
+        }
+        if (appointmentRepository.isArchiveOpen()) {
+            try {
+                moved += appointmentRepository.archiveHistory(today.minusDays(archiveAfterDays));
+            } catch (RuntimeException e) {
+                System.err.println("Error archiving appointment history: " + e.getMessage());
+            }
+        }
+        try {
+            appointmentRepository.reclaimCompactedRows();
+        } catch (RuntimeException e) {
+            System.err.println("Error reclaiming compacted appointment rows: " + e.getMessage());
+        }
+        try {
+            TransactionManager.getInstance().checkpoint();
+        } catch (RuntimeException e) {
+            System.err.println("Error checkpointing transaction log: " + e.getMessage());
+        }
+        return moved;
+    }
+}
@@ -13,6 +13,9 @@ import java.nio.file.*;
 import java.util.Scanner;
 
 public class HospitalManagementSystem {
+    // Finished appointments stay in the live map this long before they are compacted
+    private static final int COMPACT_HISTORY_AFTER_DAYS = 30;
+    private static final int ARCHIVE_HISTORY_AFTER_DAYS = 365;
     private final Scanner scanner;
     private final LoginUI loginUI;
     private final PatientUI patientUI;
@@ -20,6 +23,7 @@ public class HospitalManagementSystem {
     private final PharmacistUI pharmacistUI;
     private final AdministratorUI administratorUI;
     private final DataImportManager dataImportManager;
+    private final HistoryMaintenance historyMaintenance;
     private final AuthenticationController authController;
     
     public HospitalManagementSystem() {
@@ -33,6 +37,7 @@ public class HospitalManagementSystem {
         AppointmentController appointmentController = new AppointmentController(availabilityController);
         MedicalRecordController medicalRecordController = new MedicalRecordController();
         PatientController patientController = new PatientController(appointmentController);
+        InventoryController inventoryController = new InventoryController();
         
         // Initialize UIs with the same AuthenticationController instance
         this.loginUI = new LoginUI(scanner, authController);
@@ -40,11 +45,13 @@ public class HospitalManagementSystem {
             medicalRecordController, patientController);
         this.doctorUI = new DoctorUI(scanner, authController, appointmentController, 
             medicalRecordController, availabilityController);
-        this.pharmacistUI = new PharmacistUI(scanner, authController, appointmentController);
-        this.administratorUI = new AdministratorUI(scanner, authController, appointmentController);
+        this.pharmacistUI = new PharmacistUI(scanner, authController, appointmentController, inventoryController);
+        this.administratorUI = new AdministratorUI(scanner, authController, appointmentController,
+            inventoryController);
         
         // Initialize DataImportManager with the same AuthenticationController instance
         this.dataImportManager = new DataImportManager(authController);
+        this.historyMaintenance = new HistoryMaintenance(COMPACT_HISTORY_AFTER_DAYS, ARCHIVE_HISTORY_AFTER_DAYS);
     }
     
     private void loadInitialData() {
@@ -72,6 +79,7 @@ public class HospitalManagementSystem {
     public void start() {
         System.out.println("Initializing Hospital Management System...");
         loadInitialData();
+        historyMaintenance.start();
         
         while (true) {
             User user = loginUI.show();
@@ -92,6 +100,7 @@ public class HospitalManagementSystem {
             SessionController.getInstance().clearCurrentUser();
         }
         
+        historyMaintenance.stop();
         scanner.close();
         System.out.println("System shutdown complete. Goodbye!");
     }
@@ -0,0 +1,99 @@
+package controller;
+
+import static util.Assertions.assertEquals;
+import static util.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import entity.Appointment;
+import entity.Doctor;
+import entity.Medicine;
+import entity.Patient;
+import entity.Pharmacist;
+import entity.Prescription;
+import entity.enums.AppointmentStatus;
+import entity.enums.PrescriptionStatus;
+import repository.AppointmentRepository;
+import repository.DataImportManager;
+import repository.MedicineRepository;
+import repository.PatientRepository;
+import repository.PrescriptionQueue;
+import repository.StaffRepository;
+import repository.TransactionManager;
+
+/**
+ * Replaying the transaction log after a restart must keep a dispensed
+ * prescription dispensed and out of the pending queue. Runs from the
+ * directory holding data/, whose lists are copied so that the log and
+ * stores are written to a temporary directory.
+ */
+public class DispenseReplayTest {
+    public static void main(String[] args) throws IOException {
+        Path directory = Files.createTempDirectory("dispense-test");
+        try {
+            for (String list : List.of("Medicine_List.csv", "Patient_List.csv", "Staff_List.csv")) {
+                Files.copy(Paths.get("data", list), directory.resolve(list), StandardCopyOption.REPLACE_EXISTING);
+            }
+            dispensedPrescriptionStaysDispensedAfterRestart(directory);
+        } finally {
+            TransactionManager.getInstance().clearAll();
+            AppointmentRepository.getInstance().clearAll();
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+        System.out.println("DispenseReplayTest passed");
+    }
+
+    private static void dispensedPrescriptionStaysDispensedAfterRestart(Path directory) throws IOException {
+        AuthenticationController auth = new AuthenticationController();
+        importData(auth, directory);
+        AppointmentRepository appointments = AppointmentRepository.getInstance();
+        Doctor doctor = (Doctor) StaffRepository.getInstance().findById("D001").orElseThrow();
+        Pharmacist pharmacist = (Pharmacist) StaffRepository.getInstance().findById("PH001").orElseThrow();
+        Patient patient = PatientRepository.getInstance().findAll().get(0);
+        Medicine medicine = MedicineRepository.getInstance().findById("Paracetamol").orElseThrow();
+
+        Appointment appointment = appointments.save(
+            new Appointment(null, patient, doctor, LocalDateTime.now().plusDays(1)));
+        appointments.updateStatus(appointment, AppointmentStatus.CONFIRMED);
+        new AppointmentController(new DoctorAvailabilityController()).recordAppointmentOutcome(
+            appointment.getAppointmentId(), "Consultation",
+            List.of(new Prescription(medicine, 2), new Prescription(medicine, 3)), "Follow up in a week");
+        List<Prescription> prescriptions = appointment.getOutcomeRecord().getPrescriptions();
+        int stockBefore = medicine.getCurrentStock();
+        assertTrue(new InventoryController().dispense(pharmacist, appointment, prescriptions.get(1), medicine),
+            "Dispensing the second prescription");
+        assertEquals(stockBefore - 3, medicine.getCurrentStock(), "Stock after dispensing");
+        assertEquals(1, pendingCount(), "Pending prescriptions before the restart");
+
+        appointments.clearAll();
+        importData(auth, directory);
+        Appointment restored = appointments.findById(appointment.getAppointmentId()).orElseThrow();
+        List<Prescription> replayed = restored.getOutcomeRecord().getPrescriptions();
+        assertEquals(AppointmentStatus.COMPLETED, restored.getStatus(), "Appointment status after the restart");
+        assertEquals(PrescriptionStatus.PENDING, replayed.get(0).getStatus(), "Undispensed prescription");
+        assertEquals(PrescriptionStatus.DISPENSED, replayed.get(1).getStatus(), "Dispensed prescription");
+        assertEquals("PH001", replayed.get(1).getDispensedBy().getHospitalId(), "Pharmacist of the dispense");
+        assertEquals(1, pendingCount(), "Pending prescriptions after the restart");
+    }
+
+    private static void importData(AuthenticationController auth, Path directory) throws IOException {
+        new DataImportManager(auth).importAllData(directory.resolve("Medicine_List.csv").toString(),
+            directory.resolve("Patient_List.csv").toString(), directory.resolve("Staff_List.csv").toString());
+    }
+
+    private static int pendingCount() {
+        return PrescriptionQueue.getInstance().countByStatus(PrescriptionStatus.PENDING);
+    }
+}
@@ -0,0 +1,147 @@
+package entity;
+
+import static util.Assertions.assertEquals;
+import static util.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reserve, commit and abort racing each other and restocks on one medicine
+ */
+public class MedicineStockTest {
+    private static final int THREADS = 8;
+    private static final int OPERATIONS = 20_000;
+
+    public static void main(String[] args) throws Exception {
+        reservationsNeverOvercommitStock();
+        concurrentDispensingKeepsCountsAndLotsInStep();
+        settledReservationIgnoresLaterCalls();
+        System.out.println("MedicineStockTest passed");
+    }
+
+    private static void reservationsNeverOvercommitStock() throws Exception {
+        Medicine medicine = new Medicine("Stock Test A", 1_000, 10);
+        AtomicInteger reserved = new AtomicInteger();
+        List<StockReservation> held = new ArrayList<>();
+        runConcurrently(() -> {
+            List<StockReservation> mine = new ArrayList<>();
+            for (int i = 0; i < OPERATIONS / THREADS; i++) {
+                StockReservation reservation = medicine.tryReserve(3);
+                if (reservation != null) {
+                    reserved.addAndGet(3);
+                    mine.add(reservation);
+                }
+            }
+            synchronized (held) {
+                held.addAll(mine);
+            }
+        });
+        assertEquals(999, reserved.get(), "Units reserved out of 1000 in threes");
+        assertEquals(1, medicine.getAvailableStock(), "Available stock left");
+        held.forEach(StockReservation::commit);
+        assertEquals(1, medicine.getCurrentStock(), "On-hand stock after committing every reservation");
+        assertEquals(0, medicine.getReservedStock(), "Reserved stock after committing every reservation");
+    }
+
+    private static void concurrentDispensingKeepsCountsAndLotsInStep() throws Exception {
+        Medicine medicine = new Medicine("Stock Test B", 500, 10);
+        AtomicLong notified = new AtomicLong();
+        medicine.setStockLevelListener(new StockLevelListener() {
+            @Override
+            public void onStockLevelChanged(Medicine changed) {}
+
+            @Override
+            public void onStockChanged(Medicine changed, int delta) {
+                notified.addAndGet(delta);
+            }
+        });
+        AtomicInteger committed = new AtomicInteger();
+        AtomicInteger restocked = new AtomicInteger();
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicBoolean broken = new AtomicBoolean();
+        Thread observer = new Thread(() -> {
+            while (running.get()) {
+                if (medicine.getAvailableStock() < 0 || medicine.getReservedStock() < 0) {
+                    broken.set(true);
+                }
+            }
+        });
+        observer.start();
+        runConcurrently(() -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < OPERATIONS / THREADS; i++) {
+                int quantity = random.nextInt(1, 6);
+                if (random.nextInt(10) == 0) {
+                    if (medicine.updateStock(quantity, LocalDate.now().plusDays(random.nextInt(1, 365)))) {
+                        restocked.addAndGet(quantity);
+                    }
+                    continue;
+                }
+                StockReservation reservation = medicine.tryReserve(quantity);
+                if (reservation == null) {
+                    continue;
+                }
+                if (random.nextBoolean()) {
+                    assertTrue(reservation.commit(), "First commit takes effect");
+                    committed.addAndGet(quantity);
+                } else {
+                    assertTrue(reservation.abort(), "First abort takes effect");
+                }
+            }
+        });
+        running.set(false);
+        observer.join();
+
+        int expected = 500 + restocked.get() - committed.get();
+        assertTrue(!broken.get(), "Available and reserved stock never went negative");
+        assertEquals(expected, medicine.getCurrentStock(), "On-hand stock");
+        assertEquals(0, medicine.getReservedStock(), "Reserved stock once every reservation settled");
+        assertEquals(expected, medicine.getLots().stream().mapToInt(StockLot::getRemaining).sum(),
+            "Units held by the lots");
+        assertEquals((long) expected - 500, notified.get(), "Sum of the changes reported to the listener");
+    }
+
+    private static void settledReservationIgnoresLaterCalls() {
+        Medicine medicine = new Medicine("Stock Test C", 10, 2);
+        StockReservation reservation = medicine.tryReserve(4);
+        assertTrue(reservation.abort(), "Abort of an open reservation");
+        assertTrue(!reservation.commit(), "Commit after abort");
+        assertTrue(!reservation.abort(), "Second abort");
+        assertEquals(10, medicine.getCurrentStock(), "On-hand stock after an aborted reservation");
+        assertEquals(10, medicine.getAvailableStock(), "Available stock after an aborted reservation");
+    }
+
+    private static void runConcurrently(Runnable task) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        List<Throwable> failures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    task.run();
+                } catch (Throwable t) {
+                    synchronized (failures) {
+                        failures.add(t);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (!failures.isEmpty()) {
+            throw new AssertionError("Worker failed", failures.get(0));
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package repository;
+
+import static util.Assertions.assertEquals;
+import static util.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+import entity.Appointment;
+import entity.AppointmentOutcomeRecord;
+import entity.Doctor;
+import entity.Medicine;
+import entity.Patient;
+import entity.Pharmacist;
+import entity.Prescription;
+import entity.enums.AppointmentStatus;
+import entity.enums.PrescriptionStatus;
+
+/**
+ * Month-partitioned, block-compressed archive segments: every query must
+ * find the same appointments after the archive is reopened from disk, with
+ * their outcomes intact
+ */
+public class AppointmentArchiveTest {
+    private static final LocalDateTime START = LocalDateTime.of(2023, 1, 20, 8, 0);
+
+    public static void main(String[] args) throws IOException {
+        Doctor doctor = new Doctor("ARC-D1", "pw", "Archive Doctor", "General");
+        Pharmacist pharmacist = new Pharmacist("ARC-PH1", "pw", "Archive Pharmacist");
+        List<Patient> patients = List.of(new Patient("ARC-P1", "pw", "First", null),
+            new Patient("ARC-P2", "pw", "Second", null));
+        Medicine medicine = new Medicine("Archive Test Medicine", 100, 10);
+        StaffRepository.getInstance().save(doctor);
+        StaffRepository.getInstance().save(pharmacist);
+        patients.forEach(PatientRepository.getInstance()::save);
+        MedicineRepository.getInstance().save(medicine);
+
+        Path directory = Files.createTempDirectory("archive-test");
+        try {
+            List<Appointment> appointments = new ArrayList<>();
+            for (int i = 0; i < 600; i++) {
+                // Two hours apart, so each run below spans two months and the runs share February
+                appointments.add(appointment(90_000 + i, patients.get(i % 2), doctor, medicine, pharmacist,
+                    START.plusHours(2L * i)));
+            }
+            AppointmentArchive archive = AppointmentArchive.open(directory);
+            archive.append(appointments.subList(0, 400));
+            archive.append(appointments.subList(400, 600));
+            assertEquals(4, archive.countSegments(), "Segments after two runs of two months each");
+
+            AppointmentArchive reopened = AppointmentArchive.open(directory);
+            assertEquals(4, reopened.countSegments(), "Segments after reopening");
+            assertEquals(90_599, reopened.getHighestIdNumber(), "Highest archived ID number");
+
+            LocalDateTime from = START.plusDays(10);
+            LocalDateTime to = START.plusDays(15);
+            assertEquals(ids(appointments.stream().filter(a -> !a.getDateTime().isBefore(from)
+                    && a.getDateTime().isBefore(to)).toList()),
+                ids(reopened.findBetween(from, to)), "Appointments in a date range across the month boundary");
+            assertEquals(ids(appointments.stream().filter(a -> a.getPatient() == patients.get(1)).toList()),
+                ids(reopened.findByPatient("ARC-P2")), "Appointments of one patient");
+            assertEquals(600, reopened.findByDoctor("ARC-D1").size(), "Appointments of the doctor");
+            assertEquals(200, reopened.findByStatus(AppointmentStatus.CANCELLED).size(), "Cancelled appointments");
+
+            Appointment original = appointments.get(301);
+            Appointment restored = reopened.find(original.getAppointmentId()).orElseThrow();
+            assertEquals(original.getDateTime(), restored.getDateTime(), "Time of an archived appointment");
+            assertEquals(AppointmentStatus.COMPLETED, restored.getStatus(), "Status of an archived appointment");
+            AppointmentOutcomeRecord outcome = restored.getOutcomeRecord();
+            assertEquals("Service 1", outcome.getServiceType(), "Service type");
+            assertEquals("Notes for A90301", outcome.getConsultationNotes(), "Consultation notes");
+            Prescription prescription = outcome.getPrescriptions().get(0);
+            assertEquals(medicine.getName(), prescription.getMedicine().getName(), "Prescribed medicine");
+            assertEquals(2, prescription.getQuantity(), "Prescribed quantity");
+            assertEquals(PrescriptionStatus.DISPENSED, prescription.getStatus(), "Prescription status");
+            assertEquals("ARC-PH1", prescription.getDispensedBy().getHospitalId(), "Dispensing pharmacist");
+            assertEquals(original.getOutcomeRecord().getPrescriptions().get(0).getDispensedDateTime(),
+                prescription.getDispensedDateTime(), "Dispense time");
+            assertTrue(reopened.find("A99999").isEmpty(), "Appointment never archived");
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+        System.out.println("AppointmentArchiveTest passed");
+    }
+
+    // Every third appointment is cancelled; the rest are completed with a dispensed prescription
+    private static Appointment appointment(int number, Patient patient, Doctor doctor, Medicine medicine,
+            Pharmacist pharmacist, LocalDateTime dateTime) {
+        String id = "A" + number;
+        Appointment appointment = new Appointment(id, patient, doctor, dateTime);
+        if (number % 3 == 0) {
+            appointment.setStatus(AppointmentStatus.CANCELLED);
+            return appointment;
+        }
+        appointment.setStatus(AppointmentStatus.COMPLETED);
+        Prescription prescription = new Prescription(medicine, 2);
+        prescription.setStatus(PrescriptionStatus.DISPENSED);
+        prescription.setDispensedBy(pharmacist);
+        prescription.setDispensedDateTime(dateTime.plusMinutes(30));
+        appointment.setOutcomeRecord(new AppointmentOutcomeRecord(LocalDate.from(dateTime), "Service " + number % 3,
+            List.of(prescription), "Notes for " + id));
+        return appointment;
+    }
+
+    private static TreeSet<String> ids(List<Appointment> appointments) {
+        TreeSet<String> ids = new TreeSet<>();
+        appointments.forEach(appointment -> ids.add(appointment.getAppointmentId()));
+        return ids;
+    }
+}
@@ -0,0 +1,144 @@
+package repository;
+
+import static util.Assertions.assertEquals;
+import static util.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+import entity.Appointment;
+import entity.AppointmentOutcomeRecord;
+import entity.Doctor;
+import entity.Patient;
+import entity.enums.AppointmentStatus;
+
+/**
+ * Removal, replacement and reclaim() in CompactAppointmentStore: every
+ * query must answer the same before and after the rows are packed
+ */
+public class CompactAppointmentStoreTest {
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 9, 0);
+
+    public static void main(String[] args) {
+        reclaimKeepsEveryLiveRow();
+        reclaimForgetsUnreferencedDoctorsAndPatients();
+        System.out.println("CompactAppointmentStoreTest passed");
+    }
+
+    private static void reclaimKeepsEveryLiveRow() {
+        CompactAppointmentStore store = new CompactAppointmentStore();
+        List<Doctor> doctors = new ArrayList<>();
+        List<Patient> patients = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            doctors.add(new Doctor("CAST-D" + i, "pw", "Doctor " + i, "General"));
+        }
+        for (int i = 0; i < 5; i++) {
+            patients.add(new Patient("CAST-P" + i, "pw", "Patient " + i, null));
+        }
+        for (int i = 0; i < 500; i++) {
+            store.add(appointment("CAST-A" + i, patients.get(i % 5), doctors.get(i % 3), i));
+        }
+        // Tombstone most rows, and replace some so their new rows sit past the old ones
+        for (int i = 0; i < 500; i++) {
+            if (i % 4 != 0) {
+                store.remove("CAST-A" + i);
+            } else if (i % 8 == 0) {
+                store.add(appointment("CAST-A" + i, patients.get((i + 1) % 5), doctors.get(i % 3), i + 1_000));
+            }
+        }
+        assertEquals(125, store.size(), "Live rows");
+        TreeMap<String, String> before = describeAll(store);
+        List<String> byDoctor = describeByDoctor(store, doctors);
+        List<String> byPatient = describeByPatient(store, patients);
+        int between = store.findBetween(START, START.plusMinutes(250)).size();
+
+        assertEquals(375 + 63, store.reclaim(), "Rows dropped by reclaim");
+        assertEquals(0, store.reclaim(), "Rows dropped by a second reclaim");
+        assertEquals(125, store.size(), "Live rows after reclaim");
+        assertEquals(before, describeAll(store), "Rows after reclaim");
+        assertEquals(byDoctor, describeByDoctor(store, doctors), "Rows by doctor after reclaim");
+        assertEquals(byPatient, describeByPatient(store, patients), "Rows by patient after reclaim");
+        assertEquals(between, store.findBetween(START, START.plusMinutes(250)).size(), "Rows in a time range");
+        for (int i = 0; i < 500; i++) {
+            assertEquals(i % 4 == 0, store.contains("CAST-A" + i), "Presence of CAST-A" + i);
+        }
+        Appointment replaced = store.find("CAST-A8");
+        assertEquals(START.plusMinutes(1_008), replaced.getDateTime(), "Time of a replaced row");
+        assertEquals("Service 8", replaced.getOutcomeRecord().getServiceType(), "Outcome of a replaced row");
+
+        // Rows keep being added and removed after the columns were resized
+        for (int i = 500; i < 700; i++) {
+            store.add(appointment("CAST-A" + i, patients.get(i % 5), doctors.get(i % 3), i));
+        }
+        assertEquals("CAST-A4", store.remove("CAST-A4").getAppointmentId(), "Removed after reclaim");
+        assertEquals(324, store.size(), "Live rows after more changes");
+        assertEquals(1, store.reclaim(), "Rows dropped after more changes");
+        assertTrue(store.find("CAST-A699") != null && store.find("CAST-A4") == null, "Lookups after more changes");
+    }
+
+    private static void reclaimForgetsUnreferencedDoctorsAndPatients() {
+        CompactAppointmentStore store = new CompactAppointmentStore();
+        Doctor kept = new Doctor("CAST-D10", "pw", "Kept", "General");
+        Doctor gone = new Doctor("CAST-D11", "pw", "Gone", "General");
+        Patient patient = new Patient("CAST-P10", "pw", "Patient", null);
+        store.add(appointment("CAST-B0", patient, kept, 0));
+        store.add(appointment("CAST-B1", patient, gone, 1));
+        store.remove("CAST-B1");
+        store.reclaim();
+        List<String> visited = new ArrayList<>();
+        store.forEachByDoctor(gone, view -> visited.add(view.getAppointmentId()));
+        assertTrue(visited.isEmpty(), "Rows of a doctor whose rows were all removed");
+        assertEquals(kept.getHospitalId(), store.find("CAST-B0").getDoctor().getHospitalId(), "Doctor of a kept row");
+    }
+
+    private static Appointment appointment(String id, Patient patient, Doctor doctor, int minutes) {
+        Appointment appointment = new Appointment(id, patient, doctor, START.plusMinutes(minutes));
+        if (minutes % 2 == 0) {
+            appointment.setStatus(AppointmentStatus.COMPLETED);
+            appointment.setOutcomeRecord(new AppointmentOutcomeRecord(LocalDate.of(2024, 1, 1),
+                "Service " + (minutes % 1_000), List.of(), "Notes " + minutes));
+        } else {
+            appointment.setStatus(AppointmentStatus.CANCELLED);
+        }
+        return appointment;
+    }
+
+    private static TreeMap<String, String> describeAll(CompactAppointmentStore store) {
+        TreeMap<String, String> rows = new TreeMap<>();
+        store.forEach(view -> rows.put(view.getAppointmentId(), describe(view)));
+        return rows;
+    }
+
+    private static List<String> describeByDoctor(CompactAppointmentStore store, List<Doctor> doctors) {
+        List<String> rows = new ArrayList<>();
+        for (Doctor doctor : doctors) {
+            List<String> own = new ArrayList<>();
+            store.forEachByDoctor(doctor, view -> own.add(describe(view)));
+            own.sort(null);
+            rows.addAll(own);
+        }
+        return rows;
+    }
+
+    private static List<String> describeByPatient(CompactAppointmentStore store, List<Patient> patients) {
+        List<String> rows = new ArrayList<>();
+        for (Patient patient : patients) {
+            List<String> own = new ArrayList<>();
+            store.forEachByPatient(patient, view -> own.add(describe(view)));
+            own.sort(null);
+            rows.addAll(own);
+        }
+        return rows;
+    }
+
+    private static String describe(CompactAppointmentStore.View view) {
+        Appointment appointment = view.toAppointment();
+        AppointmentOutcomeRecord outcome = appointment.getOutcomeRecord();
+        return String.join("|", appointment.getAppointmentId(), appointment.getDoctor().getHospitalId(),
+            appointment.getPatient().getHospitalId(), appointment.getDateTime().toString(),
+            appointment.getStatus().name(), outcome == null ? "-" : outcome.getServiceType());
+    }
+}
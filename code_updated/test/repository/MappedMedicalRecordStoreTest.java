@@ -0,0 +1,294 @@
+package repository;
+
+import static util.Assertions.assertEquals;
+import static util.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import entity.ContactInfo;
+import entity.Diagnosis;
+import entity.MedicalRecord;
+import entity.Treatment;
+import entity.enums.BloodType;
+import entity.enums.Gender;
+
+/**
+ * Reopening, delta entries, torn-entry recovery and compaction in
+ * MappedMedicalRecordStore. Saves follow the repository's pattern: a
+ * version is stored, then its new diagnoses are published.
+ */
+public class MappedMedicalRecordStoreTest {
+    public static void main(String[] args) throws IOException {
+        recordsSurviveReopen();
+        extendingSavesAppendOnlyNewDiagnoses();
+        unrelatedRecordReplacesStoredHistory();
+        tornEntriesAreDroppedOnReopen();
+        compactionFoldsChainsAndKeepsEveryRecord();
+        System.out.println("MappedMedicalRecordStoreTest passed");
+    }
+
+    private static void recordsSurviveReopen() throws IOException {
+        Path directory = Files.createTempDirectory("records-test");
+        try {
+            MappedMedicalRecordStore store = MappedMedicalRecordStore.open(directory, 2);
+            for (int i = 0; i < 10; i++) {
+                MedicalRecord record = save(store, newRecord("R" + i), 1);
+                for (int d = 0; d < i; d++) {
+                    record = save(store, record.withDiagnosis(diagnosis("R" + i + "-" + d)), d + 2);
+                }
+            }
+            save(store, store.get("R3").withContactInfo("999", "new@example.com"), 20);
+            store.remove("R4");
+            store.close();
+
+            store = MappedMedicalRecordStore.open(directory, 2);
+            assertEquals(9, store.size(), "Records after reopening");
+            assertTrue(!store.contains("R4"), "Removed record after reopening");
+            for (int i = 0; i < 10; i++) {
+                if (i != 4) {
+                    assertEquals(expectedDiagnoses("R" + i, i), descriptions(store.get("R" + i)), "Diagnoses of R" + i);
+                }
+            }
+            assertEquals("999", store.get("R3").getContactInfo().getPhoneNumber(), "Phone after reopening");
+            assertEquals("new@example.com", store.get("R3").getContactInfo().getEmail(), "Email after reopening");
+            assertEquals(9L, store.stream().count(), "Streamed records");
+            store.close();
+        } finally {
+            deleteDirectory(directory);
+        }
+    }
+
+    private static void extendingSavesAppendOnlyNewDiagnoses() throws IOException {
+        Path directory = Files.createTempDirectory("records-test");
+        try {
+            // A cache of one forces every other read to decode the record again
+            MappedMedicalRecordStore store = MappedMedicalRecordStore.open(directory, 1);
+            save(store, newRecord("OTHER"), 1);
+            MedicalRecord record = save(store, newRecord("LONG"), 1);
+            for (int d = 0; d < 300; d++) {
+                record = save(store, record.withDiagnosis(diagnosis("LONG-" + d)), d + 2);
+            }
+            long before = usedBytes(directory);
+            for (int d = 300; d < 400; d++) {
+                store.get("OTHER");
+                save(store, store.get("LONG").withDiagnosis(diagnosis("LONG-" + d)), d + 2);
+            }
+            long perSave = (usedBytes(directory) - before) / 100;
+            int fullEntry = entrySizes(directory).stream().mapToInt(Integer::intValue).max().orElse(0);
+            // Folding rewrites the whole record now and then, but at most about once per record's worth of deltas
+            assertTrue(perSave * 10 < fullEntry, "Bytes per save " + perSave + " against a full entry of " + fullEntry);
+            store.close();
+
+            store = MappedMedicalRecordStore.open(directory, 1);
+            assertEquals(expectedDiagnoses("LONG", 400), descriptions(store.get("LONG")), "Diagnoses after reopening");
+            store.close();
+        } finally {
+            deleteDirectory(directory);
+        }
+    }
+
+    private static void unrelatedRecordReplacesStoredHistory() throws IOException {
+        Path directory = Files.createTempDirectory("records-test");
+        try {
+            MappedMedicalRecordStore store = MappedMedicalRecordStore.open(directory, 4);
+            // Enough diagnoses in the first entry that the deltas after it are not folded yet
+            MedicalRecord record = newRecord("SAME");
+            for (int d = 0; d < 20; d++) {
+                record.addDiagnosis(diagnosis("old-" + d));
+            }
+            record = save(store, record, 1);
+            record = save(store, record.withDiagnosis(diagnosis("old-20")), 2);
+            save(store, record.withDiagnosis(diagnosis("old-21")), 3);
+
+            // Same patient and as many diagnoses, but not derived from the stored version
+            MedicalRecord replacement = newRecord("SAME");
+            for (int d = 0; d < 22; d++) {
+                replacement.addDiagnosis(diagnosis("new-" + d));
+            }
+            save(store, replacement, 4);
+            save(store, store.get("SAME").withDiagnosis(diagnosis("new-22")), 5);
+            store.close();
+
+            store = MappedMedicalRecordStore.open(directory, 4);
+            assertEquals(expectedDiagnoses("new", 23), descriptions(store.get("SAME")), "Diagnoses after replacement");
+            store.close();
+        } finally {
+            deleteDirectory(directory);
+        }
+    }
+
+    private static void tornEntriesAreDroppedOnReopen() throws IOException {
+        Path directory = Files.createTempDirectory("records-test");
+        try {
+            MappedMedicalRecordStore store = MappedMedicalRecordStore.open(directory, 4);
+            MedicalRecord record = save(store, newRecord("TORN"), 1);
+            for (int d = 0; d < 5; d++) {
+                record = save(store, record.withDiagnosis(diagnosis("TORN-" + d)), d + 2);
+            }
+            store.close();
+
+            // A crash wrote the last entry's length but not all of its bytes
+            Path segment = segmentFiles(directory).get(0);
+            List<Integer> offsets = entryOffsets(segment);
+            int last = offsets.get(offsets.size() - 1);
+            try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+                int end = last + 2 * Integer.BYTES + buffer.getInt(last);
+                buffer.put(end - 1, (byte) (buffer.get(end - 1) ^ 0x5A));
+                buffer.force();
+            }
+
+            store = MappedMedicalRecordStore.open(directory, 4);
+            assertEquals(expectedDiagnoses("TORN", 4), descriptions(store.get("TORN")), "Diagnoses before the torn entry");
+            save(store, store.get("TORN").withDiagnosis(diagnosis("TORN-4b")), 10);
+            store.close();
+
+            store = MappedMedicalRecordStore.open(directory, 4);
+            List<String> expected = new ArrayList<>(expectedDiagnoses("TORN", 4));
+            expected.add("TORN-4b");
+            assertEquals(expected, descriptions(store.get("TORN")), "Diagnoses saved after recovery");
+            assertEquals(1, store.size(), "Records after recovery");
+            store.close();
+        } finally {
+            deleteDirectory(directory);
+        }
+    }
+
+    private static void compactionFoldsChainsAndKeepsEveryRecord() throws IOException {
+        Path directory = Files.createTempDirectory("records-test");
+        try {
+            MappedMedicalRecordStore store = MappedMedicalRecordStore.open(directory, 8);
+            MedicalRecord chained = save(store, newRecord("CHAIN"), 1);
+            for (int d = 0; d < 50; d++) {
+                chained = save(store, chained.withDiagnosis(diagnosis("CHAIN-" + d)), d + 2);
+            }
+            // Records saved over and over without deriving from the stored version leave garbage until compaction
+            long version = 100;
+            int rounds = 0;
+            while (Files.exists(segmentPath(directory, 0))) {
+                assertTrue(rounds < 200, "Compaction never ran");
+                version = saveBulkRecords(store, rounds++, version);
+            }
+            version = saveBulkRecords(store, rounds, version);
+            long used = usedBytes(directory);
+            assertTrue(used < MappedMedicalRecordStore.SEGMENT_SIZE, "Live bytes after compaction: " + used);
+
+            // The folded chain still takes deltas
+            save(store, store.get("CHAIN").withDiagnosis(diagnosis("CHAIN-50")), version++);
+            store.close();
+
+            store = MappedMedicalRecordStore.open(directory, 8);
+            assertEquals(21, store.size(), "Records after compaction and reopening");
+            assertEquals(expectedDiagnoses("CHAIN", 51), descriptions(store.get("CHAIN")), "Chained record");
+            List<String> bulk = descriptions(store.get("BULK7"));
+            assertEquals(200, bulk.size(), "Diagnoses of a bulk record");
+            assertEquals("BULK7-" + rounds + "-0", bulk.get(0), "Newest bulk record's first diagnosis");
+            store.close();
+        } finally {
+            deleteDirectory(directory);
+        }
+    }
+
+    // Saves 20 unrelated records of 200 diagnoses each, returning the next version
+    private static long saveBulkRecords(MappedMedicalRecordStore store, int round, long version) {
+        for (int p = 0; p < 20; p++) {
+            MedicalRecord record = newRecord("BULK" + p);
+            for (int d = 0; d < 200; d++) {
+                record.addDiagnosis(diagnosis("BULK" + p + "-" + round + "-" + d));
+            }
+            save(store, record, version++);
+        }
+        return version;
+    }
+
+    // Stores a version and publishes its diagnoses, as MedicalRecordRepository does
+    private static MedicalRecord save(MappedMedicalRecordStore store, MedicalRecord record, long version) {
+        MedicalRecord stamped = record.asVersion(version);
+        store.put(stamped);
+        stamped.getDiagnosisHistory().publish();
+        return stamped;
+    }
+
+    private static MedicalRecord newRecord(String patientId) {
+        return new MedicalRecord(patientId, "Name " + patientId, LocalDate.of(1980, 5, 17), Gender.values()[0],
+            BloodType.values()[0], new ContactInfo("555" + patientId.length(), patientId + "@example.com"));
+    }
+
+    private static Diagnosis diagnosis(String description) {
+        return new Diagnosis(description, new Treatment("Treatment for " + description), LocalDate.of(2024, 3, 1));
+    }
+
+    private static List<String> expectedDiagnoses(String prefix, int count) {
+        List<String> expected = new ArrayList<>();
+        for (int d = 0; d < count; d++) {
+            expected.add(prefix + "-" + d);
+        }
+        return expected;
+    }
+
+    // Oldest first
+    private static List<String> descriptions(MedicalRecord record) {
+        List<String> result = new ArrayList<>();
+        record.getDiagnosisHistory().toList().forEach(diagnosis -> result.add(diagnosis.getDescription()));
+        return result;
+    }
+
+    private static Path segmentPath(Path directory, int segment) {
+        return directory.resolve(String.format("records-%04d.seg", segment));
+    }
+
+    private static List<Path> segmentFiles(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().toList();
+        }
+    }
+
+    // Offsets of the entries in a segment, read the way the store lays them out: length, checksum, bytes
+    private static List<Integer> entryOffsets(Path segment) throws IOException {
+        List<Integer> offsets = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int position = 0;
+            while (position + 2 * Integer.BYTES <= buffer.capacity() && buffer.getInt(position) != 0) {
+                offsets.add(position);
+                position += 2 * Integer.BYTES + Math.abs(buffer.getInt(position));
+            }
+        }
+        return offsets;
+    }
+
+    private static List<Integer> entrySizes(Path directory) throws IOException {
+        List<Integer> sizes = new ArrayList<>();
+        for (Path segment : segmentFiles(directory)) {
+            try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                for (int offset : entryOffsets(segment)) {
+                    sizes.add(2 * Integer.BYTES + Math.abs(buffer.getInt(offset)));
+                }
+            }
+        }
+        return sizes;
+    }
+
+    private static long usedBytes(Path directory) throws IOException {
+        return entrySizes(directory).stream().mapToLong(Integer::longValue).sum();
+    }
+
+    private static void deleteDirectory(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+}
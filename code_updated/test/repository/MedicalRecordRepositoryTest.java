@@ -0,0 +1,193 @@
+package repository;
+
+import static util.Assertions.assertEquals;
+import static util.Assertions.assertThrows;
+import static util.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import entity.ContactInfo;
+import entity.Diagnosis;
+import entity.MedicalRecord;
+import entity.Treatment;
+import entity.enums.BloodType;
+import entity.enums.Gender;
+
+/**
+ * Snapshot reads, out-of-order commits and concurrent updates of medical
+ * records, on the heap store and on the memory-mapped one
+ */
+public class MedicalRecordRepositoryTest {
+    private static final MedicalRecordRepository repository = MedicalRecordRepository.getInstance();
+
+    public static void main(String[] args) throws Exception {
+        committedSequenceWaitsForEarlierWrites();
+        Path directory = Files.createTempDirectory("repository-test");
+        try {
+            for (boolean mapped : new boolean[] {false, true}) {
+                repository.clearAll();
+                if (mapped) {
+                    // A small cache, so snapshots also read versions decoded again after eviction
+                    repository.openStore(directory, 2);
+                }
+                snapshotSeesRecordsAsOfOpening();
+                staleVersionIsRejected();
+                concurrentUpdatesKeepEveryDiagnosis();
+            }
+        } finally {
+            repository.clearAll();
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+        System.out.println("MedicalRecordRepositoryTest passed");
+    }
+
+    private static void committedSequenceWaitsForEarlierWrites() {
+        MedicalRecordVersions versions = new MedicalRecordVersions();
+        long first = versions.begin();
+        long second = versions.begin();
+        long third = versions.begin();
+        versions.finish(second);
+        assertEquals(0L, pinnedSequence(versions), "Committed sequence while the first write is running");
+        versions.finish(first);
+        assertEquals(second, pinnedSequence(versions), "Committed sequence once the first two have finished");
+        versions.finish(third);
+        assertEquals(third, pinnedSequence(versions), "Committed sequence once all have finished");
+    }
+
+    private static long pinnedSequence(MedicalRecordVersions versions) {
+        MedicalRecordVersions.Pin pin = versions.pin();
+        versions.release(pin);
+        return pin.getSequence();
+    }
+
+    private static void snapshotSeesRecordsAsOfOpening() {
+        repository.save(newRecord("SNAP-A"));
+        repository.save(newRecord("SNAP-B"));
+        MedicalRecordRepository.Snapshot snapshot = repository.openSnapshot();
+        try {
+            repository.update("SNAP-A", record -> record.withContactInfo("999", "changed@example.com")
+                .withDiagnosis(diagnosis("after snapshot")));
+            repository.delete("SNAP-B");
+            repository.save(newRecord("SNAP-C"));
+
+            MedicalRecord seenA = snapshot.findById("SNAP-A").orElseThrow();
+            assertEquals("555", seenA.getContactInfo().getPhoneNumber(), "Phone seen by the snapshot");
+            assertEquals(0, seenA.getDiagnosisHistory().size(), "Diagnoses seen by the snapshot");
+            assertTrue(snapshot.findById("SNAP-B").isPresent(), "Record deleted after the snapshot");
+            assertTrue(snapshot.findById("SNAP-C").isEmpty(), "Record added after the snapshot");
+            assertEquals(List.of("SNAP-A", "SNAP-B"), snapshot.stream().map(MedicalRecord::getPatientId).sorted().toList(),
+                "Records streamed by the snapshot");
+
+            MedicalRecord latestA = repository.findById("SNAP-A").orElseThrow();
+            assertEquals("999", latestA.getContactInfo().getPhoneNumber(), "Latest phone");
+            assertEquals(1, latestA.getDiagnosisHistory().size(), "Latest diagnoses");
+            assertTrue(repository.findById("SNAP-B").isEmpty(), "Deleted record");
+        } finally {
+            snapshot.close();
+        }
+        assertThrows(IllegalStateException.class, () -> snapshot.findById("SNAP-A"), "Read from a closed snapshot");
+        repository.delete("SNAP-A");
+        repository.delete("SNAP-C");
+    }
+
+    private static void staleVersionIsRejected() {
+        repository.save(newRecord("STALE"));
+        MedicalRecord base = repository.findById("STALE").orElseThrow();
+        repository.save(base.withDiagnosis(diagnosis("first")));
+        // Derived from the same version, so it would silently drop "first"
+        MedicalRecord stale = base.withDiagnosis(diagnosis("second"));
+        assertThrows(IllegalStateException.class, () -> repository.save(stale), "Saving a stale version");
+        assertEquals(List.of("first"), descriptions(repository.findById("STALE").orElseThrow()), "Diagnoses kept");
+        repository.delete("STALE");
+    }
+
+    private static void concurrentUpdatesKeepEveryDiagnosis() throws Exception {
+        int patients = 6;
+        int writers = 6;
+        int updatesPerWriter = 300;
+        for (int p = 0; p < patients; p++) {
+            repository.save(newRecord("CONC" + p));
+        }
+        AtomicBoolean writing = new AtomicBoolean(true);
+        List<Throwable> failures = new ArrayList<>();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int w = 0; w < writers; w++) {
+            int writer = w;
+            threads.add(new Thread(() -> run(start, failures, () -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < updatesPerWriter; i++) {
+                    Diagnosis added = diagnosis("writer " + writer + " update " + i);
+                    repository.update("CONC" + random.nextInt(patients), record -> record.withDiagnosis(added));
+                }
+            })));
+        }
+        // A snapshot must read the same version however often it reads, whatever the writers do
+        threads.add(new Thread(() -> run(start, failures, () -> {
+            while (writing.get()) {
+                try (MedicalRecordRepository.Snapshot snapshot = repository.openSnapshot()) {
+                    String patientId = "CONC" + ThreadLocalRandom.current().nextInt(patients);
+                    int first = snapshot.findById(patientId).orElseThrow().getDiagnosisHistory().size();
+                    Thread.yield();
+                    int second = snapshot.findById(patientId).orElseThrow().getDiagnosisHistory().size();
+                    assertEquals(first, second, "Repeated read of " + patientId + " in one snapshot");
+                }
+            }
+        })));
+        threads.forEach(Thread::start);
+        start.countDown();
+        for (int t = 0; t < writers; t++) {
+            threads.get(t).join();
+        }
+        writing.set(false);
+        threads.get(writers).join();
+        if (!failures.isEmpty()) {
+            throw new AssertionError("Worker failed", failures.get(0));
+        }
+        int total = 0;
+        for (int p = 0; p < patients; p++) {
+            total += repository.findById("CONC" + p).orElseThrow().getDiagnosisHistory().size();
+            repository.delete("CONC" + p);
+        }
+        assertEquals(writers * updatesPerWriter, total, "Diagnoses across every record");
+    }
+
+    private static void run(CountDownLatch start, List<Throwable> failures, Runnable work) {
+        try {
+            start.await();
+            work.run();
+        } catch (Throwable t) {
+            synchronized (failures) {
+                failures.add(t);
+            }
+        }
+    }
+
+    private static MedicalRecord newRecord(String patientId) {
+        return new MedicalRecord(patientId, "Name " + patientId, LocalDate.of(1975, 2, 3), Gender.values()[0],
+            BloodType.values()[0], new ContactInfo("555", patientId + "@example.com"));
+    }
+
+    private static Diagnosis diagnosis(String description) {
+        return new Diagnosis(description, new Treatment("Rest"), LocalDate.of(2024, 6, 1));
+    }
+
+    private static List<String> descriptions(MedicalRecord record) {
+        List<String> result = new ArrayList<>();
+        record.getDiagnosisHistory().toList().forEach(diagnosis -> result.add(diagnosis.getDescription()));
+        return result;
+    }
+}
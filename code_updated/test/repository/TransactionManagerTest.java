@@ -0,0 +1,169 @@
+package repository;
+
+import static util.Assertions.assertEquals;
+import static util.Assertions.assertThrows;
+import static util.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Commit records, torn-tail recovery, retention and group commit in the
+ * transaction log, through a change type of the test's own
+ */
+public class TransactionManagerTest {
+    private static final String CHANGE = "TEST_CHANGE";
+
+    private static final TransactionManager transactions = TransactionManager.getInstance();
+    // Filled by the redo handler while a log is replayed
+    private static final List<List<String>> replayed = new ArrayList<>();
+
+    public static void main(String[] args) throws Exception {
+        transactions.registerRedoHandler(CHANGE, fields -> {
+            synchronized (replayed) {
+                replayed.add(fields);
+            }
+        }, fields -> !fields.get(0).startsWith("expired"));
+        Path directory = Files.createTempDirectory("transactions-test");
+        try {
+            committedChangesAreReplayedAndTornTailDropped(directory.resolve("torn.log"));
+            abortedChangesAreNeitherAppliedNorLogged(directory.resolve("abort.log"));
+            checkpointDropsChangesNoLongerNeeded(directory.resolve("checkpoint.log"));
+            concurrentCommitsAreAllDurable(directory.resolve("group.log"));
+        } finally {
+            transactions.clearAll();
+            try (var files = Files.list(directory)) {
+                for (Path file : files.toList()) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            Files.deleteIfExists(directory);
+        }
+        System.out.println("TransactionManagerTest passed");
+    }
+
+    private static void committedChangesAreReplayedAndTornTailDropped(Path log) throws IOException {
+        transactions.openLog(log);
+        List<List<String>> applied = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            // Separators inside values must survive the round trip
+            List<String> fields = List.of("change-" + i, "a|b:c", "");
+            TransactionManager.Transaction transaction = transactions.begin();
+            transaction.onCommit(CHANGE, fields, () -> applied.add(fields));
+            transaction.commit();
+        }
+        assertEquals(3, applied.size(), "Changes applied on commit");
+        transactions.clearAll();
+
+        // A crash while writing a fourth record
+        Files.writeString(log, "COMMIT|99|2024-01-01T00:00|" + CHANGE + ":change-3", StandardCharsets.UTF_8,
+            StandardOpenOption.APPEND);
+        assertEquals(applied, reopen(log), "Changes replayed from a log with a torn tail");
+        List<String> lines = Files.readAllLines(log, StandardCharsets.UTF_8);
+        assertEquals(3, lines.size(), "Records left after the torn one is dropped");
+        assertTrue(lines.stream().allMatch(line -> line.endsWith("|END")), "Every record is complete");
+
+        TransactionManager.Transaction transaction = transactions.begin();
+        transaction.onCommit(CHANGE, List.of("change-4"), () -> {});
+        transaction.commit();
+        transactions.clearAll();
+        List<List<String>> afterRecovery = reopen(log);
+        assertEquals(4, afterRecovery.size(), "Changes replayed after a commit following recovery");
+        assertEquals(List.of("change-4"), afterRecovery.get(3), "Change committed after recovery");
+        transactions.clearAll();
+    }
+
+    private static void abortedChangesAreNeitherAppliedNorLogged(Path log) throws IOException {
+        transactions.openLog(log);
+        List<String> undone = new ArrayList<>();
+        try (TransactionManager.Transaction transaction = transactions.begin()) {
+            transaction.onAbort(() -> undone.add("first"));
+            transaction.onAbort(() -> undone.add("second"));
+            transaction.onCommit(CHANGE, List.of("aborted"), () -> undone.add("applied"));
+        }
+        assertEquals(List.of("second", "first"), undone, "Undo log run newest first, redo never applied");
+        TransactionManager.Transaction finished = transactions.begin();
+        finished.commit();
+        assertThrows(IllegalStateException.class, () -> finished.onCommit(CHANGE, List.of("late"), () -> {}),
+            "Change added to a finished transaction");
+        transactions.clearAll();
+        assertTrue(reopen(log).isEmpty(), "Changes replayed after an abort");
+        transactions.clearAll();
+    }
+
+    private static void checkpointDropsChangesNoLongerNeeded(Path log) throws IOException {
+        transactions.openLog(log);
+        for (String value : List.of("kept", "expired", "kept-too")) {
+            TransactionManager.Transaction transaction = transactions.begin();
+            transaction.onCommit(CHANGE, List.of(value), () -> {});
+            transaction.commit();
+        }
+        assertEquals(3, Files.readAllLines(log, StandardCharsets.UTF_8).size(), "Records before the checkpoint");
+        transactions.checkpoint();
+        assertEquals(2, Files.readAllLines(log, StandardCharsets.UTF_8).size(), "Records after the checkpoint");
+        transactions.clearAll();
+        assertEquals(List.of(List.of("kept"), List.of("kept-too")), reopen(log), "Changes replayed after the checkpoint");
+        transactions.clearAll();
+    }
+
+    private static void concurrentCommitsAreAllDurable(Path log) throws Exception {
+        transactions.openLog(log);
+        int threads = 8;
+        int commitsPerThread = 200;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        List<Throwable> failures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int worker = t;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < commitsPerThread; i++) {
+                        TransactionManager.Transaction transaction = transactions.begin();
+                        transaction.onCommit(CHANGE, List.of("worker-" + worker + "-" + i), () -> {});
+                        transaction.commit();
+                    }
+                } catch (Throwable e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                }
+            });
+            workers.add(thread);
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : workers) {
+            thread.join();
+        }
+        if (!failures.isEmpty()) {
+            throw new AssertionError("Commit failed", failures.get(0));
+        }
+        transactions.clearAll();
+        List<List<String>> changes = reopen(log);
+        Set<String> distinct = new HashSet<>();
+        changes.forEach(fields -> distinct.add(fields.get(0)));
+        assertEquals(threads * commitsPerThread, changes.size(), "Changes replayed after concurrent commits");
+        assertEquals(threads * commitsPerThread, distinct.size(), "Distinct changes replayed");
+        transactions.clearAll();
+    }
+
+    // Opens the log and returns the changes it replayed
+    private static List<List<String>> reopen(Path log) throws IOException {
+        synchronized (replayed) {
+            replayed.clear();
+        }
+        transactions.openLog(log);
+        synchronized (replayed) {
+            return new ArrayList<>(replayed);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package util;
+
+import java.util.Objects;
+
+/**
+ * Checks for the tests under test/, which run without a test framework:
+ * each test class has a main method that throws AssertionError on the
+ * first failed check. Compile them together with the sources and run the
+ * class from the directory holding data/, e.g.
+ * java --enable-preview -cp out repository.MappedMedicalRecordStoreTest.
+ */
+public final class Assertions {
+    private Assertions() {}
+
+    public static void assertTrue(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    public static void assertEquals(Object expected, Object actual, String message) {
+        if (!Objects.equals(expected, actual)) {
+            throw new AssertionError(message + ": expected " + expected + " but was " + actual);
+        }
+    }
+
+    public static void assertThrows(Class<? extends Throwable> expected, Runnable action, String message) {
+        try {
+            action.run();
+        } catch (Throwable thrown) {
+            if (expected.isInstance(thrown)) {
+                return;
+            }
+            throw new AssertionError(message + ": expected " + expected.getSimpleName() + " but got " + thrown, thrown);
+        }
+        throw new AssertionError(message + ": expected " + expected.getSimpleName() + " to be thrown");
+    }
+}
@@ -0,0 +1,124 @@
+package util;
+
+import static util.Assertions.assertEquals;
+import static util.Assertions.assertThrows;
+import static util.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Mutual exclusion, deadlock freedom and nesting rules of EntityLockManager
+ */
+public class EntityLockManagerTest {
+    public static void main(String[] args) throws Exception {
+        overlappingKeySetsExcludeEachOtherWithoutDeadlock();
+        nestingOutOfOrderIsRejected();
+        rejectsInvalidArguments();
+        System.out.println("EntityLockManagerTest passed");
+    }
+
+    private static void overlappingKeySetsExcludeEachOtherWithoutDeadlock() throws Exception {
+        // Few stripes, so unrelated keys collide as well
+        EntityLockManager locks = new EntityLockManager(8);
+        int keyCount = 20;
+        // Changed without synchronization, only ever under the key's lock: patients first, then appointments
+        int[] counters = new int[2 * keyCount];
+        int[] expected = new int[2 * keyCount];
+        int threads = 8;
+        int rounds = 20_000;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                int[] own = new int[2 * keyCount];
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < rounds; i++) {
+                    int first = random.nextInt(keyCount);
+                    int second = random.nextInt(keyCount);
+                    EntityLockManager.Key patient = EntityLockManager.Key.patient("P" + first);
+                    EntityLockManager.Key appointment = EntityLockManager.Key.appointment("A" + second);
+                    // Keys are passed in either order; the manager must order the stripes itself
+                    EntityLockManager.Guard guard = random.nextBoolean()
+                        ? locks.lock(patient, appointment) : locks.lock(appointment, patient);
+                    try {
+                        counters[first]++;
+                        counters[keyCount + second]++;
+                    } finally {
+                        guard.close();
+                    }
+                    own[first]++;
+                    own[keyCount + second]++;
+                }
+                synchronized (expected) {
+                    for (int k = 0; k < own.length; k++) {
+                        expected[k] += own[k];
+                    }
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join(60_000);
+            assertTrue(!worker.isAlive(), "Workers finished without deadlocking");
+        }
+        synchronized (expected) {
+            for (int k = 0; k < counters.length; k++) {
+                assertEquals(expected[k], counters[k], "Updates under key " + k);
+            }
+        }
+    }
+
+    private static void nestingOutOfOrderIsRejected() throws Exception {
+        EntityLockManager locks = new EntityLockManager(1024);
+        EntityLockManager.Key first = EntityLockManager.Key.doctor("D-nest-1");
+        EntityLockManager.Key second = EntityLockManager.Key.doctor("D-nest-2");
+        boolean forwardRejected = nestRejected(locks, first, second);
+        boolean backwardRejected = nestRejected(locks, second, first);
+        assertTrue(forwardRejected != backwardRejected, "Exactly one nesting order is rejected");
+
+        // Locking both at once works in any order, and a held stripe may be locked again
+        EntityLockManager.Guard both = locks.lock(second, first);
+        try {
+            locks.lock(first).close();
+        } finally {
+            both.close();
+        }
+        // Nothing is left held by this thread after a rejection
+        Thread other = new Thread(() -> locks.lock(first, second).close());
+        other.start();
+        other.join(10_000);
+        assertTrue(!other.isAlive(), "Another thread takes both keys after the rejected nesting");
+    }
+
+    // Locks outer, then tries to nest inner inside it
+    private static boolean nestRejected(EntityLockManager locks, EntityLockManager.Key outer,
+            EntityLockManager.Key inner) {
+        EntityLockManager.Guard held = locks.lock(outer);
+        try {
+            locks.lock(inner).close();
+            return false;
+        } catch (IllegalStateException e) {
+            return true;
+        } finally {
+            held.close();
+        }
+    }
+
+    private static void rejectsInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new EntityLockManager(12), "Stripe count not a power of two");
+        EntityLockManager locks = new EntityLockManager(4);
+        assertThrows(IllegalArgumentException.class, () -> locks.lock(List.of()), "No keys");
+        assertThrows(IllegalArgumentException.class, () -> EntityLockManager.Key.medicine(null, "Ibuprofen"),
+            "Medicine key without a location");
+    }
+}
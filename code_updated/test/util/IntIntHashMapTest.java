@@ -0,0 +1,107 @@
+package util;
+
+import static util.Assertions.assertEquals;
+import static util.Assertions.assertThrows;
+import static util.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Probing and backward-shift deletion in IntIntHashMap, checked against HashMap
+ */
+public class IntIntHashMapTest {
+    public static void main(String[] args) {
+        removalShiftsCollidingKeysBack();
+        removalShiftsAcrossTheEndOfTheTable();
+        matchesHashMapUnderRandomChanges();
+        rejectsNegativeKeys();
+        System.out.println("IntIntHashMapTest passed");
+    }
+
+    private static void removalShiftsCollidingKeysBack() {
+        // Eight slots, so these all probe from the same home slot
+        IntIntHashMap map = new IntIntHashMap(4);
+        int[] keys = keysWithHome(3, 8, 4);
+        for (int key : keys) {
+            map.put(key, key * 10, -1);
+        }
+        assertTrue(map.remove(keys[0]), "Removing the first key of the cluster");
+        assertTrue(map.remove(keys[2]), "Removing a key inside the cluster");
+        assertEquals(-1, map.getOrDefault(keys[0], -1), "Removed key");
+        assertEquals(keys[1] * 10, map.getOrDefault(keys[1], -1), "Key shifted back after a removal");
+        assertEquals(keys[3] * 10, map.getOrDefault(keys[3], -1), "Last key of the cluster");
+        assertEquals(2, map.size(), "Size after two removals");
+        assertTrue(!map.remove(keys[2]), "Removing a key twice");
+    }
+
+    private static void removalShiftsAcrossTheEndOfTheTable() {
+        IntIntHashMap map = new IntIntHashMap(4);
+        // Three keys homed on the last slot wrap to slots 0 and 1, pushing a key homed on slot 0 to slot 2
+        int[] wrapping = keysWithHome(7, 8, 3);
+        int homedAtZero = keysWithHome(0, 8, 1)[0];
+        for (int key : wrapping) {
+            map.put(key, 1, 0);
+        }
+        map.put(homedAtZero, 2, 0);
+        assertTrue(map.remove(wrapping[0]), "Removing the key in the last slot");
+        for (int i = 1; i < wrapping.length; i++) {
+            assertEquals(1, map.getOrDefault(wrapping[i], 0), "Wrapped key after the removal");
+        }
+        assertEquals(2, map.getOrDefault(homedAtZero, 0), "Key homed at slot 0 after the removal");
+        assertTrue(map.remove(wrapping[1]), "Removing a wrapped key");
+        assertEquals(2, map.getOrDefault(homedAtZero, 0), "Key homed at slot 0 after a second removal");
+        assertEquals(2, map.size(), "Size after two removals");
+    }
+
+    private static void matchesHashMapUnderRandomChanges() {
+        Random random = new Random(44);
+        IntIntHashMap map = new IntIntHashMap();
+        Map<Integer, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 200_000; i++) {
+            // A narrow key range keeps clusters long and removals frequent
+            int key = random.nextInt(512);
+            switch (random.nextInt(3)) {
+                case 0:
+                    assertEquals(expected.getOrDefault(key, -1), map.put(key, i, -1), "Previous value from put");
+                    expected.put(key, i);
+                    break;
+                case 1:
+                    assertEquals(expected.merge(key, 5, Integer::sum), map.addTo(key, 5), "Value from addTo");
+                    break;
+                default:
+                    assertEquals(expected.remove(key) != null, map.remove(key), "Result of remove");
+                    break;
+            }
+        }
+        assertEquals(expected.size(), map.size(), "Size");
+        for (int key = 0; key < 512; key++) {
+            assertEquals(expected.getOrDefault(key, -1), map.getOrDefault(key, -1), "Value of key " + key);
+        }
+        int[] keys = map.keys();
+        Arrays.sort(keys);
+        assertEquals(expected.keySet().stream().sorted().toList(), Arrays.stream(keys).boxed().toList(), "Keys");
+        map.clear();
+        assertTrue(map.isEmpty() && !map.containsKey(keys.length == 0 ? 0 : keys[0]), "Cleared map");
+    }
+
+    private static void rejectsNegativeKeys() {
+        IntIntHashMap map = new IntIntHashMap();
+        assertThrows(IllegalArgumentException.class, () -> map.put(-1, 0, 0), "Negative key");
+        assertTrue(!map.containsKey(-1) && !map.remove(-1), "Lookups of a negative key");
+    }
+
+    // The first count keys whose home slot in a table of the given capacity is home
+    static int[] keysWithHome(int home, int capacity, int count) {
+        int[] keys = new int[count];
+        int found = 0;
+        for (int key = 0; found < count; key++) {
+            if ((IntHashing.mix(key) & (capacity - 1)) == home) {
+                keys[found++] = key;
+            }
+        }
+        return keys;
+    }
+}
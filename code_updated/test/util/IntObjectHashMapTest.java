@@ -0,0 +1,59 @@
+package util;
+
+import static util.Assertions.assertEquals;
+import static util.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * IntObjectHashMap checked against HashMap, including removals inside a wrapped cluster
+ */
+public class IntObjectHashMapTest {
+    public static void main(String[] args) {
+        removalKeepsWrappedClusterReachable();
+        matchesHashMapUnderRandomChanges();
+        System.out.println("IntObjectHashMapTest passed");
+    }
+
+    private static void removalKeepsWrappedClusterReachable() {
+        IntObjectHashMap<String> map = new IntObjectHashMap<>(4);
+        int[] keys = IntIntHashMapTest.keysWithHome(7, 8, 4);
+        for (int key : keys) {
+            map.put(key, "v" + key);
+        }
+        assertEquals("v" + keys[0], map.remove(keys[0]), "Value of the removed key");
+        for (int i = 1; i < keys.length; i++) {
+            assertEquals("v" + keys[i], map.get(keys[i]), "Key in the wrapped cluster");
+        }
+        assertEquals(3, map.size(), "Size after a removal");
+    }
+
+    private static void matchesHashMapUnderRandomChanges() {
+        Random random = new Random(44);
+        IntObjectHashMap<Integer> map = new IntObjectHashMap<>();
+        Map<Integer, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 200_000; i++) {
+            int key = random.nextInt(512);
+            int value = i;
+            switch (random.nextInt(3)) {
+                case 0:
+                    assertEquals(expected.put(key, value), map.put(key, value), "Previous value from put");
+                    break;
+                case 1:
+                    assertEquals(expected.computeIfAbsent(key, k -> value), map.computeIfAbsent(key, k -> value),
+                        "Value from computeIfAbsent");
+                    break;
+                default:
+                    assertEquals(expected.remove(key), map.remove(key), "Value from remove");
+                    break;
+            }
+        }
+        assertEquals(expected.size(), map.size(), "Size");
+        for (int key = 0; key < 512; key++) {
+            assertEquals(expected.get(key), map.get(key), "Value of key " + key);
+        }
+        assertTrue(map.values().containsAll(expected.values()) && map.values().size() == expected.size(), "Values");
+    }
+}
@@ -0,0 +1,148 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Locks patients, doctors, medicines and appointments by ID, so an update
+ * spanning several repositories runs as one unit. IDs hash onto a fixed set
+ * of striped locks, so memory stays constant however many entities exist;
+ * two IDs sharing a stripe only serialize each other. A call locks all of
+ * its keys at once, taking the stripes in ascending order, so callers cannot
+ * deadlock however their key sets overlap. Locks are reentrant, but a
+ * thread already holding locks may only add stripes above the ones it holds;
+ * anything else is rejected rather than risking a deadlock.
+ */
+public class EntityLockManager {
+    private static final int STRIPES = 1024;
+    private static final EntityLockManager INSTANCE = new EntityLockManager(STRIPES);
+
+    private final ReentrantLock[] stripes;
+    // Highest stripe each thread holds, or -1, so out-of-order nesting can be caught
+    private final ThreadLocal<Integer> highestHeld;
+
+    /**
+     * Creates a separate manager; getInstance() is the one shared by the controllers
+     */
+    public EntityLockManager(int stripeCount) {
+        if (stripeCount <= 0 || Integer.bitCount(stripeCount) != 1) {
+            throw new IllegalArgumentException("Stripe count must be a positive power of two");
+        }
+        this.stripes = new ReentrantLock[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        this.highestHeld = ThreadLocal.withInitial(() -> -1);
+    }
+
+    public static EntityLockManager getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Locks every key, blocking until all are held. Close the returned guard to release them.
+     */
+    public Guard lock(Key... keys) {
+        return lock(Arrays.asList(keys));
+    }
+
+    /**
+     * Locks every key, blocking until all are held. Close the returned guard to release them.
+     */
+    public Guard lock(Collection<Key> keys) {
+        if (keys == null || keys.isEmpty()) {
+            throw new IllegalArgumentException("At least one key is required");
+        }
+        int[] order = keys.stream()
+            .mapToInt(this::stripeOf)
+            .distinct()
+            .sorted()
+            .toArray();
+        int previousHighest = highestHeld.get();
+        List<ReentrantLock> acquired = new ArrayList<>(order.length);
+        for (int stripe : order) {
+            ReentrantLock lock = stripes[stripe];
+            if (!lock.isHeldByCurrentThread() && stripe < previousHighest) {
+                acquired.forEach(ReentrantLock::unlock);
+                throw new IllegalStateException("Entity locks must be taken together, not nested out of order");
+            }
+            lock.lock();
+            acquired.add(lock);
+        }
+        highestHeld.set(Math.max(previousHighest, order[order.length - 1]));
+        return new Guard(acquired, previousHighest);
+    }
+
+    private int stripeOf(Key key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        int hash = key.kind.ordinal() * 31 + key.id.hashCode();
+        return IntHashing.mix(hash) & (stripes.length - 1);
+    }
+
+    /**
+     * An entity to lock, identified the same way as in OrdinalRegistry
+     */
+    public static final class Key {
+        private final OrdinalRegistry.Kind kind;
+        private final String id;
+
+        private Key(OrdinalRegistry.Kind kind, String id) {
+            this.kind = kind;
+            this.id = OrdinalRegistry.normalize(kind, id);
+        }
+
+        public static Key patient(String patientId) {
+            return new Key(OrdinalRegistry.Kind.PATIENT, patientId);
+        }
+
+        public static Key doctor(String doctorId) {
+            return new Key(OrdinalRegistry.Kind.DOCTOR, doctorId);
+        }
+
+        /**
+         * Each location holds its own stock of a medicine, so the key names both
+         */
+        public static Key medicine(String location, String medicineName) {
+            if (location == null || medicineName == null) {
+                throw new IllegalArgumentException("Location and medicine name cannot be null");
+            }
+            return new Key(OrdinalRegistry.Kind.MEDICINE, location + "/" + medicineName);
+        }
+
+        public static Key appointment(String appointmentId) {
+            return new Key(OrdinalRegistry.Kind.APPOINTMENT, appointmentId);
+        }
+    }
+
+    /**
+     * The locks taken by one call; closing it releases them in reverse order.
+     * Must be closed by the thread that took them.
+     */
+    public final class Guard implements AutoCloseable {
+        private final List<ReentrantLock> locks;
+        private final int previousHighest;
+        private boolean closed;
+
+        private Guard(List<ReentrantLock> locks, int previousHighest) {
+            this.locks = locks;
+            this.previousHighest = previousHighest;
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (int i = locks.size() - 1; i >= 0; i--) {
+                locks.get(i).unlock();
+            }
+            highestHeld.set(previousHighest);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package util;
+
+// Probing helpers shared by the open-addressing int collections
+final class IntHashing {
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private IntHashing() {}
+
+    static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    // Power-of-two capacity that holds expectedSize entries within the fill limit
+    static int capacityFor(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("Expected size cannot be negative");
+        }
+        int capacity = 8;
+        while (maxFill(capacity) < expectedSize && capacity < MAX_CAPACITY) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    // Tables are kept at most three-quarters full
+    static int maxFill(int capacity) {
+        return capacity - (capacity >>> 2);
+    }
+
+    static void checkKey(int key) {
+        if (key < 0) {
+            throw new IllegalArgumentException("Key cannot be negative: " + key);
+        }
+    }
+
+    // Whether an entry at slot next, whose home slot is home, may move back into gap
+    static boolean canShift(int home, int gap, int next) {
+        return gap <= next
+            ? home <= gap || home > next
+            : home <= gap && home > next;
+    }
+}
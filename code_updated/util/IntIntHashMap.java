@@ -0,0 +1,156 @@
+package util;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing map from non-negative int keys, such as entity ordinals,
+ * to int values, with no boxing. Uses linear probing and backward-shift
+ * deletion, so removals leave no tombstones. Not thread-safe; callers
+ * synchronize as they would around a HashMap.
+ */
+public class IntIntHashMap {
+    private static final int EMPTY = -1;
+
+    private int[] keys;
+    private int[] values;
+    private int size;
+
+    public IntIntHashMap() {
+        this(16);
+    }
+
+    public IntIntHashMap(int expectedSize) {
+        int capacity = IntHashing.capacityFor(expectedSize);
+        this.keys = new int[capacity];
+        this.values = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    public int getOrDefault(int key, int defaultValue) {
+        int slot = find(key);
+        return slot < 0 ? defaultValue : values[slot];
+    }
+
+    public boolean containsKey(int key) {
+        return find(key) >= 0;
+    }
+
+    /**
+     * Maps key to value, returning the previous value or defaultValue if there was none
+     */
+    public int put(int key, int value, int defaultValue) {
+        IntHashing.checkKey(key);
+        int slot = slotFor(key);
+        if (keys[slot] == key) {
+            int previous = values[slot];
+            values[slot] = value;
+            return previous;
+        }
+        insert(slot, key, value);
+        return defaultValue;
+    }
+
+    /**
+     * Adds delta to the key's value, treating a missing key as 0, and returns the new value
+     */
+    public int addTo(int key, int delta) {
+        IntHashing.checkKey(key);
+        int slot = slotFor(key);
+        if (keys[slot] == key) {
+            return values[slot] += delta;
+        }
+        insert(slot, key, delta);
+        return delta;
+    }
+
+    public boolean remove(int key) {
+        int slot = find(key);
+        if (slot < 0) {
+            return false;
+        }
+        deleteSlot(slot);
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int[] keys() {
+        int[] result = new int[size];
+        int i = 0;
+        for (int key : keys) {
+            if (key != EMPTY) {
+                result[i++] = key;
+            }
+        }
+        return result;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+    }
+
+    private int find(int key) {
+        if (key < 0) {
+            return -1;
+        }
+        int slot = slotFor(key);
+        return keys[slot] == key ? slot : -1;
+    }
+
+    // The slot holding key, or the empty slot where it would be inserted
+    private int slotFor(int key) {
+        int mask = keys.length - 1;
+        int slot = IntHashing.mix(key) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void insert(int slot, int key, int value) {
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size > IntHashing.maxFill(keys.length)) {
+            rehash(keys.length * 2);
+        }
+    }
+
+    private void deleteSlot(int slot) {
+        int mask = keys.length - 1;
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (keys[next] != EMPTY) {
+            int home = IntHashing.mix(keys[next]) & mask;
+            if (IntHashing.canShift(home, gap, next)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[gap] = EMPTY;
+        size--;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new int[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = slotFor(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
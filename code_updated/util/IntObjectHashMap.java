@@ -0,0 +1,178 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * Open-addressing map from non-negative int keys, such as entity ordinals,
+ * to objects, with no boxed keys or entry objects. Uses linear probing and
+ * backward-shift deletion. Not thread-safe; callers synchronize as they
+ * would around a HashMap.
+ */
+public class IntObjectHashMap<V> {
+    private static final int EMPTY = -1;
+
+    private int[] keys;
+    private Object[] values;
+    private int size;
+
+    public IntObjectHashMap() {
+        this(16);
+    }
+
+    public IntObjectHashMap(int expectedSize) {
+        int capacity = IntHashing.capacityFor(expectedSize);
+        this.keys = new int[capacity];
+        this.values = new Object[capacity];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    public V get(int key) {
+        int slot = find(key);
+        return slot < 0 ? null : value(slot);
+    }
+
+    public boolean containsKey(int key) {
+        return find(key) >= 0;
+    }
+
+    /**
+     * Maps key to value, returning the previous value or null
+     */
+    public V put(int key, V value) {
+        IntHashing.checkKey(key);
+        int slot = slotFor(key);
+        if (keys[slot] == key) {
+            V previous = value(slot);
+            values[slot] = value;
+            return previous;
+        }
+        insert(slot, key, value);
+        return null;
+    }
+
+    public V computeIfAbsent(int key, IntFunction<? extends V> factory) {
+        IntHashing.checkKey(key);
+        int slot = slotFor(key);
+        if (keys[slot] == key) {
+            return value(slot);
+        }
+        V value = factory.apply(key);
+        insert(slot, key, value);
+        return value;
+    }
+
+    /**
+     * Removes a key, returning its value or null if it was not present
+     */
+    public V remove(int key) {
+        int slot = find(key);
+        if (slot < 0) {
+            return null;
+        }
+        V previous = value(slot);
+        deleteSlot(slot);
+        return previous;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int[] keys() {
+        int[] result = new int[size];
+        int i = 0;
+        for (int key : keys) {
+            if (key != EMPTY) {
+                result[i++] = key;
+            }
+        }
+        return result;
+    }
+
+    public List<V> values() {
+        List<V> result = new ArrayList<>(size);
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != EMPTY) {
+                result.add(value(slot));
+            }
+        }
+        return result;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private V value(int slot) {
+        return (V) values[slot];
+    }
+
+    private int find(int key) {
+        if (key < 0) {
+            return -1;
+        }
+        int slot = slotFor(key);
+        return keys[slot] == key ? slot : -1;
+    }
+
+    // The slot holding key, or the empty slot where it would be inserted
+    private int slotFor(int key) {
+        int mask = keys.length - 1;
+        int slot = IntHashing.mix(key) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void insert(int slot, int key, V value) {
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size > IntHashing.maxFill(keys.length)) {
+            rehash(keys.length * 2);
+        }
+    }
+
+    private void deleteSlot(int slot) {
+        int mask = keys.length - 1;
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (keys[next] != EMPTY) {
+            int home = IntHashing.mix(keys[next]) & mask;
+            if (IntHashing.canShift(home, gap, next)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[gap] = EMPTY;
+        values[gap] = null;
+        size--;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new int[capacity];
+        values = new Object[capacity];
+        Arrays.fill(keys, EMPTY);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = slotFor(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
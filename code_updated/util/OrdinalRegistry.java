@@ -0,0 +1,71 @@
+package util;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Assigns each patient, doctor, medicine and appointment a dense int
+ * ordinal, numbered from 0 per kind in order of first registration, so
+ * indexes can use primitive arrays, bitsets and the Int* collections
+ * instead of maps keyed by String IDs. Entities register themselves when
+ * they are created or imported. An ordinal belongs to the ID, not the
+ * object, so a replaced Doctor or a medicine stocked at several locations
+ * keeps one ordinal. Ordinals are never reused.
+ */
+public class OrdinalRegistry {
+    public enum Kind {
+        PATIENT,
+        DOCTOR,
+        MEDICINE,
+        APPOINTMENT
+    }
+
+    private static final OrdinalRegistry INSTANCE = new OrdinalRegistry();
+
+    private final Map<Kind, StringDictionary> tables;
+
+    private OrdinalRegistry() {
+        this.tables = new EnumMap<>(Kind.class);
+        for (Kind kind : Kind.values()) {
+            tables.put(kind, new StringDictionary());
+        }
+    }
+
+    public static OrdinalRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Gets the ordinal for an ID, assigning the next one if the ID is new
+     */
+    public int register(Kind kind, String id) {
+        return tables.get(kind).encode(normalize(kind, id));
+    }
+
+    /**
+     * Gets the ordinal for an ID, or -1 if it has never been registered
+     */
+    public int ordinalOf(Kind kind, String id) {
+        return id == null ? -1 : tables.get(kind).codeOf(normalize(kind, id));
+    }
+
+    public String idOf(Kind kind, int ordinal) {
+        return tables.get(kind).decode(ordinal);
+    }
+
+    /**
+     * Gets the number of ordinals assigned so far, i.e. one more than the highest
+     */
+    public int size(Kind kind) {
+        return tables.get(kind).size();
+    }
+
+    // Medicines are identified by name, which is matched case-insensitively everywhere
+    static String normalize(Kind kind, String id) {
+        if (id == null) {
+            throw new IllegalArgumentException("ID cannot be null");
+        }
+        return kind == Kind.MEDICINE ? id.trim().toLowerCase(Locale.ROOT) : id;
+    }
+}
@@ -0,0 +1,59 @@
+package util;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Values indexed by dense ordinal that can be read without locking. Reads
+ * are a volatile array load and an index, so they never block or allocate.
+ * Writes must be serialized by the caller; the table grows by copying when
+ * an ordinal beyond its capacity is written, and a reader still holding
+ * the old array simply sees the values from before the write.
+ */
+public class OrdinalTable<V> {
+    private volatile AtomicReferenceArray<V> slots;
+
+    public OrdinalTable() {
+        this(16);
+    }
+
+    public OrdinalTable(int expectedSize) {
+        this.slots = new AtomicReferenceArray<>(Math.max(1, expectedSize));
+    }
+
+    /**
+     * Gets the value for an ordinal, or null; negative ordinals have none
+     */
+    public V get(int ordinal) {
+        AtomicReferenceArray<V> current = slots;
+        return ordinal >= 0 && ordinal < current.length() ? current.get(ordinal) : null;
+    }
+
+    /**
+     * Sets or, with null, clears the value for an ordinal. Callers serialize writes.
+     */
+    public void set(int ordinal, V value) {
+        if (ordinal < 0) {
+            throw new IllegalArgumentException("Ordinal cannot be negative: " + ordinal);
+        }
+        AtomicReferenceArray<V> current = slots;
+        if (ordinal >= current.length()) {
+            if (value == null) {
+                return;
+            }
+            AtomicReferenceArray<V> grown = new AtomicReferenceArray<>(Math.max(ordinal + 1, current.length() * 2));
+            for (int i = 0; i < current.length(); i++) {
+                grown.set(i, current.get(i));
+            }
+            slots = grown;
+            current = grown;
+        }
+        current.set(ordinal, value);
+    }
+
+    /**
+     * Clears every value. Callers serialize writes.
+     */
+    public void clear() {
+        slots = new AtomicReferenceArray<>(16);
+    }
+}
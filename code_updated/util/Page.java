@@ -0,0 +1,38 @@
+package util;
+
+import java.util.List;
+
+/**
+ * One page of results from a cursor-based query.
+ * Pass getNextCursor() back to the query to fetch the following page;
+ * it is null once there is nothing more to read.
+ */
+public class Page<T> {
+    private final List<T> items;
+    private final String nextCursor;
+
+    public Page(List<T> items, String nextCursor) {
+        this.items = List.copyOf(items);
+        this.nextCursor = nextCursor;
+    }
+
+    public static <T> Page<T> empty() {
+        return new Page<>(List.of(), null);
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasMore() {
+        return nextCursor != null;
+    }
+
+    public boolean isEmpty() {
+        return items.isEmpty();
+    }
+}
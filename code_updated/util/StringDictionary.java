@@ -0,0 +1,110 @@
+package util;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Shared table of frequently repeated strings, such as diagnoses, treatments
+ * and service types, each stored once and referred to by a dense int code.
+ * Looking up a known string and decoding a code never lock; only the first
+ * encoding of a new string does. Codes are never reused, so two values are
+ * equal exactly when their codes are.
+ */
+public class StringDictionary {
+    private static final int INITIAL_CAPACITY = 256;
+    // Created eagerly: entities decode on every read, so getInstance() must not lock
+    private static final StringDictionary INSTANCE = new StringDictionary();
+
+    private final Map<String, Integer> codes;
+    // Grown by copying under the dictionary's lock; entries below size are never changed
+    private volatile String[] strings;
+    private volatile int size;
+
+    /**
+     * Creates a separate table; getInstance() is the one shared by clinical text
+     */
+    public StringDictionary() {
+        this.codes = new ConcurrentHashMap<>();
+        this.strings = new String[INITIAL_CAPACITY];
+    }
+
+    public static StringDictionary getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Gets the code for a string, adding the string to the table if it is new
+     */
+    public int encode(String value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Value cannot be null");
+        }
+        Integer code = codes.get(value);
+        return code != null ? code : add(value);
+    }
+
+    /**
+     * Gets the code for a string without adding it, or -1 if it has never been encoded
+     */
+    public int codeOf(String value) {
+        Integer code = value == null ? null : codes.get(value);
+        return code == null ? -1 : code;
+    }
+
+    public String decode(int code) {
+        if (code < 0 || code >= size) {
+            throw new IllegalArgumentException("Unknown string code: " + code);
+        }
+        return strings[code];
+    }
+
+    /**
+     * Gets the codes of every string the predicate accepts, testing each
+     * distinct string once rather than every value that uses it
+     */
+    public BitSet codesMatching(Predicate<String> predicate) {
+        // Read size before the table, which add() publishes first
+        int count = size;
+        String[] table = strings;
+        BitSet result = new BitSet(count);
+        for (int code = 0; code < count; code++) {
+            if (predicate.test(table[code])) {
+                result.set(code);
+            }
+        }
+        return result;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the table in code order, e.g. to write alongside encoded data
+     */
+    public List<String> getAll() {
+        int count = size;
+        return List.of(Arrays.copyOf(strings, count));
+    }
+
+    private synchronized int add(String value) {
+        Integer existing = codes.get(value);
+        if (existing != null) {
+            return existing;
+        }
+        int code = size;
+        String[] table = strings;
+        if (code == table.length) {
+            table = Arrays.copyOf(table, table.length * 2);
+        }
+        table[code] = value;
+        strings = table;
+        size = code + 1;
+        codes.put(value, code);
+        return code;
+    }
+}